@@ -249,10 +249,83 @@ CREATE TABLE IF NOT EXISTS faqs (
     deleted_flag TINYINT(1) DEFAULT 0
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='FAQ表';
 
+-- 13. 批处理作业执行表 (batch_job_executions)
+CREATE TABLE IF NOT EXISTS batch_job_executions (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    job_name VARCHAR(100) NOT NULL COMMENT 'ジョブ名',
+    status ENUM('RUNNING', 'COMPLETED', 'FAILED', 'ABANDONED') NOT NULL COMMENT '実行ステータス',
+    trigger_type ENUM('SCHEDULED', 'MANUAL', 'RESUME') NOT NULL COMMENT '起動契機',
+    resume_count INT DEFAULT 0 COMMENT '再開回数',
+    start_time TIMESTAMP NULL COMMENT '開始日時',
+    end_time TIMESTAMP NULL COMMENT '終了日時',
+    error_message TEXT COMMENT 'エラーメッセージ',
+    owner_id VARCHAR(100) COMMENT '実行中のノードID',
+    heartbeat_at TIMESTAMP(3) NULL COMMENT '実行中ノードの最終ハートビート日時（DB時刻）',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='批处理作业执行表';
+
+-- 14. 批处理步骤执行表 (batch_step_executions)
+CREATE TABLE IF NOT EXISTS batch_step_executions (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    job_execution_id BIGINT NOT NULL COMMENT 'ジョブ実行ID',
+    step_name VARCHAR(100) NOT NULL COMMENT 'ステップ名',
+    step_order INT NOT NULL COMMENT '実行順序',
+    status ENUM('RUNNING', 'COMPLETED', 'FAILED') NOT NULL COMMENT '実行ステータス',
+    checkpoint VARCHAR(255) COMMENT 'チェックポイント（最後にコミットしたチャンクの位置）',
+    row_count BIGINT DEFAULT 0 COMMENT '処理件数',
+    chunk_count INT DEFAULT 0 COMMENT 'コミット済みチャンク数',
+    elapsed_ms BIGINT DEFAULT 0 COMMENT '累計処理時間（ミリ秒）',
+    start_time TIMESTAMP NULL COMMENT '開始日時',
+    end_time TIMESTAMP NULL COMMENT '終了日時',
+    error_message TEXT COMMENT 'エラーメッセージ',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_step_execution (job_execution_id, step_name),
+    FOREIGN KEY (job_execution_id) REFERENCES batch_job_executions(id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='批处理步骤执行表';
+
+-- 15. 已吊销令牌表 (revoked_tokens)
+CREATE TABLE IF NOT EXISTS revoked_tokens (
+    token_id VARCHAR(32) PRIMARY KEY COMMENT 'トークンID',
+    expires_at TIMESTAMP NOT NULL COMMENT 'トークン有効期限（この日時以降は削除可）',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='已吊销令牌表';
+
+-- 16. 外部系统发件箱表 (integration_outbox)
+CREATE TABLE IF NOT EXISTS integration_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    system_type VARCHAR(30) NOT NULL COMMENT '外部システム種別',
+    payload MEDIUMTEXT NOT NULL COMMENT '送信するリクエスト本文（JSON）',
+    status ENUM('PENDING', 'PROCESSING', 'SENT', 'DEAD') NOT NULL DEFAULT 'PENDING' COMMENT '送信ステータス',
+    attempts INT NOT NULL DEFAULT 0 COMMENT '送信試行回数',
+    next_attempt_at TIMESTAMP(3) NOT NULL COMMENT '次回送信日時（処理中は占有期限、送信済みは送信日時）',
+    last_status_code INT COMMENT '最後の応答ステータスコード',
+    last_error VARCHAR(500) COMMENT '最後のエラー',
+    created_at TIMESTAMP(3) NOT NULL COMMENT '登録日時',
+    sent_at TIMESTAMP(3) NULL COMMENT '送信日時',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='外部系统发件箱表';
+
+-- 17. 编号序列表 (number_sequences)
+CREATE TABLE IF NOT EXISTS number_sequences (
+    sequence_name VARCHAR(64) PRIMARY KEY COMMENT 'シーケンス名（日付で区切る場合は日付付き）',
+    next_value BIGINT NOT NULL COMMENT '次に払い出すブロックの先頭値',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='编号序列表';
+
+-- 18. 批处理作业启动锁表 (batch_job_locks)
+CREATE TABLE IF NOT EXISTS batch_job_locks (
+    job_name VARCHAR(100) PRIMARY KEY COMMENT 'ジョブ名（起動判定の間この行をロックする）',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='批处理作业启动锁表';
+
 -- 创建索引以提高查询性能
 CREATE INDEX idx_customers_customer_code ON customers(customer_code);
 CREATE INDEX idx_customers_email ON customers(email);
 CREATE INDEX idx_customers_name ON customers(last_name, first_name);
+CREATE INDEX idx_customers_page ON customers(deleted_flag, created_at, id);
+CREATE INDEX idx_customers_updated_at ON customers(updated_at);
 CREATE INDEX idx_contracts_contract_number ON contracts(contract_number);
 CREATE INDEX idx_contracts_customer_id ON contracts(customer_id);
 CREATE INDEX idx_contracts_product_id ON contracts(product_id);
@@ -260,6 +333,8 @@ CREATE INDEX idx_contracts_status ON contracts(contract_status);
 CREATE INDEX idx_premium_rates_product_id ON premium_rates(product_id);
 CREATE INDEX idx_premium_rates_age_period ON premium_rates(gender, entry_age, insurance_period);
 CREATE INDEX idx_premium_rates_validity ON premium_rates(valid_from, valid_to);
+CREATE INDEX idx_premium_rates_page ON premium_rates(created_at, id);
+CREATE INDEX idx_premium_rates_product_page ON premium_rates(product_id, created_at, id);
 CREATE INDEX idx_products_product_code ON insurance_products(product_code);
 CREATE INDEX idx_products_category ON insurance_products(product_category);
 CREATE INDEX idx_claims_contract_id ON claims(contract_id);
@@ -267,12 +342,18 @@ CREATE INDEX idx_claims_status ON claims(claim_status);
 CREATE INDEX idx_claims_claim_number ON claims(claim_number);
 CREATE INDEX idx_document_requests_customer_id ON document_requests(customer_id);
 CREATE INDEX idx_document_requests_status ON document_requests(request_status);
+CREATE INDEX idx_document_requests_page ON document_requests(created_at, id);
+CREATE INDEX idx_document_requests_status_page ON document_requests(request_status, created_at, id);
 CREATE INDEX idx_users_username ON users(username);
 CREATE INDEX idx_users_email ON users(email);
 CREATE INDEX idx_users_role ON users(user_role);
 CREATE INDEX idx_system_logs_user_id ON system_logs(user_id);
 CREATE INDEX idx_system_logs_created_at ON system_logs(created_at);
 CREATE INDEX idx_system_logs_action ON system_logs(action);
+CREATE INDEX idx_batch_job_executions_job ON batch_job_executions(job_name, id);
+CREATE INDEX idx_batch_job_executions_status ON batch_job_executions(status);
+CREATE INDEX idx_revoked_tokens_expires ON revoked_tokens(expires_at);
+CREATE INDEX idx_integration_outbox_due ON integration_outbox(status, next_attempt_at);
 CREATE INDEX idx_branch_offices_code ON branch_offices(branch_code);
 CREATE INDEX idx_faq_category ON faqs(category);
 
@@ -1,16 +1,29 @@
 package com.insurance.api;
 
+import com.insurance.dao.KeysetPage;
+import com.insurance.monitor.RequestMetrics;
 import com.insurance.security.AuthUtil;
+import com.insurance.util.JsonStreamWriter;
 import com.insurance.util.LogUtil;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * API基础Servlet类
@@ -35,6 +48,7 @@ public abstract class ApiBaseServlet extends HttpServlet {
     protected static class ResponseStatus {
         public static final int OK = 200; // 请求成功
         public static final int CREATED = 201; // 创建成功
+        public static final int ACCEPTED = 202; // 已受理（稍后处理）
         public static final int BAD_REQUEST = 400; // 请求错误
         public static final int UNAUTHORIZED = 401; // 未授权
         public static final int FORBIDDEN = 403; // 禁止访问
@@ -129,6 +143,15 @@ public abstract class ApiBaseServlet extends HttpServlet {
             return new ApiResponse(ResponseStatus.CREATED, ResponseMessage.SUCCESS, data);
         }
         
+        /**
+         * 创建已受理响应
+         * @param data 响应数据
+         * @return ApiResponse对象
+         */
+        public static ApiResponse accepted(Object data) {
+            return new ApiResponse(ResponseStatus.ACCEPTED, ResponseMessage.SUCCESS, data);
+        }
+        
         /**
          * 创建错误响应
          * @param message 错误消息
@@ -183,6 +206,32 @@ public abstract class ApiBaseServlet extends HttpServlet {
     protected void service(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         
+        // 记录处理时间（按端点和HTTP方法），请求指标过滤器不再重复记录
+        long start = System.nanoTime();
+        request.setAttribute(RequestMetrics.RECORDED_ATTRIBUTE, Boolean.TRUE);
+        try {
+            handleService(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // 异步处理的请求在响应完成时记录
+                request.getAsyncContext().addListener(
+                    new TimingListener(request.getServletPath(), request.getMethod(), start));
+            } else {
+                RequestMetrics.recordApi(request.getServletPath(), request.getMethod(), System.nanoTime() - start);
+            }
+        }
+    }
+    
+    /**
+     * 统一的API处理逻辑
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws ServletException Servlet异常
+     * @throws IOException IO异常
+     */
+    private void handleService(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
         // 设置CORS响应头
         // 设置跨域资源共享响应头，允许前端应用访问API
         setCorsHeaders(response);
@@ -220,6 +269,7 @@ public abstract class ApiBaseServlet extends HttpServlet {
         } catch (Exception e) {
             // 记录API处理异常日志
             LogUtil.error("API处理异常: " + request.getRequestURI(), e);
+            RequestMetrics.recordApiError(request.getServletPath());
             // 返回内部错误响应
             sendJsonResponse(response, ApiResponse.internalError());
         }
@@ -299,7 +349,8 @@ public abstract class ApiBaseServlet extends HttpServlet {
     
     /**
      * 发送JSON响应
-     * 将ApiResponse对象转换为JSON格式并发送给客户端
+     * 将ApiResponse对象以流式JSON直接写入响应输出流，不生成完整的JSON字符串。
+     * 不设置Content-Length，大的响应由容器以分块传输发送
      * @param response HTTP响应对象
      * @param apiResponse API响应对象
      * @throws IOException IO异常
@@ -307,74 +358,158 @@ public abstract class ApiBaseServlet extends HttpServlet {
     protected void sendJsonResponse(HttpServletResponse response, ApiResponse apiResponse) 
             throws IOException {
         response.setStatus(apiResponse.getStatus()); // 设置响应状态码
-        PrintWriter out = response.getWriter(); // 获取响应输出流
-        out.print(toJson(apiResponse)); // 将ApiResponse转换为JSON并输出
-        out.flush(); // 刷新输出流
+        response.setContentType("application/json"); // 设置内容类型
+        response.setCharacterEncoding("UTF-8"); // 设置字符编码
+        
+        OutputStream out;
+        try {
+            out = response.getOutputStream(); // 获取响应字节输出流
+        } catch (IllegalStateException e) {
+            // 已经通过getWriter输出过内容时，改用字符输出流
+            PrintWriter writer = response.getWriter();
+            writer.print(toJson(apiResponse));
+            writer.flush();
+            return;
+        }
+        try (JsonStreamWriter json = new JsonStreamWriter(out)) {
+            writeApiResponse(json, apiResponse); // 将ApiResponse以JSON写入输出流
+        }
     }
     
     /**
-     * 将ApiResponse转换为JSON字符串
-     * 将ApiResponse对象转换为JSON格式的字符串
+     * 异步发送JSON响应
+     * 开始Servlet异步处理后立即返回，Servlet线程不等待处理结果。
+     * 处理完成时在完成处理的线程中写入响应；超过时间上限时返回超时响应。
+     * 容器不支持异步处理时在当前线程等待结果
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @param pending 处理结果
+     * @param timeoutMillis 等待结果的时间上限（毫秒）
+     * @throws IOException IO异常
+     */
+    protected void sendJsonResponseAsync(HttpServletRequest request, HttpServletResponse response,
+                                         CompletionStage<ApiResponse> pending, long timeoutMillis)
+            throws IOException {
+        if (!request.isAsyncSupported()) {
+            sendJsonResponse(response, awaitResponse(request, pending));
+            return;
+        }
+        
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeoutMillis);
+        // 只写入一次响应（处理完成和超时中先发生的一方）
+        AtomicBoolean responded = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (responded.compareAndSet(false, true)) {
+                    LogUtil.warn("API处理超时: " + request.getRequestURI());
+                    sendJsonResponse((HttpServletResponse) asyncContext.getResponse(), ApiResponse.error("处理超时，请稍后重试"));
+                    asyncContext.complete();
+                }
+            }
+            
+            @Override
+            public void onComplete(AsyncEvent event) {}
+            
+            @Override
+            public void onError(AsyncEvent event) {}
+            
+            @Override
+            public void onStartAsync(AsyncEvent event) {}
+        });
+        
+        pending.whenComplete((apiResponse, error) -> {
+            if (!responded.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                sendJsonResponse((HttpServletResponse) asyncContext.getResponse(),
+                                 error == null ? apiResponse : failedResponse(request, error));
+            } catch (IOException | RuntimeException e) {
+                LogUtil.error("API响应发送失败: " + request.getRequestURI(), e);
+            } finally {
+                asyncContext.complete();
+            }
+        });
+    }
+    
+    /**
+     * 在当前线程等待处理结果
+     * @param request HTTP请求对象
+     * @param pending 处理结果
+     * @return 处理结果，处理异常时为内部错误响应
+     */
+    private ApiResponse awaitResponse(HttpServletRequest request, CompletionStage<ApiResponse> pending) {
+        try {
+            return pending.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            return failedResponse(request, e);
+        }
+    }
+    
+    /**
+     * 处理异常时的响应
+     * @param request HTTP请求对象
+     * @param error 异常
+     * @return 内部错误响应
+     */
+    private ApiResponse failedResponse(HttpServletRequest request, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        LogUtil.error("API处理异常: " + request.getRequestURI(), cause);
+        RequestMetrics.recordApiError(request.getServletPath());
+        return ApiResponse.internalError();
+    }
+    
+    /**
+     * 以流式JSON写入ApiResponse
+     * @param json JSON输出
      * @param apiResponse API响应对象
-     * @return JSON字符串
+     * @throws IOException IO异常
      */
-    protected String toJson(ApiResponse apiResponse) {
-        StringBuilder json = new StringBuilder();
-        json.append("{");
-        json.append("\"status\":").append(apiResponse.getStatus()).append(","); // 添加状态码
-        json.append("\"message\":\"").append(escapeJson(apiResponse.getMessage())).append("\""); // 添加消息
+    protected void writeApiResponse(JsonStreamWriter json, ApiResponse apiResponse) throws IOException {
+        json.beginObject();
+        json.name("status").value(apiResponse.getStatus()); // 添加状态码
+        json.name("message").value(apiResponse.getMessage()); // 添加消息
         
         // 如果有数据，则添加数据部分
         if (apiResponse.getData() != null) {
-            json.append(",\"data\":");
-            if (apiResponse.getData() instanceof String) {
-                // 如果数据是字符串，则添加引号
-                json.append("\"").append(escapeJson(apiResponse.getData().toString())).append("\"");
-            } else {
-                // 如果数据不是字符串，则转换为JSON
-                json.append(objectToJson(apiResponse.getData()));
-            }
+            json.name("data").value(apiResponse.getData());
         }
         
         // 如果有元数据且不为空，则添加元数据部分
         if (apiResponse.getMeta() != null && !apiResponse.getMeta().isEmpty()) {
-            json.append(",\"meta\":{");
-            boolean first = true;
-            // 遍历元数据键值对
-            for (Map.Entry<String, Object> entry : apiResponse.getMeta().entrySet()) {
-                if (!first) json.append(",");
-                // 添加键
-                json.append("\"").append(escapeJson(entry.getKey())).append("\":");
-                // 添加值
-                if (entry.getValue() instanceof String) {
-                    // 如果值是字符串，则添加引号
-                    json.append("\"").append(escapeJson(entry.getValue().toString())).append("\"");
-                } else {
-                    // 如果值不是字符串，则转换为JSON
-                    json.append(objectToJson(entry.getValue()));
-                }
-                first = false;
-            }
-            json.append("}");
+            json.name("meta").value(apiResponse.getMeta());
         }
         
-        json.append("}");
-        return json.toString(); // 返回JSON字符串
+        json.endObject();
     }
     
     /**
-     * 将对象转换为JSON字符串（简单实现）
-     * 简单地将对象转换为JSON字符串（实际项目中建议使用JSON库）
+     * 将ApiResponse转换为JSON字符串
+     * 响应输出请使用sendJsonResponse（流式写入），此方法只用于需要完整字符串的场合
+     * @param apiResponse API响应对象
+     * @return JSON字符串
+     */
+    protected String toJson(ApiResponse apiResponse) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonStreamWriter json = new JsonStreamWriter(bytes)) {
+            writeApiResponse(json, apiResponse);
+        } catch (IOException e) {
+            // ByteArrayOutputStream不会抛出IO异常
+            throw new UncheckedIOException(e);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8); // 返回JSON字符串
+    }
+    
+    /**
+     * 将对象转换为JSON字符串
+     * 支持Map、集合、数组和模型对象（按getter输出）
      * @param obj 对象
      * @return JSON字符串
      */
     protected String objectToJson(Object obj) {
-        if (obj == null) {
-            return "null"; // 如果对象为空，返回null字符串
-        }
-        
-        // 这里简化处理，实际项目中建议使用JSON库
-        return obj.toString(); // 返回对象的字符串表示
+        return JsonStreamWriter.toJsonString(obj);
     }
     
     /**
@@ -384,15 +519,7 @@ public abstract class ApiBaseServlet extends HttpServlet {
      * @return 转义后的字符串
      */
     protected String escapeJson(String text) {
-        if (text == null) {
-            return ""; // 如果字符串为空，返回空字符串
-        }
-        // 对特殊字符进行转义
-        return text.replace("\\", "\\\\") // 转义反斜杠
-                 .replace("\"", "\\\"") // 转义双引号
-                 .replace("\r", "\\r") // 转义回车符
-                 .replace("\n", "\\n") // 转义换行符
-                 .replace("\t", "\\t"); // 转义制表符
+        return JsonStreamWriter.escape(text);
     }
     
     /**
@@ -453,6 +580,21 @@ public abstract class ApiBaseServlet extends HttpServlet {
         return value != null ? Boolean.parseBoolean(value) : defaultValue; // 如果参数值不为空则转换为布尔值，否则返回默认值
     }
     
+    /**
+     * 构建键集分页的响应元数据
+     * next为下一页的游标，客户端将其作为cursor参数原样传回即可获取下一页；最后一页时为null
+     * @param page 分页结果
+     * @return 元数据映射
+     */
+    protected Map<String, Object> buildPageMeta(KeysetPage<?> page) {
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("size", page.getSize()); // 每页大小（实际使用的值，超过上限的请求被限制为上限）
+        meta.put("count", page.getItems().size()); // 当前页记录数
+        meta.put("hasMore", page.hasNext()); // 是否有下一页
+        meta.put("next", page.hasNext() ? page.getNext().encode() : null); // 下一页的游标
+        return meta;
+    }
+    
     /**
      * 验证请求参数
      * 验证请求中是否包含所有必需的参数
@@ -501,4 +643,41 @@ public abstract class ApiBaseServlet extends HttpServlet {
         // 这里简化处理，实际项目中建议使用JSON库
         return params; // 返回空的参数映射
     }
+    
+    /**
+     * 异步处理的计时监听器
+     * 响应完成时记录从请求开始到完成的处理时间，超时和错误时记录处理异常
+     */
+    private static final class TimingListener implements AsyncListener {
+        // API端点
+        private final String endpoint;
+        // HTTP方法
+        private final String method;
+        // 请求开始时间（纳秒）
+        private final long start;
+        
+        private TimingListener(String endpoint, String method, long start) {
+            this.endpoint = endpoint;
+            this.method = method;
+            this.start = start;
+        }
+        
+        @Override
+        public void onComplete(AsyncEvent event) {
+            RequestMetrics.recordApi(endpoint, method, System.nanoTime() - start);
+        }
+        
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            RequestMetrics.recordApiError(endpoint);
+        }
+        
+        @Override
+        public void onError(AsyncEvent event) {
+            RequestMetrics.recordApiError(endpoint);
+        }
+        
+        @Override
+        public void onStartAsync(AsyncEvent event) {}
+    }
 }
\ No newline at end of file
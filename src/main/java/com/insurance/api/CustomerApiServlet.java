@@ -1,5 +1,7 @@
 package com.insurance.api;
 
+import com.insurance.dao.KeysetPage;
+import com.insurance.dao.PageCursor;
 import com.insurance.model.Customer;
 import com.insurance.service.CustomerService;
 import com.insurance.util.LogUtil;
@@ -122,39 +124,30 @@ public class CustomerApiServlet extends ApiBaseServlet {
         
         try {
             // 获取查询参数
-            int page = getIntParameter(request, "page", 1); // 页码，默认为1
+            String cursorParam = getParameter(request, "cursor", ""); // 上一页返回的游标，第一页为空
             int size = getIntParameter(request, "size", 20); // 每页大小，默认为20
-            String sortBy = getParameter(request, "sortBy", "id"); // 排序字段，默认为id
-            String sortOrder = getParameter(request, "sortOrder", "asc"); // 排序顺序，默认为升序
-            String status = getParameter(request, "status", ""); // 状态过滤条件
-            
-            // 调用服务层获取所有客户
-            List<Customer> customers = customerService.getAllCustomers();
-            
-            // 简单分页处理
-            int total = customers.size(); // 总记录数
-            int from = (page - 1) * size; // 起始索引
-            int to = Math.min(from + size, total); // 结束索引
-            
-            // 如果起始索引超出总记录数，则清空列表
-            if (from >= total) {
-                customers.clear();
-            } else {
-                // 截取当前页的数据
-                customers = customers.subList(from, to);
+            boolean includeTotal = getBooleanParameter(request, "includeTotal", false); // 是否返回总记录数
+            
+            // 解析分页游标
+            PageCursor cursor;
+            try {
+                cursor = PageCursor.decode(cursorParam);
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(response, ApiResponse.error("无效的分页游标"));
+                return;
             }
             
+            // 调用服务层获取当前页的客户（按创建时间降序）
+            KeysetPage<Customer> page = customerService.getCustomerPage(cursor, size);
+            
             // 构建响应元数据
-            Map<String, Object> meta = new HashMap<>();
-            meta.put("page", page); // 当前页码
-            meta.put("size", size); // 每页大小
-            meta.put("total", total); // 总记录数
-            meta.put("pages", (int) Math.ceil((double) total / size)); // 总页数
-            meta.put("sortBy", sortBy); // 排序字段
-            meta.put("sortOrder", sortOrder); // 排序顺序
+            Map<String, Object> meta = buildPageMeta(page);
+            if (includeTotal) {
+                meta.put("total", customerService.countCustomers()); // 总记录数（缓存值）
+            }
             
             // 发送成功响应
-            sendJsonResponse(response, ApiResponse.success(customers, meta));
+            sendJsonResponse(response, ApiResponse.success(page.getItems(), meta));
             
         } catch (Exception e) {
             // 记录获取客户列表失败日志
@@ -1,5 +1,7 @@
 package com.insurance.api;
 
+import com.insurance.dao.KeysetPage;
+import com.insurance.dao.PageCursor;
 import com.insurance.model.DocumentRequest;
 import com.insurance.service.DocumentRequestService;
 import com.insurance.util.LogUtil;
@@ -159,54 +161,35 @@ public class DocumentRequestApiServlet extends ApiBaseServlet {
         
         try {
             // 获取查询参数
-            int page = getIntParameter(request, "page", 1); // 页码，默认为1
+            String cursorParam = getParameter(request, "cursor", ""); // 上一页返回的游标，第一页为空
             int size = getIntParameter(request, "size", 20); // 每页大小，默认为20
             String status = getParameter(request, "status", ""); // 状态过滤条件
             String requestType = getParameter(request, "requestType", ""); // 请求类型过滤条件
-            String sortBy = getParameter(request, "sortBy", "id"); // 排序字段，默认为id
-            String sortOrder = getParameter(request, "sortOrder", "desc"); // 排序顺序，默认为降序
-            
-            // 调用服务层获取所有资料请求
-            List<DocumentRequest> requests = documentRequestService.getAllDocumentRequests();
-            
-            // 状态过滤
-            if (!status.isEmpty()) {
-                // 移除不匹配状态的资料请求
-                requests.removeIf(request -> !status.equals(request.getStatus()));
-            }
-            
-            // 请求类型过滤
-            if (!requestType.isEmpty()) {
-                // 移除不匹配请求类型的资料请求
-                requests.removeIf(request -> !requestType.equals(request.getRequestType()));
+            boolean includeTotal = getBooleanParameter(request, "includeTotal", false); // 是否返回总记录数
+            
+            // 解析分页游标
+            PageCursor cursor;
+            try {
+                cursor = PageCursor.decode(cursorParam);
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(response, ApiResponse.error("无效的分页游标"));
+                return;
             }
             
-            // 简单分页处理
-            int total = requests.size(); // 总记录数
-            int from = (page - 1) * size; // 起始索引
-            int to = Math.min(from + size, total); // 结束索引
-            
-            // 如果起始索引超出总记录数，则清空列表
-            if (from >= total) {
-                requests.clear();
-            } else {
-                // 截取当前页的数据
-                requests = requests.subList(from, to);
-            }
+            // 调用服务层获取当前页的资料请求（过滤在数据库中进行，按创建时间降序）
+            KeysetPage<DocumentRequest> page =
+                documentRequestService.getDocumentRequestPage(status, requestType, cursor, size);
             
             // 构建响应元数据
-            Map<String, Object> meta = new HashMap<>();
-            meta.put("page", page); // 当前页码
-            meta.put("size", size); // 每页大小
-            meta.put("total", total); // 总记录数
-            meta.put("pages", (int) Math.ceil((double) total / size)); // 总页数
+            Map<String, Object> meta = buildPageMeta(page);
             meta.put("status", status); // 状态过滤条件
             meta.put("requestType", requestType); // 请求类型过滤条件
-            meta.put("sortBy", sortBy); // 排序字段
-            meta.put("sortOrder", sortOrder); // 排序顺序
+            if (includeTotal) {
+                meta.put("total", documentRequestService.countDocumentRequests(status, requestType)); // 总记录数（缓存值）
+            }
             
             // 发送成功响应
-            sendJsonResponse(response, ApiResponse.success(requests, meta));
+            sendJsonResponse(response, ApiResponse.success(page.getItems(), meta));
             
         } catch (Exception e) {
             // 记录获取资料请求列表失败日志
@@ -1,14 +1,27 @@
 package com.insurance.api;
 
+import com.insurance.dao.KeysetPage;
+import com.insurance.dao.PageCursor;
 import com.insurance.model.PremiumRate;
 import com.insurance.service.PremiumCalculatorService;
+import com.insurance.util.JsonStreamWriter;
 import com.insurance.util.LogUtil;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 保险料率计算API
@@ -18,6 +31,11 @@ import java.util.Map;
 @WebServlet("/api/premium/*")
 public class PremiumApiServlet extends ApiBaseServlet {
     
+    // 批量计算一次允许的最大报价数
+    private static final int MAX_BATCH_SIZE = 10000;
+    // 批量计算的时间预算（毫秒），超过后未完成的报价返回超时错误
+    private static final long BATCH_TIME_BUDGET_MS = 5000;
+    
     // 保险费计算服务对象，用于处理保险费计算和费率管理相关业务逻辑
     private PremiumCalculatorService premiumService;
     
@@ -153,49 +171,34 @@ public class PremiumApiServlet extends ApiBaseServlet {
         try {
             // 获取查询参数
             int productId = getIntParameter(request, "productId", 0); // 产品ID过滤条件
-            int page = getIntParameter(request, "page", 1); // 页码，默认为1
+            String cursorParam = getParameter(request, "cursor", ""); // 上一页返回的游标，第一页为空
             int size = getIntParameter(request, "size", 20); // 每页大小，默认为20
             String activeOnly = getParameter(request, "activeOnly", "false"); // 仅活跃料率过滤条件
-            
-            // 获取料率列表
-            List<PremiumRate> rates = premiumService.getPremiumRates();
-            
-            // 产品过滤
-            if (productId > 0) {
-                // 移除不匹配产品ID的料率
-                rates.removeIf(rate -> rate.getProductId() != productId);
-            }
-            
-            // 活跃料率过滤
-            if ("true".equals(activeOnly)) {
-                // 移除非活跃的料率
-                rates.removeIf(rate -> !rate.isActive());
+            boolean includeTotal = getBooleanParameter(request, "includeTotal", false); // 是否返回总记录数
+            
+            // 解析分页游标
+            PageCursor cursor;
+            try {
+                cursor = PageCursor.decode(cursorParam);
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(response, ApiResponse.error("无效的分页游标"));
+                return;
             }
             
-            // 分页处理
-            int total = rates.size(); // 总记录数
-            int from = (page - 1) * size; // 起始索引
-            int to = Math.min(from + size, total); // 结束索引
-            
-            // 如果起始索引超出总记录数，则清空列表
-            if (from >= total) {
-                rates.clear();
-            } else {
-                // 截取当前页的数据
-                rates = rates.subList(from, to);
-            }
+            // 获取当前页的料率（过滤在数据库中进行，活跃料率指当前日期在适用期间内的料率）
+            boolean validOnly = "true".equals(activeOnly);
+            KeysetPage<PremiumRate> page = premiumService.getPremiumRatePage(productId, validOnly, cursor, size);
             
             // 构建响应元数据
-            Map<String, Object> meta = new HashMap<>();
-            meta.put("page", page); // 当前页码
-            meta.put("size", size); // 每页大小
-            meta.put("total", total); // 总记录数
-            meta.put("pages", (int) Math.ceil((double) total / size)); // 总页数
+            Map<String, Object> meta = buildPageMeta(page);
             meta.put("productId", productId > 0 ? productId : "all"); // 产品ID过滤条件
             meta.put("activeOnly", activeOnly); // 仅活跃料率过滤条件
+            if (includeTotal) {
+                meta.put("total", premiumService.countPremiumRates(productId, validOnly)); // 总记录数（缓存值）
+            }
             
             // 发送成功响应
-            sendJsonResponse(response, ApiResponse.success(rates, meta));
+            sendJsonResponse(response, ApiResponse.success(page.getItems(), meta));
             
         } catch (Exception e) {
             // 记录获取料率列表失败日志
@@ -497,7 +500,10 @@ public class PremiumApiServlet extends ApiBaseServlet {
     
     /**
      * 批量计算保险费
-     * 批量计算多个保险费
+     * 请求体为报价条件的JSON数组（或包含quotes数组的JSON对象），每个元素包含
+     * productId、gender、entryAge（或age）、insurancePeriod、insuredAmount（或coverageAmount）。
+     * 报价在共享的Fork/Join线程池中并行计算，结果按输入顺序逐块写出，单个报价的错误只影响该报价。
+     * 报价数超过MAX_BATCH_SIZE时拒绝请求；超过BATCH_TIME_BUDGET_MS仍未完成的报价返回超时错误。
      * @param request HTTP请求对象
      * @param response HTTP响应对象
      * @throws ServletException Servlet异常
@@ -506,48 +512,127 @@ public class PremiumApiServlet extends ApiBaseServlet {
     private void batchCalculatePremium(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         
+        // 解析请求体（JSON格式）
+        JSONArray items;
         try {
-            // 获取请求体（JSON格式）
-            String requestBody = getRequestBody(request);
-            
-            // 这里简化处理，实际项目中应该解析JSON
-            // 暂时返回示例结果
-            List<Map<String, Object>> results = new java.util.ArrayList<>();
-            
-            // 添加示例计算结果
-            Map<String, Object> result1 = new HashMap<>();
-            result1.put("productId", 1); // 产品ID
-            result1.put("age", 30); // 年龄
-            result1.put("coverageAmount", 1000000.0); // 保险金额
-            result1.put("gender", "male"); // 性别
-            result1.put("paymentMethod", "annual"); // 缴费方式
-            result1.put("calculatedPremium", 12000.0); // 计算出的保险费
-            results.add(result1);
-            
-            Map<String, Object> result2 = new HashMap<>();
-            result2.put("productId", 2); // 产品ID
-            result2.put("age", 25); // 年龄
-            result2.put("coverageAmount", 2000000.0); // 保险金额
-            result2.put("gender", "female"); // 性别
-            result2.put("paymentMethod", "monthly"); // 缴费方式
-            result2.put("calculatedPremium", 2500.0); // 计算出的保险费
-            results.add(result2);
-            
-            // 构建响应元数据
-            Map<String, Object> meta = new HashMap<>();
-            meta.put("count", results.size()); // 结果数量
-            meta.put("processed", results.size()); // 处理数量
-            meta.put("errors", 0); // 错误数量
-            
-            // 发送成功响应
-            sendJsonResponse(response, ApiResponse.success(results, meta));
+            String requestBody = getRequestBody(request).trim();
+            items = requestBody.startsWith("{")
+                ? new JSONObject(requestBody).getJSONArray("quotes")
+                : new JSONArray(requestBody);
+        } catch (JSONException e) {
+            sendJsonResponse(response, ApiResponse.error("请求体必须是报价条件的JSON数组: " + e.getMessage()));
+            return;
+        }
+        
+        // 检查批量大小
+        if (items.length() == 0) {
+            sendJsonResponse(response, ApiResponse.error("报价条件不能为空"));
+            return;
+        }
+        if (items.length() > MAX_BATCH_SIZE) {
+            sendJsonResponse(response, ApiResponse.error("报价条件数超过上限: " + MAX_BATCH_SIZE));
+            return;
+        }
+        
+        // 转换报价条件，格式错误的报价记录为该报价的错误
+        List<PremiumCalculatorService.QuoteRequest> quotes = new ArrayList<>(items.length());
+        Map<Integer, String> inputErrors = new HashMap<>();
+        for (int i = 0; i < items.length(); i++) {
+            try {
+                JSONObject item = items.getJSONObject(i);
+                quotes.add(new PremiumCalculatorService.QuoteRequest(
+                    item.getInt("productId"),
+                    item.getString("gender"),
+                    item.has("entryAge") ? item.getInt("entryAge") : item.getInt("age"),
+                    item.getInt("insurancePeriod"),
+                    item.has("insuredAmount") ? item.getDouble("insuredAmount") : item.getDouble("coverageAmount")));
+            } catch (JSONException e) {
+                inputErrors.put(i, "报价条件格式错误: " + e.getMessage());
+                quotes.add(new PremiumCalculatorService.QuoteRequest(0, null, 0, 0, 0));
+            }
+        }
+        
+        // 提交并行计算
+        long deadline = System.currentTimeMillis() + BATCH_TIME_BUDGET_MS;
+        List<ForkJoinTask<List<Map<String, Object>>>> tasks = premiumService.submitQuotes(quotes);
+        
+        // 按输入顺序逐块写出结果
+        response.setStatus(ResponseStatus.OK);
+        JsonStreamWriter json = new JsonStreamWriter(response.getOutputStream());
+        json.beginObject();
+        json.name("status").value(ResponseStatus.OK);
+        json.name("message").value(ResponseMessage.SUCCESS);
+        json.name("data").beginArray();
+        
+        int index = 0;
+        int errors = 0;
+        int timedOut = 0;
+        for (ForkJoinTask<List<Map<String, Object>>> task : tasks) {
+            List<Map<String, Object>> chunkResults = null;
+            String chunkError = null;
+            boolean chunkTimedOut = false;
+            try {
+                long remaining = deadline - System.currentTimeMillis();
+                chunkResults = task.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                task.cancel(false);
+                chunkError = "计算超时";
+                chunkTimedOut = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                task.cancel(false);
+                chunkError = "计算被中断";
+            } catch (ExecutionException e) {
+                LogUtil.error("批量保险费计算失败", e.getCause());
+                chunkError = "保险费计算失败: " + e.getCause().getMessage();
+            }
             
-        } catch (Exception e) {
-            // 记录批量保险费计算失败日志
-            LogUtil.error("批量保险费计算失败", e);
-            // 发送错误响应
-            sendJsonResponse(response, ApiResponse.error("批量保险费计算失败: " + e.getMessage()));
+            int chunkSize = Math.min(PremiumCalculatorService.QUOTE_CHUNK_SIZE, quotes.size() - index);
+            for (int i = 0; i < chunkSize; i++, index++) {
+                Map<String, Object> calculation = chunkResults != null ? chunkResults.get(i) : null;
+                String error;
+                if (inputErrors.containsKey(index)) {
+                    error = inputErrors.get(index);
+                } else if (calculation == null) {
+                    error = chunkError;
+                    if (chunkTimedOut) {
+                        timedOut++;
+                    }
+                } else {
+                    error = (String) calculation.get("error");
+                }
+                
+                json.beginObject();
+                json.name("index").value(index);
+                if (error != null) {
+                    json.name("success").value(false);
+                    json.name("error").value(error);
+                    errors++;
+                } else {
+                    json.name("success").value(true);
+                    json.name("annualPremium").value(calculation.get("annualPremium"));
+                    json.name("monthlyPremium").value(calculation.get("monthlyPremium"));
+                    json.name("totalRate").value(calculation.get("totalRate"));
+                    json.name("baseRate").value(calculation.get("baseRate"));
+                    json.name("loadingRate").value(calculation.get("loadingRate"));
+                    json.name("insuredAmount").value(calculation.get("insuredAmount"));
+                }
+                json.endObject();
+            }
+            // 每写完一块刷新一次，使客户端尽早收到结果
+            json.flush();
         }
+        json.endArray();
+        
+        // 写出元数据
+        json.name("meta").beginObject();
+        json.name("count").value(quotes.size());
+        json.name("processed").value(quotes.size() - timedOut);
+        json.name("errors").value(errors);
+        json.name("timedOut").value(timedOut);
+        json.endObject();
+        json.endObject();
+        json.close();
     }
     
     /**
@@ -0,0 +1,91 @@
+package com.insurance.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * バッチジョブ定義クラス
+ * 名前付きステップを順番に実行するジョブ
+ * 批处理作业定义类，按注册顺序依次执行各个步骤
+ */
+public class BatchJob {
+
+    // 默认的可恢复期间：失败的执行在6小时内重新启动时从断点继续，超过后重新开始
+    private static final long DEFAULT_RESUME_WINDOW_MS = 6 * 60 * 60 * 1000L;
+
+    // 作业名（batch_job_executions.job_name）
+    private final String name;
+    // 作业显示名
+    private final String displayName;
+    // 按执行顺序排列的步骤
+    private final List<StepDefinition> steps = new ArrayList<>();
+    // 可恢复期间（毫秒）
+    private long resumeWindowMs = DEFAULT_RESUME_WINDOW_MS;
+
+    /**
+     * 创建批处理作业
+     * @param name 作业名
+     * @param displayName 作业显示名
+     */
+    public BatchJob(String name, String displayName) {
+        this.name = name;
+        this.displayName = displayName;
+    }
+
+    /**
+     * ステップを追加
+     * 添加步骤
+     * @param stepName 步骤名，同一作业内唯一
+     * @param step 步骤处理
+     * @return 当前作业（用于链式调用）
+     */
+    public BatchJob addStep(String stepName, BatchStep step) {
+        for (StepDefinition definition : steps) {
+            if (definition.getName().equals(stepName)) {
+                throw new IllegalArgumentException("ステップ名が重複しています: " + stepName);
+            }
+        }
+        steps.add(new StepDefinition(stepName, step));
+        return this;
+    }
+
+    /**
+     * 再開可能期間を設定
+     * 设置可恢复期间，失败的执行超过此期间后不再恢复而是重新开始
+     * @param resumeWindowMs 可恢复期间（毫秒）
+     * @return 当前作业（用于链式调用）
+     */
+    public BatchJob setResumeWindow(long resumeWindowMs) {
+        this.resumeWindowMs = resumeWindowMs;
+        return this;
+    }
+
+    // 获取作业名
+    public String getName() { return name; }
+    // 获取作业显示名
+    public String getDisplayName() { return displayName; }
+    // 获取按执行顺序排列的步骤
+    public List<StepDefinition> getSteps() { return Collections.unmodifiableList(steps); }
+    // 获取可恢复期间（毫秒）
+    public long getResumeWindowMs() { return resumeWindowMs; }
+
+    /**
+     * ステップ定義
+     * 步骤定义（步骤名和步骤处理）
+     */
+    public static class StepDefinition {
+        private final String name;
+        private final BatchStep step;
+
+        private StepDefinition(String name, BatchStep step) {
+            this.name = name;
+            this.step = step;
+        }
+
+        // 获取步骤名
+        public String getName() { return name; }
+        // 获取步骤处理
+        public BatchStep getStep() { return step; }
+    }
+}
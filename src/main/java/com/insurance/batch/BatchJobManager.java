@@ -0,0 +1,548 @@
+package com.insurance.batch;
+
+import com.insurance.util.LogUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * バッチジョブ管理クラス
+ * ジョブの登録・スケジュール・実行・再開を一元管理する
+ * 批处理作业管理类，统一负责作业的注册、定时、执行和断点恢复
+ *
+ * 定时器线程只负责触发，作业在按主机CPU数创建的共享工作线程池中执行。
+ * 作业和步骤的执行状态、断点、处理件数、耗时保存在batch_job_executions/batch_step_executions中，
+ * 失败或因应用停止而中断的作业在可恢复期间内再次启动时，跳过已完成的步骤并从断点继续。
+ *
+ * 多节点部署时各节点用batch.nodeId区分（默认为主机名，同一主机上运行多个实例时需要分别指定）。
+ * 执行中的作业定期更新心跳，其他节点只回收心跳超过租约时间（batch.leaseSeconds）的执行，
+ * 其他节点仍在执行的作业不会被标记为失败或重复执行。
+ * 配置从类路径上的/config/batch.properties读取，同名系统属性优先。
+ */
+public class BatchJobManager {
+
+    // 启动契机：定时执行
+    public static final String TRIGGER_SCHEDULED = "SCHEDULED";
+    // 启动契机：手动执行
+    public static final String TRIGGER_MANUAL = "MANUAL";
+    // 启动契机：应用启动时恢复中断的作业
+    public static final String TRIGGER_RESUME = "RESUME";
+
+    // 工作线程数：按主机CPU数，至少2个
+    private static final int WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // 停止时等待执行中作业结束的最长时间（秒）
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 60;
+    // 状态显示时每个作业显示的执行记录数
+    private static final int STATUS_HISTORY_SIZE = 5;
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/batch.properties";
+
+    // 批处理配置
+    private static final Properties config = new Properties();
+    // 本节点ID
+    private static final String NODE_ID;
+    // 租约时间（秒）
+    private static final int LEASE_SECONDS;
+    // 作业执行仓库
+    private static final JobRepository repository;
+    // 已注册的作业（按注册顺序）
+    private static final Map<String, BatchJob> jobs = new LinkedHashMap<>();
+    // 定时执行的作业的周期（毫秒），用于跳过其他节点在本周期已启动的执行
+    private static final Map<String, Long> schedulePeriods = new ConcurrentHashMap<>();
+    // 执行中或等待执行的作业名，同一作业不会同时执行两次
+    private static final Set<String> activeJobs = ConcurrentHashMap.newKeySet();
+    // 定时触发用的调度器（只负责把作业提交到工作线程池）
+    private static final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(threadFactory("batch-scheduler"));
+    // 共享工作线程池
+    private static final ThreadPoolExecutor workers = new ThreadPoolExecutor(
+        WORKER_THREADS, WORKER_THREADS, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), threadFactory("batch-worker"));
+    // 是否已请求停止
+    private static volatile boolean stopping = false;
+
+    // 静态代码块，加载配置
+    static {
+        loadConfig();
+        String nodeId = getConfig("batch.nodeId").trim();
+        NODE_ID = nodeId.isEmpty() ? localHostName() : nodeId;
+        LEASE_SECONDS = Math.max(Integer.parseInt(getConfig("batch.leaseSeconds").trim()), 3);
+        repository = new JobRepository(NODE_ID, LEASE_SECONDS);
+    }
+
+    private BatchJobManager() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 本节点ID（空时使用主机名）
+        config.setProperty("batch.nodeId", "");
+        // 租约时间（秒）：超过该时间没有心跳的执行视为执行节点已停止
+        config.setProperty("batch.leaseSeconds", "300");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = BatchJobManager.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load batch config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取主机名
+     * @return 主机名（无法取得时为"localhost"）
+     */
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * ジョブを登録
+     * 注册作业，同名作业会被替换
+     * @param job 批处理作业
+     */
+    public static void register(BatchJob job) {
+        synchronized (jobs) {
+            jobs.put(job.getName(), job);
+        }
+    }
+
+    /**
+     * ジョブを定期実行に登録
+     * 按固定周期触发作业
+     * @param jobName 作业名
+     * @param initialDelayMs 初始延迟（毫秒）
+     * @param periodMs 执行周期（毫秒）
+     */
+    public static void schedule(String jobName, long initialDelayMs, long periodMs) {
+        schedulePeriods.put(jobName, periodMs);
+        // 触发时的异常不会向调度器抛出，否则之后的周期执行会被取消
+        scheduler.scheduleAtFixedRate(() -> launch(jobName, TRIGGER_SCHEDULED),
+                                      initialDelayMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * ジョブ管理を開始
+     * 应用启动时调用：将本节点上次停止时仍在执行中的作业（以及租约已过期的其他节点的作业）
+     * 标记为中断，并在可恢复期间内恢复执行
+     */
+    public static void start() {
+        LogUtil.info("バッチジョブ管理を開始します - ワーカースレッド数: " + WORKER_THREADS +
+                     ", ノードID: " + NODE_ID);
+        // 租约时间内更新数次心跳，一次更新失败也不会过期
+        long heartbeatSeconds = Math.max(LEASE_SECONDS / 5, 1);
+        scheduler.scheduleWithFixedDelay(BatchJobManager::heartbeat, heartbeatSeconds, heartbeatSeconds,
+                                         TimeUnit.SECONDS);
+        try {
+            int interrupted = repository.markInterruptedExecutions();
+            if (interrupted > 0) {
+                LogUtil.warn("前回停止時に中断されたジョブ: " + interrupted + "件");
+            }
+            for (BatchJob job : registeredJobs()) {
+                JobRepository.JobExecution latest = repository.findLatestExecution(job.getName());
+                if (latest != null && isResumable(job, latest)) {
+                    LogUtil.info("中断されたジョブを再開します: " + job.getName() + " (実行ID: " + latest.getId() + ")");
+                    launch(job.getName(), TRIGGER_RESUME);
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.error("中断ジョブの確認中にエラーが発生しました", e);
+        }
+    }
+
+    /**
+     * ジョブを手動実行
+     * 手动执行作业（在工作线程池中异步执行）
+     * @param jobName 作业名
+     * @return 已提交执行时返回true，作业未注册或正在执行时返回false
+     */
+    public static boolean launch(String jobName) {
+        return launch(jobName, TRIGGER_MANUAL);
+    }
+
+    /**
+     * ジョブを実行キューに投入
+     * @param jobName 作业名
+     * @param triggerType 启动契机
+     * @return 已提交执行时返回true
+     */
+    static boolean launch(String jobName, String triggerType) {
+        BatchJob job;
+        synchronized (jobs) {
+            job = jobs.get(jobName);
+        }
+        if (job == null) {
+            LogUtil.warn("未登録のジョブです: " + jobName);
+            return false;
+        }
+        if (stopping) {
+            return false;
+        }
+        // 同一作业正在执行或等待执行时不重复提交
+        if (!activeJobs.add(jobName)) {
+            LogUtil.info("ジョブは実行中のためスキップします: " + jobName);
+            return false;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    runJob(job, triggerType);
+                } finally {
+                    activeJobs.remove(jobName);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(jobName);
+            LogUtil.warn("ジョブを投入できませんでした: " + jobName);
+            return false;
+        }
+    }
+
+    /**
+     * ジョブ管理を停止
+     * 停止定时触发，等待执行中的作业在块之间结束；超时后中断工作线程。
+     * 中断的作业保留断点，下次启动时恢复。
+     */
+    public static void shutdown() {
+        LogUtil.info("バッチジョブ管理を停止します...");
+        stopping = true;
+        scheduler.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * ジョブが実行中かどうか
+     * @param jobName 作业名
+     * @return 正在执行或等待执行时返回true
+     */
+    public static boolean isRunning(String jobName) {
+        return activeJobs.contains(jobName);
+    }
+
+    /**
+     * ジョブ状態を取得
+     * 获取已注册作业的执行状态，包括最近的执行记录和各步骤的件数、耗时、断点
+     * @return 作业状态列表
+     */
+    public static List<Map<String, Object>> getJobStatus() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (BatchJob job : registeredJobs()) {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("name", job.getName());
+            status.put("displayName", job.getDisplayName());
+            status.put("running", isRunning(job.getName()));
+
+            List<Map<String, Object>> executions = new ArrayList<>();
+            try {
+                for (JobRepository.JobExecution execution :
+                         repository.findRecentExecutions(job.getName(), STATUS_HISTORY_SIZE)) {
+                    executions.add(toMap(execution));
+                }
+            } catch (SQLException e) {
+                status.put("error", "実行履歴を取得できませんでした: " + e.getMessage());
+            }
+            status.put("executions", executions);
+            result.add(status);
+        }
+        return result;
+    }
+
+    // 获取工作线程数
+    public static int getWorkerThreads() { return WORKER_THREADS; }
+
+    // 获取本节点ID
+    public static String getNodeId() { return NODE_ID; }
+
+    // 是否已请求停止
+    static boolean isStopping() { return stopping; }
+
+    /**
+     * ジョブを実行
+     * 可恢复的失败执行存在时从断点继续，否则创建新的执行。
+     * 判断和创建在作业的起动锁内进行，多个节点同时触发时只有一个节点执行
+     * @param job 批处理作业
+     * @param triggerType 启动契机
+     */
+    private static void runJob(BatchJob job, String triggerType) {
+        long jobStart = System.currentTimeMillis();
+        long jobExecutionId;
+        Map<String, JobRepository.StepExecution> previousSteps;
+
+        try {
+            Long started = repository.startUnderLock(job.getName(), conn -> startExecution(conn, job, triggerType));
+            if (started == null) {
+                return;
+            }
+            jobExecutionId = started;
+            // 新的执行没有步骤记录，返回空映射
+            previousSteps = repository.findStepExecutions(jobExecutionId);
+        } catch (SQLException e) {
+            LogUtil.error("[" + job.getName() + "] ジョブ実行記録の作成に失敗しました", e);
+            return;
+        }
+
+        int stepOrder = 0;
+        for (BatchJob.StepDefinition definition : job.getSteps()) {
+            stepOrder++;
+            JobRepository.StepExecution previous = previousSteps.get(definition.getName());
+            if (previous != null && previous.isCompleted()) {
+                LogUtil.info("[" + job.getName() + "] 完了済みのステップをスキップします: " + definition.getName());
+                continue;
+            }
+            if (!runStep(job, jobExecutionId, definition, stepOrder, previous)) {
+                return;
+            }
+        }
+
+        try {
+            repository.completeJobExecution(jobExecutionId);
+        } catch (SQLException e) {
+            LogUtil.error("[" + job.getName() + "] ジョブ完了の記録に失敗しました", e);
+            return;
+        }
+        LogUtil.info("[" + job.getName() + "] ジョブが正常に完了しました - 処理時間: " +
+                     (System.currentTimeMillis() - jobStart) + "ms");
+    }
+
+    /**
+     * ステップを実行
+     * @param job 批处理作业
+     * @param jobExecutionId 作业执行ID
+     * @param definition 步骤定义
+     * @param stepOrder 执行顺序
+     * @param previous 上次的步骤执行（首次执行时为null）
+     * @return 步骤成功时返回true
+     */
+    private static boolean runStep(BatchJob job, long jobExecutionId, BatchJob.StepDefinition definition,
+                                   int stepOrder, JobRepository.StepExecution previous) {
+        String label = "[" + job.getName() + "/" + definition.getName() + "] ";
+        long stepExecutionId;
+        StepContext context;
+
+        try {
+            if (previous != null) {
+                stepExecutionId = previous.getId();
+                repository.resumeStepExecution(stepExecutionId);
+                context = new StepContext(repository, stepExecutionId, previous.getCheckpoint());
+                LogUtil.info(label + "ステップを再開します - チェックポイント: " + previous.getCheckpoint() +
+                             ", 処理済み: " + previous.getRowCount() + "件");
+            } else {
+                stepExecutionId = repository.createStepExecution(jobExecutionId, definition.getName(), stepOrder);
+                context = new StepContext(repository, stepExecutionId, null);
+            }
+        } catch (SQLException e) {
+            LogUtil.error(label + "ステップ実行記録の作成に失敗しました", e);
+            failJob(job, jobExecutionId, e);
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            definition.getStep().execute(context);
+            long elapsedMs = (System.nanoTime() - start) / 1000000L;
+            repository.finishStepExecution(stepExecutionId, "COMPLETED", context.getPendingRows(), elapsedMs, null);
+            LogUtil.info(label + "ステップが完了しました - 件数: " + context.getRows() + "件, 処理時間: " + elapsedMs + "ms");
+            return true;
+        } catch (Exception e) {
+            long elapsedMs = (System.nanoTime() - start) / 1000000L;
+            LogUtil.error(label + "ステップでエラーが発生しました - チェックポイント: " + context.getLastCheckpoint(), e);
+            try {
+                repository.finishStepExecution(stepExecutionId, "FAILED", context.getPendingRows(), elapsedMs,
+                                               String.valueOf(e.getMessage()));
+            } catch (SQLException recordError) {
+                LogUtil.error(label + "ステップ失敗の記録に失敗しました", recordError);
+            }
+            failJob(job, jobExecutionId, e);
+            return false;
+        }
+    }
+
+    /**
+     * ジョブを失敗として記録
+     * @param job 批处理作业
+     * @param jobExecutionId 作业执行ID
+     * @param cause 失败原因
+     */
+    private static void failJob(BatchJob job, long jobExecutionId, Exception cause) {
+        try {
+            repository.failJobExecution(jobExecutionId, String.valueOf(cause.getMessage()));
+        } catch (SQLException e) {
+            LogUtil.error("[" + job.getName() + "] ジョブ失敗の記録に失敗しました", e);
+        }
+    }
+
+    /**
+     * ハートビートを更新
+     * 本节点执行中的作业的心跳时间更新为数据库的当前时刻
+     */
+    private static void heartbeat() {
+        try {
+            repository.heartbeat();
+        } catch (SQLException e) {
+            // 异常不向调度器抛出，否则之后的心跳会被取消
+            LogUtil.error("バッチジョブのハートビート更新に失敗しました", e);
+        }
+    }
+
+    /**
+     * ジョブ実行を開始
+     * 在起动锁的事务中判断：其他节点正在执行、或定时执行已在本周期由其他节点启动时跳过；
+     * 可恢复的失败执行存在时恢复，否则创建新的执行
+     * @param conn 数据库连接（起动锁的事务）
+     * @param job 批处理作业
+     * @param triggerType 启动契机
+     * @return 本节点执行的作业执行ID，跳过时返回null
+     * @throws SQLException SQL异常
+     */
+    private static Long startExecution(Connection conn, BatchJob job, String triggerType) throws SQLException {
+        JobRepository.JobExecution latest = repository.findLatestExecution(conn, job.getName());
+        if (latest != null && latest.isHeldByLiveNode()) {
+            // 其他节点正在执行（本节点的执行由activeJobs排除）
+            LogUtil.info("[" + job.getName() + "] 他のノードで実行中のためスキップします (実行ID: " +
+                         latest.getId() + ", ノードID: " + latest.getOwnerId() + ")");
+            return null;
+        }
+        Long periodMs = schedulePeriods.get(job.getName());
+        if (latest != null && TRIGGER_SCHEDULED.equals(triggerType) && periodMs != null
+                && "COMPLETED".equals(latest.getStatus())
+                && latest.getStartedSecondsAgo() * 1000 < periodMs / 2) {
+            // 各节点在同一时刻触发定时执行，其他节点已在本周期执行完成
+            LogUtil.info("[" + job.getName() + "] 今回の周期は他のノードで実行済みのためスキップします (実行ID: " +
+                         latest.getId() + ")");
+            return null;
+        }
+        if (latest != null && isResumable(job, latest)) {
+            // 从上次失败的执行继续
+            if (!repository.resumeJobExecution(conn, latest.getId())) {
+                LogUtil.info("[" + job.getName() + "] 他のノードが再開したためスキップします (実行ID: " +
+                             latest.getId() + ")");
+                return null;
+            }
+            LogUtil.info("[" + job.getName() + "] ジョブを再開します (実行ID: " + latest.getId() + ")");
+            return latest.getId();
+        }
+        if (latest != null && latest.isIncomplete()) {
+            // 超过可恢复期间的失败执行不再恢复
+            repository.abandonJobExecution(conn, latest.getId());
+            LogUtil.warn("[" + job.getName() + "] 再開可能期間を過ぎた実行を放棄しました (実行ID: " +
+                         latest.getId() + ")");
+        }
+        long jobExecutionId = repository.createJobExecution(conn, job.getName(), triggerType);
+        LogUtil.info("[" + job.getName() + "] ジョブを開始します (実行ID: " + jobExecutionId + ")");
+        return jobExecutionId;
+    }
+
+    /**
+     * 再開可能かどうか
+     * 未完成的执行在可恢复期间内开始时可以恢复
+     * @param job 批处理作业
+     * @param execution 最新的作业执行
+     * @return 可恢复时返回true
+     */
+    private static boolean isResumable(BatchJob job, JobRepository.JobExecution execution) {
+        if (!execution.isIncomplete() || execution.getStartTime() == null) {
+            return false;
+        }
+        return System.currentTimeMillis() - execution.getStartTime().getTime() <= job.getResumeWindowMs();
+    }
+
+    /**
+     * 登録済みジョブの一覧を取得
+     * @return 作业列表（按注册顺序）
+     */
+    private static List<BatchJob> registeredJobs() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /**
+     * ジョブ実行を表示用Mapに変換
+     * @param execution 作业执行
+     * @return 作业执行信息
+     */
+    private static Map<String, Object> toMap(JobRepository.JobExecution execution) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", execution.getId());
+        map.put("status", execution.getStatus());
+        map.put("triggerType", execution.getTriggerType());
+        map.put("resumeCount", execution.getResumeCount());
+        map.put("startTime", execution.getStartTime());
+        map.put("endTime", execution.getEndTime());
+        map.put("errorMessage", execution.getErrorMessage());
+        map.put("nodeId", execution.getOwnerId());
+
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (JobRepository.StepExecution step : execution.getSteps().values()) {
+            Map<String, Object> stepMap = new LinkedHashMap<>();
+            stepMap.put("name", step.getStepName());
+            stepMap.put("status", step.getStatus());
+            stepMap.put("rowCount", step.getRowCount());
+            stepMap.put("chunkCount", step.getChunkCount());
+            stepMap.put("elapsedMs", step.getElapsedMs());
+            stepMap.put("checkpoint", step.getCheckpoint());
+            stepMap.put("errorMessage", step.getErrorMessage());
+            steps.add(stepMap);
+        }
+        map.put("steps", steps);
+        return map;
+    }
+
+    /**
+     * スレッドファクトリを作成
+     * 创建带名称的线程工厂，便于在线程转储中识别批处理线程
+     * @param prefix 线程名前缀
+     * @return 线程工厂
+     */
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,5 +1,14 @@
 package com.insurance.batch;
 
+import com.insurance.dao.SystemLogWriter;
+import com.insurance.integration.BulkMessageDispatcher;
+import com.insurance.integration.HttpClientPool;
+import com.insurance.integration.IntegrationOutbox;
+import com.insurance.monitor.HealthProbes;
+import com.insurance.security.TokenService;
+import com.insurance.service.CustomerSearchIndex;
+import com.insurance.util.DatabaseUtil;
+import com.insurance.util.LogUtil;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
@@ -18,18 +27,38 @@ public class BatchStarter implements ServletContextListener {
     public void contextInitialized(ServletContextEvent sce) {
         System.out.println("保険システムバッチ処理を開始します...");
         
+        // 認証設定を読み込む（トークン認証で共有鍵が未設定の場合は例外となり、アプリケーションを起動しない）
+        System.out.println("トークン認証: " + (TokenService.isTokenEnabled() ? "有効" : "無効"));
+        
+        // 顧客検索インデックスを構築（失敗した場合は一定間隔で再構築を試みる）
+        int indexedCustomers = CustomerSearchIndex.rebuild();
+        if (indexedCustomers >= 0) {
+            System.out.println("顧客検索インデックスを構築しました: " + indexedCustomers + "件");
+        }
+        // 他のサーバーでの顧客の変更を定期的にインデックスへ反映
+        CustomerSearchIndex.start();
+        
+        // ヘルスチェックを開始（データベースと外部システムを定期的に並行確認）
+        HealthProbes.start();
+        
+        // 外部システム連携のアウトボックス送信を開始
+        IntegrationOutbox.start();
+        
         try {
-            // 保険料更新バッチを開始
-            PremiumUpdateBatch.startBatchProcessing();
-            System.out.println("保険料更新バッチを開始しました");
+            // 保険料更新バッチを登録
+            PremiumUpdateBatch.registerJobs();
+            System.out.println("保険料更新バッチを登録しました");
             
-            // 契約ステータス更新バッチを開始
-            ContractStatusBatch.startBatchProcessing();
-            System.out.println("契約ステータス更新バッチを開始しました");
+            // 契約ステータス更新バッチを登録
+            ContractStatusBatch.registerJobs();
+            System.out.println("契約ステータス更新バッチを登録しました");
             
-            // レポート生成バッチを開始
-            ReportGenerationBatch.startBatchProcessing();
-            System.out.println("レポート生成バッチを開始しました");
+            // レポート生成バッチを登録
+            ReportGenerationBatch.registerJobs();
+            System.out.println("レポート生成バッチを登録しました");
+            
+            // ジョブ管理を開始（前回中断されたジョブはチェックポイントから再開）
+            BatchJobManager.start();
             
             System.out.println("すべてのバッチ処理が正常に開始されました");
             
@@ -47,17 +76,8 @@ public class BatchStarter implements ServletContextListener {
         System.out.println("保険システムバッチ処理を停止します...");
         
         try {
-            // 保険料更新バッチを停止
-            PremiumUpdateBatch.stopBatchProcessing();
-            System.out.println("保険料更新バッチを停止しました");
-            
-            // 契約ステータス更新バッチを停止
-            ContractStatusBatch.stopBatchProcessing();
-            System.out.println("契約ステータス更新バッチを停止しました");
-            
-            // レポート生成バッチを停止
-            ReportGenerationBatch.stopBatchProcessing();
-            System.out.println("レポート生成バッチを停止しました");
+            // 実行中のジョブはチャンクの区切りで停止し、チェックポイントを残す
+            BatchJobManager.shutdown();
             
             System.out.println("すべてのバッチ処理が正常に停止されました");
             
@@ -65,5 +85,34 @@ public class BatchStarter implements ServletContextListener {
             System.err.println("バッチ処理停止中にエラーが発生しました: " + e.getMessage());
             e.printStackTrace();
         }
+        
+        // トークン失効リストの定期更新を停止
+        TokenService.shutdown();
+        
+        // 顧客検索インデックスの差分更新を停止
+        CustomerSearchIndex.shutdown();
+        
+        // ヘルスチェックを停止
+        HealthProbes.shutdown();
+        
+        // 一括送信を停止（未送信の宛先は失敗として記録される）
+        BulkMessageDispatcher.shutdown();
+        
+        // アウトボックスの送信を停止（送信中のメッセージは再起動後に再送される）
+        IntegrationOutbox.shutdown();
+        
+        // 外部システム呼び出しの完了を待ってHTTP接続プールを閉じる
+        HttpClientPool.shutdown();
+        
+        // 未書き込みの監査ログをデータベースへ書き出す（書き出せない分はファイルへ退避）
+        SystemLogWriter.shutdown();
+        System.out.println("監査ログを書き出しました");
+        
+        // バッチ停止後にデータベース接続プールを閉じる
+        DatabaseUtil.shutdown();
+        System.out.println("データベース接続プールを閉じました");
+        
+        // 最後にアプリケーションログを書き出してログファイルを閉じる
+        LogUtil.shutdown();
     }
 }
\ No newline at end of file
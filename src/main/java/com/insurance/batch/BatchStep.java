@@ -0,0 +1,22 @@
+package com.insurance.batch;
+
+/**
+ * バッチステップインターフェース
+ * ジョブを構成する1つの処理単位
+ * 批处理步骤接口，作业由按顺序执行的多个步骤组成
+ *
+ * 处理件数通过StepContext.addRows()报告。
+ * 按块处理大量数据的步骤在每块提交前调用StepContext.checkpoint()记录位置，
+ * 中断后重新执行时从StepContext.getCheckpoint()返回的位置继续。
+ */
+@FunctionalInterface
+public interface BatchStep {
+
+    /**
+     * ステップを実行
+     * 执行步骤
+     * @param context 步骤执行上下文
+     * @throws Exception 步骤执行失败时抛出，作业在此步骤停止
+     */
+    void execute(StepContext context) throws Exception;
+}
@@ -5,10 +5,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Date;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * 契約ステータス更新バッチ処理クラス
@@ -17,123 +13,76 @@ import java.util.concurrent.TimeUnit;
  */
 public class ContractStatusBatch {
     
-    // 创建一个单线程的调度执行器服务，用于执行定时任务
-    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    // 契約ステータス更新ジョブ名
+    // 合同状态更新作业名
+    public static final String CONTRACT_STATUS_JOB = "contractStatusUpdate";
+    // 支払いステータスチェックジョブ名
+    // 付款状态检查作业名
+    public static final String PAYMENT_STATUS_JOB = "paymentStatusCheck";
     
     /**
-     * バッチ処理を開始
-     * 启动批处理作业
+     * ジョブを登録
+     * 向BatchJobManager注册作业和执行计划
      */
-    public static void startBatchProcessing() {
-        // 输出启动批处理的日志信息
-        System.out.println("契約ステータス更新バッチ処理を開始します...");
+    public static void registerJobs() {
+        // 输出注册批处理的日志信息
+        System.out.println("契約ステータス更新バッチ処理を登録します...");
         
-        // 毎日深夜3時に実行
-        // 每天凌晨3点执行合同状态更新任务
-        scheduler.scheduleAtFixedRate(
-            ContractStatusBatch::executeStatusUpdate, // 要执行的任务方法
-            getInitialDelay(3), // 3时 // 初始延迟时间，到凌晨3点的时间差
-            24 * 60 * 60 * 1000, // 24時間 // 24小时周期（毫秒）
-            TimeUnit.MILLISECONDS // 时间单位为毫秒
-        );
+        // 契約ステータス更新ジョブ
+        // 合同状态更新作业：审查期限取消 → 付款期限失效 → 满期完成
+        BatchJobManager.register(new BatchJob(CONTRACT_STATUS_JOB, "契約ステータス更新")
+            .addStep("cancelExpiredContracts", context -> {
+                // 審査期限切れの契約を取消
+                // 取消审查期限已过的合同
+                int expiredCount = cancelExpiredContracts();
+                System.out.println("取消した審査期限切れ契約: " + expiredCount + "件");
+                context.addRows(expiredCount);
+            })
+            .addStep("lapseOverdueContracts", context -> {
+                // 支払い期限切れの契約を失効
+                // 使付款期限已过的合同失效
+                int lapsedCount = lapseOverdueContracts();
+                System.out.println("失効した支払い期限切れ契約: " + lapsedCount + "件");
+                context.addRows(lapsedCount);
+            })
+            .addStep("completeMaturedContracts", context -> {
+                // 満期契約を完了
+                // 完成到期的合同
+                int maturedCount = completeMaturedContracts();
+                System.out.println("完了した満期契約: " + maturedCount + "件");
+                context.addRows(maturedCount);
+            }));
         
-        // 毎時30分に支払いチェック
-        // 每小时30分执行付款状态检查任务
-        scheduler.scheduleAtFixedRate(
-            ContractStatusBatch::checkPaymentStatus, // 要执行的任务方法
-            getMinuteInitialDelay(30), // 初始延迟时间，到下一个30分的时间差
-            60 * 60 * 1000, // 1時間 // 1小时周期（毫秒）
-            TimeUnit.MILLISECONDS // 时间单位为毫秒
-        );
-    }
-    
-    /**
-     * バッチ処理を停止
-     * 停止批处理作业
-     */
-    public static void stopBatchProcessing() {
-        // 输出停止批处理的日志信息
-        System.out.println("契約ステータス更新バッチ処理を停止します...");
-        // 关闭调度器
-        scheduler.shutdown();
-        try {
-            // 等待最多60秒让已提交的任务执行完毕
-            if (!scheduler.awaitTermination(60, TimeUnit.SECONDS)) {
-                // 如果超时则强制关闭所有任务
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            // 如果等待过程中被中断，则强制关闭所有任务
-            scheduler.shutdownNow();
-            // 恢复中断状态
-            Thread.currentThread().interrupt();
-        }
-    }
-    
-    /**
-     * 契約ステータス更新バッチ実行
-     * 执行合同状态更新批处理
-     */
-    private static void executeStatusUpdate() {
-        // 输出执行批处理的日志信息，包含当前时间
-        System.out.println("[" + new Date() + "] 契約ステータス更新バッチを実行します");
+        // 支払いステータスチェックジョブ（毎回最初から実行するため再開しない）
+        // 付款状态检查作业（每次都从头执行，不恢复）
+        BatchJobManager.register(new BatchJob(PAYMENT_STATUS_JOB, "支払いステータスチェック")
+            .setResumeWindow(0)
+            .addStep("checkOverduePayments", context -> {
+                // 支払い遅延の契約をチェック
+                // 检查付款延迟的合同
+                int overdueCount = checkOverduePayments();
+                if (overdueCount > 0) {
+                    System.out.println("支払い遅延契約: " + overdueCount + "件");
+                }
+                context.addRows(overdueCount);
+            })
+            .addStep("checkPaymentReminders", context -> {
+                // 支払い催促が必要な契約をチェック
+                // 检查需要付款催促的合同
+                int reminderCount = checkPaymentReminders();
+                if (reminderCount > 0) {
+                    System.out.println("支払い催促必要契約: " + reminderCount + "件");
+                }
+                context.addRows(reminderCount);
+            }));
         
-        try {
-            // 審査期限切れの契約を取消
-            // 取消审查期限已过的合同
-            int expiredCount = cancelExpiredContracts();
-            System.out.println("取消した審査期限切れ契約: " + expiredCount + "件");
-            
-            // 支払い期限切れの契約を失効
-            // 使付款期限已过的合同失效
-            int lapsedCount = lapseOverdueContracts();
-            System.out.println("失効した支払い期限切れ契約: " + lapsedCount + "件");
-            
-            // 満期契約を完了
-            // 完成到期的合同
-            int maturedCount = completeMaturedContracts();
-            System.out.println("完了した満期契約: " + maturedCount + "件");
-            
-            // 输出批处理成功完成的日志信息
-            System.out.println("[" + new Date() + "] 契約ステータス更新バッチが正常に完了しました");
-            
-        } catch (Exception e) {
-            // 输出批处理执行过程中发生错误的日志信息
-            System.err.println("[" + new Date() + "] バッチ処理中にエラーが発生しました: " + e.getMessage());
-            // 打印异常堆栈跟踪
-            e.printStackTrace();
-        }
-    }
-    
-    /**
-     * 支払いステータスチェック
-     * 检查付款状态
-     */
-    private static void checkPaymentStatus() {
-        // 输出执行付款状态检查的日志信息，包含当前时间
-        System.out.println("[" + new Date() + "] 支払いステータスチェックを実行します");
+        // 毎日深夜3時に実行
+        // 每天凌晨3点执行合同状态更新作业
+        BatchJobManager.schedule(CONTRACT_STATUS_JOB, getInitialDelay(3), 24 * 60 * 60 * 1000);
         
-        try {
-            // 支払い遅延の契約をチェック
-            // 检查付款延迟的合同
-            int overdueCount = checkOverduePayments();
-            if (overdueCount > 0) {
-                System.out.println("支払い遅延契約: " + overdueCount + "件");
-            }
-            
-            // 支払い催促が必要な契約をチェック
-            // 检查需要付款催促的合同
-            int reminderCount = checkPaymentReminders();
-            if (reminderCount > 0) {
-                System.out.println("支払い催促必要契約: " + reminderCount + "件");
-            }
-            
-        } catch (Exception e) {
-            // 输出付款检查过程中发生错误的日志信息
-            System.err.println("[" + new Date() + "] 支払いチェック中にエラーが発生しました: " + e.getMessage());
-            // 打印异常堆栈跟踪
-            e.printStackTrace();
-        }
+        // 毎時30分に支払いチェック
+        // 每小时30分执行付款状态检查作业
+        BatchJobManager.schedule(PAYMENT_STATUS_JOB, getMinuteInitialDelay(30), 60 * 60 * 1000);
     }
     
     /**
@@ -352,14 +301,16 @@ public class ContractStatusBatch {
     
     /**
      * 手動でバッチ実行
-     * 手动执行批处理
+     * 手动执行批处理（在共享工作线程池中异步执行）
+     * @return 至少有一个作业被提交执行时返回true
      */
-    public static void manualExecute() {
+    public static boolean manualExecute() {
         // 输出手动执行批处理的日志信息
         System.out.println("手動で契約ステータス更新バッチを実行します...");
-        // 执行合同状态更新
-        executeStatusUpdate();
-        // 执行付款状态检查
-        checkPaymentStatus();
+        // 执行合同状态更新作业
+        boolean statusLaunched = BatchJobManager.launch(CONTRACT_STATUS_JOB);
+        // 执行付款状态检查作业
+        boolean paymentLaunched = BatchJobManager.launch(PAYMENT_STATUS_JOB);
+        return statusLaunched || paymentLaunched;
     }
 }
\ No newline at end of file
@@ -0,0 +1,595 @@
+package com.insurance.batch;
+
+import com.insurance.util.DatabaseUtil;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ジョブ実行リポジトリ
+ * batch_job_executions / batch_step_executions へのアクセスを提供
+ * 作业执行仓库，负责作业执行和步骤执行（含断点）的持久化
+ *
+ * 执行中的作业记录执行节点（owner_id）和心跳时间（heartbeat_at），心跳由执行节点定期更新。
+ * 多节点部署时只回收本节点的执行或心跳超过租约时间的执行，不会把其他节点正在执行的作业标记为失败。
+ * 心跳时间和租约判断都使用数据库的时刻，不受各服务器时钟偏差影响。
+ *
+ * 启动作业时锁定batch_job_locks中该作业的行，在同一事务中判断并创建或恢复执行。
+ * 多个节点同时触发同一作业时依次判断，后判断的节点能看到先启动的执行并跳过。
+ */
+class JobRepository {
+
+    // 错误信息的最大保存长度
+    private static final int MAX_ERROR_LENGTH = 2000;
+    // 查询作业执行（lease_expired：心跳超过租约时间或没有心跳）
+    private static final String SELECT_EXECUTION =
+        "SELECT *, (heartbeat_at IS NULL OR heartbeat_at < DATE_SUB(NOW(3), INTERVAL ? SECOND)) AS lease_expired, " +
+        "TIMESTAMPDIFF(SECOND, start_time, NOW()) AS started_seconds_ago FROM batch_job_executions ";
+    // 可以回收的执行中作业（本节点的，或租约已过期的）
+    private static final String RECLAIMABLE =
+        "(owner_id = ? OR heartbeat_at IS NULL OR heartbeat_at < DATE_SUB(NOW(3), INTERVAL ? SECOND))";
+
+    // 本节点ID
+    private final String nodeId;
+    // 租约时间（秒）：超过该时间没有心跳的执行视为节点已停止
+    private final int leaseSeconds;
+
+    /**
+     * 构造函数
+     * @param nodeId 本节点ID（重启后也相同）
+     * @param leaseSeconds 租约时间（秒）
+     */
+    JobRepository(String nodeId, int leaseSeconds) {
+        this.nodeId = nodeId;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    /**
+     * ジョブ起動ロックを取得して起動処理を実行
+     * 锁定作业的锁行后在同一事务中执行起动处理，提交时释放锁。
+     * 锁行不存在时先以自动提交登记，避免锁定不存在的行时的间隙锁互相等待
+     * @param jobName 作业名
+     * @param action 起动处理（使用传入的连接判断并创建或恢复执行）
+     * @return 起动处理的结果
+     * @throws SQLException SQL异常
+     */
+    Long startUnderLock(String jobName, StartAction action) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT IGNORE INTO batch_job_locks (job_name) VALUES (?)")) {
+            pstmt.setString(1, jobName);
+            pstmt.executeUpdate();
+        }
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                         "SELECT job_name FROM batch_job_locks WHERE job_name = ? FOR UPDATE")) {
+                    pstmt.setString(1, jobName);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("ジョブ起動ロックを取得できませんでした: " + jobName);
+                        }
+                    }
+                }
+                Long result = action.start(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * 最新のジョブ実行を取得
+     * 获取指定作业的最新一次执行
+     * @param jobName 作业名
+     * @return 最新的作业执行，从未执行过时返回null
+     * @throws SQLException SQL异常
+     */
+    JobExecution findLatestExecution(String jobName) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            return findLatestExecution(conn, jobName);
+        }
+    }
+
+    /**
+     * 最新のジョブ実行を取得（指定した接続で）
+     * @param conn 数据库连接（起动锁的事务）
+     * @param jobName 作业名
+     * @return 最新的作业执行，从未执行过时返回null
+     * @throws SQLException SQL异常
+     */
+    JobExecution findLatestExecution(Connection conn, String jobName) throws SQLException {
+        String sql = SELECT_EXECUTION + "WHERE job_name = ? ORDER BY id DESC LIMIT 1";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, leaseSeconds);
+            pstmt.setString(2, jobName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapJobExecution(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * ジョブ実行を作成
+     * 创建新的作业执行（状态为RUNNING，执行节点为本节点）
+     * @param conn 数据库连接（起动锁的事务）
+     * @param jobName 作业名
+     * @param triggerType 启动契机（SCHEDULED/MANUAL/RESUME）
+     * @return 作业执行ID
+     * @throws SQLException SQL异常
+     */
+    long createJobExecution(Connection conn, String jobName, String triggerType) throws SQLException {
+        String sql = "INSERT INTO batch_job_executions (job_name, status, trigger_type, start_time, owner_id, heartbeat_at) " +
+                   "VALUES (?, 'RUNNING', ?, CURRENT_TIMESTAMP, ?, NOW(3))";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setString(1, jobName);
+            pstmt.setString(2, triggerType);
+            pstmt.setString(3, nodeId);
+            pstmt.executeUpdate();
+
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getLong(1);
+                }
+            }
+            throw new SQLException("ジョブ実行IDを取得できませんでした: " + jobName);
+        }
+    }
+
+    /**
+     * ジョブ実行を再開状態に更新
+     * 将失败或租约已过期的作业执行恢复为本节点执行的RUNNING，并增加恢复次数。
+     * 以状态和租约为条件更新，多个节点同时恢复时只有一个节点成功
+     * @param conn 数据库连接（起动锁的事务）
+     * @param jobExecutionId 作业执行ID
+     * @return 本节点取得执行时返回true，其他节点已恢复或仍在执行时返回false
+     * @throws SQLException SQL异常
+     */
+    boolean resumeJobExecution(Connection conn, long jobExecutionId) throws SQLException {
+        String sql = "UPDATE batch_job_executions SET status = 'RUNNING', resume_count = resume_count + 1, " +
+                   "end_time = NULL, error_message = NULL, owner_id = ?, heartbeat_at = NOW(3) " +
+                   "WHERE id = ? AND (status = 'FAILED' OR (status = 'RUNNING' AND " + RECLAIMABLE + "))";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, nodeId);
+            pstmt.setLong(2, jobExecutionId);
+            pstmt.setString(3, nodeId);
+            pstmt.setInt(4, leaseSeconds);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * ハートビートを更新
+     * 更新本节点执行中的全部作业的心跳时间
+     * @return 更新的作业执行数
+     * @throws SQLException SQL异常
+     */
+    int heartbeat() throws SQLException {
+        String sql = "UPDATE batch_job_executions SET heartbeat_at = NOW(3) WHERE owner_id = ? AND status = 'RUNNING'";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, nodeId);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * ジョブ実行を完了
+     * 将作业执行标记为完成
+     * @param jobExecutionId 作业执行ID
+     * @throws SQLException SQL异常
+     */
+    void completeJobExecution(long jobExecutionId) throws SQLException {
+        executeUpdate("UPDATE batch_job_executions SET status = 'COMPLETED', end_time = CURRENT_TIMESTAMP " +
+                      "WHERE id = ?", jobExecutionId);
+    }
+
+    /**
+     * ジョブ実行を失敗に更新
+     * 将作业执行标记为失败，保留步骤断点供恢复使用
+     * @param jobExecutionId 作业执行ID
+     * @param errorMessage 错误信息
+     * @throws SQLException SQL异常
+     */
+    void failJobExecution(long jobExecutionId, String errorMessage) throws SQLException {
+        String sql = "UPDATE batch_job_executions SET status = 'FAILED', end_time = CURRENT_TIMESTAMP, " +
+                   "error_message = ? WHERE id = ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, truncate(errorMessage));
+            pstmt.setLong(2, jobExecutionId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * ジョブ実行を放棄
+     * 将超过可恢复期间的失败执行标记为放弃，之后不再恢复
+     * @param conn 数据库连接（起动锁的事务）
+     * @param jobExecutionId 作业执行ID
+     * @throws SQLException SQL异常
+     */
+    void abandonJobExecution(Connection conn, long jobExecutionId) throws SQLException {
+        String sql = "UPDATE batch_job_executions SET status = 'ABANDONED', " +
+                   "end_time = COALESCE(end_time, CURRENT_TIMESTAMP) WHERE id = ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, jobExecutionId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 中断された実行を失敗に更新
+     * 应用启动时调用：本节点上次停止时仍为RUNNING的执行已经中断，标记为失败以便恢复。
+     * 其他节点的执行只在心跳超过租约时间（节点已停止）时标记，正在执行的不受影响
+     * @return 被标记为失败的作业执行数
+     * @throws SQLException SQL异常
+     */
+    int markInterruptedExecutions() throws SQLException {
+        String stepSql = "UPDATE batch_step_executions SET status = 'FAILED', end_time = CURRENT_TIMESTAMP, " +
+                       "error_message = 'アプリケーション停止により中断されました' " +
+                       "WHERE status = 'RUNNING' AND job_execution_id IN (" +
+                       "SELECT id FROM batch_job_executions WHERE status = 'RUNNING' AND " + RECLAIMABLE + ")";
+        String jobSql = "UPDATE batch_job_executions SET status = 'FAILED', end_time = CURRENT_TIMESTAMP, " +
+                      "error_message = 'アプリケーション停止により中断されました' " +
+                      "WHERE status = 'RUNNING' AND " + RECLAIMABLE;
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stepStmt = conn.prepareStatement(stepSql);
+                 PreparedStatement jobStmt = conn.prepareStatement(jobSql)) {
+
+                stepStmt.setString(1, nodeId);
+                stepStmt.setInt(2, leaseSeconds);
+                stepStmt.executeUpdate();
+                jobStmt.setString(1, nodeId);
+                jobStmt.setInt(2, leaseSeconds);
+                int interrupted = jobStmt.executeUpdate();
+                conn.commit();
+                return interrupted;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * ステップ実行一覧を取得
+     * 获取作业执行的全部步骤执行，键为步骤名
+     * @param jobExecutionId 作业执行ID
+     * @return 步骤名到步骤执行的映射（按执行顺序）
+     * @throws SQLException SQL异常
+     */
+    Map<String, StepExecution> findStepExecutions(long jobExecutionId) throws SQLException {
+        String sql = "SELECT * FROM batch_step_executions WHERE job_execution_id = ? ORDER BY step_order";
+        Map<String, StepExecution> steps = new LinkedHashMap<>();
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, jobExecutionId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    StepExecution step = mapStepExecution(rs);
+                    steps.put(step.getStepName(), step);
+                }
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * ステップ実行を作成
+     * 创建步骤执行（状态为RUNNING）
+     * @param jobExecutionId 作业执行ID
+     * @param stepName 步骤名
+     * @param stepOrder 执行顺序
+     * @return 步骤执行ID
+     * @throws SQLException SQL异常
+     */
+    long createStepExecution(long jobExecutionId, String stepName, int stepOrder) throws SQLException {
+        String sql = "INSERT INTO batch_step_executions (job_execution_id, step_name, step_order, status, start_time) " +
+                   "VALUES (?, ?, ?, 'RUNNING', CURRENT_TIMESTAMP)";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setLong(1, jobExecutionId);
+            pstmt.setString(2, stepName);
+            pstmt.setInt(3, stepOrder);
+            pstmt.executeUpdate();
+
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getLong(1);
+                }
+            }
+            throw new SQLException("ステップ実行IDを取得できませんでした: " + stepName);
+        }
+    }
+
+    /**
+     * ステップ実行を再開状態に更新
+     * 将失败的步骤执行恢复为RUNNING，保留断点和已记录的件数
+     * @param stepExecutionId 步骤执行ID
+     * @throws SQLException SQL异常
+     */
+    void resumeStepExecution(long stepExecutionId) throws SQLException {
+        executeUpdate("UPDATE batch_step_executions SET status = 'RUNNING', end_time = NULL, " +
+                      "error_message = NULL WHERE id = ?", stepExecutionId);
+    }
+
+    /**
+     * チェックポイントを保存
+     * 在步骤的事务中记录断点，与业务数据一起提交或回滚
+     * @param conn 步骤使用的数据库连接
+     * @param stepExecutionId 步骤执行ID
+     * @param checkpoint 断点
+     * @param rows 自上次记录以来的处理件数
+     * @throws SQLException SQL异常
+     */
+    void saveCheckpoint(Connection conn, long stepExecutionId, String checkpoint, long rows) throws SQLException {
+        String sql = "UPDATE batch_step_executions SET checkpoint = ?, row_count = row_count + ?, " +
+                   "chunk_count = chunk_count + 1 WHERE id = ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, checkpoint);
+            pstmt.setLong(2, rows);
+            pstmt.setLong(3, stepExecutionId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * ステップ実行を終了
+     * 记录步骤的结束状态、剩余处理件数和本次耗时（耗时在恢复时累加）
+     * @param stepExecutionId 步骤执行ID
+     * @param status 结束状态（COMPLETED/FAILED）
+     * @param rows 尚未记录的处理件数
+     * @param elapsedMs 本次执行耗时（毫秒）
+     * @param errorMessage 错误信息，成功时为null
+     * @throws SQLException SQL异常
+     */
+    void finishStepExecution(long stepExecutionId, String status, long rows, long elapsedMs, String errorMessage)
+            throws SQLException {
+        String sql = "UPDATE batch_step_executions SET status = ?, row_count = row_count + ?, " +
+                   "elapsed_ms = elapsed_ms + ?, end_time = CURRENT_TIMESTAMP, error_message = ? WHERE id = ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, status);
+            pstmt.setLong(2, rows);
+            pstmt.setLong(3, elapsedMs);
+            pstmt.setString(4, truncate(errorMessage));
+            pstmt.setLong(5, stepExecutionId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 最近のジョブ実行を取得
+     * 获取各作业最近的执行记录（含步骤），用于状态显示
+     * @param jobName 作业名
+     * @param limit 最大件数
+     * @return 作业执行列表（新的在前）
+     * @throws SQLException SQL异常
+     */
+    List<JobExecution> findRecentExecutions(String jobName, int limit) throws SQLException {
+        String sql = SELECT_EXECUTION + "WHERE job_name = ? ORDER BY id DESC LIMIT ?";
+        List<JobExecution> executions = new ArrayList<>();
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, leaseSeconds);
+            pstmt.setString(2, jobName);
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    executions.add(mapJobExecution(rs));
+                }
+            }
+        }
+        for (JobExecution execution : executions) {
+            execution.steps = findStepExecutions(execution.getId());
+        }
+        return executions;
+    }
+
+    /**
+     * IDを指定して更新を実行
+     * 执行只有一个ID参数的更新语句
+     * @param sql 更新SQL
+     * @param id ID
+     * @throws SQLException SQL异常
+     */
+    private void executeUpdate(String sql, long id) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, id);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * ResultSetからJobExecutionを作成
+     * @param rs 结果集
+     * @return 作业执行
+     * @throws SQLException SQL异常
+     */
+    private JobExecution mapJobExecution(ResultSet rs) throws SQLException {
+        JobExecution execution = new JobExecution();
+        execution.id = rs.getLong("id");
+        execution.jobName = rs.getString("job_name");
+        execution.status = rs.getString("status");
+        execution.triggerType = rs.getString("trigger_type");
+        execution.resumeCount = rs.getInt("resume_count");
+        execution.startTime = rs.getTimestamp("start_time");
+        execution.endTime = rs.getTimestamp("end_time");
+        execution.errorMessage = rs.getString("error_message");
+        execution.ownerId = rs.getString("owner_id");
+        execution.leaseExpired = rs.getBoolean("lease_expired");
+        execution.startedSecondsAgo = rs.getLong("started_seconds_ago");
+        return execution;
+    }
+
+    /**
+     * ResultSetからStepExecutionを作成
+     * @param rs 结果集
+     * @return 步骤执行
+     * @throws SQLException SQL异常
+     */
+    private StepExecution mapStepExecution(ResultSet rs) throws SQLException {
+        StepExecution step = new StepExecution();
+        step.id = rs.getLong("id");
+        step.stepName = rs.getString("step_name");
+        step.status = rs.getString("status");
+        step.checkpoint = rs.getString("checkpoint");
+        step.rowCount = rs.getLong("row_count");
+        step.chunkCount = rs.getInt("chunk_count");
+        step.elapsedMs = rs.getLong("elapsed_ms");
+        step.startTime = rs.getTimestamp("start_time");
+        step.endTime = rs.getTimestamp("end_time");
+        step.errorMessage = rs.getString("error_message");
+        return step;
+    }
+
+    /**
+     * エラーメッセージを切り詰め
+     * @param message 错误信息
+     * @return 截断后的错误信息
+     */
+    private static String truncate(String message) {
+        if (message == null || message.length() <= MAX_ERROR_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    /**
+     * ジョブ実行
+     * 作业执行记录（batch_job_executions的一行）
+     */
+    static class JobExecution {
+        private long id;
+        private String jobName;
+        private String status;
+        private String triggerType;
+        private int resumeCount;
+        private Timestamp startTime;
+        private Timestamp endTime;
+        private String errorMessage;
+        private String ownerId;
+        private boolean leaseExpired;
+        private long startedSecondsAgo;
+        private Map<String, StepExecution> steps;
+
+        long getId() { return id; }
+        String getJobName() { return jobName; }
+        String getStatus() { return status; }
+        String getTriggerType() { return triggerType; }
+        int getResumeCount() { return resumeCount; }
+        Timestamp getStartTime() { return startTime; }
+        Timestamp getEndTime() { return endTime; }
+        String getErrorMessage() { return errorMessage; }
+        String getOwnerId() { return ownerId; }
+        long getStartedSecondsAgo() { return startedSecondsAgo; }
+        Map<String, StepExecution> getSteps() { return steps; }
+
+        /**
+         * 実行ノードが稼働中かどうか
+         * 状态为RUNNING且心跳在租约时间内时返回true（执行节点仍在运行，不能恢复）
+         * @return 执行节点仍在执行时返回true
+         */
+        boolean isHeldByLiveNode() {
+            return "RUNNING".equals(status) && !leaseExpired;
+        }
+
+        /**
+         * 未完了の実行かどうか
+         * @return 状态为FAILED或RUNNING时返回true
+         */
+        boolean isIncomplete() {
+            return "FAILED".equals(status) || "RUNNING".equals(status);
+        }
+    }
+
+    /**
+     * ジョブ起動処理
+     * 在起动锁的事务中判断并创建或恢复作业执行
+     */
+    interface StartAction {
+        /**
+         * 起動処理を実行
+         * @param conn 数据库连接（起动锁的事务，处理后提交）
+         * @return 本节点执行的作业执行ID，不执行时返回null
+         * @throws SQLException SQL异常
+         */
+        Long start(Connection conn) throws SQLException;
+    }
+
+    /**
+     * ステップ実行
+     * 步骤执行记录（batch_step_executions的一行）
+     */
+    static class StepExecution {
+        private long id;
+        private String stepName;
+        private String status;
+        private String checkpoint;
+        private long rowCount;
+        private int chunkCount;
+        private long elapsedMs;
+        private Timestamp startTime;
+        private Timestamp endTime;
+        private String errorMessage;
+
+        long getId() { return id; }
+        String getStepName() { return stepName; }
+        String getStatus() { return status; }
+        String getCheckpoint() { return checkpoint; }
+        long getRowCount() { return rowCount; }
+        int getChunkCount() { return chunkCount; }
+        long getElapsedMs() { return elapsedMs; }
+        Timestamp getStartTime() { return startTime; }
+        Timestamp getEndTime() { return endTime; }
+        String getErrorMessage() { return errorMessage; }
+
+        /**
+         * 完了済みかどうか
+         * @return 状态为COMPLETED时返回true
+         */
+        boolean isCompleted() {
+            return "COMPLETED".equals(status);
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package com.insurance.batch;
 
 import com.insurance.dao.PremiumRateDAO;
+import com.insurance.model.PremiumRate;
+import com.insurance.service.PremiumRateCache;
+import com.insurance.service.PremiumRateTable;
 import com.insurance.util.DatabaseUtil;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Date;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * 保険料更新バッチ処理クラス
@@ -18,125 +21,85 @@ import java.util.concurrent.TimeUnit;
  */
 public class PremiumUpdateBatch {
     
-    // 创建一个单线程的调度执行器服务，用于执行定时任务
-    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    // 保険料更新ジョブ名
+    // 保险费更新作业名
+    public static final String PREMIUM_UPDATE_JOB = "premiumUpdate";
+    // リクエストステータスチェックジョブ名
+    // 请求状态检查作业名
+    public static final String REQUEST_STATUS_JOB = "requestStatusCheck";
     // 创建保险费率DAO实例，用于访问保险费率数据
     private static PremiumRateDAO premiumRateDAO = new PremiumRateDAO();
+    // 保険料再計算の1チャンクあたりの契約数
+    // 保险费重新计算时每块处理的合同数
+    private static final int CONTRACT_CHUNK_SIZE = 1000;
     
     /**
-     * バッチ処理を開始
-     * 启动批处理作业
+     * ジョブを登録
+     * 向BatchJobManager注册作业和执行计划
      */
-    public static void startBatchProcessing() {
-        // 输出启动批处理的日志信息
-        System.out.println("保険料更新バッチ処理を開始します...");
+    public static void registerJobs() {
+        // 输出注册批处理的日志信息
+        System.out.println("保険料更新バッチ処理を登録します...");
         
-        // 毎日深夜2時に実行
-        // 每天凌晨2点执行保险费更新任务
-        scheduler.scheduleAtFixedRate(
-            PremiumUpdateBatch::executePremiumUpdate, // 要执行的任务方法
-            getInitialDelay(), // 初始延迟时间，到凌晨2点的时间差
-            24 * 60 * 60 * 1000, // 24時間 // 24小时周期（毫秒）
-            TimeUnit.MILLISECONDS // 时间单位为毫秒
-        );
+        // 保険料更新ジョブ：料率の無効化・有効化 → 料率テーブル再構築 → 契約の保険料再計算
+        // 保险费更新作业：费率失效/激活 → 重建料率表 → 重新计算合同保险费（按块记录断点）
+        BatchJobManager.register(new BatchJob(PREMIUM_UPDATE_JOB, "保険料更新")
+            .addStep("disableExpiredRates", context -> {
+                // 有効期限切れの料率を無効化
+                // 使过期的费率失效
+                int expiredCount = disableExpiredRates();
+                System.out.println("無効化した料率: " + expiredCount + "件");
+                context.addRows(expiredCount);
+            })
+            .addStep("activateNewRates", context -> {
+                // 新しい料率を有効化
+                // 激活新的费率
+                int activatedCount = activateNewRates();
+                System.out.println("有効化した料率: " + activatedCount + "件");
+                context.addRows(activatedCount);
+            })
+            .addStep("reloadRateTable", context -> {
+                // 料率テーブルのスナップショットを再構築
+                // 重建内存料率表快照，使保险料计算使用最新料率
+                context.addRows(PremiumRateCache.reload().getRateCount());
+            })
+            .addStep("updateContractPremiums", context -> {
+                // 契約の保険料再計算
+                // 重新计算合同的保险费
+                int updatedCount = updateContractPremiums(context);
+                System.out.println("更新した契約: " + updatedCount + "件");
+            }));
         
-        // 毎時0分にステータスチェック
-        // 每小时0分执行状态检查任务
-        scheduler.scheduleAtFixedRate(
-            PremiumUpdateBatch::checkRequestStatus, // 要执行的任务方法
-            getHourlyInitialDelay(), // 初始延迟时间，到下一个整点的时间差
-            60 * 60 * 1000, // 1時間 // 1小时周期（毫秒）
-            TimeUnit.MILLISECONDS // 时间单位为毫秒
-        );
-    }
-    
-    /**
-     * バッチ処理を停止
-     * 停止批处理作业
-     */
-    public static void stopBatchProcessing() {
-        // 输出停止批处理的日志信息
-        System.out.println("保険料更新バッチ処理を停止します...");
-        // 关闭调度器
-        scheduler.shutdown();
-        try {
-            // 等待最多60秒让已提交的任务执行完毕
-            if (!scheduler.awaitTermination(60, TimeUnit.SECONDS)) {
-                // 如果超时则强制关闭所有任务
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            // 如果等待过程中被中断，则强制关闭所有任务
-            scheduler.shutdownNow();
-            // 恢复中断状态
-            Thread.currentThread().interrupt();
-        }
-    }
-    
-    /**
-     * 保険料更新バッチ実行
-     * 执行保险费更新批处理
-     */
-    private static void executePremiumUpdate() {
-        // 输出执行批处理的日志信息，包含当前时间
-        System.out.println("[" + new Date() + "] 保険料更新バッチを実行します");
+        // リクエストステータスチェックジョブ（毎回最初から実行するため再開しない）
+        // 请求状态检查作业（每次都从头执行，不恢复）
+        BatchJobManager.register(new BatchJob(REQUEST_STATUS_JOB, "リクエストステータスチェック")
+            .setResumeWindow(0)
+            .addStep("checkStaleRequests", context -> {
+                // 長時間処理中のリクエストをチェック
+                // 检查长时间处理中的请求
+                int staleCount = checkStaleRequests();
+                if (staleCount > 0) {
+                    System.out.println("長時間処理中のリクエスト: " + staleCount + "件");
+                }
+                context.addRows(staleCount);
+            })
+            .addStep("checkOverdueFollowups", context -> {
+                // フォローアップ日が過ぎたリクエストをチェック
+                // 检查跟进日期已过的请求
+                int overdueCount = checkOverdueFollowups();
+                if (overdueCount > 0) {
+                    System.out.println("フォローアップ期限切れリクエスト: " + overdueCount + "件");
+                }
+                context.addRows(overdueCount);
+            }));
         
-        try {
-            // 有効期限切れの料率を無効化
-            // 使过期的费率失效
-            int expiredCount = disableExpiredRates();
-            System.out.println("無効化した料率: " + expiredCount + "件");
-            
-            // 新しい料率を有効化
-            // 激活新的费率
-            int activatedCount = activateNewRates();
-            System.out.println("有効化した料率: " + activatedCount + "件");
-            
-            // 契約の保険料再計算
-            // 重新计算合同的保险费
-            int updatedCount = updateContractPremiums();
-            System.out.println("更新した契約: " + updatedCount + "件");
-            
-            // 输出批处理成功完成的日志信息
-            System.out.println("[" + new Date() + "] 保険料更新バッチが正常に完了しました");
-            
-        } catch (Exception e) {
-            // 输出批处理执行过程中发生错误的日志信息
-            System.err.println("[" + new Date() + "] バッチ処理中にエラーが発生しました: " + e.getMessage());
-            // 打印异常堆栈跟踪
-            e.printStackTrace();
-        }
-    }
-    
-    /**
-     * リクエストステータスチェック
-     * 检查请求状态
-     */
-    private static void checkRequestStatus() {
-        // 输出执行状态检查的日志信息，包含当前时间
-        System.out.println("[" + new Date() + "] リクエストステータスチェックを実行します");
+        // 毎日深夜2時に実行
+        // 每天凌晨2点执行保险费更新作业
+        BatchJobManager.schedule(PREMIUM_UPDATE_JOB, getInitialDelay(), 24 * 60 * 60 * 1000);
         
-        try {
-            // 長時間処理中のリクエストをチェック
-            // 检查长时间处理中的请求
-            int staleCount = checkStaleRequests();
-            if (staleCount > 0) {
-                System.out.println("長時間処理中のリクエスト: " + staleCount + "件");
-            }
-            
-            // フォローアップ日が過ぎたリクエストをチェック
-            // 检查跟进日期已过的请求
-            int overdueCount = checkOverdueFollowups();
-            if (overdueCount > 0) {
-                System.out.println("フォローアップ期限切れリクエスト: " + overdueCount + "件");
-            }
-            
-        } catch (Exception e) {
-            // 输出状态检查过程中发生错误的日志信息
-            System.err.println("[" + new Date() + "] ステータスチェック中にエラーが発生しました: " + e.getMessage());
-            // 打印异常堆栈跟踪
-            e.printStackTrace();
-        }
+        // 毎時0分にステータスチェック
+        // 每小时0分执行状态检查作业
+        BatchJobManager.schedule(REQUEST_STATUS_JOB, getHourlyInitialDelay(), 60 * 60 * 1000);
     }
     
     /**
@@ -183,53 +146,133 @@ public class PremiumUpdateBatch {
     /**
      * 契約の保険料を再計算
      * 重新计算合同的保险费
+     * 合同按ID键集分页逐块读取，使用内存料率表计算保险费，
+     * 只有保险费发生变化的合同才以JDBC批量更新写回，每块一个事务。
+     * 每块的最后合同ID作为断点与更新在同一事务中提交，中断后从断点的下一个合同继续
+     * @param context 步骤执行上下文
      * @return 更新的合同数量
      * @throws SQLException SQL异常
+     * @throws InterruptedException 应用停止时在块之间中断
      */
-    private static int updateContractPremiums() throws SQLException {
-        // 定义查询SQL语句，获取需要重新计算保险费的合同信息
-        String sql = "SELECT c.id, c.product_id, c.insured_amount, " +
-                   "ip.gender, ip.entry_age, ip.insurance_period " +
+    private static int updateContractPremiums(StepContext context) throws SQLException, InterruptedException {
+        // 定义查询SQL语句，按合同ID键集分页获取需要重新计算保险费的合同信息
+        // 加入年龄按契約開始日（未設定时为申込日、当天）时点的被保险人年龄计算
+        String selectSql = "SELECT c.id, c.product_id, c.insured_amount, c.insurance_period, " +
+                   "c.monthly_premium, c.annual_premium, ip.gender, " +
+                   "TIMESTAMPDIFF(YEAR, ip.birth_date, " +
+                   "COALESCE(c.contract_start_date, c.application_date, CURDATE())) AS entry_age " +
                    "FROM contracts c " +
                    "JOIN insured_persons ip ON c.id = ip.contract_id " +
                    "WHERE ip.relationship = '本人' " +
-                   "AND c.contract_status IN ('承認', '審査中')";
+                   "AND c.contract_status IN ('承認', '審査中') " +
+                   "AND c.id > ? " +
+                   "ORDER BY c.id " +
+                   "LIMIT ?";
+        // 定义更新SQL语句，更新合同的月保险费和年保险费
+        String updateSql = "UPDATE contracts SET monthly_premium = ?, annual_premium = ?, " +
+                   "updated_at = CURRENT_TIMESTAMP WHERE id = ?";
         
-        // 初始化更新合同计数器
+        // 本次计算使用的料率表快照
+        PremiumRateTable rateTable = PremiumRateCache.getTable();
+        
+        // 初始化计数器
+        int scannedCount = 0;
         int updatedCount = 0;
+        int unchangedCount = 0;
+        int failedCount = 0;
+        // 从上次提交的断点继续（首次执行时从头开始）
+        int lastId = (int) context.getCheckpointAsLong(0);
+        long start = System.currentTimeMillis();
         
-        // 使用try-with-resources自动关闭数据库连接、预编译语句和结果集
+        // 使用一个连接处理所有分块
         try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql);
-             ResultSet rs = pstmt.executeQuery()) {
+             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
+             PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
             
-            // 遍历查询结果
-            while (rs.next()) {
-                // 获取合同ID
-                int contractId = rs.getInt("id");
-                // 获取产品ID
-                int productId = rs.getInt("product_id");
-                // 获取保险金额
-                double insuredAmount = rs.getDouble("insured_amount");
-                // 获取性别
-                String gender = rs.getString("gender");
-                // 获取加入年龄
-                int entryAge = rs.getInt("entry_age");
-                // 获取保险期间
-                int insurancePeriod = rs.getInt("insurance_period");
-                
-                // 新しい保険料を計算
-                // 计算新的保险费
-                double newPremium = calculateNewPremium(productId, gender, entryAge, insurancePeriod, insuredAmount);
-                
-                // 如果计算出的保险费大于0，则更新合同
-                if (newPremium > 0) {
-                    // 契約を更新
-                    // 更新合同
-                    if (updateContractPremium(contractId, newPremium)) {
-                        updatedCount++;
+            conn.setAutoCommit(false);
+            try {
+                while (true) {
+                    // 读取下一块合同
+                    selectStmt.setInt(1, lastId);
+                    selectStmt.setInt(2, CONTRACT_CHUNK_SIZE);
+                    
+                    int chunkRows = 0;
+                    int chunkUpdates = 0;
+                    try (ResultSet rs = selectStmt.executeQuery()) {
+                        while (rs.next()) {
+                            chunkRows++;
+                            lastId = rs.getInt("id");
+                            
+                            // 新しい保険料を計算
+                            // 使用内存料率表计算新的保险费
+                            PremiumRate rate = rateTable.getRate(rs.getInt("product_id"), rs.getString("gender"),
+                                                                 rs.getInt("entry_age"), rs.getInt("insurance_period"));
+                            if (rate == null) {
+                                failedCount++;
+                                continue;
+                            }
+                            // 与calculate_premium过程相同：月保险费由舍入前的年保险费计算
+                            double basePremium = rs.getDouble("insured_amount") * rate.getTotalRate();
+                            BigDecimal annualPremium = roundPremium(basePremium);
+                            BigDecimal monthlyPremium = roundPremium(basePremium / 12);
+                            
+                            // 保险费没有变化的合同不更新
+                            BigDecimal currentMonthly = rs.getBigDecimal("monthly_premium");
+                            BigDecimal currentAnnual = rs.getBigDecimal("annual_premium");
+                            if (currentMonthly != null && monthlyPremium.compareTo(currentMonthly) == 0
+                                    && currentAnnual != null && annualPremium.compareTo(currentAnnual) == 0) {
+                                unchangedCount++;
+                                continue;
+                            }
+                            
+                            // 契約を更新（バッチに追加）
+                            // 将合同更新加入批处理
+                            updateStmt.setBigDecimal(1, monthlyPremium); // 月保险费
+                            updateStmt.setBigDecimal(2, annualPremium); // 年保险费
+                            updateStmt.setInt(3, lastId); // 合同ID
+                            updateStmt.addBatch();
+                            chunkUpdates++;
+                        }
+                    }
+                    
+                    if (chunkRows == 0) {
+                        break;
+                    }
+                    
+                    // 批量写回并提交本块的事务
+                    if (chunkUpdates > 0) {
+                        for (int count : updateStmt.executeBatch()) {
+                            if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                                updatedCount++;
+                            }
+                        }
+                    }
+                    // 记录断点后提交本块的事务
+                    context.checkpoint(conn, String.valueOf(lastId), chunkRows);
+                    conn.commit();
+                    scannedCount += chunkRows;
+                    
+                    // 输出进度和吞吐量
+                    long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+                    System.out.println("保険料再計算 進捗: " + scannedCount + "件処理 (更新: " + updatedCount +
+                                     "件, 変更なし: " + unchangedCount + "件, 料率なし: " + failedCount +
+                                     "件), 最終契約ID: " + lastId + ", " + (scannedCount * 1000L / elapsed) + "件/秒");
+                    
+                    if (chunkRows < CONTRACT_CHUNK_SIZE) {
+                        break;
+                    }
+                    
+                    // 应用停止时在块之间结束，下次启动时从断点继续
+                    if (context.isStopRequested()) {
+                        throw new InterruptedException("停止要求により中断しました (最終契約ID: " + lastId + ")");
                     }
                 }
+            } catch (SQLException e) {
+                // 当前块回滚，已提交的块保持不变
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         }
         
@@ -238,78 +281,13 @@ public class PremiumUpdateBatch {
     }
     
     /**
-     * 新しい保険料を計算
-     * 计算新的保险费
-     * @param productId 产品ID
-     * @param gender 性别
-     * @param entryAge 加入年龄
-     * @param insurancePeriod 保险期间
-     * @param insuredAmount 保险金额
-     * @return 计算出的保险费
+     * 保険料を丸める
+     * 将保险费四舍五入到小数点后两位（与contracts表的DECIMAL(10,2)一致）
+     * @param amount 保险费
+     * @return 四舍五入后的保险费
      */
-    private static double calculateNewPremium(int productId, String gender, int entryAge, 
-                                            int insurancePeriod, double insuredAmount) {
-        try {
-            // ストアドプロシージャを使用して計算
-            // 使用存储过程进行计算
-            String sql = "CALL calculate_premium(?, ?, ?, ?, ?, ?, ?)";
-            
-            // 使用try-with-resources自动关闭数据库连接和预编译语句
-            try (Connection conn = DatabaseUtil.getConnection();
-                 PreparedStatement pstmt = conn.prepareCall(sql)) {
-                
-                // 设置存储过程参数
-                pstmt.setInt(1, productId); // 产品ID
-                pstmt.setString(2, gender); // 性别
-                pstmt.setInt(3, entryAge); // 加入年龄
-                pstmt.setInt(4, insurancePeriod); // 保险期间
-                pstmt.setDouble(5, insuredAmount); // 保险金额
-                pstmt.registerOutParameter(6, java.sql.Types.DECIMAL); // 注册输出参数6（月保险费）
-                pstmt.registerOutParameter(7, java.sql.Types.DECIMAL); // 注册输出参数7（年保险费）
-                
-                // 执行存储过程
-                pstmt.execute();
-                
-                // 返回月保险费
-                return pstmt.getDouble(6); // 月々保険料
-            }
-        } catch (SQLException e) {
-            // 输出保险费计算错误的日志信息
-            System.err.println("保険料計算エラー: " + e.getMessage());
-            // 返回-1表示计算失败
-            return -1;
-        }
-    }
-    
-    /**
-     * 契約保険料を更新
-     * 更新合同保险费
-     * @param contractId 合同ID
-     * @param newPremium 新保险费
-     * @return 更新是否成功
-     */
-    private static boolean updateContractPremium(int contractId, double newPremium) {
-        // 定义更新SQL语句，更新合同的月保险费和年保险费
-        String sql = "UPDATE contracts SET monthly_premium = ?, annual_premium = ?, " +
-                   "updated_at = CURRENT_TIMESTAMP WHERE id = ?";
-        
-        // 使用try-with-resources自动关闭数据库连接和预编译语句
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            // 设置更新参数
-            pstmt.setDouble(1, newPremium); // 月保险费
-            pstmt.setDouble(2, newPremium * 12); // 年保险费
-            pstmt.setInt(3, contractId); // 合同ID
-            
-            // 执行更新操作并返回是否成功
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            // 输出合同更新错误的日志信息
-            System.err.println("契約更新エラー: " + e.getMessage());
-            // 返回false表示更新失败
-            return false;
-        }
+    private static BigDecimal roundPremium(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP);
     }
     
     /**
@@ -448,14 +426,16 @@ public class PremiumUpdateBatch {
     
     /**
      * 手動でバッチ実行
-     * 手动执行批处理
+     * 手动执行批处理（在共享工作线程池中异步执行）
+     * @return 至少有一个作业被提交执行时返回true
      */
-    public static void manualExecute() {
+    public static boolean manualExecute() {
         // 输出手动执行批处理的日志信息
         System.out.println("手動でバッチ処理を実行します...");
-        // 执行保险费更新
-        executePremiumUpdate();
-        // 执行请求状态检查
-        checkRequestStatus();
+        // 执行保险费更新作业
+        boolean premiumLaunched = BatchJobManager.launch(PREMIUM_UPDATE_JOB);
+        // 执行请求状态检查作业
+        boolean statusLaunched = BatchJobManager.launch(REQUEST_STATUS_JOB);
+        return premiumLaunched || statusLaunched;
     }
 }
\ No newline at end of file
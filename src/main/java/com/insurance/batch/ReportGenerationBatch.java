@@ -7,9 +7,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * レポート生成バッチ処理クラス
@@ -18,127 +15,72 @@ import java.util.concurrent.TimeUnit;
  */
 public class ReportGenerationBatch {
     
-    // 创建一个单线程的调度执行器服务，用于执行定时任务
-    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    // 週次レポート生成ジョブ名
+    // 周次报告生成作业名
+    public static final String WEEKLY_REPORT_JOB = "weeklyReport";
+    // 月次レポート生成ジョブ名
+    // 月度报告生成作业名
+    public static final String MONTHLY_REPORT_JOB = "monthlyReport";
     
     /**
-     * バッチ処理を開始
-     * 启动批处理作业
+     * ジョブを登録
+     * 向BatchJobManager注册作业和执行计划
      */
-    public static void startBatchProcessing() {
-        // 输出启动批处理的日志信息
-        System.out.println("レポート生成バッチ処理を開始します...");
+    public static void registerJobs() {
+        // 输出注册批处理的日志信息
+        System.out.println("レポート生成バッチ処理を登録します...");
         
-        // 毎週月曜日深夜4時に実行
-        // 每周周一凌晨4点执行报告生成任务
-        scheduler.scheduleAtFixedRate(
-            ReportGenerationBatch::executeReportGeneration, // 要执行的任务方法
-            getWeeklyInitialDelay(), // 初始延迟时间，到下一个周一凌晨4点的时间差
-            7 * 24 * 60 * 60 * 1000, // 1週間 // 1周周期（毫秒）
-            TimeUnit.MILLISECONDS // 时间单位为毫秒
-        );
+        // 週次レポート生成ジョブ（生成済みのレポートは再開時にスキップ）
+        // 周次报告生成作业（恢复时跳过已生成的报告）
+        BatchJobManager.register(new BatchJob(WEEKLY_REPORT_JOB, "週次レポート生成")
+            .addStep("contractStatsReport", context -> {
+                // 契約統計レポート
+                // 生成合同统计报告
+                generateContractStatsReport();
+                System.out.println("契約統計レポートを生成しました");
+            })
+            .addStep("requestStatsReport", context -> {
+                // 資料請求統計レポート
+                // 生成资料请求统计报告
+                generateRequestStatsReport();
+                System.out.println("資料請求統計レポートを生成しました");
+            })
+            .addStep("salesReport", context -> {
+                // 売上統計レポート
+                // 生成销售统计报告
+                generateSalesReport();
+                System.out.println("売上統計レポートを生成しました");
+            }));
         
-        // 毎月1日深夜5時に月次レポート
-        // 每月1日凌晨5点执行月度报告生成任务
-        scheduler.scheduleAtFixedRate(
-            ReportGenerationBatch::executeMonthlyReports, // 要执行的任务方法
-            getMonthlyInitialDelay(), // 初始延迟时间，到下个月1日凌晨5点的时间差
-            30 * 24 * 60 * 60 * 1000L, // 約1ヶ月 // 约1个月周期（毫秒）
-            TimeUnit.MILLISECONDS // 时间单位为毫秒
-        );
-    }
-    
-    /**
-     * バッチ処理を停止
-     * 停止批处理作业
-     */
-    public static void stopBatchProcessing() {
-        // 输出停止批处理的日志信息
-        System.out.println("レポート生成バッチ処理を停止します...");
-        // 关闭调度器
-        scheduler.shutdown();
-        try {
-            // 等待最多60秒让已提交的任务执行完毕
-            if (!scheduler.awaitTermination(60, TimeUnit.SECONDS)) {
-                // 如果超时则强制关闭所有任务
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            // 如果等待过程中被中断，则强制关闭所有任务
-            scheduler.shutdownNow();
-            // 恢复中断状态
-            Thread.currentThread().interrupt();
-        }
-    }
-    
-    /**
-     * レポート生成バッチ実行
-     * 执行报告生成批处理
-     */
-    private static void executeReportGeneration() {
-        // 输出执行批处理的日志信息，包含当前时间
-        System.out.println("[" + new Date() + "] 週次レポート生成バッチを実行します");
+        // 月次レポート生成ジョブ
+        // 月度报告生成作业
+        BatchJobManager.register(new BatchJob(MONTHLY_REPORT_JOB, "月次レポート生成")
+            .addStep("monthlyContractReport", context -> {
+                // 月次契約レポート
+                // 生成月度合同报告
+                generateMonthlyContractReport();
+                System.out.println("月次契約レポートを生成しました");
+            })
+            .addStep("monthlySalesReport", context -> {
+                // 月次売上レポート
+                // 生成月度销售报告
+                generateMonthlySalesReport();
+                System.out.println("月次売上レポートを生成しました");
+            })
+            .addStep("monthlyCustomerAnalysis", context -> {
+                // 月次顧客分析レポート
+                // 生成月度客户分析报告
+                generateMonthlyCustomerAnalysis();
+                System.out.println("月次顧客分析レポートを生成しました");
+            }));
         
-        try {
-            // 契約統計レポート
-            // 生成合同统计报告
-            generateContractStatsReport();
-            System.out.println("契約統計レポートを生成しました");
-            
-            // 資料請求統計レポート
-            // 生成资料请求统计报告
-            generateRequestStatsReport();
-            System.out.println("資料請求統計レポートを生成しました");
-            
-            // 売上統計レポート
-            // 生成销售统计报告
-            generateSalesReport();
-            System.out.println("売上統計レポートを生成しました");
-            
-            // 输出批处理成功完成的日志信息
-            System.out.println("[" + new Date() + "] 週次レポート生成バッチが正常に完了しました");
-            
-        } catch (Exception e) {
-            // 输出批处理执行过程中发生错误的日志信息
-            System.err.println("[" + new Date() + "] レポート生成中にエラーが発生しました: " + e.getMessage());
-            // 打印异常堆栈跟踪
-            e.printStackTrace();
-        }
-    }
-    
-    /**
-     * 月次レポート生成
-     * 生成月度报告
-     */
-    private static void executeMonthlyReports() {
-        // 输出执行月度报告生成的日志信息，包含当前时间
-        System.out.println("[" + new Date() + "] 月次レポート生成バッチを実行します");
+        // 毎週月曜日深夜4時に実行
+        // 每周周一凌晨4点执行周次报告生成作业
+        BatchJobManager.schedule(WEEKLY_REPORT_JOB, getWeeklyInitialDelay(), 7 * 24 * 60 * 60 * 1000);
         
-        try {
-            // 月次契約レポート
-            // 生成月度合同报告
-            generateMonthlyContractReport();
-            System.out.println("月次契約レポートを生成しました");
-            
-            // 月次売上レポート
-            // 生成月度销售报告
-            generateMonthlySalesReport();
-            System.out.println("月次売上レポートを生成しました");
-            
-            // 月次顧客分析レポート
-            // 生成月度客户分析报告
-            generateMonthlyCustomerAnalysis();
-            System.out.println("月次顧客分析レポートを生成しました");
-            
-            // 输出月度报告生成成功完成的日志信息
-            System.out.println("[" + new Date() + "] 月次レポート生成バッチが正常に完了しました");
-            
-        } catch (Exception e) {
-            // 输出月度报告生成过程中发生错误的日志信息
-            System.err.println("[" + new Date() + "] 月次レポート生成中にエラーが発生しました: " + e.getMessage());
-            // 打印异常堆栈跟踪
-            e.printStackTrace();
-        }
+        // 毎月1日深夜5時に月次レポート
+        // 每月1日凌晨5点执行月度报告生成作业（周期约1个月）
+        BatchJobManager.schedule(MONTHLY_REPORT_JOB, getMonthlyInitialDelay(), 30 * 24 * 60 * 60 * 1000L);
     }
     
     /**
@@ -512,14 +454,16 @@ public class ReportGenerationBatch {
     
     /**
      * 手動でバッチ実行
-     * 手动执行批处理
+     * 手动执行批处理（在共享工作线程池中异步执行）
+     * @return 至少有一个作业被提交执行时返回true
      */
-    public static void manualExecute() {
+    public static boolean manualExecute() {
         // 输出手动执行批处理的日志信息
         System.out.println("手動でレポート生成バッチを実行します...");
-        // 执行周次报告生成
-        executeReportGeneration();
-        // 执行月度报告生成
-        executeMonthlyReports();
+        // 执行周次报告生成作业
+        boolean weeklyLaunched = BatchJobManager.launch(WEEKLY_REPORT_JOB);
+        // 执行月度报告生成作业
+        boolean monthlyLaunched = BatchJobManager.launch(MONTHLY_REPORT_JOB);
+        return weeklyLaunched || monthlyLaunched;
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.insurance.batch;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * ステップ実行コンテキスト
+ * ステップに前回のチェックポイントを渡し、処理件数とチェックポイントを記録する
+ * 步骤执行上下文，向步骤提供上次的断点，并记录处理件数和断点
+ */
+public class StepContext {
+
+    // 作业执行仓库
+    private final JobRepository repository;
+    // 步骤执行ID（batch_step_executions.id）
+    private final long stepExecutionId;
+    // 本次执行的起始断点（首次执行时为null）
+    private final String startCheckpoint;
+    // 最后记录的断点
+    private volatile String checkpoint;
+    // 尚未写入batch_step_executions的处理件数
+    private long pendingRows;
+    // 本次执行的处理件数（含已写入的部分）
+    private long rows;
+
+    StepContext(JobRepository repository, long stepExecutionId, String checkpoint) {
+        this.repository = repository;
+        this.stepExecutionId = stepExecutionId;
+        this.startCheckpoint = checkpoint;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * 前回のチェックポイントを取得
+     * 获取中断前最后提交的断点
+     * @return 断点，首次执行时返回null
+     */
+    public String getCheckpoint() {
+        return startCheckpoint;
+    }
+
+    /**
+     * 前回のチェックポイントを数値で取得
+     * 以长整型获取断点（键集分页的最后ID等）
+     * @param defaultValue 没有断点时的默认值
+     * @return 断点值
+     */
+    public long getCheckpointAsLong(long defaultValue) {
+        return startCheckpoint != null ? Long.parseLong(startCheckpoint) : defaultValue;
+    }
+
+    /**
+     * 処理件数を加算
+     * 累加处理件数，步骤结束时写入batch_step_executions
+     * @param count 处理件数
+     */
+    public void addRows(long count) {
+        pendingRows += count;
+        rows += count;
+    }
+
+    /**
+     * チェックポイントを記録
+     * 使用步骤自己的连接记录断点和本块的处理件数。
+     * 在块的事务提交之前调用，断点与业务数据在同一事务中提交，
+     * 因此恢复时不会重复处理已提交的块，也不会跳过未提交的块。
+     * @param conn 步骤正在使用的数据库连接（自动提交关闭状态）
+     * @param checkpoint 本块处理完成后的位置
+     * @param chunkRows 本块的处理件数
+     * @throws SQLException 数据库错误
+     */
+    public void checkpoint(Connection conn, String checkpoint, long chunkRows) throws SQLException {
+        repository.saveCheckpoint(conn, stepExecutionId, checkpoint, pendingRows + chunkRows);
+        this.checkpoint = checkpoint;
+        pendingRows = 0;
+        rows += chunkRows;
+    }
+
+    /**
+     * 停止要求の有無を確認
+     * 应用停止时返回true，按块处理的步骤应在块之间检查并尽早结束
+     * @return 是否已请求停止
+     */
+    public boolean isStopRequested() {
+        return BatchJobManager.isStopping() || Thread.currentThread().isInterrupted();
+    }
+
+    // 获取最后记录的断点
+    String getLastCheckpoint() { return checkpoint; }
+    // 获取尚未写入的处理件数
+    long getPendingRows() { return pendingRows; }
+    // 获取本次执行的处理件数
+    long getRows() { return rows; }
+}
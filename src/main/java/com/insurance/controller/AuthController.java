@@ -1,6 +1,7 @@
 package com.insurance.controller;
 
 import com.insurance.security.AuthUtil;
+import com.insurance.security.LoginThrottle;
 import com.insurance.security.SecurityFilter;
 import com.insurance.util.LogUtil;
 import javax.servlet.ServletException;
@@ -96,15 +97,32 @@ public class AuthController extends HttpServlet {
             return;
         }
         
+        // 登录限流
+        // 同一IP地址、或同一IP地址对同一用户名的尝试次数超限时，在访问数据库之前拒绝
+        // （不采用客户端可以伪造的转发头，见LoginThrottle.clientAddress）
+        String remoteAddr = LoginThrottle.clientAddress(request);
+        if (!LoginThrottle.tryAcquire(remoteAddr, username)) {
+            LogUtil.warn("登录尝试次数超限: " + username + " (" + remoteAddr + ")");
+            response.setStatus(429);
+            request.setAttribute("error", "登录尝试次数过多，请稍后再试");
+            request.setAttribute("username", username);
+            request.setAttribute("csrfToken", SecurityFilter.generateCSRFToken(request));
+            request.getRequestDispatcher("/login.jsp").forward(request, response);
+            return;
+        }
+        
         // 认证用户
         // 调用认证工具类验证用户名和密码
-        boolean authenticated = AuthUtil.authenticate(username, password, request);
+        boolean authenticated = AuthUtil.authenticate(username, password, request, response);
         
         // 根据认证结果进行相应处理
         if (authenticated) {
+            // 登录成功时退还本次尝试次数
+            LoginThrottle.onSuccess(remoteAddr, username);
+            
             // 登录成功，根据用户角色重定向到相应页面
-            // 从会话中获取用户角色
-            String userRole = (String) request.getSession().getAttribute("userRole");
+            // 获取用户角色（会话模式和令牌模式通用）
+            String userRole = AuthUtil.getCurrentUser(request).getRole();
             // 根据用户角色获取重定向URL
             String redirectUrl = getRedirectUrl(userRole);
             
@@ -181,7 +199,7 @@ class LogoutController extends HttpServlet {
         // 检查用户是否已登录，如果已登录则记录登出日志并执行登出操作
         if (AuthUtil.isLoggedIn(request)) {
             LogUtil.info("用户登出", "LogoutController", AuthUtil.getRemoteAddr(request));
-            AuthUtil.logout(request);
+            AuthUtil.logout(request, response);
         }
         
         // 重定向到登录页面
@@ -1,5 +1,6 @@
 package com.insurance.controller;
 
+import com.insurance.batch.BatchJobManager;
 import com.insurance.batch.ContractStatusBatch;
 import com.insurance.batch.PremiumUpdateBatch;
 import com.insurance.batch.ReportGenerationBatch;
@@ -7,6 +8,8 @@ import javax.servlet.*;
 import javax.servlet.http.*;
 import javax.servlet.annotation.WebServlet;
 import java.io.IOException;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 /**
  * バッチ処理管理コントローラー
@@ -94,17 +97,17 @@ public class BatchControllerServlet extends HttpServlet {
     private void showBatchStatus(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         
-        // シンプルなステータス情報（実際の実装ではより詳細な情報を提供）
-        // 简单的状态信息（实际实现中会提供更详细的信息）
-        request.setAttribute("batchStatus", "すべてのバッチ処理が正常に実行中です");
-        request.setAttribute("lastExecution", new java.util.Date());
+        // 各ジョブの実行状態（直近の実行履歴とステップごとの件数・処理時間・チェックポイント）
+        // 各作业的执行状态（最近的执行记录及各步骤的件数、耗时、断点）
+        JSONObject status = new JSONObject();
+        status.put("workerThreads", BatchJobManager.getWorkerThreads());
+        status.put("jobs", new JSONArray(BatchJobManager.getJobStatus()));
         
         // 设置响应内容类型为JSON
         response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
         // 向客户端写入JSON格式的状态信息
-        response.getWriter().write(
-            "{\"status\":\"running\",\"lastExecution\":\"" + new java.util.Date() + "\"}"
-        );
+        response.getWriter().write(status.toString());
     }
     
     /**
@@ -121,11 +124,10 @@ public class BatchControllerServlet extends HttpServlet {
         // 使用try-catch处理可能的异常
         try {
             // 调用保险费更新批处理的手动执行方法
-            PremiumUpdateBatch.manualExecute();
+            boolean launched = PremiumUpdateBatch.manualExecute();
             
-            // 设置成功消息和消息类型
-            request.setAttribute("message", "保険料更新バッチを手動実行しました");
-            request.setAttribute("messageType", "success");
+            // 设置消息和消息类型（作业在后台执行，进度可通过action=status确认）
+            setLaunchMessage(request, launched, "保険料更新バッチ");
             
         } catch (Exception e) {
             // 捕获异常并设置错误消息和消息类型
@@ -151,11 +153,10 @@ public class BatchControllerServlet extends HttpServlet {
         // 使用try-catch处理可能的异常
         try {
             // 调用合同状态更新批处理的手动执行方法
-            ContractStatusBatch.manualExecute();
+            boolean launched = ContractStatusBatch.manualExecute();
             
-            // 设置成功消息和消息类型
-            request.setAttribute("message", "契約ステータス更新バッチを手動実行しました");
-            request.setAttribute("messageType", "success");
+            // 设置消息和消息类型（作业在后台执行，进度可通过action=status确认）
+            setLaunchMessage(request, launched, "契約ステータス更新バッチ");
             
         } catch (Exception e) {
             // 捕获异常并设置错误消息和消息类型
@@ -181,11 +182,10 @@ public class BatchControllerServlet extends HttpServlet {
         // 使用try-catch处理可能的异常
         try {
             // 调用报告生成批处理的手动执行方法
-            ReportGenerationBatch.manualExecute();
+            boolean launched = ReportGenerationBatch.manualExecute();
             
-            // 设置成功消息和消息类型
-            request.setAttribute("message", "レポート生成バッチを手動実行しました");
-            request.setAttribute("messageType", "success");
+            // 设置消息和消息类型（作业在后台执行，进度可通过action=status确认）
+            setLaunchMessage(request, launched, "レポート生成バッチ");
             
         } catch (Exception e) {
             // 捕获异常并设置错误消息和消息类型
@@ -211,13 +211,12 @@ public class BatchControllerServlet extends HttpServlet {
         // 使用try-catch处理可能的异常
         try {
             // 依次执行所有批处理的手动执行方法
-            PremiumUpdateBatch.manualExecute();
-            ContractStatusBatch.manualExecute();
-            ReportGenerationBatch.manualExecute();
+            boolean premiumLaunched = PremiumUpdateBatch.manualExecute();
+            boolean contractLaunched = ContractStatusBatch.manualExecute();
+            boolean reportLaunched = ReportGenerationBatch.manualExecute();
             
-            // 设置成功消息和消息类型
-            request.setAttribute("message", "すべてのバッチ処理を手動実行しました");
-            request.setAttribute("messageType", "success");
+            // 设置消息和消息类型
+            setLaunchMessage(request, premiumLaunched || contractLaunched || reportLaunched, "すべてのバッチ処理");
             
         } catch (Exception e) {
             // 捕获异常并设置错误消息和消息类型
@@ -228,4 +227,21 @@ public class BatchControllerServlet extends HttpServlet {
         // 转发请求到批处理管理页面
         request.getRequestDispatcher("/WEB-INF/views/admin/batch.jsp").forward(request, response);
     }
-}
\ No newline at end of file
+    
+    /**
+     * ジョブ起動結果のメッセージを設定
+     * 设置作业启动结果的消息
+     * @param request HTTP请求对象
+     * @param launched 是否已提交执行
+     * @param batchName 批处理名称
+     */
+    private void setLaunchMessage(HttpServletRequest request, boolean launched, String batchName) {
+        if (launched) {
+            request.setAttribute("message", batchName + "を起動しました");
+            request.setAttribute("messageType", "success");
+        } else {
+            request.setAttribute("message", batchName + "は既に実行中です");
+            request.setAttribute("messageType", "warning");
+        }
+    }
+}
@@ -223,9 +223,13 @@ public class DocumentRequestServlet extends HttpServlet {
             throws ServletException, IOException {
         
         // 生成新的请求编号
-        String requestNumber = documentRequestService.generateRequestNumber();
-        // 将请求编号设置为请求属性，供JSP页面使用
-        request.setAttribute("requestNumber", requestNumber);
+        try {
+            String requestNumber = documentRequestService.generateRequestNumber();
+            // 将请求编号设置为请求属性，供JSP页面使用
+            request.setAttribute("requestNumber", requestNumber);
+        } catch (IllegalStateException e) {
+            // 无法编号时不显示编号，登记时再编号（原因已记录到日志）
+        }
         
         // 获取请求转发器，指向资料请求表单页面
         RequestDispatcher dispatcher = request.getRequestDispatcher("/WEB-INF/views/document/request_form.jsp");
@@ -1,19 +1,33 @@
 package com.insurance.controller;
 
 import com.insurance.api.ApiBaseServlet;
+import com.insurance.dao.OutboxDAO;
+import com.insurance.integration.BulkMessageDispatcher;
 import com.insurance.integration.ExternalSystemIntegration;
+import com.insurance.integration.IntegrationOutbox;
+import com.insurance.model.OutboxMessage;
+import com.insurance.monitor.HealthProbes;
+import com.insurance.util.DatabaseUtil;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
  * 集成控制器
  * 处理外部系统集成的API接口
  * 用于与银行转账、邮件服务、短信服务、支付网关、信用检查和文档归档等外部系统进行集成
  */
-@WebServlet("/api/integration/*")
+@WebServlet(urlPatterns = {"/api/integration/*"}, asyncSupported = true)
 public class IntegrationControllerServlet extends ApiBaseServlet {
     
     // 外部系统集成对象，用于处理与各种外部系统的交互
@@ -111,6 +125,60 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
                     // 不支持的HTTP方法
                     sendJsonResponse(response, ApiResponse.error("不支持的HTTP方法"));
                 }
+            } else if (pathInfo.startsWith("/outbox/")) {
+                // 发件箱消息的发送状态
+                if ("GET".equals(method)) {
+                    // 获取发送状态
+                    getOutboxStatus(request, response, pathInfo.substring("/outbox/".length()));
+                } else {
+                    // 不支持的HTTP方法
+                    sendJsonResponse(response, ApiResponse.error("不支持的HTTP方法"));
+                }
+            } else if (pathInfo.equals("/bulk")) {
+                // 批量发送活动一览
+                if ("GET".equals(method)) {
+                    // 获取活动一览
+                    sendJsonResponse(response, ApiResponse.success(BulkMessageDispatcher.getCampaigns()));
+                } else {
+                    // 不支持的HTTP方法
+                    sendJsonResponse(response, ApiResponse.error("不支持的HTTP方法"));
+                }
+            } else if (pathInfo.equals("/bulk/email")) {
+                // 批量发送邮件
+                if ("POST".equals(method)) {
+                    // 登记批量邮件
+                    submitBulkEmail(request, response);
+                } else {
+                    // 不支持的HTTP方法
+                    sendJsonResponse(response, ApiResponse.error("不支持的HTTP方法"));
+                }
+            } else if (pathInfo.equals("/bulk/sms")) {
+                // 批量发送SMS
+                if ("POST".equals(method)) {
+                    // 登记批量SMS
+                    submitBulkSms(request, response);
+                } else {
+                    // 不支持的HTTP方法
+                    sendJsonResponse(response, ApiResponse.error("不支持的HTTP方法"));
+                }
+            } else if (pathInfo.startsWith("/bulk/")) {
+                // 批量发送活动的进度和收件人的发送状态
+                if ("GET".equals(method)) {
+                    // 获取发送状态
+                    getBulkStatus(request, response, pathInfo.substring("/bulk/".length()));
+                } else {
+                    // 不支持的HTTP方法
+                    sendJsonResponse(response, ApiResponse.error("不支持的HTTP方法"));
+                }
+            } else if (pathInfo.equals("/circuit-breakers")) {
+                // 熔断器和隔板的状态
+                if ("GET".equals(method)) {
+                    // 获取熔断器状态
+                    getCircuitStatus(request, response);
+                } else {
+                    // 不支持的HTTP方法
+                    sendJsonResponse(response, ApiResponse.error("不支持的HTTP方法"));
+                }
             } else if (pathInfo.equals("/health")) {
                 // 系统健康检查
                 if ("GET".equals(method)) {
@@ -133,7 +201,7 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
     
     /**
      * 获取集成状态
-     * 检查各个外部系统的连接状态并返回整体健康状态
+     * 返回健康检查缓存的各外部系统状态，不在请求线程中访问外部系统
      * @param request HTTP请求对象
      * @param response HTTP响应对象
      * @throws ServletException 当处理过程中发生错误时抛出
@@ -146,40 +214,24 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
             // 创建状态映射，用于存储各个系统的状态信息
             Map<String, Object> status = new HashMap<>();
             
-            // 检查各外部系统的连接状态
-            // 检查银行转账系统健康状态
-            boolean bankTransferOk = integration.checkSystemHealth(
-                ExternalSystemIntegration.SystemType.BANK_TRANSFER);
-            // 检查邮件服务健康状态
-            boolean emailServiceOk = integration.checkSystemHealth(
-                ExternalSystemIntegration.SystemType.EMAIL_SERVICE);
-            // 检查短信服务健康状态
-            boolean smsServiceOk = integration.checkSystemHealth(
-                ExternalSystemIntegration.SystemType.SMS_SERVICE);
-            // 检查支付网关健康状态
-            boolean paymentGatewayOk = integration.checkSystemHealth(
-                ExternalSystemIntegration.SystemType.PAYMENT_GATEWAY);
-            // 检查信用检查系统健康状态
-            boolean creditCheckOk = integration.checkSystemHealth(
-                ExternalSystemIntegration.SystemType.CREDIT_CHECK);
-            // 检查文档归档系统健康状态
-            boolean documentArchiveOk = integration.checkSystemHealth(
-                ExternalSystemIntegration.SystemType.DOCUMENT_ARCHIVE);
-            
-            // 创建系统状态映射
+            // 读取各外部系统的最新检查结果（尚未检查的系统视为异常）
             Map<String, Boolean> systemStatus = new HashMap<>();
-            systemStatus.put("bankTransfer", bankTransferOk);
-            systemStatus.put("emailService", emailServiceOk);
-            systemStatus.put("smsService", smsServiceOk);
-            systemStatus.put("paymentGateway", paymentGatewayOk);
-            systemStatus.put("creditCheck", creditCheckOk);
-            systemStatus.put("documentArchive", documentArchiveOk);
+            Map<String, Object> details = new HashMap<>();
+            boolean overallHealthy = true;
+            for (ExternalSystemIntegration.SystemType type : ExternalSystemIntegration.SystemType.values()) {
+                HealthProbes.Result result = HealthProbes.getResult(type.name());
+                boolean healthy = result != null && result.isHealthy();
+                systemStatus.put(statusKey(type), healthy);
+                details.put(statusKey(type), result != null ? result.toMap() : null);
+                overallHealthy &= healthy;
+            }
             
             // 设置状态信息
             status.put("timestamp", System.currentTimeMillis());
             status.put("systems", systemStatus);
-            status.put("overallHealthy", bankTransferOk && emailServiceOk && smsServiceOk && 
-                                           paymentGatewayOk && creditCheckOk && documentArchiveOk);
+            status.put("details", details);
+            status.put("overallHealthy", overallHealthy);
+            status.put("circuitBreakers", ExternalSystemIntegration.getCircuitStatistics());
             
             // 发送成功响应
             sendJsonResponse(response, ApiResponse.success(status));
@@ -191,6 +243,19 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
         }
     }
     
+    /**
+     * 集成状态中的系统键名
+     * @param type 系统类型
+     * @return 键名（例如BANK_TRANSFER为bankTransfer）
+     */
+    private static String statusKey(ExternalSystemIntegration.SystemType type) {
+        StringBuilder key = new StringBuilder();
+        for (String word : type.name().toLowerCase().split("_")) {
+            key.append(key.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+        return key.toString();
+    }
+    
     /**
      * 处理银行转账
      * 根据请求参数执行银行转账操作
@@ -227,25 +292,24 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
             ExternalSystemIntegration.BankTransferRequest transferRequest = 
                 new ExternalSystemIntegration.BankTransferRequest(accountNumber, bankCode, amount, description);
             
-            // 调用外部系统执行银行转账
-            ExternalSystemIntegration.IntegrationResponse integrationResponse = 
-                integration.processBankTransfer(transferRequest);
+            // 登记到发件箱，由分发线程发送银行转账请求（外部系统故障时自动重试）
+            // 与业务数据一起登记时，传入业务事务的连接在同一事务中登记
+            long outboxId;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                outboxId = integration.enqueueBankTransfer(conn, transferRequest);
+            }
             
             // 构建响应
             Map<String, Object> result = new HashMap<>();
-            result.put("success", integrationResponse.isSuccess()); // 是否成功
-            result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
+            result.put("outboxId", outboxId); // 发件箱消息ID（用于查询发送状态）
+            result.put("status", OutboxDAO.PENDING); // 发送状态
             result.put("accountNumber", accountNumber); // 银行账户号码
             result.put("amount", amount); // 转账金额
             result.put("description", description); // 转账描述
             result.put("timestamp", System.currentTimeMillis()); // 时间戳
             
-            // 根据外部系统响应结果发送相应响应
-            if (integrationResponse.isSuccess()) {
-                sendJsonResponse(response, ApiResponse.success(result));
-            } else {
-                sendJsonResponse(response, ApiResponse.error(integrationResponse.getErrorMessage()));
-            }
+            // 返回已受理响应
+            sendJsonResponse(response, ApiResponse.accepted(result));
             
         } catch (Exception e) {
             // 记录银行转账处理失败并返回错误响应
@@ -290,24 +354,23 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
             ExternalSystemIntegration.EmailRequest emailRequest = 
                 new ExternalSystemIntegration.EmailRequest(to, subject, body, from);
             
-            // 调用外部系统发送邮件
-            ExternalSystemIntegration.IntegrationResponse integrationResponse = 
-                integration.sendEmail(emailRequest);
+            // 登记到发件箱，由分发线程发送邮件（外部系统故障时自动重试）
+            // 与业务数据一起登记时，传入业务事务的连接在同一事务中登记
+            long outboxId;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                outboxId = integration.enqueueEmail(conn, emailRequest);
+            }
             
             // 构建响应
             Map<String, Object> result = new HashMap<>();
-            result.put("success", integrationResponse.isSuccess()); // 是否成功
-            result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
+            result.put("outboxId", outboxId); // 发件箱消息ID（用于查询发送状态）
+            result.put("status", OutboxDAO.PENDING); // 发送状态
             result.put("to", to); // 收件人邮箱
             result.put("subject", subject); // 邮件主题
             result.put("timestamp", System.currentTimeMillis()); // 时间戳
             
-            // 根据外部系统响应结果发送相应响应
-            if (integrationResponse.isSuccess()) {
-                sendJsonResponse(response, ApiResponse.success(result));
-            } else {
-                sendJsonResponse(response, ApiResponse.error(integrationResponse.getErrorMessage()));
-            }
+            // 返回已受理响应
+            sendJsonResponse(response, ApiResponse.accepted(result));
             
         } catch (Exception e) {
             // 记录邮件发送失败并返回错误响应
@@ -358,25 +421,24 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
             ExternalSystemIntegration.SmsRequest smsRequest = 
                 new ExternalSystemIntegration.SmsRequest(to, message, sender);
             
-            // 调用外部系统发送短信
-            ExternalSystemIntegration.IntegrationResponse integrationResponse = 
-                integration.sendSms(smsRequest);
+            // 登记到发件箱，由分发线程发送短信（外部系统故障时自动重试）
+            // 与业务数据一起登记时，传入业务事务的连接在同一事务中登记
+            long outboxId;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                outboxId = integration.enqueueSms(conn, smsRequest);
+            }
             
             // 构建响应
             Map<String, Object> result = new HashMap<>();
-            result.put("success", integrationResponse.isSuccess()); // 是否成功
-            result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
+            result.put("outboxId", outboxId); // 发件箱消息ID（用于查询发送状态）
+            result.put("status", OutboxDAO.PENDING); // 发送状态
             result.put("to", to); // 接收短信的手机号
             result.put("message", message); // 短信内容
             result.put("sender", sender); // 发送者名称
             result.put("timestamp", System.currentTimeMillis()); // 时间戳
             
-            // 根据外部系统响应结果发送相应响应
-            if (integrationResponse.isSuccess()) {
-                sendJsonResponse(response, ApiResponse.success(result));
-            } else {
-                sendJsonResponse(response, ApiResponse.error(integrationResponse.getErrorMessage()));
-            }
+            // 返回已受理响应
+            sendJsonResponse(response, ApiResponse.accepted(result));
             
         } catch (Exception e) {
             // 记录SMS发送失败并返回错误响应
@@ -436,26 +498,25 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
             ExternalSystemIntegration.PaymentRequest paymentRequest = 
                 new ExternalSystemIntegration.PaymentRequest(cardNumber, expiryDate, cvv, amount, description);
             
-            // 调用外部系统处理支付
-            ExternalSystemIntegration.IntegrationResponse integrationResponse = 
-                integration.processPayment(paymentRequest);
-            
-            // 构建响应
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", integrationResponse.isSuccess()); // 是否成功
-            result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
-            result.put("amount", amount); // 支付金额
-            result.put("description", description); // 支付描述
-            result.put("timestamp", System.currentTimeMillis()); // 时间戳
-            // 注意：实际系统中不应该返回完整的信用卡信息
-            result.put("cardNumberMasked", maskCreditCard(cardNumber)); // 屏蔽后的信用卡号
-            
-            // 根据外部系统响应结果发送相应响应
-            if (integrationResponse.isSuccess()) {
-                sendJsonResponse(response, ApiResponse.success(result));
-            } else {
-                sendJsonResponse(response, ApiResponse.error(integrationResponse.getErrorMessage()));
-            }
+            // 异步调用外部系统处理支付，Servlet线程不等待外部系统的响应
+            sendJsonResponseAsync(request, response,
+                integration.processPaymentAsync(paymentRequest).thenApply(integrationResponse -> {
+                    // 构建响应
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("success", integrationResponse.isSuccess()); // 是否成功
+                    result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
+                    result.put("amount", amount); // 支付金额
+                    result.put("description", description); // 支付描述
+                    result.put("timestamp", System.currentTimeMillis()); // 时间戳
+                    // 注意：实际系统中不应该返回完整的信用卡信息
+                    result.put("cardNumberMasked", maskCreditCard(cardNumber)); // 屏蔽后的信用卡号
+                    
+                    // 根据外部系统响应结果返回相应响应
+                    return integrationResponse.isSuccess()
+                        ? ApiResponse.success(result)
+                        : ApiResponse.error(integrationResponse.getErrorMessage());
+                }),
+                integration.getResponseTimeoutMillis(ExternalSystemIntegration.SystemType.PAYMENT_GATEWAY));
             
         } catch (Exception e) {
             // 记录支付处理失败并返回错误响应
@@ -506,34 +567,33 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
             ExternalSystemIntegration.CreditCheckRequest creditRequest = 
                 new ExternalSystemIntegration.CreditCheckRequest(customerId, name, birthDate, annualIncome);
             
-            // 调用外部系统执行信用检查
-            ExternalSystemIntegration.IntegrationResponse integrationResponse = 
-                integration.checkCredit(creditRequest);
-            
-            // 构建响应
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", integrationResponse.isSuccess()); // 是否成功
-            result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
-            result.put("customerId", customerId); // 客户ID
-            result.put("name", name); // 客户姓名
-            result.put("annualIncome", annualIncome); // 年收入
-            result.put("timestamp", System.currentTimeMillis()); // 时间戳
-            
-            // 如果信用检查成功，解析信用检查结果
-            if (integrationResponse.isSuccess()) {
-                // 解析信用检查结果
-                // 这里简化处理，实际应该解析外部系统的响应
-                result.put("creditScore", 750); // 示例值：信用评分
-                result.put("creditLimit", 1000000.0); // 示例值：信用额度
-                result.put("riskLevel", "low"); // 示例值：风险等级
-            }
-            
-            // 根据外部系统响应结果发送相应响应
-            if (integrationResponse.isSuccess()) {
-                sendJsonResponse(response, ApiResponse.success(result));
-            } else {
-                sendJsonResponse(response, ApiResponse.error(integrationResponse.getErrorMessage()));
-            }
+            // 异步调用外部系统执行信用检查，Servlet线程不等待外部系统的响应
+            sendJsonResponseAsync(request, response,
+                integration.checkCreditAsync(creditRequest).thenApply(integrationResponse -> {
+                    // 构建响应
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("success", integrationResponse.isSuccess()); // 是否成功
+                    result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
+                    result.put("customerId", customerId); // 客户ID
+                    result.put("name", name); // 客户姓名
+                    result.put("annualIncome", annualIncome); // 年收入
+                    result.put("timestamp", System.currentTimeMillis()); // 时间戳
+                    
+                    // 如果信用检查成功，解析信用检查结果
+                    if (integrationResponse.isSuccess()) {
+                        // 解析信用检查结果
+                        // 这里简化处理，实际应该解析外部系统的响应
+                        result.put("creditScore", 750); // 示例值：信用评分
+                        result.put("creditLimit", 1000000.0); // 示例值：信用额度
+                        result.put("riskLevel", "low"); // 示例值：风险等级
+                    }
+                    
+                    // 根据外部系统响应结果返回相应响应
+                    return integrationResponse.isSuccess()
+                        ? ApiResponse.success(result)
+                        : ApiResponse.error(integrationResponse.getErrorMessage());
+                }),
+                integration.getResponseTimeoutMillis(ExternalSystemIntegration.SystemType.CREDIT_CHECK));
             
         } catch (Exception e) {
             // 记录信用检查失败并返回错误响应
@@ -584,30 +644,295 @@ public class IntegrationControllerServlet extends ApiBaseServlet {
             ExternalSystemIntegration.DocumentArchiveRequest archiveRequest = 
                 new ExternalSystemIntegration.DocumentArchiveRequest(documentId, documentType, customerId, metadata);
             
-            // 调用外部系统执行文档归档
-            ExternalSystemIntegration.IntegrationResponse integrationResponse = 
-                integration.archiveDocument(archiveRequest);
+            // 异步调用外部系统执行文档归档，Servlet线程不等待外部系统的响应
+            sendJsonResponseAsync(request, response,
+                integration.archiveDocumentAsync(archiveRequest).thenApply(integrationResponse -> {
+                    // 构建响应
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("success", integrationResponse.isSuccess()); // 是否成功
+                    result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
+                    result.put("documentId", documentId); // 文档ID
+                    result.put("documentType", documentType); // 文档类型
+                    result.put("customerId", customerId); // 客户ID
+                    result.put("timestamp", System.currentTimeMillis()); // 时间戳
+                    
+                    // 根据外部系统响应结果返回相应响应
+                    return integrationResponse.isSuccess()
+                        ? ApiResponse.success(result)
+                        : ApiResponse.error(integrationResponse.getErrorMessage());
+                }),
+                integration.getResponseTimeoutMillis(ExternalSystemIntegration.SystemType.DOCUMENT_ARCHIVE));
+            
+        } catch (Exception e) {
+            // 记录文档归档失败并返回错误响应
+            logApiError("文档归档失败", e);
+            sendJsonResponse(response, ApiResponse.error("文档归档失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 获取发件箱消息的发送状态
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @param idText 消息ID
+     * @throws ServletException 当处理过程中发生错误时抛出
+     * @throws IOException 当IO操作发生错误时抛出
+     */
+    private void getOutboxStatus(HttpServletRequest request, HttpServletResponse response, String idText) 
+            throws ServletException, IOException {
+        
+        try {
+            // 解析消息ID
+            long id;
+            try {
+                id = Long.parseLong(idText);
+            } catch (NumberFormatException e) {
+                sendJsonResponse(response, ApiResponse.error("消息ID格式不正确"));
+                return;
+            }
+            
+            // 获取消息（不含请求体）
+            OutboxMessage message = IntegrationOutbox.getMessage(id);
+            if (message == null) {
+                sendJsonResponse(response, ApiResponse.notFound());
+                return;
+            }
             
             // 构建响应
             Map<String, Object> result = new HashMap<>();
-            result.put("success", integrationResponse.isSuccess()); // 是否成功
-            result.put("statusCode", integrationResponse.getStatusCode()); // 状态码
-            result.put("documentId", documentId); // 文档ID
-            result.put("documentType", documentType); // 文档类型
-            result.put("customerId", customerId); // 客户ID
-            result.put("timestamp", System.currentTimeMillis()); // 时间戳
+            result.put("outboxId", message.getId()); // 发件箱消息ID
+            result.put("systemType", message.getSystemType()); // 外部系统类型
+            result.put("status", message.getStatus()); // 发送状态
+            result.put("attempts", message.getAttempts()); // 发送尝试次数
+            result.put("lastStatusCode", message.getLastStatusCode()); // 最后一次响应的状态码
+            result.put("lastError", message.getLastError()); // 最后一次的错误信息
+            result.put("createdAt", message.getCreatedAt().getTime()); // 登记时间
+            result.put("nextAttemptAt", OutboxDAO.PENDING.equals(message.getStatus())
+                ? message.getNextAttemptAt().getTime() : null); // 下次发送时间
+            result.put("sentAt", message.getSentAt() != null ? message.getSentAt().getTime() : null); // 发送时间
             
-            // 根据外部系统响应结果发送相应响应
-            if (integrationResponse.isSuccess()) {
-                sendJsonResponse(response, ApiResponse.success(result));
-            } else {
-                sendJsonResponse(response, ApiResponse.error(integrationResponse.getErrorMessage()));
+            // 发送成功响应
+            sendJsonResponse(response, ApiResponse.success(result));
+            
+        } catch (Exception e) {
+            // 记录获取发送状态失败并返回错误响应
+            logApiError("获取发件箱状态失败", e);
+            sendJsonResponse(response, ApiResponse.error("获取发件箱状态失败"));
+        }
+    }
+    
+    /**
+     * 登记批量邮件
+     * 请求体为JSON：{"name", "from", "subject", "body", "recipients": [...]}，
+     * recipients的元素为邮箱地址，或者是可以单独指定subject和body的{"to", "subject", "body"}
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws ServletException 当处理过程中发生错误时抛出
+     * @throws IOException 当IO操作发生错误时抛出
+     */
+    private void submitBulkEmail(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
+        try {
+            // 解析请求体
+            JSONObject campaign;
+            JSONArray recipients;
+            try {
+                campaign = new JSONObject(getRequestBody(request));
+                recipients = campaign.getJSONArray("recipients");
+            } catch (JSONException e) {
+                sendJsonResponse(response, ApiResponse.error("请求体必须是包含recipients数组的JSON: " + e.getMessage()));
+                return;
+            }
+            if (recipients.length() == 0 || recipients.length() > BulkMessageDispatcher.getMaxRecipients()) {
+                sendJsonResponse(response, ApiResponse.error("收件人数必须在1到" +
+                                 BulkMessageDispatcher.getMaxRecipients() + "之间"));
+                return;
+            }
+            
+            // 共通的发件人、主题和正文
+            String from = campaign.optString("from", "noreply@insurance-system.com"); // 发件人邮箱
+            String subject = campaign.optString("subject", null); // 邮件主题
+            String body = campaign.optString("body", null); // 邮件正文
+            if (!isValidEmail(from)) {
+                sendJsonResponse(response, ApiResponse.error("发件人邮箱格式不正确"));
+                return;
             }
             
+            // 创建每个收件人的邮件请求
+            List<ExternalSystemIntegration.EmailRequest> messages = new ArrayList<>(recipients.length());
+            for (int i = 0; i < recipients.length(); i++) {
+                JSONObject item = recipients.optJSONObject(i);
+                String to = item != null ? item.optString("to", null) : recipients.optString(i, null);
+                String itemSubject = item != null ? item.optString("subject", subject) : subject;
+                String itemBody = item != null ? item.optString("body", body) : body;
+                if (!isValidEmail(to)) {
+                    sendJsonResponse(response, ApiResponse.error("第" + i + "个收件人的邮箱格式不正确"));
+                    return;
+                }
+                if (itemSubject == null || itemBody == null) {
+                    sendJsonResponse(response, ApiResponse.error("第" + i + "个收件人缺少主题或正文"));
+                    return;
+                }
+                messages.add(new ExternalSystemIntegration.EmailRequest(to, itemSubject, itemBody, from));
+            }
+            
+            // 登记活动（分批发送在后台进行）
+            BulkMessageDispatcher.Campaign result = 
+                BulkMessageDispatcher.submitEmails(campaign.optString("name", "email"), messages);
+            
+            // 返回已受理响应
+            sendJsonResponse(response, ApiResponse.accepted(result.toMap()));
+            
         } catch (Exception e) {
-            // 记录文档归档失败并返回错误响应
-            logApiError("文档归档失败", e);
-            sendJsonResponse(response, ApiResponse.error("文档归档失败: " + e.getMessage()));
+            // 记录批量邮件登记失败并返回错误响应
+            logApiError("批量邮件登记失败", e);
+            sendJsonResponse(response, ApiResponse.error("批量邮件登记失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 登记批量SMS
+     * 请求体为JSON：{"name", "sender", "message", "recipients": [...]}，
+     * recipients的元素为手机号，或者是可以单独指定message的{"to", "message"}
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws ServletException 当处理过程中发生错误时抛出
+     * @throws IOException 当IO操作发生错误时抛出
+     */
+    private void submitBulkSms(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
+        try {
+            // 解析请求体
+            JSONObject campaign;
+            JSONArray recipients;
+            try {
+                campaign = new JSONObject(getRequestBody(request));
+                recipients = campaign.getJSONArray("recipients");
+            } catch (JSONException e) {
+                sendJsonResponse(response, ApiResponse.error("请求体必须是包含recipients数组的JSON: " + e.getMessage()));
+                return;
+            }
+            if (recipients.length() == 0 || recipients.length() > BulkMessageDispatcher.getMaxRecipients()) {
+                sendJsonResponse(response, ApiResponse.error("收件人数必须在1到" +
+                                 BulkMessageDispatcher.getMaxRecipients() + "之间"));
+                return;
+            }
+            
+            // 共通的发送者名称和消息
+            String sender = campaign.optString("sender", "Insurance"); // 发送者名称
+            String message = campaign.optString("message", null); // 短信内容
+            
+            // 创建每个收件人的SMS请求
+            List<ExternalSystemIntegration.SmsRequest> messages = new ArrayList<>(recipients.length());
+            for (int i = 0; i < recipients.length(); i++) {
+                JSONObject item = recipients.optJSONObject(i);
+                String to = item != null ? item.optString("to", null) : recipients.optString(i, null);
+                String itemMessage = item != null ? item.optString("message", message) : message;
+                if (!isValidPhoneNumber(to)) {
+                    sendJsonResponse(response, ApiResponse.error("第" + i + "个收件人的手机号格式不正确"));
+                    return;
+                }
+                if (itemMessage == null || itemMessage.length() > 160) {
+                    sendJsonResponse(response, ApiResponse.error("第" + i + "个收件人的消息为空或超过160字符"));
+                    return;
+                }
+                messages.add(new ExternalSystemIntegration.SmsRequest(to, itemMessage, sender));
+            }
+            
+            // 登记活动（分批发送在后台进行）
+            BulkMessageDispatcher.Campaign result = 
+                BulkMessageDispatcher.submitSms(campaign.optString("name", "sms"), messages);
+            
+            // 返回已受理响应
+            sendJsonResponse(response, ApiResponse.accepted(result.toMap()));
+            
+        } catch (Exception e) {
+            // 记录批量SMS登记失败并返回错误响应
+            logApiError("批量SMS登记失败", e);
+            sendJsonResponse(response, ApiResponse.error("批量SMS登记失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 获取批量发送状态
+     * /bulk/{id}返回活动的进度，/bulk/{id}/recipients返回收件人的发送状态
+     * （参数status筛选状态，offset和limit分页，limit最大1000）
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @param path /bulk/之后的路径
+     * @throws ServletException 当处理过程中发生错误时抛出
+     * @throws IOException 当IO操作发生错误时抛出
+     */
+    private void getBulkStatus(HttpServletRequest request, HttpServletResponse response, String path) 
+            throws ServletException, IOException {
+        
+        try {
+            // 解析活动ID
+            boolean listRecipients = path.endsWith("/recipients");
+            String idText = listRecipients ? path.substring(0, path.length() - "/recipients".length()) : path;
+            long id;
+            try {
+                id = Long.parseLong(idText);
+            } catch (NumberFormatException e) {
+                sendJsonResponse(response, ApiResponse.error("活动ID格式不正确"));
+                return;
+            }
+            
+            // 获取活动（已超过保留数而删除的活动视为不存在）
+            BulkMessageDispatcher.Campaign campaign = BulkMessageDispatcher.getCampaign(id);
+            if (campaign == null) {
+                sendJsonResponse(response, ApiResponse.notFound());
+                return;
+            }
+            if (!listRecipients) {
+                sendJsonResponse(response, ApiResponse.success(campaign.toMap()));
+                return;
+            }
+            
+            // 收件人的发送状态
+            String status = request.getParameter("status"); // 筛选的状态（PENDING、SENT、FAILED）
+            int offset = Math.max(0, getIntParameter(request, "offset", 0)); // 跳过的件数
+            int limit = Math.min(1000, Math.max(1, getIntParameter(request, "limit", 100))); // 最大件数
+            Map<String, Object> result = new HashMap<>();
+            result.put("campaign", campaign.toMap());
+            result.put("recipients", campaign.getRecipients(status, offset, limit));
+            
+            // 发送成功响应
+            sendJsonResponse(response, ApiResponse.success(result));
+            
+        } catch (Exception e) {
+            // 记录获取批量发送状态失败并返回错误响应
+            logApiError("获取批量发送状态失败", e);
+            sendJsonResponse(response, ApiResponse.error("获取批量发送状态失败"));
+        }
+    }
+    
+    /**
+     * 获取熔断器状态
+     * 返回各外部系统的熔断器状态（失败率、慢调用率、拒绝数）和同时请求数
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws ServletException 当处理过程中发生错误时抛出
+     * @throws IOException 当IO操作发生错误时抛出
+     */
+    private void getCircuitStatus(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
+        try {
+            // 构建响应
+            Map<String, Object> result = new HashMap<>();
+            result.put("timestamp", System.currentTimeMillis());
+            result.put("systems", ExternalSystemIntegration.getCircuitStatistics());
+            
+            // 发送成功响应
+            sendJsonResponse(response, ApiResponse.success(result));
+            
+        } catch (Exception e) {
+            // 记录获取熔断器状态失败并返回错误响应
+            logApiError("获取熔断器状态失败", e);
+            sendJsonResponse(response, ApiResponse.error("获取熔断器状态失败"));
         }
     }
     
@@ -32,6 +32,12 @@ public class SystemMonitorServlet extends HttpServlet {
         if ("status".equals(action)) {
             // 获取系统状态
             getSystemStatus(request, response);
+        } else if ("metrics".equals(action)) {
+            // 获取指标
+            getMetrics(request, response);
+        } else if ("queries".equals(action)) {
+            // 获取SQL执行统计
+            getQueryStatistics(request, response);
         } else {
             // 显示监控页面
             showMonitorPage(request, response);
@@ -112,6 +118,51 @@ public class SystemMonitorServlet extends HttpServlet {
         }
     }
     
+    /**
+     * 获取指标
+     * 以Prometheus文本格式返回请求处理时间（直方图）、JVM和连接池等指标
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws ServletException 当处理过程中发生错误时抛出
+     * @throws IOException 当IO操作发生错误时抛出
+     */
+    private void getMetrics(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
+        // 设置响应内容类型为Prometheus文本格式
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        // 将指标写入响应输出流
+        SystemMonitor.writeMetrics(response.getWriter());
+    }
+    
+    /**
+     * 获取SQL执行统计
+     * 以纯文本格式返回合计耗时最长的SQL（件数由limit参数指定，默认20，最多200）
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws ServletException 当处理过程中发生错误时抛出
+     * @throws IOException 当IO操作发生错误时抛出
+     */
+    private void getQueryStatistics(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
+        // 解析件数参数（无效时使用默认值）
+        int limit = 20;
+        try {
+            String limitParam = request.getParameter("limit");
+            if (limitParam != null) {
+                limit = Math.max(1, Math.min(Integer.parseInt(limitParam), 200));
+            }
+        } catch (NumberFormatException e) {
+            // 使用默认值
+        }
+        
+        // 设置响应内容类型为纯文本，字符集为UTF-8
+        response.setContentType("text/plain;charset=UTF-8");
+        // 将SQL执行统计报告写入响应输出流
+        response.getWriter().write(SystemMonitor.getQueryReport(limit));
+    }
+    
     /**
      * 手动刷新监控数据
      * 执行手动系统检查并刷新监控数据
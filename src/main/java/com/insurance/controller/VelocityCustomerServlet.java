@@ -2,6 +2,7 @@ package com.insurance.controller;
 
 import com.insurance.model.Customer;
 import com.insurance.service.CustomerService;
+import com.insurance.util.FragmentCache;
 import com.insurance.util.VelocityUtil;
 import org.apache.velocity.VelocityContext;
 import javax.servlet.*;
@@ -12,6 +13,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * 使用Velocity模板的顾客管理Servlet
@@ -20,6 +22,9 @@ import java.util.List;
 @WebServlet("/velocity/customer")
 public class VelocityCustomerServlet extends HttpServlet {
     
+    // 顾客列表模板中表格片段的名称（与customer/list.vm的#cache一致）
+    private static final String CUSTOMER_TABLE_FRAGMENT = "customer.list.table";
+    
     // 顾客服务对象，用于处理顾客相关业务逻辑
     private CustomerService customerService;
     
@@ -148,13 +153,10 @@ public class VelocityCustomerServlet extends HttpServlet {
     private void listCustomers(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         
-        // 调用服务层方法获取所有顾客列表
-        List<Customer> customers = customerService.getAllCustomers();
-        
         // 创建Velocity上下文对象
         VelocityContext context = VelocityUtil.createContext(request, response);
-        // 将顾客列表设置到上下文中，供模板使用
-        context.put("customers", customers);
+        // 顾客表格的片段已缓存时直接使用，否则调用服务层方法获取所有顾客列表
+        putCustomerTable(context, request, null, customerService::getAllCustomers);
         // 设置页面标题
         context.put("pageTitle", "顧客一覧");
         
@@ -407,6 +409,27 @@ public class VelocityCustomerServlet extends HttpServlet {
         }
     }
     
+    /**
+     * 设置顾客表格
+     * customer/list.vm的表格以#cache("customer.list.table" ...)缓存，
+     * 片段已缓存时只设置片段（不查询顾客），否则查询顾客列表
+     * @param context Velocity上下文
+     * @param request HTTP请求对象
+     * @param keyword 搜索关键字（列表显示时为null）
+     * @param loader 顾客列表的查询
+     */
+    private void putCustomerTable(VelocityContext context, HttpServletRequest request, String keyword,
+                                  Supplier<List<Customer>> loader) {
+        // 键与模板中的"$!{contextPath}" "$!{keyword}"相同
+        String key = FragmentCache.key(CUSTOMER_TABLE_FRAGMENT, request.getContextPath(), keyword != null ? keyword : "");
+        String table = FragmentCache.isEnabled() ? FragmentCache.get(key) : null;
+        if (table != null) {
+            context.put("customerTable", table);
+        } else {
+            context.put("customers", loader.get());
+        }
+    }
+    
     /**
      * 搜索顾客
      * 根据关键字搜索顾客信息并使用Velocity模板渲染列表页面
@@ -420,13 +443,10 @@ public class VelocityCustomerServlet extends HttpServlet {
         
         // 获取请求参数中的搜索关键字
         String keyword = request.getParameter("keyword");
-        // 调用服务层方法搜索顾客
-        List<Customer> customers = customerService.searchCustomers(keyword);
-        
         // 创建Velocity上下文对象
         VelocityContext context = VelocityUtil.createContext(request, response);
-        // 将搜索结果设置到上下文中，供模板使用
-        context.put("customers", customers);
+        // 顾客表格的片段已缓存时直接使用，否则调用服务层方法搜索顾客
+        putCustomerTable(context, request, keyword, () -> customerService.searchCustomers(keyword));
         // 将搜索关键字设置到上下文中，供模板使用
         context.put("keyword", keyword);
         // 设置页面标题
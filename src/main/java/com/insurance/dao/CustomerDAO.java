@@ -4,7 +4,10 @@ import com.insurance.model.Customer;
 import com.insurance.util.DatabaseUtil;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * 顾客数据访问对象
@@ -99,7 +102,59 @@ public class CustomerDAO {
         // 返回顾客列表
         return customers;
     }
-    
+
+    /**
+     * 分页获取顾客列表（键集分页）
+     * 按创建时间降序、ID降序排列，只读取游标之后的size+1行
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param size 页大小
+     * @return 当前页的顾客和下一页的游标
+     */
+    public KeysetPage<Customer> getCustomerPage(PageCursor cursor, int size) {
+        // 将页大小限制在允许范围内
+        int pageSize = KeysetQuery.normalizeSize(size);
+        // 创建一个空的顾客列表用于存储查询结果
+        List<Customer> customers = new ArrayList<>(pageSize + 1);
+        // 定义SQL查询语句，查询游标之后的未删除顾客
+        String sql = "SELECT * FROM customers WHERE deleted_flag = 0" +
+                     (cursor != null ? " AND " + KeysetQuery.seekCondition("") : "") +
+                     KeysetQuery.orderAndLimit("");
+
+        // 使用try-with-resources自动管理数据库连接和预编译语句
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            // 设置游标参数和读取行数（多读一行用于判断是否有下一页）
+            int index = 1;
+            if (cursor != null) {
+                index = KeysetQuery.bindCursor(pstmt, index, cursor);
+            }
+            pstmt.setInt(index, pageSize + 1);
+
+            // 执行查询并遍历结果集
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    // 将每行记录映射为Customer对象并添加到列表中
+                    customers.add(mapResultSetToCustomer(rs));
+                }
+            }
+        } catch (SQLException e) {
+            // 捕获并打印SQL异常
+            e.printStackTrace();
+        }
+        // 生成分页结果
+        return KeysetQuery.toPage(customers, pageSize,
+                                  customer -> PageCursor.of(customer.getCreatedAt(), customer.getId()));
+    }
+
+    /**
+     * 获取未删除顾客的总数（结果缓存一段时间）
+     * @return 顾客总数，查询失败时返回-1
+     */
+    public long countCustomers() {
+        return KeysetQuery.count("SELECT COUNT(*) FROM customers WHERE deleted_flag = 0");
+    }
+
     /**
      * 添加新顾客
      * @param customer 要添加的顾客对象
@@ -262,7 +317,136 @@ public class CustomerDAO {
         // 返回搜索结果列表
         return customers;
     }
-    
+
+    /**
+     * 根据ID列表批量获取顾客（一次查询）
+     * @param ids 顾客ID列表
+     * @return 顾客列表，顺序与ids一致（已删除或不存在的ID被跳过）
+     */
+    public List<Customer> getCustomersByIds(List<Integer> ids) {
+        // 创建一个空的顾客列表用于存储查询结果
+        List<Customer> customers = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return customers;
+        }
+        // 定义SQL查询语句，以IN条件一次查询所有指定ID的未删除顾客
+        StringBuilder sql = new StringBuilder("SELECT * FROM customers WHERE deleted_flag = 0 AND id IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        // 使用try-with-resources自动管理数据库连接和预处理语句
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            // 设置ID参数
+            for (int i = 0; i < ids.size(); i++) {
+                pstmt.setInt(i + 1, ids.get(i));
+            }
+
+            // 执行查询，按ID保存结果
+            Map<Integer, Customer> byId = new HashMap<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Customer customer = mapResultSetToCustomer(rs);
+                    byId.put(customer.getId(), customer);
+                }
+            }
+            // 按ids的顺序排列
+            for (Integer id : ids) {
+                Customer customer = byId.get(id);
+                if (customer != null) {
+                    customers.add(customer);
+                }
+            }
+        } catch (SQLException e) {
+            // 捕获并打印SQL异常
+            e.printStackTrace();
+        }
+        // 返回顾客列表
+        return customers;
+    }
+
+    /**
+     * 逐行读取所有未删除顾客的搜索用字段（构建搜索索引用）
+     * 只读取ID、顾客编号、姓名、姓名カナ、邮箱、电话号码、创建时间和更新时间，不在内存中保留全部顾客
+     * @param consumer 处理每个顾客的函数
+     * @throws IllegalStateException 查询失败时抛出
+     */
+    public void scanSearchableCustomers(Consumer<Customer> consumer) {
+        // 定义SQL查询语句，只查询搜索用字段
+        String sql = "SELECT id, customer_code, first_name, last_name, first_name_kana, last_name_kana, " +
+                    "email, phone_number, created_at, updated_at, deleted_flag " +
+                    "FROM customers WHERE deleted_flag = 0 ORDER BY id";
+
+        // 使用try-with-resources自动管理数据库连接、语句和结果集
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            // 分批从数据库读取（驱动支持时）
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    consumer.accept(mapSearchableFields(rs));
+                }
+            }
+        } catch (SQLException e) {
+            // 查询失败时由调用方决定如何处理（不能把部分结果当作全部顾客）
+            throw new IllegalStateException("Failed to scan customers", e);
+        }
+    }
+
+    /**
+     * 逐行读取指定时间以后更新的顾客的搜索用字段（更新搜索索引用）
+     * 包括已删除的顾客（删除标志和更新时间由deleteCustomer更新），按更新时间顺序读取
+     * @param since 更新时间的下限（包含）
+     * @param consumer 处理每个顾客的函数
+     * @throws IllegalStateException 查询失败时抛出
+     */
+    public void scanCustomersUpdatedSince(Timestamp since, Consumer<Customer> consumer) {
+        // 定义SQL查询语句，只查询搜索用字段
+        String sql = "SELECT id, customer_code, first_name, last_name, first_name_kana, last_name_kana, " +
+                    "email, phone_number, created_at, updated_at, deleted_flag " +
+                    "FROM customers WHERE updated_at >= ? ORDER BY updated_at, id";
+
+        // 使用try-with-resources自动管理数据库连接、语句和结果集
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setTimestamp(1, since);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(mapSearchableFields(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to scan updated customers", e);
+        }
+    }
+
+    /**
+     * 将搜索用字段映射到Customer对象
+     * @param rs 数据库查询结果集
+     * @return 只设置了搜索用字段的Customer对象
+     * @throws SQLException SQL异常
+     */
+    private Customer mapSearchableFields(ResultSet rs) throws SQLException {
+        Customer customer = new Customer();
+        customer.setId(rs.getInt("id"));                           // ID
+        customer.setCustomerCode(rs.getString("customer_code"));   // 顾客编号
+        customer.setFirstName(rs.getString("first_name"));         // 名
+        customer.setLastName(rs.getString("last_name"));           // 姓
+        customer.setFirstNameKana(rs.getString("first_name_kana")); // 名(カナ)
+        customer.setLastNameKana(rs.getString("last_name_kana"));   // 姓(カナ)
+        customer.setEmail(rs.getString("email"));                  // 邮箱
+        customer.setPhoneNumber(rs.getString("phone_number"));     // 电话号码
+        customer.setCreatedAt(rs.getTimestamp("created_at"));      // 创建时间
+        customer.setUpdatedAt(rs.getTimestamp("updated_at"));      // 更新时间
+        customer.setDeletedFlag(rs.getBoolean("deleted_flag"));    // 删除标志
+        return customer;
+    }
+
     /**
      * 将ResultSet映射到Customer对象
      * @param rs 数据库查询结果集
@@ -116,7 +116,116 @@ public class DocumentRequestDAO {
         // 返回资料请求列表
         return requests;
     }
-    
+
+    /**
+     * 分页获取资料请求（键集分页）
+     * 按创建时间降序、ID降序排列，只读取游标之后的size+1行
+     * @param status 请求状态过滤条件（为空时不过滤）
+     * @param requestType 请求类型过滤条件（为空时不过滤）
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param size 页大小
+     * @return 当前页的资料请求和下一页的游标
+     */
+    public KeysetPage<DocumentRequest> getDocumentRequestPage(String status, String requestType,
+                                                             PageCursor cursor, int size) {
+        // 将页大小限制在允许范围内
+        int pageSize = KeysetQuery.normalizeSize(size);
+        // 创建一个空的资料请求列表用于存储查询结果
+        List<DocumentRequest> requests = new ArrayList<>(pageSize + 1);
+        // 定义SQL查询语句，查询游标之后的资料请求，并关联顾客、商品和销售人员信息
+        String sql = "SELECT dr.*, c.first_name, c.last_name, p.product_name, u.full_name as sales_person_name " +
+                   "FROM document_requests dr " +
+                   "LEFT JOIN customers c ON dr.customer_id = c.id " +
+                   "LEFT JOIN insurance_products p ON dr.product_id = p.id " +
+                   "LEFT JOIN users u ON dr.sales_person_id = u.id " +
+                   buildPageFilter(status, requestType, cursor) +
+                   KeysetQuery.orderAndLimit("dr");
+
+        // 使用try-with-resources自动管理数据库连接和预编译语句
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            // 设置过滤条件、游标参数和读取行数（多读一行用于判断是否有下一页）
+            int index = bindPageFilter(pstmt, status, requestType);
+            if (cursor != null) {
+                index = KeysetQuery.bindCursor(pstmt, index, cursor);
+            }
+            pstmt.setInt(index, pageSize + 1);
+
+            // 执行查询并遍历结果集
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    // 将每行记录映射为DocumentRequest对象并添加到列表中
+                    requests.add(mapResultSetToDocumentRequest(rs));
+                }
+            }
+        } catch (SQLException e) {
+            // 捕获并打印SQL异常
+            e.printStackTrace();
+        }
+        // 生成分页结果
+        return KeysetQuery.toPage(requests, pageSize,
+                                  request -> PageCursor.of(request.getCreatedAt(), request.getId()));
+    }
+
+    /**
+     * 获取符合过滤条件的资料请求总数（结果缓存一段时间）
+     * @param status 请求状态过滤条件（为空时不过滤）
+     * @param requestType 请求类型过滤条件（为空时不过滤）
+     * @return 资料请求总数，查询失败时返回-1
+     */
+    public long countDocumentRequests(String status, String requestType) {
+        String sql = "SELECT COUNT(*) FROM document_requests dr " + buildPageFilter(status, requestType, null);
+        List<Object> params = new ArrayList<>(2);
+        if (status != null && !status.isEmpty()) {
+            params.add(status);
+        }
+        if (requestType != null && !requestType.isEmpty()) {
+            params.add(requestType);
+        }
+        return KeysetQuery.count(sql, params.toArray());
+    }
+
+    /**
+     * 生成分页查询的WHERE子句
+     * @param status 请求状态过滤条件（为空时不过滤）
+     * @param requestType 请求类型过滤条件（为空时不过滤）
+     * @param cursor 分页游标（为null时不加游标条件）
+     * @return WHERE子句，没有条件时返回空字符串
+     */
+    private String buildPageFilter(String status, String requestType, PageCursor cursor) {
+        List<String> conditions = new ArrayList<>(3);
+        if (status != null && !status.isEmpty()) {
+            conditions.add("dr.request_status = ?");
+        }
+        if (requestType != null && !requestType.isEmpty()) {
+            conditions.add("dr.request_type = ?");
+        }
+        if (cursor != null) {
+            conditions.add(KeysetQuery.seekCondition("dr"));
+        }
+        return conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+    }
+
+    /**
+     * 设置分页查询的过滤条件参数
+     * @param pstmt 预编译语句
+     * @param status 请求状态过滤条件（为空时不过滤）
+     * @param requestType 请求类型过滤条件（为空时不过滤）
+     * @return 下一个参数的位置
+     * @throws SQLException 设置参数失败时抛出
+     */
+    private int bindPageFilter(PreparedStatement pstmt, String status, String requestType) throws SQLException {
+        int index = 1;
+        if (status != null && !status.isEmpty()) {
+            pstmt.setString(index++, status);
+        }
+        if (requestType != null && !requestType.isEmpty()) {
+            pstmt.setString(index++, requestType);
+        }
+        return index;
+    }
+
     /**
      * 根据顾客ID获取资料请求
      * @param customerId 顾客ID
@@ -399,11 +508,14 @@ public class DocumentRequestDAO {
     }
     
     /**
-     * 生成新的请求编号
-     * @return 新的请求编号
+     * 获取已有请求编号中的最大序号
+     * 请求编号改为由SequenceGenerator编号，本方法只在编号序列第一次使用时
+     * 用于确定初始值（全表扫描，不要在登记处理中调用）
+     * @return 最大序号（没有请求编号时为0）
+     * @throws SQLException SQL异常
      */
-    public String generateRequestNumber() {
-        // 定义SQL查询语句，获取当前最大请求编号并加1
+    public long getMaxRequestNumber() throws SQLException {
+        // 定义SQL查询语句，获取当前最大请求编号
         String sql = "SELECT MAX(CAST(SUBSTRING(request_number, 4) AS UNSIGNED)) as max_num " +
                    "FROM document_requests " +
                    "WHERE request_number LIKE 'REQ%'";
@@ -413,18 +525,9 @@ public class DocumentRequestDAO {
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
-            // 如果结果集中有数据
-            if (rs.next()) {
-                // 获取最大编号并加1，格式化为4位数字
-                int maxNum = rs.getInt("max_num");
-                return String.format("REQ%04d", maxNum + 1);
-            }
-        } catch (SQLException e) {
-            // 捕获并打印SQL异常
-            e.printStackTrace();
+            // 没有请求编号时MAX为NULL，getLong返回0
+            return rs.next() ? rs.getLong("max_num") : 0L;
         }
-        // 如果没有找到现有编号，返回初始编号
-        return "REQ0001";
     }
     
     /**
@@ -0,0 +1,63 @@
+package com.insurance.dao;
+
+// 导入Java列表类
+import java.util.List;
+
+/**
+ * 键集分页结果
+ * 保存当前页的数据、实际使用的页大小和下一页的游标。最后一页的下一页游标为null。
+ * @param <T> 数据类型
+ */
+public final class KeysetPage<T> {
+
+    // 当前页的数据
+    private final List<T> items;
+    // 实际使用的页大小（限制在1～最大页大小之间）
+    private final int size;
+    // 下一页的游标（没有下一页时为null）
+    private final PageCursor next;
+
+    /**
+     * 创建分页结果
+     * @param items 当前页的数据
+     * @param size 实际使用的页大小
+     * @param next 下一页的游标，没有下一页时为null
+     */
+    public KeysetPage(List<T> items, int size, PageCursor next) {
+        this.items = items;
+        this.size = size;
+        this.next = next;
+    }
+
+    /**
+     * 获取当前页的数据
+     * @return 数据列表
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * 获取实际使用的页大小
+     * @return 页大小
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * 获取下一页的游标
+     * @return 下一页的游标，没有下一页时为null
+     */
+    public PageCursor getNext() {
+        return next;
+    }
+
+    /**
+     * 是否还有下一页
+     * @return 有下一页时返回true
+     */
+    public boolean hasNext() {
+        return next != null;
+    }
+}
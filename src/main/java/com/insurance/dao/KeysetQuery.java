@@ -0,0 +1,140 @@
+package com.insurance.dao;
+
+// 导入数据库工具类
+import com.insurance.util.DatabaseUtil;
+// 导入Java SQL相关类
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+// 导入Java列表类
+import java.util.Arrays;
+import java.util.List;
+// 导入Java并发映射类，用于缓存总件数
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+// 导入Java函数接口，用于从最后一行取得游标
+import java.util.function.Function;
+
+/**
+ * 键集分页查询辅助类
+ * 按(created_at DESC, id DESC)排序，从游标位置之后读取size+1行：多读的一行只用于判断是否有下一页。
+ * 查询代价只与页大小有关，与表的大小和页的位置无关。
+ * 总件数需要全表扫描，只在调用方要求时计算，并按查询条件缓存COUNT_CACHE_TTL_MS毫秒。
+ */
+final class KeysetQuery {
+
+    // 默认页大小
+    static final int DEFAULT_PAGE_SIZE = 20;
+    // 最大页大小
+    static final int MAX_PAGE_SIZE = 100;
+
+    // 总件数缓存的有效期（毫秒）
+    private static final long COUNT_CACHE_TTL_MS = 60_000L;
+    // 总件数缓存的最大条目数（超过时清空，防止过滤条件组合过多时无限增长）
+    private static final int COUNT_CACHE_MAX_ENTRIES = 1024;
+
+    // 总件数缓存（键：SQL和参数，值：{件数, 计算时间}）
+    private static final ConcurrentMap<String, long[]> countCache = new ConcurrentHashMap<>();
+
+    private KeysetQuery() {}
+
+    /**
+     * 将页大小限制在1～MAX_PAGE_SIZE之间
+     * @param size 请求的页大小
+     * @return 实际使用的页大小
+     */
+    static int normalizeSize(int size) {
+        if (size <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * 生成游标位置之后的查询条件
+     * 展开为OR形式，使(created_at, id)的复合索引可以用于范围扫描
+     * @param alias 表别名（无别名时为空字符串）
+     * @return 查询条件，带3个参数（created_at, created_at, id）
+     */
+    static String seekCondition(String alias) {
+        String prefix = alias.isEmpty() ? "" : alias + ".";
+        return "(" + prefix + "created_at < ? OR (" + prefix + "created_at = ? AND " + prefix + "id < ?))";
+    }
+
+    /**
+     * 生成排序和件数限制子句
+     * @param alias 表别名（无别名时为空字符串）
+     * @return ORDER BY和LIMIT子句，带1个参数（读取行数）
+     */
+    static String orderAndLimit(String alias) {
+        String prefix = alias.isEmpty() ? "" : alias + ".";
+        return " ORDER BY " + prefix + "created_at DESC, " + prefix + "id DESC LIMIT ?";
+    }
+
+    /**
+     * 设置游标参数
+     * @param ps 预编译语句
+     * @param index 第一个参数的位置
+     * @param cursor 分页游标
+     * @return 下一个参数的位置
+     * @throws SQLException 设置参数失败时抛出
+     */
+    static int bindCursor(PreparedStatement ps, int index, PageCursor cursor) throws SQLException {
+        ps.setTimestamp(index++, cursor.getCreatedAt());
+        ps.setTimestamp(index++, cursor.getCreatedAt());
+        ps.setInt(index++, cursor.getId());
+        return index;
+    }
+
+    /**
+     * 根据读取的行生成分页结果
+     * 读取的行数超过页大小时，去掉多读的一行，并以当前页最后一行生成下一页的游标
+     * @param rows 读取的行（最多size+1行）
+     * @param size 页大小
+     * @param keyOf 从行取得游标的函数
+     * @param <T> 数据类型
+     * @return 分页结果
+     */
+    static <T> KeysetPage<T> toPage(List<T> rows, int size, Function<T, PageCursor> keyOf) {
+        if (rows.size() <= size) {
+            return new KeysetPage<>(rows, size, null);
+        }
+        List<T> items = rows.subList(0, size);
+        return new KeysetPage<>(items, size, keyOf.apply(items.get(size - 1)));
+    }
+
+    /**
+     * 获取总件数（带缓存）
+     * @param sql COUNT查询语句
+     * @param params 查询参数
+     * @return 总件数，查询失败时返回-1
+     */
+    static long count(String sql, Object... params) {
+        String key = sql + Arrays.toString(params);
+        long now = System.currentTimeMillis();
+        long[] cached = countCache.get(key);
+        if (cached != null && now - cached[1] < COUNT_CACHE_TTL_MS) {
+            return cached[0];
+        }
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                long total = rs.next() ? rs.getLong(1) : 0L;
+                if (countCache.size() >= COUNT_CACHE_MAX_ENTRIES) {
+                    countCache.clear();
+                }
+                countCache.put(key, new long[] {total, now});
+                return total;
+            }
+        } catch (SQLException e) {
+            // 捕获并打印SQL异常
+            e.printStackTrace();
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.insurance.dao;
+
+import com.insurance.model.OutboxMessage;
+import com.insurance.util.DatabaseUtil;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 发件箱数据访问对象
+ * 发送到外部系统的请求先登记到integration_outbox，由分发线程按批取得后发送。
+ *
+ * 取得时用SELECT ... FOR UPDATE SKIP LOCKED锁定到期的消息，多个分发线程和多台服务器
+ * 各自取得不同的消息，互不等待。取得的消息标记为处理中，下次发送时间设为占用期限后提交，
+ * 发送期间不持有行锁；分发线程中途停止时，占用期限过后由其他线程重新取得。
+ * 发送结果的更新以尝试次数作为条件，已被重新取得的消息不会被旧的结果覆盖。
+ */
+public class OutboxDAO {
+
+    // 状态：等待发送
+    public static final String PENDING = "PENDING";
+    // 状态：处理中
+    public static final String PROCESSING = "PROCESSING";
+    // 状态：已发送
+    public static final String SENT = "SENT";
+    // 状态：放弃发送（死信）
+    public static final String DEAD = "DEAD";
+
+    // 错误信息的最大长度（与表定义一致）
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    /**
+     * 登记消息
+     * 使用调用方的连接，与业务数据在同一事务中登记（不提交也不关闭连接）
+     * @param conn 数据库连接
+     * @param systemType 外部系统类型
+     * @param payload 请求体
+     * @return 消息ID
+     * @throws SQLException SQL异常
+     */
+    public long insert(Connection conn, String systemType, String payload) throws SQLException {
+        String sql = "INSERT INTO integration_outbox (system_type, payload, status, attempts, next_attempt_at, created_at) " +
+                     "VALUES (?, ?, 'PENDING', 0, NOW(3), NOW(3))";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, systemType);
+            pstmt.setString(2, payload);
+            pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("アウトボックスのIDを取得できませんでした");
+                }
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * 取得到期的消息
+     * 等待发送和占用期限已过的处理中消息按下次发送时间顺序锁定，
+     * 标记为处理中、尝试次数加1、下次发送时间设为占用期限后提交。
+     * 到期的判断和占用期限都使用数据库的时钟，各服务器的时钟偏差不影响占用
+     * @param limit 最大件数
+     * @param leaseMillis 占用期限（毫秒）
+     * @return 取得的消息（尝试次数为本次的次数）
+     * @throws SQLException SQL异常
+     */
+    public List<OutboxMessage> claim(int limit, long leaseMillis) throws SQLException {
+        String selectSql = "SELECT id, system_type, payload, attempts, created_at FROM integration_outbox " +
+                           "WHERE status IN ('PENDING', 'PROCESSING') AND next_attempt_at <= NOW(3) " +
+                           "ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED";
+
+        List<OutboxMessage> messages = new ArrayList<>();
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+                    pstmt.setInt(1, limit);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            OutboxMessage message = new OutboxMessage();
+                            message.setId(rs.getLong("id"));
+                            message.setSystemType(rs.getString("system_type"));
+                            message.setPayload(rs.getString("payload"));
+                            message.setAttempts(rs.getInt("attempts") + 1);
+                            message.setCreatedAt(rs.getTimestamp("created_at"));
+                            message.setStatus(PROCESSING);
+                            messages.add(message);
+                        }
+                    }
+                }
+
+                if (!messages.isEmpty()) {
+                    StringBuilder updateSql = new StringBuilder(
+                        "UPDATE integration_outbox SET status = 'PROCESSING', attempts = attempts + 1, " +
+                        "next_attempt_at = NOW(3) + INTERVAL ? MICROSECOND WHERE id IN (");
+                    for (int i = 0; i < messages.size(); i++) {
+                        updateSql.append(i == 0 ? "?" : ", ?");
+                    }
+                    updateSql.append(')');
+                    try (PreparedStatement pstmt = conn.prepareStatement(updateSql.toString())) {
+                        pstmt.setLong(1, leaseMillis * 1000);
+                        for (int i = 0; i < messages.size(); i++) {
+                            pstmt.setLong(i + 2, messages.get(i).getId());
+                        }
+                        pstmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 延长发送中的消息的占用期限
+     * 已被重新取得（尝试次数不同）或已记录结果的消息不更新
+     * @param messages 发送中的消息（尝试次数为取得时的次数）
+     * @param leaseMillis 从现在起的占用期限（毫秒）
+     * @return 更新的件数
+     * @throws SQLException SQL异常
+     */
+    public int renewLease(List<OutboxMessage> messages, long leaseMillis) throws SQLException {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder(
+            "UPDATE integration_outbox SET next_attempt_at = NOW(3) + INTERVAL ? MICROSECOND " +
+            "WHERE status = 'PROCESSING' AND (");
+        for (int i = 0; i < messages.size(); i++) {
+            sql.append(i == 0 ? "(id = ? AND attempts = ?)" : " OR (id = ? AND attempts = ?)");
+        }
+        sql.append(')');
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            pstmt.setLong(1, leaseMillis * 1000);
+            for (int i = 0; i < messages.size(); i++) {
+                pstmt.setLong(2 * i + 2, messages.get(i).getId());
+                pstmt.setInt(2 * i + 3, messages.get(i).getAttempts());
+            }
+            return pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 标记为已发送
+     * @param id 消息ID
+     * @param attempts 取得时的尝试次数（已被重新取得时不更新）
+     * @param statusCode 响应状态码
+     * @return 更新成功返回true
+     * @throws SQLException SQL异常
+     */
+    public boolean markSent(long id, int attempts, int statusCode) throws SQLException {
+        String sql = "UPDATE integration_outbox SET status = 'SENT', next_attempt_at = NOW(3), sent_at = NOW(3), " +
+                     "last_status_code = ?, last_error = NULL WHERE id = ? AND status = 'PROCESSING' AND attempts = ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, statusCode);
+            pstmt.setLong(2, id);
+            pstmt.setInt(3, attempts);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 安排重试
+     * @param id 消息ID
+     * @param attempts 取得时的尝试次数（已被重新取得时不更新）
+     * @param delayMillis 到下次发送的时间（毫秒，从数据库的当前时间起算）
+     * @param statusCode 响应状态码（没有响应时为null）
+     * @param error 错误信息
+     * @return 更新成功返回true
+     * @throws SQLException SQL异常
+     */
+    public boolean reschedule(long id, int attempts, long delayMillis, Integer statusCode, String error)
+            throws SQLException {
+        return finish(id, attempts, PENDING, delayMillis, statusCode, error);
+    }
+
+    /**
+     * 标记为死信（不再发送）
+     * @param id 消息ID
+     * @param attempts 取得时的尝试次数（已被重新取得时不更新）
+     * @param statusCode 响应状态码（没有响应时为null）
+     * @param error 错误信息
+     * @return 更新成功返回true
+     * @throws SQLException SQL异常
+     */
+    public boolean markDead(long id, int attempts, Integer statusCode, String error) throws SQLException {
+        return finish(id, attempts, DEAD, 0, statusCode, error);
+    }
+
+    /**
+     * 更新未发送成功的消息
+     * @param id 消息ID
+     * @param attempts 取得时的尝试次数
+     * @param status 新状态
+     * @param delayMillis 到下次发送的时间（毫秒，从数据库的当前时间起算）
+     * @param statusCode 响应状态码
+     * @param error 错误信息
+     * @return 更新成功返回true
+     * @throws SQLException SQL异常
+     */
+    private boolean finish(long id, int attempts, String status, long delayMillis, Integer statusCode, String error)
+            throws SQLException {
+        String sql = "UPDATE integration_outbox SET status = ?, next_attempt_at = NOW(3) + INTERVAL ? MICROSECOND, " +
+                     "last_status_code = ?, last_error = ? WHERE id = ? AND status = 'PROCESSING' AND attempts = ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, status);
+            pstmt.setLong(2, delayMillis * 1000);
+            if (statusCode != null) {
+                pstmt.setInt(3, statusCode);
+            } else {
+                pstmt.setNull(3, Types.INTEGER);
+            }
+            pstmt.setString(4, error != null && error.length() > MAX_ERROR_LENGTH
+                               ? error.substring(0, MAX_ERROR_LENGTH) : error);
+            pstmt.setLong(5, id);
+            pstmt.setInt(6, attempts);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * 根据ID获取消息（不含请求体）
+     * @param id 消息ID
+     * @return 消息，不存在时返回null
+     * @throws SQLException SQL异常
+     */
+    public OutboxMessage findById(long id) throws SQLException {
+        String sql = "SELECT id, system_type, status, attempts, next_attempt_at, last_status_code, last_error, " +
+                     "created_at, sent_at FROM integration_outbox WHERE id = ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                OutboxMessage message = new OutboxMessage();
+                message.setId(rs.getLong("id"));
+                message.setSystemType(rs.getString("system_type"));
+                message.setStatus(rs.getString("status"));
+                message.setAttempts(rs.getInt("attempts"));
+                message.setNextAttemptAt(rs.getTimestamp("next_attempt_at"));
+                int statusCode = rs.getInt("last_status_code");
+                message.setLastStatusCode(rs.wasNull() ? null : statusCode);
+                message.setLastError(rs.getString("last_error"));
+                message.setCreatedAt(rs.getTimestamp("created_at"));
+                message.setSentAt(rs.getTimestamp("sent_at"));
+                return message;
+            }
+        }
+    }
+
+    /**
+     * 按系统和状态统计未完成的消息
+     * @return 系统类型 → 状态 → {件数, 最早的登记时间（毫秒）}
+     * @throws SQLException SQL异常
+     */
+    public Map<String, Map<String, long[]>> countUnsent() throws SQLException {
+        String sql = "SELECT system_type, status, COUNT(*) AS message_count, MIN(created_at) AS oldest " +
+                     "FROM integration_outbox WHERE status IN ('PENDING', 'PROCESSING', 'DEAD') " +
+                     "GROUP BY system_type, status";
+
+        Map<String, Map<String, long[]>> counts = new LinkedHashMap<>();
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                counts.computeIfAbsent(rs.getString("system_type"), key -> new LinkedHashMap<>())
+                      .put(rs.getString("status"),
+                           new long[] {rs.getLong("message_count"), rs.getTimestamp("oldest").getTime()});
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 删除保留期限已过的已发送消息
+     * @param sentBefore 在此时间之前发送的消息（毫秒）
+     * @param limit 一次删除的最大件数
+     * @return 删除的件数
+     * @throws SQLException SQL异常
+     */
+    public int deleteSent(long sentBefore, int limit) throws SQLException {
+        String sql = "DELETE FROM integration_outbox WHERE status = 'SENT' AND next_attempt_at < ? LIMIT ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, new Timestamp(sentBefore));
+            pstmt.setInt(2, limit);
+            return pstmt.executeUpdate();
+        }
+    }
+}
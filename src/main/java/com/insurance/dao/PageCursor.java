@@ -0,0 +1,95 @@
+package com.insurance.dao;
+
+// 导入Java字符集类，游标使用UTF-8编码
+import java.nio.charset.StandardCharsets;
+// 导入Java时间戳类，用于SQL参数
+import java.sql.Timestamp;
+// 导入Java Base64编码类，游标对客户端不透明
+import java.util.Base64;
+// 导入Java日期类
+import java.util.Date;
+
+/**
+ * 分页游标
+ * 记录上一页最后一行的(created_at, id)，下一页从该位置之后继续查询（键集分页）。
+ * 对客户端以URL安全的Base64字符串表示，客户端只需原样传回。
+ */
+public final class PageCursor {
+
+    // 游标内容的分隔符
+    private static final char SEPARATOR = ':';
+
+    // 最后一行的创建时间（毫秒）
+    private final long createdAt;
+    // 最后一行的ID
+    private final int id;
+
+    /**
+     * 创建分页游标
+     * @param createdAt 最后一行的创建时间（毫秒）
+     * @param id 最后一行的ID
+     */
+    public PageCursor(long createdAt, int id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    /**
+     * 根据最后一行创建分页游标
+     * @param createdAt 最后一行的创建时间（为null时按0处理）
+     * @param id 最后一行的ID
+     * @return 分页游标
+     */
+    public static PageCursor of(Date createdAt, int id) {
+        return new PageCursor(createdAt != null ? createdAt.getTime() : 0L, id);
+    }
+
+    /**
+     * 解析客户端传回的游标
+     * @param token 游标字符串
+     * @return 分页游标，token为空时返回null（第一页）
+     * @throws IllegalArgumentException 游标格式不正确时抛出
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int separator = value.indexOf(SEPARATOR);
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid page cursor: " + token);
+            }
+            return new PageCursor(Long.parseLong(value.substring(0, separator)),
+                                  Integer.parseInt(value.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            // Base64解码失败和数字格式错误（NumberFormatException）都在这里统一处理
+            throw new IllegalArgumentException("Invalid page cursor: " + token, e);
+        }
+    }
+
+    /**
+     * 编码为客户端使用的游标字符串
+     * @return 游标字符串
+     */
+    public String encode() {
+        String value = String.valueOf(createdAt) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 获取最后一行的创建时间（SQL参数用）
+     * @return 创建时间
+     */
+    public Timestamp getCreatedAt() {
+        return new Timestamp(createdAt);
+    }
+
+    /**
+     * 获取最后一行的ID
+     * @return ID
+     */
+    public int getId() {
+        return id;
+    }
+}
@@ -134,9 +134,11 @@ public class PremiumRateDAO {
     
     /**
      * 获取所有有效料率
+     * 用于重建料率表快照，查询失败时抛出异常（不能与“没有有效料率”混同）
      * @return 包含所有有效料率的列表
+     * @throws SQLException SQL异常
      */
-    public List<PremiumRate> getAllValidRates() {
+    public List<PremiumRate> getAllValidRates() throws SQLException {
         // 创建一个空的料率列表用于存储查询结果
         List<PremiumRate> rates = new ArrayList<>();
         // 定义SQL查询语句，查询所有有效料率，并关联保险商品信息
@@ -158,14 +160,93 @@ public class PremiumRateDAO {
                 // 将每行记录映射为PremiumRate对象并添加到列表中
                 rates.add(mapResultSetToPremiumRate(rs));
             }
+        }
+        // 返回料率列表
+        return rates;
+    }
+
+    /**
+     * 分页获取料率（键集分页）
+     * 按创建时间降序、ID降序排列，只读取游标之后的size+1行
+     * @param productId 商品ID过滤条件（0表示不过滤）
+     * @param validOnly 是否只获取当前有效的料率
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param size 页大小
+     * @return 当前页的料率和下一页的游标
+     */
+    public KeysetPage<PremiumRate> getPremiumRatePage(int productId, boolean validOnly, PageCursor cursor, int size) {
+        // 将页大小限制在允许范围内
+        int pageSize = KeysetQuery.normalizeSize(size);
+        // 创建一个空的料率列表用于存储查询结果
+        List<PremiumRate> rates = new ArrayList<>(pageSize + 1);
+        // 定义SQL查询语句，查询游标之后的料率，并关联保险商品信息
+        String sql = "SELECT pr.*, ip.product_name, ip.product_code " +
+                   "FROM premium_rates pr " +
+                   "LEFT JOIN insurance_products ip ON pr.product_id = ip.id " +
+                   buildPageFilter(productId, validOnly, cursor) +
+                   KeysetQuery.orderAndLimit("pr");
+
+        // 使用try-with-resources自动管理数据库连接和预编译语句
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            // 设置过滤条件、游标参数和读取行数（多读一行用于判断是否有下一页）
+            int index = 1;
+            if (productId > 0) {
+                pstmt.setInt(index++, productId);
+            }
+            if (cursor != null) {
+                index = KeysetQuery.bindCursor(pstmt, index, cursor);
+            }
+            pstmt.setInt(index, pageSize + 1);
+
+            // 执行查询并遍历结果集
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    // 将每行记录映射为PremiumRate对象并添加到列表中
+                    rates.add(mapResultSetToPremiumRate(rs));
+                }
+            }
         } catch (SQLException e) {
             // 捕获并打印SQL异常
             e.printStackTrace();
         }
-        // 返回料率列表
-        return rates;
+        // 生成分页结果
+        return KeysetQuery.toPage(rates, pageSize, rate -> PageCursor.of(rate.getCreatedAt(), rate.getId()));
     }
-    
+
+    /**
+     * 获取符合过滤条件的料率总数（结果缓存一段时间）
+     * @param productId 商品ID过滤条件（0表示不过滤）
+     * @param validOnly 是否只统计当前有效的料率
+     * @return 料率总数，查询失败时返回-1
+     */
+    public long countPremiumRates(int productId, boolean validOnly) {
+        String sql = "SELECT COUNT(*) FROM premium_rates pr " + buildPageFilter(productId, validOnly, null);
+        return productId > 0 ? KeysetQuery.count(sql, productId) : KeysetQuery.count(sql);
+    }
+
+    /**
+     * 生成分页查询的WHERE子句
+     * @param productId 商品ID过滤条件（0表示不过滤）
+     * @param validOnly 是否只查询当前有效的料率
+     * @param cursor 分页游标（为null时不加游标条件）
+     * @return WHERE子句，没有条件时返回空字符串
+     */
+    private String buildPageFilter(int productId, boolean validOnly, PageCursor cursor) {
+        List<String> conditions = new ArrayList<>(3);
+        if (productId > 0) {
+            conditions.add("pr.product_id = ?");
+        }
+        if (validOnly) {
+            conditions.add("pr.valid_from <= CURDATE() AND (pr.valid_to IS NULL OR pr.valid_to >= CURDATE())");
+        }
+        if (cursor != null) {
+            conditions.add(KeysetQuery.seekCondition("pr"));
+        }
+        return conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+    }
+
     /**
      * 添加新料率
      * @param rate 要添加的料率对象
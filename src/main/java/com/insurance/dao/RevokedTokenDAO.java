@@ -0,0 +1,68 @@
+package com.insurance.dao;
+
+import com.insurance.util.DatabaseUtil;
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 已吊销令牌数据访问对象
+ * 保存登出等操作吊销的认证令牌ID，各节点定期读取后在内存中校验
+ */
+public class RevokedTokenDAO {
+
+    /**
+     * 登记已吊销的令牌
+     * 同一令牌重复登记时忽略
+     * @param tokenId 令牌ID
+     * @param expiresAt 令牌的有效期限（毫秒）
+     * @throws SQLException SQL异常
+     */
+    public void insert(String tokenId, long expiresAt) throws SQLException {
+        String sql = "INSERT IGNORE INTO revoked_tokens (token_id, expires_at) VALUES (?, ?)";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, tokenId);
+            pstmt.setTimestamp(2, new Timestamp(expiresAt));
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 获取尚未过期的已吊销令牌
+     * @return 令牌ID到有效期限（毫秒）的映射
+     * @throws SQLException SQL异常
+     */
+    public Map<String, Long> findActive() throws SQLException {
+        String sql = "SELECT token_id, expires_at FROM revoked_tokens WHERE expires_at > ?";
+        Map<String, Long> tokens = new HashMap<>();
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    tokens.put(rs.getString("token_id"), rs.getTimestamp("expires_at").getTime());
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 删除已过期的吊销记录
+     * 令牌本身已过期，不再需要吊销记录
+     * @return 删除的件数
+     * @throws SQLException SQL异常
+     */
+    public int deleteExpired() throws SQLException {
+        String sql = "DELETE FROM revoked_tokens WHERE expires_at <= ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+            return pstmt.executeUpdate();
+        }
+    }
+}
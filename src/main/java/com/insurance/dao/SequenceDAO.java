@@ -0,0 +1,111 @@
+package com.insurance.dao;
+
+import com.insurance.util.DatabaseUtil;
+import java.sql.*;
+import java.util.function.LongSupplier;
+
+/**
+ * 编号序列数据访问对象
+ * number_sequences表按序列名保存下次分配的起始值，每次预约一整块编号。
+ *
+ * 预约时以SELECT ... FOR UPDATE锁定序列的行，把下次的起始值推进一块后提交，
+ * 多台服务器同时预约也各自得到不重叠的区间。第一次使用的序列在锁定的事务之外
+ * 以INSERT IGNORE登记，避免多台服务器同时登记时间隙锁互相等待造成死锁。行锁只持有一次更新的时间，
+ * 编号本身在内存中分配，不访问数据库。
+ */
+public class SequenceDAO {
+
+    /**
+     * 预约编号块
+     * 序列的行不存在时以初始值登记后再预约
+     * @param sequenceName 序列名
+     * @param blockSize 块的大小
+     * @param initialValue 序列的初始值（只在行不存在时调用）
+     * @return 预约到的块的起始值（到起始值 + blockSize - 1为止可以使用）
+     * @throws SQLException SQL异常
+     */
+    public long reserve(String sequenceName, int blockSize, LongSupplier initialValue) throws SQLException {
+        Long start = reserveExisting(sequenceName, blockSize);
+        if (start == null) {
+            // 第一次使用的序列：在锁定的事务之外登记初始值后再预约
+            register(sequenceName, initialValue);
+            start = reserveExisting(sequenceName, blockSize);
+            if (start == null) {
+                throw new SQLException("シーケンスを登録できませんでした: " + sequenceName);
+            }
+        }
+        return start;
+    }
+
+    /**
+     * 预约已登记的序列的编号块
+     * 行不存在时回滚，释放SELECT ... FOR UPDATE取得的间隙锁
+     * @param sequenceName 序列名
+     * @param blockSize 块的大小
+     * @return 预约到的块的起始值（行不存在时为null）
+     * @throws SQLException SQL异常
+     */
+    private Long reserveExisting(String sequenceName, int blockSize) throws SQLException {
+        String selectSql = "SELECT next_value FROM number_sequences WHERE sequence_name = ? FOR UPDATE";
+        String updateSql = "UPDATE number_sequences SET next_value = ? WHERE sequence_name = ?";
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Long start;
+                try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+                    start = selectNextValue(pstmt, sequenceName);
+                }
+                if (start == null) {
+                    conn.rollback();
+                    return null;
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
+                    pstmt.setLong(1, start + blockSize);
+                    pstmt.setString(2, sequenceName);
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+                return start;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * 登记序列的初始值
+     * 以自动提交单独执行，其他服务器同时登记时以先登记的为准
+     * @param sequenceName 序列名
+     * @param initialValue 序列的初始值
+     * @throws SQLException SQL异常
+     */
+    private void register(String sequenceName, LongSupplier initialValue) throws SQLException {
+        String insertSql = "INSERT IGNORE INTO number_sequences (sequence_name, next_value) VALUES (?, ?)";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
+            pstmt.setString(1, sequenceName);
+            pstmt.setLong(2, initialValue.getAsLong());
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 锁定序列的行并获取下次的起始值
+     * @param pstmt 查询语句
+     * @param sequenceName 序列名
+     * @return 下次的起始值（行不存在时为null）
+     * @throws SQLException SQL异常
+     */
+    private Long selectNextValue(PreparedStatement pstmt, String sequenceName) throws SQLException {
+        pstmt.setString(1, sequenceName);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong("next_value") : null;
+        }
+    }
+}
@@ -50,6 +50,49 @@ public class SystemLogDAO {
         }
     }
     
+    /**
+     * 批量插入系统日志
+     * 用一条多行INSERT语句（VALUES (...),(...)）写入多条日志，供异步日志写入线程使用
+     * @param logs 要插入的系统日志列表
+     * @return 插入的行数
+     * @throws SQLException 插入失败时抛出，由调用方决定重试或转存
+     */
+    public int insertLogs(List<SystemLog> logs) throws SQLException {
+        // 没有日志时不访问数据库
+        if (logs.isEmpty()) {
+            return 0;
+        }
+
+        // 构建多行INSERT语句，每条日志对应一组占位符
+        StringBuilder sql = new StringBuilder("INSERT INTO system_logs (log_level, log_message, module, username, " +
+                   "ip_address, log_time, request_id, session_id, user_agent) VALUES ");
+        for (int i = 0; i < logs.size(); i++) {
+            sql.append(i == 0 ? "" : ",").append("(?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+
+        // 使用try-with-resources自动关闭数据库连接和预编译语句
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            // 依次设置每条日志的参数
+            int index = 1;
+            for (SystemLog log : logs) {
+                pstmt.setString(index++, log.getLogLevel());        // 日志级别
+                pstmt.setString(index++, log.getLogMessage());      // 日志消息
+                pstmt.setString(index++, log.getModule());          // 模块名称
+                pstmt.setString(index++, log.getUsername());        // 用户名
+                pstmt.setString(index++, log.getIpAddress());       // IP地址
+                pstmt.setTimestamp(index++, new Timestamp(log.getLogTime().getTime())); // 日志时间
+                pstmt.setString(index++, log.getRequestId());       // 请求ID
+                pstmt.setString(index++, log.getSessionId());       // 会话ID
+                pstmt.setString(index++, log.getUserAgent());       // 用户代理
+            }
+
+            // 执行插入操作并返回影响的行数
+            return pstmt.executeUpdate();
+        }
+    }
+
     /**
      * 根据ID获取日志
      * @param id 日志ID
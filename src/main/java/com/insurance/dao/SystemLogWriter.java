@@ -0,0 +1,557 @@
+package com.insurance.dao;
+
+import com.insurance.model.SystemLog;
+import com.insurance.util.BoundedRingBuffer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 系统日志异步写入器
+ * 请求线程只把日志放入有界无锁环形缓冲区，由后台写入线程批量取出并用多行INSERT写入system_logs，
+ * 请求的响应时间不再包含审计日志的数据库写入。
+ *
+ * 缓冲区满时的处理由overflowPolicy决定：
+ *   BLOCK      - 等待缓冲区有空位（最多blockTimeoutMs），超时后丢弃
+ *   DROP_DEBUG - DEBUG日志直接丢弃，其他级别与BLOCK相同
+ *   SPILL      - 写入磁盘上的转存文件，写入线程空闲时再导入数据库
+ * 数据库写入失败的批次也写入转存文件，不会丢失。
+ * 配置从类路径上的/config/system-log.properties读取，同名系统属性优先。
+ */
+public class SystemLogWriter {
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public enum OverflowPolicy {
+        // 等待缓冲区有空位
+        BLOCK,
+        // 丢弃DEBUG日志，其他级别等待
+        DROP_DEBUG,
+        // 转存到磁盘文件
+        SPILL
+    }
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/system-log.properties";
+    // 转存文件导入失败后的重试间隔（毫秒）
+    private static final long REPLAY_RETRY_INTERVAL_MS = 30 * 1000;
+    // 停止时等待写入线程写完剩余日志的最长时间（毫秒）
+    private static final long SHUTDOWN_TIMEOUT_MS = 10 * 1000;
+    // 转存文件中表示null的值
+    private static final String NULL_FIELD = "\\N";
+
+    // 配置属性
+    private static final Properties config = new Properties();
+    // 系统日志数据访问对象
+    private static final SystemLogDAO systemLogDAO = new SystemLogDAO();
+    // 转存文件的写入锁
+    private static final Object spillLock = new Object();
+
+    // 日志缓冲区
+    private static final BoundedRingBuffer<SystemLog> buffer;
+    // 每次写入的最大日志数
+    private static final int batchSize;
+    // 缓冲区为空时写入线程的等待间隔（毫秒）
+    private static final long flushIntervalMs;
+    // BLOCK策略的最长等待时间（毫秒）
+    private static final long blockTimeoutMs;
+    // 缓冲区满时的处理策略
+    private static final OverflowPolicy overflowPolicy;
+    // 转存文件
+    private static final File spillFile;
+    // 导入中的转存文件
+    private static final File replayFile;
+    // 后台写入线程
+    private static final Thread writerThread;
+
+    // 是否在运行中
+    private static volatile boolean running = true;
+    // 下次可以导入转存文件的时间（毫秒）
+    private static volatile long nextReplayAt = 0;
+
+    // 放入缓冲区的日志数
+    private static final LongAdder enqueuedCount = new LongAdder();
+    // 写入数据库的日志数
+    private static final LongAdder writtenCount = new LongAdder();
+    // 丢弃的日志数
+    private static final LongAdder droppedCount = new LongAdder();
+    // 转存到文件的日志数
+    private static final LongAdder spilledCount = new LongAdder();
+    // 写入失败的批次数
+    private static final LongAdder failedBatches = new LongAdder();
+    // 写入的批次数
+    private static final LongAdder writeBatches = new LongAdder();
+    // 写入总耗时（纳秒）
+    private static final LongAdder totalWriteNanos = new LongAdder();
+    // 最大写入耗时（纳秒）
+    private static final AtomicLong maxWriteNanos = new AtomicLong();
+    // 缓冲区的最大使用量
+    private static final AtomicLong maxQueueDepth = new AtomicLong();
+
+    // 静态代码块，加载配置并启动写入线程
+    static {
+        loadConfig();
+        buffer = new BoundedRingBuffer<>(getIntConfig("systemlog.async.capacity"));
+        batchSize = getIntConfig("systemlog.async.batchSize");
+        flushIntervalMs = getIntConfig("systemlog.async.flushIntervalMs");
+        blockTimeoutMs = getIntConfig("systemlog.async.blockTimeoutMs");
+        overflowPolicy = OverflowPolicy.valueOf(getConfig("systemlog.async.overflowPolicy").trim().toUpperCase());
+        spillFile = new File(getConfig("systemlog.async.spillFile"));
+        replayFile = new File(spillFile.getPath() + ".replay");
+
+        writerThread = new Thread(SystemLogWriter::runWriter, "system-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private SystemLogWriter() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 缓冲区容量（向上取整为2的幂）
+        config.setProperty("systemlog.async.capacity", "8192");
+        // 每次写入的最大日志数
+        config.setProperty("systemlog.async.batchSize", "500");
+        // 缓冲区为空时的等待间隔（毫秒）
+        config.setProperty("systemlog.async.flushIntervalMs", "200");
+        // 缓冲区满时的处理策略（BLOCK / DROP_DEBUG / SPILL）
+        config.setProperty("systemlog.async.overflowPolicy", "DROP_DEBUG");
+        // BLOCK策略的最长等待时间（毫秒）
+        config.setProperty("systemlog.async.blockTimeoutMs", "1000");
+        // 转存文件路径
+        config.setProperty("systemlog.async.spillFile", "logs/system-log-spill.log");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = SystemLogWriter.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load system log config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入系统日志（异步）
+     * 放入缓冲区后立即返回，数据库写入由后台线程完成
+     * @param log 系统日志
+     * @return 已接收（放入缓冲区或转存文件）返回true，被丢弃返回false
+     */
+    public static boolean write(SystemLog log) {
+        if (log.getLogTime() == null) {
+            log.setLogTime(new Date());
+        }
+        // 停止后不再放入缓冲区，直接转存
+        if (!running) {
+            return spill(Collections.singletonList(log));
+        }
+        if (offer(log)) {
+            return true;
+        }
+        return handleOverflow(log);
+    }
+
+    /**
+     * 停止写入器
+     * 应用停止时调用：写入线程写完缓冲区中的全部日志后结束，超时未写完的日志转存到文件
+     */
+    public static void shutdown() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 写入线程未能写完时，剩余日志转存
+        List<SystemLog> remaining = new ArrayList<>();
+        buffer.drainTo(remaining, Integer.MAX_VALUE);
+        if (!remaining.isEmpty()) {
+            spill(remaining);
+        }
+    }
+
+    /**
+     * 获取写入器统计信息
+     * 包含缓冲区使用量、写入件数、丢弃件数、转存件数和写入耗时
+     * @return Map<String, Object> 统计信息
+     */
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        // 缓冲区状态
+        stats.put("overflowPolicy", overflowPolicy.name());
+        stats.put("capacity", buffer.capacity());
+        stats.put("queueDepth", buffer.size());
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        // 件数统计
+        stats.put("enqueued", enqueuedCount.sum());
+        stats.put("written", writtenCount.sum());
+        stats.put("dropped", droppedCount.sum());
+        stats.put("spilled", spilledCount.sum());
+        // 写入统计
+        long batches = writeBatches.sum();
+        stats.put("writeBatches", batches);
+        stats.put("failedBatches", failedBatches.sum());
+        stats.put("averageWriteMillis", batches == 0 ? 0.0 : totalWriteNanos.sum() / (double) batches / 1000000.0);
+        stats.put("maxWriteMillis", maxWriteNanos.get() / 1000000.0);
+        return stats;
+    }
+
+    /**
+     * 放入缓冲区
+     * @param log 系统日志
+     * @return 放入成功返回true
+     */
+    private static boolean offer(SystemLog log) {
+        if (!buffer.offer(log)) {
+            return false;
+        }
+        enqueuedCount.increment();
+        // 记录最大使用量，积压达到一个批次时唤醒写入线程
+        int depth = buffer.size();
+        long currentMax;
+        while (depth > (currentMax = maxQueueDepth.get())) {
+            if (maxQueueDepth.compareAndSet(currentMax, depth)) {
+                break;
+            }
+        }
+        if (depth >= batchSize) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    /**
+     * 缓冲区满时的处理
+     * @param log 系统日志
+     * @return 已接收返回true，被丢弃返回false
+     */
+    private static boolean handleOverflow(SystemLog log) {
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            return spill(Collections.singletonList(log));
+        }
+        if (overflowPolicy == OverflowPolicy.DROP_DEBUG && "DEBUG".equalsIgnoreCase(log.getLogLevel())) {
+            droppedCount.increment();
+            return false;
+        }
+
+        // 等待写入线程腾出空位
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+        while (System.nanoTime() < deadline) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            if (offer(log)) {
+                return true;
+            }
+        }
+        droppedCount.increment();
+        System.err.println("System log buffer full, log dropped: " + log.getLogMessage());
+        return false;
+    }
+
+    /**
+     * 写入线程主循环
+     * 从缓冲区批量取出日志写入数据库；缓冲区为空时导入转存文件或等待
+     */
+    private static void runWriter() {
+        List<SystemLog> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            buffer.drainTo(batch, batchSize);
+            if (batch.isEmpty()) {
+                if (!replaySpillFile()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                }
+                continue;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 写入一个批次
+     * 写入失败的批次转存到文件，稍后重新导入
+     * @param batch 日志批次
+     */
+    private static void flush(List<SystemLog> batch) {
+        long start = System.nanoTime();
+        try {
+            systemLogDAO.insertLogs(batch);
+            writtenCount.add(batch.size());
+        } catch (SQLException e) {
+            failedBatches.increment();
+            System.err.println("System log batch insert failed (" + batch.size() + " logs spilled): " + e.getMessage());
+            // 数据库恢复前不导入转存文件
+            nextReplayAt = System.currentTimeMillis() + REPLAY_RETRY_INTERVAL_MS;
+            spill(batch);
+        } finally {
+            recordWrite(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 记录写入耗时
+     * @param elapsedNanos 写入耗时（纳秒）
+     */
+    private static void recordWrite(long elapsedNanos) {
+        writeBatches.increment();
+        totalWriteNanos.add(elapsedNanos);
+        long currentMax;
+        while (elapsedNanos > (currentMax = maxWriteNanos.get())) {
+            if (maxWriteNanos.compareAndSet(currentMax, elapsedNanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 转存日志到文件
+     * 每条日志一行，字段以TAB分隔
+     * @param logs 要转存的日志
+     * @return 转存成功返回true
+     */
+    private static boolean spill(List<SystemLog> logs) {
+        synchronized (spillLock) {
+            File dir = spillFile.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(spillFile, true), StandardCharsets.UTF_8))) {
+                for (SystemLog log : logs) {
+                    writer.write(toSpillLine(log));
+                    writer.write('\n');
+                }
+            } catch (IOException e) {
+                droppedCount.add(logs.size());
+                System.err.println("Failed to spill system logs (" + logs.size() + " logs dropped): " + e.getMessage());
+                return false;
+            }
+        }
+        spilledCount.add(logs.size());
+        return true;
+    }
+
+    /**
+     * 导入转存文件
+     * 缓冲区为空时由写入线程调用。转存文件先改名为导入用文件，避免与新的转存冲突；
+     * 导入中途失败时，未导入的行写回导入用文件，下次从该处继续
+     * @return 导入了日志返回true
+     */
+    private static boolean replaySpillFile() {
+        if (System.currentTimeMillis() < nextReplayAt) {
+            return false;
+        }
+        if (!replayFile.exists()) {
+            synchronized (spillLock) {
+                if (!spillFile.exists() || spillFile.length() == 0 || !spillFile.renameTo(replayFile)) {
+                    return false;
+                }
+            }
+        }
+
+        List<String> failedLines = null;
+        int replayed = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(replayFile), StandardCharsets.UTF_8))) {
+            List<SystemLog> batch = new ArrayList<>(batchSize);
+            List<String> lines = new ArrayList<>(batchSize);
+            String line;
+            while (true) {
+                line = reader.readLine();
+                if (line != null && !line.isEmpty()) {
+                    try {
+                        batch.add(fromSpillLine(line));
+                        lines.add(line);
+                    } catch (RuntimeException e) {
+                        // 无法解析的行跳过，避免阻塞之后的导入
+                        droppedCount.increment();
+                        System.err.println("Skipped malformed system log spill line: " + e.getMessage());
+                    }
+                }
+                if (batch.size() >= batchSize || (line == null && !batch.isEmpty())) {
+                    try {
+                        systemLogDAO.insertLogs(batch);
+                        writtenCount.add(batch.size());
+                        replayed += batch.size();
+                    } catch (SQLException e) {
+                        // 保留本批次和之后的行
+                        failedLines = lines;
+                        while ((line = reader.readLine()) != null) {
+                            failedLines.add(line);
+                        }
+                        nextReplayAt = System.currentTimeMillis() + REPLAY_RETRY_INTERVAL_MS;
+                        System.err.println("System log spill replay failed: " + e.getMessage());
+                        break;
+                    }
+                    batch = new ArrayList<>(batchSize);
+                    lines = new ArrayList<>(batchSize);
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            nextReplayAt = System.currentTimeMillis() + REPLAY_RETRY_INTERVAL_MS;
+            System.err.println("Failed to read system log spill file: " + e.getMessage());
+            return replayed > 0;
+        }
+
+        if (failedLines == null) {
+            replayFile.delete();
+        } else {
+            rewriteReplayFile(failedLines);
+        }
+        return replayed > 0;
+    }
+
+    /**
+     * 导入用文件写回未导入的行
+     * @param lines 未导入的行
+     */
+    private static void rewriteReplayFile(List<String> lines) {
+        File temp = new File(replayFile.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                 new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to rewrite system log replay file: " + e.getMessage());
+            return;
+        }
+        if (!replayFile.delete() || !temp.renameTo(replayFile)) {
+            System.err.println("Failed to replace system log replay file: " + replayFile.getPath());
+        }
+    }
+
+    /**
+     * 将日志转换为转存文件的一行
+     * @param log 系统日志
+     * @return TAB分隔的行
+     */
+    private static String toSpillLine(SystemLog log) {
+        StringBuilder line = new StringBuilder(256);
+        appendField(line, log.getLogLevel()).append('\t');
+        appendField(line, log.getLogMessage()).append('\t');
+        appendField(line, log.getModule()).append('\t');
+        appendField(line, log.getUsername()).append('\t');
+        appendField(line, log.getIpAddress()).append('\t');
+        line.append(log.getLogTime().getTime()).append('\t');
+        appendField(line, log.getRequestId()).append('\t');
+        appendField(line, log.getSessionId()).append('\t');
+        appendField(line, log.getUserAgent());
+        return line.toString();
+    }
+
+    /**
+     * 将转存文件的一行还原为日志
+     * @param line TAB分隔的行
+     * @return 系统日志
+     */
+    private static SystemLog fromSpillLine(String line) {
+        String[] fields = line.split("\t", -1);
+        SystemLog log = new SystemLog();
+        log.setLogLevel(unescape(fields[0]));
+        log.setLogMessage(unescape(fields[1]));
+        log.setModule(unescape(fields[2]));
+        log.setUsername(unescape(fields[3]));
+        log.setIpAddress(unescape(fields[4]));
+        log.setLogTime(new Date(Long.parseLong(fields[5])));
+        log.setRequestId(unescape(fields[6]));
+        log.setSessionId(unescape(fields[7]));
+        log.setUserAgent(unescape(fields[8]));
+        return log;
+    }
+
+    /**
+     * 追加转义后的字段（反斜杠、TAB、换行）
+     * @param line 行
+     * @param value 字段值
+     * @return 行
+     */
+    private static StringBuilder appendField(StringBuilder line, String value) {
+        if (value == null) {
+            return line.append(NULL_FIELD);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': line.append("\\\\"); break;
+                case '\t': line.append("\\t"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                default: line.append(c);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * 还原转义后的字段
+     * @param field 字段
+     * @return 字段值
+     */
+    private static String unescape(String field) {
+        if (NULL_FIELD.equals(field)) {
+            return null;
+        }
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder value = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                value.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取整数配置值
+     * @param key 配置键
+     * @return 整数配置值
+     */
+    private static int getIntConfig(String key) {
+        return Integer.parseInt(getConfig(key).trim());
+    }
+}
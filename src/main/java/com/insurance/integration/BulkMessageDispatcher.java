@@ -0,0 +1,775 @@
+package com.insurance.integration;
+
+import com.insurance.monitor.LatencyHistogram;
+import com.insurance.monitor.MetricsRegistry;
+import com.insurance.util.LogUtil;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * 批量消息发送调度器
+ * 缴费提醒、宣传邮件等大量的邮件和短信通过服务商的批量发送接口分批发送。
+ *
+ * 每个服务商（邮件服务、短信服务）有独立的令牌桶和工作线程：
+ * 令牌按消息数扣除，整体发送速率不超过服务商的速率限制；
+ * 同时发送中的批次数不超过工作线程数。批次不占用单条调用的隔板，
+ * 使用批量接口单独的熔断器，不影响单条邮件和短信的发送。
+ * 批次整体失败（连接失败、超时、5xx、408、429）时按退避间隔重试，
+ * 同一批次的每次发送使用相同的Idempotency-Key，超时后服务商已受理的批次不会重复发送；
+ * 服务商按消息返回的拒绝结果记录为该收件人的失败，不重试。
+ *
+ * 发送状态按收件人保存在内存中（保留最近的活动），服务器重启后不保留；
+ * 需要保证送达的单条消息使用发件箱（IntegrationOutbox）。
+ * 配置从类路径上的/config/bulk-messaging.properties读取，
+ * bulk.<系统>.<项目>优先于bulk.<项目>，同名系统属性优先于配置文件。
+ */
+public final class BulkMessageDispatcher {
+
+    // 收件人状态：等待发送
+    public static final String PENDING = "PENDING";
+    // 收件人状态：服务商已受理
+    public static final String SENT = "SENT";
+    // 收件人状态：发送失败
+    public static final String FAILED = "FAILED";
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/bulk-messaging.properties";
+    // 保存的错误信息的最大长度
+    private static final int MAX_ERROR_LENGTH = 200;
+
+    // 调度器配置
+    private static final Properties config = new Properties();
+    // 批次的最大尝试次数
+    private static final int maxAttempts;
+    // 重试间隔的基数（毫秒）
+    private static final long backoffBaseMillis;
+    // 重试间隔的上限（毫秒）
+    private static final long backoffMaxMillis;
+    // 保留的活动数（超过时删除最早完成的活动）
+    private static final int historySize;
+    // 一个活动的最大收件人数
+    private static final int maxRecipients;
+
+    // 系统类型 → 服务商
+    private static final Map<ExternalSystemIntegration.SystemType, Provider> providers =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 活动ID → 活动（按登记顺序，访问时以自身加锁）
+    private static final Map<Long, Campaign> campaigns = new LinkedHashMap<>();
+    // 活动ID的序列
+    private static final AtomicLong campaignSequence = new AtomicLong();
+    // 本进程的标识（活动ID在各服务器、每次启动时都从1开始，幂等键加上该标识避免重复）
+    private static final String instanceId = UUID.randomUUID().toString();
+
+    // 外部系统集成对象（首次使用时创建）
+    private static ExternalSystemIntegration integration;
+    // 是否正在停止
+    private static volatile boolean stopping = false;
+
+    // 静态代码块，加载配置并创建各服务商的令牌桶和工作线程
+    static {
+        loadConfig();
+        maxAttempts = Math.max(1, Integer.parseInt(getConfig("bulk.maxAttempts").trim()));
+        backoffBaseMillis = Long.parseLong(getConfig("bulk.backoff.baseMillis").trim());
+        backoffMaxMillis = Long.parseLong(getConfig("bulk.backoff.maxMillis").trim());
+        historySize = Integer.parseInt(getConfig("bulk.historySize").trim());
+        maxRecipients = Integer.parseInt(getConfig("bulk.maxRecipients").trim());
+
+        providers.put(ExternalSystemIntegration.SystemType.EMAIL_SERVICE,
+                      new Provider(ExternalSystemIntegration.SystemType.EMAIL_SERVICE));
+        providers.put(ExternalSystemIntegration.SystemType.SMS_SERVICE,
+                      new Provider(ExternalSystemIntegration.SystemType.SMS_SERVICE));
+    }
+
+    private BulkMessageDispatcher() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 每批的消息数
+        config.setProperty("bulk.batchSize", "100");
+        // 每秒发送的消息数上限
+        config.setProperty("bulk.ratePerSecond", "100");
+        // 同时发送中的批次数
+        config.setProperty("bulk.concurrency", "4");
+        // 邮件服务的批量接口每批最多500件，每秒1000件
+        config.setProperty("bulk.email_service.batchSize", "500");
+        config.setProperty("bulk.email_service.ratePerSecond", "1000");
+        // 批次的最大尝试次数
+        config.setProperty("bulk.maxAttempts", "5");
+        // 重试间隔的基数（毫秒），按失败次数加倍
+        config.setProperty("bulk.backoff.baseMillis", "1000");
+        // 重试间隔的上限（毫秒）
+        config.setProperty("bulk.backoff.maxMillis", "60000");
+        // 保留的活动数
+        config.setProperty("bulk.historySize", "20");
+        // 一个活动的最大收件人数
+        config.setProperty("bulk.maxRecipients", "200000");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = BulkMessageDispatcher.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load bulk messaging config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取服务商的整数配置值
+     * 系统单独的配置优先于共通配置
+     * @param system 系统名（小写）
+     * @param key 配置项目名
+     * @return 配置值
+     */
+    private static int intConfig(String system, String key) {
+        String value = getConfig("bulk." + system + "." + key);
+        return Integer.parseInt((value != null ? value : getConfig("bulk." + key)).trim());
+    }
+
+    /**
+     * 获取外部系统集成对象
+     * @return 外部系统集成对象
+     */
+    private static synchronized ExternalSystemIntegration integration() {
+        if (integration == null) {
+            integration = new ExternalSystemIntegration();
+        }
+        return integration;
+    }
+
+    /**
+     * 获取一个活动的最大收件人数
+     * @return 最大收件人数
+     */
+    public static int getMaxRecipients() {
+        return maxRecipients;
+    }
+
+    /**
+     * 批量发送邮件
+     * 按服务商的批次大小分批后交给工作线程，立即返回活动
+     * @param name 活动名
+     * @param messages 邮件（每个收件人一件）
+     * @return 活动（用于查询发送状态）
+     */
+    public static Campaign submitEmails(String name, List<ExternalSystemIntegration.EmailRequest> messages) {
+        List<ExternalSystemIntegration.EmailRequest> copy = new ArrayList<>(messages);
+        String[] recipients = new String[copy.size()];
+        for (int i = 0; i < recipients.length; i++) {
+            recipients[i] = copy.get(i).getTo();
+        }
+        ExternalSystemIntegration target = integration();
+        return submit(ExternalSystemIntegration.SystemType.EMAIL_SERVICE, name, recipients,
+                      index -> target.emailBody(copy.get(index)));
+    }
+
+    /**
+     * 批量发送短信
+     * 按服务商的批次大小分批后交给工作线程，立即返回活动
+     * @param name 活动名
+     * @param messages 短信（每个收件人一件）
+     * @return 活动（用于查询发送状态）
+     */
+    public static Campaign submitSms(String name, List<ExternalSystemIntegration.SmsRequest> messages) {
+        List<ExternalSystemIntegration.SmsRequest> copy = new ArrayList<>(messages);
+        String[] recipients = new String[copy.size()];
+        for (int i = 0; i < recipients.length; i++) {
+            recipients[i] = copy.get(i).getTo();
+        }
+        ExternalSystemIntegration target = integration();
+        return submit(ExternalSystemIntegration.SystemType.SMS_SERVICE, name, recipients,
+                      index -> target.smsBody(copy.get(index)));
+    }
+
+    /**
+     * 登记活动并分批提交
+     * @param type 系统类型
+     * @param name 活动名
+     * @param recipients 收件人（序号顺序）
+     * @param body 序号 → 消息的JSON
+     * @return 活动
+     */
+    private static Campaign submit(ExternalSystemIntegration.SystemType type, String name, String[] recipients,
+                                   IntFunction<String> body) {
+        int count = recipients.length;
+        if (count == 0 || count > maxRecipients) {
+            throw new IllegalArgumentException("Recipient count must be 1.." + maxRecipients + ": " + count);
+        }
+        if (stopping) {
+            throw new IllegalStateException("Bulk dispatcher is shutting down");
+        }
+
+        Provider provider = providers.get(type);
+        int batches = (count + provider.batchSize - 1) / provider.batchSize;
+        Campaign campaign = new Campaign(campaignSequence.incrementAndGet(), name, type, batches,
+                                         recipients, body);
+        register(campaign);
+
+        LogUtil.info("一括送信を開始しました: id=" + campaign.getId() + ", 名前: " + name + ", システム: " + type +
+                     ", 件数: " + count + ", バッチ数: " + batches);
+        for (int from = 0; from < count; from += provider.batchSize) {
+            int batchFrom = from;
+            int batchTo = Math.min(from + provider.batchSize, count);
+            try {
+                provider.workers.execute(() -> sendBatch(provider, campaign, batchFrom, batchTo));
+            } catch (RejectedExecutionException e) {
+                // 停止中无法接受的批次
+                complete(provider, campaign, batchFrom, batchTo, null, "发送已停止");
+            }
+        }
+        return campaign;
+    }
+
+    /**
+     * 登记活动
+     * 超过保留数时删除最早完成的活动（发送中的活动不删除）
+     * @param campaign 活动
+     */
+    private static void register(Campaign campaign) {
+        synchronized (campaigns) {
+            int excess = campaigns.size() + 1 - historySize;
+            Iterator<Campaign> iterator = campaigns.values().iterator();
+            while (excess > 0 && iterator.hasNext()) {
+                if (iterator.next().isFinished()) {
+                    iterator.remove();
+                    excess--;
+                }
+            }
+            campaigns.put(campaign.getId(), campaign);
+        }
+    }
+
+    /**
+     * 发送一个批次
+     * 取得与消息数相同的令牌后发送，批次整体失败且可以重试时按退避间隔重试。
+     * 每次发送使用相同的幂等键（进程标识、活动ID和开始序号）
+     * @param provider 服务商
+     * @param campaign 活动
+     * @param from 开始序号（包含）
+     * @param to 结束序号（不包含）
+     */
+    private static void sendBatch(Provider provider, Campaign campaign, int from, int to) {
+        String payload = campaign.batchBody(from, to);
+        String idempotencyKey = "bulk-" + instanceId + "-" + campaign.getId() + "-" + from;
+        for (int attempt = 1; ; attempt++) {
+            if (stopping) {
+                complete(provider, campaign, from, to, null, "发送已停止");
+                return;
+            }
+            ExternalSystemIntegration.IntegrationResponse response;
+            try {
+                // 按消息数取得令牌（超过速率限制时在此等待）
+                provider.bucket.acquire(to - from);
+                long start = System.nanoTime();
+                response = integration().deliverBatch(provider.type, payload, idempotencyKey);
+                provider.batchLatency.record(System.nanoTime() - start);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                complete(provider, campaign, from, to, null, "发送已停止");
+                return;
+            } catch (RuntimeException e) {
+                LogUtil.error("一括送信のバッチ処理に失敗しました: id=" + campaign.getId(), e);
+                complete(provider, campaign, from, to, null, e.getMessage());
+                return;
+            }
+
+            if (response.isSuccess()) {
+                complete(provider, campaign, from, to, rejections(response.getResponseBody()), null);
+                return;
+            }
+            if (!isRetryable(response.getStatusCode()) || attempt >= maxAttempts) {
+                LogUtil.warn("一括送信のバッチが失敗しました: id=" + campaign.getId() + ", 範囲: " + from + "-" +
+                             (to - 1) + ", 試行回数: " + attempt + ", 理由: " + response.getErrorMessage());
+                complete(provider, campaign, from, to, null, response.getErrorMessage());
+                return;
+            }
+
+            // 批次整体的暂时性失败，等待后重试
+            provider.retries.increment();
+            try {
+                Thread.sleep(backoffMillis(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                complete(provider, campaign, from, to, null, "发送已停止");
+                return;
+            }
+        }
+    }
+
+    /**
+     * 记录批次的结果
+     * @param provider 服务商
+     * @param campaign 活动
+     * @param from 开始序号（包含）
+     * @param to 结束序号（不包含）
+     * @param rejected 批次内序号 → 拒绝理由（批次已受理时），批次失败时为null
+     * @param error 批次失败的理由
+     */
+    private static void complete(Provider provider, Campaign campaign, int from, int to,
+                                 Map<Integer, String> rejected, String error) {
+        int failed = rejected != null ? campaign.markSent(from, to, rejected) : campaign.markFailed(from, to, error);
+        provider.sent.add(to - from - failed);
+        provider.failed.add(failed);
+        if (campaign.batchCompleted()) {
+            LogUtil.info("一括送信が完了しました: id=" + campaign.getId() + ", 名前: " + campaign.getName() +
+                         ", 受付: " + campaign.getSentCount() + "件, 失敗: " + campaign.getFailedCount() +
+                         "件, 所要時間: " + campaign.getElapsedMillis() + "ms");
+        }
+    }
+
+    /**
+     * 解析服务商按消息返回的结果
+     * 响应为{"results":[{"index":批次内序号,"status":"accepted|rejected","error":"..."}]}，
+     * 没有results时视为全部受理
+     * @param responseBody 响应体
+     * @return 批次内序号 → 拒绝理由
+     */
+    private static Map<Integer, String> rejections(String responseBody) {
+        Map<Integer, String> rejected = new HashMap<>();
+        if (responseBody == null || responseBody.trim().isEmpty()) {
+            return rejected;
+        }
+        try {
+            JSONArray results = new JSONObject(responseBody).optJSONArray("results");
+            if (results == null) {
+                return rejected;
+            }
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject result = results.optJSONObject(i);
+                if (result == null) {
+                    continue;
+                }
+                String status = result.optString("status", "accepted");
+                if (!"accepted".equalsIgnoreCase(status) && !"sent".equalsIgnoreCase(status)) {
+                    rejected.put(result.optInt("index", -1), result.optString("error", status));
+                }
+            }
+        } catch (JSONException e) {
+            LogUtil.warn("一括送信の応答を解析できませんでした: " + e.getMessage());
+        }
+        return rejected;
+    }
+
+    /**
+     * 判断是否可以重试
+     * 没有响应、服务器错误、请求超时和请求过多时重试
+     * @param statusCode 响应状态码
+     * @return 可以重试返回true
+     */
+    private static boolean isRetryable(int statusCode) {
+        return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+    }
+
+    /**
+     * 计算重试间隔
+     * 基数按失败次数加倍（不超过上限），在后一半范围内随机取值
+     * @param attempts 已尝试次数
+     * @return 重试间隔（毫秒）
+     */
+    private static long backoffMillis(int attempts) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 30);
+        long delay = Math.min(backoffBaseMillis << shift, backoffMaxMillis);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * 获取活动
+     * @param id 活动ID
+     * @return 活动，不存在（或已删除）时返回null
+     */
+    public static Campaign getCampaign(long id) {
+        synchronized (campaigns) {
+            return campaigns.get(id);
+        }
+    }
+
+    /**
+     * 获取保留中的活动的摘要
+     * @return 活动的摘要（新的在前）
+     */
+    public static List<Map<String, Object>> getCampaigns() {
+        List<Campaign> snapshot;
+        synchronized (campaigns) {
+            snapshot = new ArrayList<>(campaigns.values());
+        }
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            summaries.add(snapshot.get(i).toMap());
+        }
+        return summaries;
+    }
+
+    /**
+     * 获取系统中等待发送的消息数
+     * @param type 系统类型
+     * @return 发送中的活动的未完成消息数合计
+     */
+    private static long pendingMessages(ExternalSystemIntegration.SystemType type) {
+        long pending = 0;
+        synchronized (campaigns) {
+            for (Campaign campaign : campaigns.values()) {
+                if (campaign.getSystemType() == type) {
+                    pending += campaign.getPendingCount();
+                }
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 停止调度器
+     * 中断等待令牌和重试的工作线程，未发送的批次记录为失败
+     */
+    public static void shutdown() {
+        stopping = true;
+        for (Provider provider : providers.values()) {
+            provider.workers.shutdown();
+        }
+        try {
+            for (Provider provider : providers.values()) {
+                if (!provider.workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                    provider.workers.shutdownNow();
+                    provider.workers.awaitTermination(5, TimeUnit.SECONDS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Provider provider : providers.values()) {
+            long pending = pendingMessages(provider.type);
+            if (pending > 0) {
+                LogUtil.warn("一括送信を停止しました: システム: " + provider.type + ", 未送信: " + pending + "件");
+            }
+        }
+    }
+
+    /**
+     * 创建守护线程的线程工厂
+     * @param prefix 线程名前缀
+     * @return 线程工厂
+     */
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 服务商
+     * 批次大小、速率限制（令牌桶）和同时发送的批次数（工作线程数）
+     */
+    private static final class Provider {
+        // 系统类型
+        final ExternalSystemIntegration.SystemType type;
+        // 每批的消息数
+        final int batchSize;
+        // 按消息数扣除的令牌桶
+        final TokenBucket bucket;
+        // 发送批次的工作线程
+        final ThreadPoolExecutor workers;
+        // 服务商已受理的消息数
+        final MetricsRegistry.Counter sent;
+        // 发送失败的消息数
+        final MetricsRegistry.Counter failed;
+        // 批次的重试数
+        final MetricsRegistry.Counter retries;
+        // 批次的发送耗时
+        final LatencyHistogram batchLatency;
+
+        /**
+         * 构造函数
+         * @param type 系统类型
+         */
+        Provider(ExternalSystemIntegration.SystemType type) {
+            this.type = type;
+            String system = type.name().toLowerCase();
+            this.batchSize = Math.max(1, intConfig(system, "batchSize"));
+            int ratePerSecond = Math.max(1, intConfig(system, "ratePerSecond"));
+            int concurrency = Math.max(1, intConfig(system, "concurrency"));
+            // 最多积存1秒的令牌（至少一批）
+            this.bucket = new TokenBucket(ratePerSecond, Math.max(ratePerSecond, batchSize));
+            this.workers = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("bulk-" + system));
+            this.workers.allowCoreThreadTimeOut(true);
+
+            this.sent = MetricsRegistry.counter("insurance_bulk_messages_total",
+                "Bulk messages by delivery result", "system", system, "result", "sent");
+            this.failed = MetricsRegistry.counter("insurance_bulk_messages_total",
+                "Bulk messages by delivery result", "system", system, "result", "failed");
+            this.retries = MetricsRegistry.counter("insurance_bulk_batch_retries_total",
+                "Bulk message batches retried after a transient failure", "system", system);
+            this.batchLatency = MetricsRegistry.histogram("insurance_bulk_batch_duration_seconds",
+                "Bulk message batch request time", "system", system);
+            MetricsRegistry.gauge("insurance_bulk_pending_messages", "Bulk messages waiting to be sent",
+                () -> pendingMessages(type), "system", system);
+        }
+    }
+
+    /**
+     * 批量发送活动
+     * 保存每个收件人的发送状态
+     */
+    public static final class Campaign {
+        // 收件人状态的内部表示
+        private static final byte STATUS_PENDING = 0;
+        private static final byte STATUS_SENT = 1;
+        private static final byte STATUS_FAILED = 2;
+
+        // 活动ID
+        private final long id;
+        // 活动名
+        private final String name;
+        // 系统类型
+        private final ExternalSystemIntegration.SystemType systemType;
+        // 收件人（发送状态只保留地址）
+        private final String[] recipients;
+        // 序号 → 消息的JSON（引用提交的消息，所有批次完成后释放）
+        private volatile IntFunction<String> body;
+        // 每个收件人的状态（访问时以自身加锁）
+        private final byte[] statuses;
+        // 序号 → 失败理由
+        private final Map<Integer, String> errors = new ConcurrentHashMap<>();
+        // 服务商已受理的消息数
+        private final AtomicInteger sentCount = new AtomicInteger();
+        // 发送失败的消息数
+        private final AtomicInteger failedCount = new AtomicInteger();
+        // 未完成的批次数
+        private final AtomicInteger remainingBatches;
+        // 开始时间（毫秒）
+        private final long createdAt = System.currentTimeMillis();
+        // 完成时间（毫秒），未完成时为0
+        private volatile long finishedAt;
+
+        /**
+         * 构造函数
+         * @param id 活动ID
+         * @param name 活动名
+         * @param systemType 系统类型
+         * @param batches 批次数
+         * @param recipients 收件人（序号顺序）
+         * @param body 序号 → 消息的JSON
+         */
+        private Campaign(long id, String name, ExternalSystemIntegration.SystemType systemType, int batches,
+                         String[] recipients, IntFunction<String> body) {
+            this.id = id;
+            this.name = name;
+            this.systemType = systemType;
+            this.recipients = recipients;
+            this.body = body;
+            this.statuses = new byte[recipients.length];
+            this.remainingBatches = new AtomicInteger(batches);
+        }
+
+        /**
+         * 构造批次的请求体
+         * @param from 开始序号（包含）
+         * @param to 结束序号（不包含）
+         * @return {"messages":[...]}
+         */
+        private String batchBody(int from, int to) {
+            IntFunction<String> body = this.body;
+            StringBuilder payload = new StringBuilder("{\"messages\":[");
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    payload.append(',');
+                }
+                payload.append(body.apply(i));
+            }
+            return payload.append("]}").toString();
+        }
+
+        /**
+         * 将批次记录为已受理（服务商拒绝的消息记录为失败）
+         * @param from 开始序号（包含）
+         * @param to 结束序号（不包含）
+         * @param rejected 批次内序号 → 拒绝理由
+         * @return 失败的消息数
+         */
+        private int markSent(int from, int to, Map<Integer, String> rejected) {
+            int failed = 0;
+            synchronized (statuses) {
+                for (int i = from; i < to; i++) {
+                    String reason = rejected.get(i - from);
+                    if (reason != null) {
+                        statuses[i] = STATUS_FAILED;
+                        errors.put(i, truncate(reason));
+                        failed++;
+                    } else {
+                        statuses[i] = STATUS_SENT;
+                    }
+                }
+            }
+            sentCount.addAndGet(to - from - failed);
+            failedCount.addAndGet(failed);
+            return failed;
+        }
+
+        /**
+         * 将批次记录为失败
+         * @param from 开始序号（包含）
+         * @param to 结束序号（不包含）
+         * @param error 失败理由
+         * @return 失败的消息数
+         */
+        private int markFailed(int from, int to, String error) {
+            String reason = truncate(error != null ? error : "未知错误");
+            synchronized (statuses) {
+                for (int i = from; i < to; i++) {
+                    statuses[i] = STATUS_FAILED;
+                    errors.put(i, reason);
+                }
+            }
+            failedCount.addAndGet(to - from);
+            return to - from;
+        }
+
+        /**
+         * 记录一个批次已完成
+         * 所有批次都完成后释放消息内容，保留中的活动只持有收件人和状态
+         * @return 所有批次都已完成时返回true
+         */
+        private boolean batchCompleted() {
+            if (remainingBatches.decrementAndGet() == 0) {
+                body = null;
+                finishedAt = System.currentTimeMillis();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 截断错误信息
+         * @param error 错误信息
+         * @return 不超过最大长度的错误信息
+         */
+        private static String truncate(String error) {
+            return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        }
+
+        // 获取活动ID
+        public long getId() { return id; }
+        // 获取活动名
+        public String getName() { return name; }
+        // 获取系统类型
+        public ExternalSystemIntegration.SystemType getSystemType() { return systemType; }
+        // 获取消息数
+        public int getTotal() { return statuses.length; }
+        // 获取服务商已受理的消息数
+        public int getSentCount() { return sentCount.get(); }
+        // 获取发送失败的消息数
+        public int getFailedCount() { return failedCount.get(); }
+        // 获取等待发送的消息数
+        public int getPendingCount() { return statuses.length - sentCount.get() - failedCount.get(); }
+        // 是否所有批次都已完成
+        public boolean isFinished() { return finishedAt != 0; }
+
+        /**
+         * 获取经过时间
+         * @return 开始到完成（未完成时到现在）的时间（毫秒）
+         */
+        public long getElapsedMillis() {
+            long end = finishedAt;
+            return (end != 0 ? end : System.currentTimeMillis()) - createdAt;
+        }
+
+        /**
+         * 获取收件人的发送状态
+         * @param status 只取得该状态的收件人（null时为全部）
+         * @param offset 跳过的件数（按筛选后的件数）
+         * @param limit 最大件数
+         * @return 序号、收件人、状态和失败理由的列表
+         */
+        public List<Map<String, Object>> getRecipients(String status, int offset, int limit) {
+            List<Map<String, Object>> result = new ArrayList<>();
+            int skipped = 0;
+            synchronized (statuses) {
+                for (int i = 0; i < statuses.length && result.size() < limit; i++) {
+                    String current = statusName(statuses[i]);
+                    if (status != null && !status.equals(current)) {
+                        continue;
+                    }
+                    if (skipped++ < offset) {
+                        continue;
+                    }
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("index", i);
+                    entry.put("to", recipients[i]);
+                    entry.put("status", current);
+                    entry.put("error", errors.get(i));
+                    result.add(entry);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 状态的名称
+         * @param status 内部表示
+         * @return PENDING、SENT或FAILED
+         */
+        private static String statusName(byte status) {
+            return status == STATUS_SENT ? SENT : status == STATUS_FAILED ? FAILED : PENDING;
+        }
+
+        /**
+         * 转换为摘要
+         * @return 活动ID、名称、件数、进度和发送速度
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            long elapsed = getElapsedMillis();
+            int sent = sentCount.get();
+            int failed = failedCount.get();
+            summary.put("campaignId", id);
+            summary.put("name", name);
+            summary.put("systemType", systemType.name());
+            summary.put("total", statuses.length);
+            summary.put("sent", sent);
+            summary.put("failed", failed);
+            summary.put("pending", statuses.length - sent - failed);
+            summary.put("finished", isFinished());
+            summary.put("createdAt", createdAt);
+            summary.put("finishedAt", isFinished() ? finishedAt : null);
+            summary.put("elapsedMillis", elapsed);
+            summary.put("messagesPerSecond", elapsed > 0 ? (sent + failed) * 1000.0 / elapsed : 0.0);
+            return summary;
+        }
+    }
+}
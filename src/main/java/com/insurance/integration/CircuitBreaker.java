@@ -0,0 +1,406 @@
+package com.insurance.integration;
+
+import com.insurance.monitor.MetricsRegistry;
+import com.insurance.util.LogUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 外部系统熔断器
+ * 每个系统类型一个熔断器，按最近N次调用的滑动窗口统计失败率和慢调用率。
+ *
+ * 关闭状态：正常调用，窗口内的调用数达到最小调用数后，失败率或慢调用率
+ * 超过阈值时转为打开状态。
+ * 打开状态：不调用外部系统，立即返回错误，经过打开时间后转为半开状态。
+ * 半开状态：只放行少量试探调用，试探结果未超过阈值时关闭，否则再次打开。
+ *
+ * 状态每次变化时更新世代号，状态变化前开始的调用结果不计入新状态的统计。
+ * 批量发送接口的批次耗时和失败与单条调用不同，使用单独的熔断器（首次使用时创建），
+ * 批次的失败和慢调用不会使单条调用的熔断器打开。
+ * 配置从类路径上的/config/circuit-breaker.properties读取，
+ * circuit.<系统>.<项目>优先于circuit.<项目>，批量接口的熔断器另外以
+ * circuit.<系统>.bulk.<项目>和circuit.bulk.<项目>优先，同名系统属性优先于配置文件。
+ */
+public final class CircuitBreaker {
+
+    // 熔断器状态
+    public enum State {
+        // 关闭（正常调用）
+        CLOSED,
+        // 打开（立即返回错误）
+        OPEN,
+        // 半开（放行试探调用）
+        HALF_OPEN
+    }
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/circuit-breaker.properties";
+    // 滑动窗口中表示失败的标志位
+    private static final byte FAILED = 1;
+    // 滑动窗口中表示慢调用的标志位
+    private static final byte SLOW = 2;
+
+    // 熔断器配置
+    private static final Properties config = new Properties();
+    // 系统类型 → 熔断器
+    private static final Map<ExternalSystemIntegration.SystemType, CircuitBreaker> breakers =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 批量接口的熔断器（访问时以自身加锁）
+    private static final Map<ExternalSystemIntegration.SystemType, CircuitBreaker> bulkBreakers =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+
+    // 静态代码块，加载配置并创建各系统的熔断器
+    static {
+        loadConfig();
+        for (ExternalSystemIntegration.SystemType type : ExternalSystemIntegration.SystemType.values()) {
+            breakers.put(type, new CircuitBreaker(type, false));
+        }
+    }
+
+    // 日志中的熔断器名（系统类型，批量接口时附加BULK）
+    private final String label;
+    // 滑动窗口的调用数
+    private final int windowSize;
+    // 开始判断前窗口内至少需要的调用数
+    private final int minimumCalls;
+    // 失败率阈值（%）
+    private final int failureRateThreshold;
+    // 慢调用率阈值（%）
+    private final int slowCallRateThreshold;
+    // 视为慢调用的耗时（纳秒）
+    private final long slowCallNanos;
+    // 打开状态持续的时间（纳秒）
+    private final long openNanos;
+    // 半开状态放行的试探调用数
+    private final int halfOpenCalls;
+
+    // 滑动窗口（环形缓冲区，每个元素为FAILED和SLOW的组合）
+    private final byte[] window;
+    // 下一个写入位置
+    private int windowIndex;
+    // 窗口内的调用数
+    private int bufferedCalls;
+    // 窗口内的失败数
+    private int failedCalls;
+    // 窗口内的慢调用数
+    private int slowCalls;
+
+    // 当前状态
+    private State state = State.CLOSED;
+    // 世代号（状态变化时加1）
+    private int generation;
+    // 转为打开状态的时刻（System.nanoTime）
+    private long openedAt;
+    // 半开状态中执行中的试探调用数
+    private int probesInFlight;
+    // 半开状态中已完成的试探调用数
+    private int probesRecorded;
+    // 半开状态中失败的试探调用数
+    private int probeFailures;
+    // 半开状态中的慢试探调用数
+    private int probeSlowCalls;
+
+    // 打开状态中被拒绝的调用数
+    private final MetricsRegistry.Counter notPermitted;
+    // 转为打开状态的次数
+    private final MetricsRegistry.Counter opened;
+
+    /**
+     * 构造函数
+     * @param systemType 系统类型
+     * @param bulk 是否为批量接口的熔断器
+     */
+    private CircuitBreaker(ExternalSystemIntegration.SystemType systemType, boolean bulk) {
+        this.label = bulk ? systemType + " BULK" : systemType.name();
+        String system = systemType.name().toLowerCase();
+        this.windowSize = Math.max(1, intConfig(system, bulk, "windowSize"));
+        this.minimumCalls = Math.max(1, Math.min(windowSize, intConfig(system, bulk, "minimumCalls")));
+        this.failureRateThreshold = intConfig(system, bulk, "failureRateThreshold");
+        this.slowCallRateThreshold = intConfig(system, bulk, "slowCallRateThreshold");
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(intConfig(system, bulk, "slowCallMillis"));
+        this.openNanos = TimeUnit.SECONDS.toNanos(intConfig(system, bulk, "openSeconds"));
+        this.halfOpenCalls = Math.max(1, intConfig(system, bulk, "halfOpenCalls"));
+        this.window = new byte[windowSize];
+        if (bulk) {
+            system += "_bulk";
+        }
+
+        this.notPermitted = MetricsRegistry.counter("insurance_circuit_breaker_not_permitted_total",
+            "External system calls rejected because the circuit breaker was open", "system", system);
+        this.opened = MetricsRegistry.counter("insurance_circuit_breaker_opened_total",
+            "Times the circuit breaker opened", "system", system);
+        MetricsRegistry.gauge("insurance_circuit_breaker_state",
+            "Circuit breaker state (0=closed, 1=open, 2=half-open)",
+            () -> getState().ordinal(), "system", system);
+        MetricsRegistry.gauge("insurance_circuit_breaker_failure_rate",
+            "Failure rate in the circuit breaker window (percent)",
+            this::getFailureRate, "system", system);
+        MetricsRegistry.gauge("insurance_circuit_breaker_slow_call_rate",
+            "Slow call rate in the circuit breaker window (percent)",
+            this::getSlowCallRate, "system", system);
+    }
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 滑动窗口的调用数
+        config.setProperty("circuit.windowSize", "20");
+        // 开始判断前至少需要的调用数
+        config.setProperty("circuit.minimumCalls", "10");
+        // 失败率阈值（%），连接失败、超时和5xx响应视为失败
+        config.setProperty("circuit.failureRateThreshold", "50");
+        // 慢调用率阈值（%）
+        config.setProperty("circuit.slowCallRateThreshold", "80");
+        // 视为慢调用的耗时（毫秒）
+        config.setProperty("circuit.slowCallMillis", "5000");
+        // 打开状态持续的时间（秒）
+        config.setProperty("circuit.openSeconds", "30");
+        // 半开状态放行的试探调用数
+        config.setProperty("circuit.halfOpenCalls", "3");
+        // 批量接口视为慢调用的耗时（毫秒），一个批次包含数百件消息
+        config.setProperty("circuit.bulk.slowCallMillis", "30000");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = CircuitBreaker.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load circuit breaker config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取整数配置值
+     * 系统单独的配置优先于共通配置，系统属性优先于配置文件；
+     * 批量接口的熔断器先查找批量接口的配置
+     * @param system 系统名（小写）
+     * @param bulk 是否为批量接口的熔断器
+     * @param key 配置项目名
+     * @return 配置值
+     */
+    private static int intConfig(String system, boolean bulk, String key) {
+        String value = null;
+        if (bulk) {
+            value = getConfig("circuit." + system + ".bulk." + key);
+            if (value == null) {
+                value = getConfig("circuit.bulk." + key);
+            }
+        }
+        if (value == null) {
+            value = getConfig("circuit." + system + "." + key);
+        }
+        if (value == null) {
+            value = getConfig("circuit." + key);
+        }
+        return Integer.parseInt(value.trim());
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值，都没有配置时返回null
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取系统的熔断器
+     * @param systemType 系统类型
+     * @return 熔断器
+     */
+    public static CircuitBreaker of(ExternalSystemIntegration.SystemType systemType) {
+        return breakers.get(systemType);
+    }
+
+    /**
+     * 获取系统的批量接口的熔断器
+     * 第一次使用时创建（使用批量接口的系统才有熔断器和指标）
+     * @param systemType 系统类型
+     * @return 批量接口的熔断器
+     */
+    public static CircuitBreaker ofBulk(ExternalSystemIntegration.SystemType systemType) {
+        synchronized (bulkBreakers) {
+            return bulkBreakers.computeIfAbsent(systemType, type -> new CircuitBreaker(type, true));
+        }
+    }
+
+    /**
+     * 获取已创建的批量接口的熔断器
+     * @return 系统类型 → 批量接口的熔断器
+     */
+    public static Map<ExternalSystemIntegration.SystemType, CircuitBreaker> getBulkBreakers() {
+        synchronized (bulkBreakers) {
+            return new EnumMap<>(bulkBreakers);
+        }
+    }
+
+    /**
+     * 申请调用许可
+     * 打开状态经过打开时间后转为半开状态；半开状态只放行试探调用数以内的调用
+     * @return 许可时返回世代号（调用结束后传给onResult），拒绝时返回-1
+     */
+    public synchronized int tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                notPermitted.increment();
+                return -1;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + probesRecorded >= halfOpenCalls) {
+                notPermitted.increment();
+                return -1;
+            }
+            probesInFlight++;
+        }
+        return generation;
+    }
+
+    /**
+     * 记录调用结果
+     * @param permission 申请许可时取得的世代号（状态已变化时不计入统计）
+     * @param failed 是否失败
+     * @param elapsedNanos 调用耗时（纳秒）
+     */
+    public synchronized void onResult(int permission, boolean failed, long elapsedNanos) {
+        if (permission != generation) {
+            return;
+        }
+        boolean slow = elapsedNanos >= slowCallNanos;
+
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            probesRecorded++;
+            if (failed) {
+                probeFailures++;
+            }
+            if (slow) {
+                probeSlowCalls++;
+            }
+            // 试探调用全部完成前已超过阈值时立即再次打开
+            if (probeFailures * 100 >= failureRateThreshold * halfOpenCalls
+                    || probeSlowCalls * 100 >= slowCallRateThreshold * halfOpenCalls) {
+                transitionTo(State.OPEN);
+            } else if (probesRecorded >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+
+        // 关闭状态：覆盖窗口中最旧的结果
+        if (bufferedCalls == windowSize) {
+            byte oldest = window[windowIndex];
+            failedCalls -= oldest & FAILED;
+            slowCalls -= (oldest & SLOW) >> 1;
+        } else {
+            bufferedCalls++;
+        }
+        window[windowIndex] = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        windowIndex = (windowIndex + 1) % windowSize;
+        if (failed) {
+            failedCalls++;
+        }
+        if (slow) {
+            slowCalls++;
+        }
+
+        if (bufferedCalls >= minimumCalls
+                && (failedCalls * 100 >= failureRateThreshold * bufferedCalls
+                    || slowCalls * 100 >= slowCallRateThreshold * bufferedCalls)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /**
+     * 状态迁移
+     * 更新世代号并清除统计（调用方持有锁）
+     * @param newState 新状态
+     */
+    private void transitionTo(State newState) {
+        State oldState = state;
+        String summary = "失敗率: " + String.format("%.1f", getFailureRate()) + "%, 低速率: " +
+                         String.format("%.1f", getSlowCallRate()) + "%";
+        state = newState;
+        // 世代号保持非负（负数表示拒绝）
+        generation = (generation + 1) & Integer.MAX_VALUE;
+        probesInFlight = 0;
+        probesRecorded = 0;
+        probeFailures = 0;
+        probeSlowCalls = 0;
+        if (newState == State.OPEN) {
+            openedAt = System.nanoTime();
+            opened.increment();
+            LogUtil.warn("サーキットブレーカーが開きました: " + label + " (" + oldState + "から, " + summary +
+                         ", " + TimeUnit.NANOSECONDS.toSeconds(openNanos) + "秒間呼び出しを停止します)");
+        } else if (newState == State.CLOSED) {
+            windowIndex = 0;
+            bufferedCalls = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+            LogUtil.info("サーキットブレーカーが閉じました: " + label);
+        } else {
+            LogUtil.info("サーキットブレーカーが半開状態になりました: " + label + " (試行: " + halfOpenCalls + "件)");
+        }
+    }
+
+    /**
+     * 获取当前状态
+     * 打开时间已过但还没有调用时也返回OPEN
+     * @return 状态
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 获取失败率
+     * @return 关闭状态为窗口内的失败率，半开状态为试探调用的失败率（%）
+     */
+    public synchronized double getFailureRate() {
+        if (state == State.HALF_OPEN) {
+            return probesRecorded == 0 ? 0.0 : probeFailures * 100.0 / probesRecorded;
+        }
+        return bufferedCalls == 0 ? 0.0 : failedCalls * 100.0 / bufferedCalls;
+    }
+
+    /**
+     * 获取慢调用率
+     * @return 关闭状态为窗口内的慢调用率，半开状态为试探调用的慢调用率（%）
+     */
+    public synchronized double getSlowCallRate() {
+        if (state == State.HALF_OPEN) {
+            return probesRecorded == 0 ? 0.0 : probeSlowCalls * 100.0 / probesRecorded;
+        }
+        return bufferedCalls == 0 ? 0.0 : slowCalls * 100.0 / bufferedCalls;
+    }
+
+    /**
+     * 获取统计信息
+     * @return 状态、失败率、慢调用率、窗口内调用数、拒绝数等
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("failureRate", getFailureRate());
+        stats.put("slowCallRate", getSlowCallRate());
+        stats.put("bufferedCalls", state == State.HALF_OPEN ? probesRecorded : bufferedCalls);
+        stats.put("failureRateThreshold", failureRateThreshold);
+        stats.put("slowCallRateThreshold", slowCallRateThreshold);
+        stats.put("slowCallMillis", TimeUnit.NANOSECONDS.toMillis(slowCallNanos));
+        stats.put("remainingOpenMillis", state == State.OPEN
+            ? Math.max(0L, TimeUnit.NANOSECONDS.toMillis(openNanos - (System.nanoTime() - openedAt))) : 0L);
+        stats.put("notPermitted", notPermitted.get());
+        stats.put("opened", opened.get());
+        return stats;
+    }
+}
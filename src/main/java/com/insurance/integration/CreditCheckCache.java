@@ -0,0 +1,489 @@
+package com.insurance.integration;
+
+import com.insurance.monitor.MetricsRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 信用检查结果缓存
+ * 同一申请人在报价、申请、审查过程中重复进行信用检查，按检查的全部内容
+ * （顾客ID、姓名、出生日期和年收入）缓存成功的检查结果，有效期内不再调用收费的信用检查系统。
+ * 申请内容不同的检查不共用结果，顾客信息变更或删除时删除该顾客的全部结果。
+ *
+ * 淘汰方式参考W-TinyLFU：新条目先进入小的窗口区（LRU），从窗口区淘汰的条目
+ * 与主区最久未使用的条目比较访问频率，频率高的留在主区。访问频率用计数最小草图
+ * （4行4位计数器）估算，记录次数达到上限时全部减半，使旧的访问逐渐失效。
+ * 只访问一次的大量申请人不会挤掉反复检查的申请人。
+ *
+ * 同一申请人的检查同时到达时只调用一次外部系统，其他请求等待并共用该结果。
+ * 配置从类路径上的/config/credit-check-cache.properties读取，同名系统属性优先。
+ */
+public final class CreditCheckCache {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/credit-check-cache.properties";
+
+    // 缓存配置
+    private static final Properties config = new Properties();
+    // 是否启用缓存
+    private static final boolean enabled;
+    // 缓存的有效期（毫秒）
+    private static final long ttlMillis;
+    // 窗口区的最大条目数
+    private static final int windowCapacity;
+    // 主区的最大条目数
+    private static final int mainCapacity;
+
+    // 窗口区（按访问顺序，访问时以lock加锁）
+    private static final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    // 主区（按访问顺序，访问时以lock加锁）
+    private static final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    // 访问频率的估算
+    private static final FrequencySketch sketch;
+    // 窗口区和主区的锁
+    private static final Object lock = new Object();
+    // 申请人 → 执行中的检查
+    private static final Map<String, CompletableFuture<ExternalSystemIntegration.IntegrationResponse>> inFlight =
+        new ConcurrentHashMap<>();
+
+    // 命中数
+    private static final MetricsRegistry.Counter hits = MetricsRegistry.counter("insurance_credit_cache_requests_total",
+        "Credit check cache lookups by result", "result", "hit");
+    // 未命中数（调用了外部系统）
+    private static final MetricsRegistry.Counter misses = MetricsRegistry.counter("insurance_credit_cache_requests_total",
+        "Credit check cache lookups by result", "result", "miss");
+    // 等待执行中的检查的请求数
+    private static final MetricsRegistry.Counter coalesced = MetricsRegistry.counter("insurance_credit_cache_requests_total",
+        "Credit check cache lookups by result", "result", "coalesced");
+    // 淘汰的条目数（包括没有进入主区的条目）
+    private static final MetricsRegistry.Counter evictions = MetricsRegistry.counter("insurance_credit_cache_evictions_total",
+        "Credit check results evicted from the cache");
+
+    // 静态代码块，加载配置并登记仪表
+    static {
+        loadConfig();
+        enabled = Boolean.parseBoolean(getConfig("credit.cache.enabled").trim());
+        ttlMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("credit.cache.ttlSeconds").trim()));
+        int maxSize = Math.max(1, Integer.parseInt(getConfig("credit.cache.maxSize").trim()));
+        int windowPercent = Integer.parseInt(getConfig("credit.cache.windowPercent").trim());
+        windowCapacity = Math.max(1, Math.min(maxSize, maxSize * windowPercent / 100));
+        mainCapacity = maxSize - windowCapacity;
+        sketch = new FrequencySketch(maxSize);
+
+        MetricsRegistry.gauge("insurance_credit_cache_size", "Credit check results in the cache",
+            CreditCheckCache::size);
+        MetricsRegistry.gauge("insurance_credit_cache_hit_ratio",
+            "Share of credit checks answered without calling the external system",
+            CreditCheckCache::getHitRate);
+    }
+
+    private CreditCheckCache() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 是否启用缓存
+        config.setProperty("credit.cache.enabled", "true");
+        // 检查结果的有效期（秒）
+        config.setProperty("credit.cache.ttlSeconds", "3600");
+        // 最大条目数
+        config.setProperty("credit.cache.maxSize", "10000");
+        // 窗口区占最大条目数的比例（%）
+        config.setProperty("credit.cache.windowPercent", "1");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = CreditCheckCache.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load credit check cache config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取信用检查结果
+     * 有缓存时直接返回；同一申请的检查执行中时等待其结果；
+     * 否则执行检查，成功的结果保存到缓存
+     * @param request 信用检查请求
+     * @param check 信用检查（调用外部系统）
+     * @return 信用检查结果
+     */
+    public static ExternalSystemIntegration.IntegrationResponse get(ExternalSystemIntegration.CreditCheckRequest request,
+            Supplier<ExternalSystemIntegration.IntegrationResponse> check) {
+        String key = key(request);
+        if (!enabled || key == null) {
+            return check.get();
+        }
+
+        ExternalSystemIntegration.IntegrationResponse cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        // 同一申请的检查执行中时共用其结果
+        CompletableFuture<ExternalSystemIntegration.IntegrationResponse> flight = new CompletableFuture<>();
+        CompletableFuture<ExternalSystemIntegration.IntegrationResponse> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            // 查找后到登记执行中之间其他线程可能已完成检查
+            cached = lookup(key);
+            if (cached != null) {
+                hits.increment();
+                flight.complete(cached);
+                return cached;
+            }
+
+            misses.increment();
+            ExternalSystemIntegration.IntegrationResponse response = check.get();
+            if (response.isSuccess()) {
+                put(key, response);
+            }
+            flight.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 只从缓存获取信用检查结果
+     * 异步调用前使用，命中时不需要提交到线程池
+     * @param request 信用检查请求
+     * @return 缓存的结果，没有时返回null（未命中不计入统计）
+     */
+    public static ExternalSystemIntegration.IntegrationResponse getIfPresent(
+            ExternalSystemIntegration.CreditCheckRequest request) {
+        String key = key(request);
+        if (!enabled || key == null) {
+            return null;
+        }
+        ExternalSystemIntegration.IntegrationResponse cached;
+        synchronized (lock) {
+            Entry entry = window.get(key);
+            if (entry == null) {
+                entry = main.get(key);
+            }
+            cached = entry != null && !entry.isExpired() ? entry.response : null;
+            if (cached != null) {
+                sketch.increment(key);
+            }
+        }
+        if (cached != null) {
+            hits.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * 删除顾客的缓存
+     * 顾客信息变更或删除时使用，删除该顾客所有申请内容的结果
+     * @param customerId 顾客ID
+     */
+    public static void invalidate(int customerId) {
+        String prefix = customerId + "|";
+        synchronized (lock) {
+            window.keySet().removeIf(key -> key.startsWith(prefix));
+            main.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clear() {
+        synchronized (lock) {
+            window.clear();
+            main.clear();
+        }
+    }
+
+    /**
+     * 获取缓存的条目数
+     * @return 条目数（包括尚未删除的过期条目）
+     */
+    public static int size() {
+        synchronized (lock) {
+            return window.size() + main.size();
+        }
+    }
+
+    /**
+     * 获取命中率
+     * @return 命中和共用执行中结果的请求占全部请求的比例
+     */
+    public static double getHitRate() {
+        long hit = hits.get() + coalesced.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    /**
+     * 获取统计信息
+     * @return 命中数、未命中数、共用数、淘汰数、条目数、命中率等
+     */
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("evictions", evictions.get());
+        stats.put("size", size());
+        stats.put("maxSize", windowCapacity + mainCapacity);
+        stats.put("ttlSeconds", TimeUnit.MILLISECONDS.toSeconds(ttlMillis));
+        stats.put("hitRate", getHitRate());
+        return stats;
+    }
+
+    /**
+     * 生成申请的键
+     * 以顾客ID开头（按顾客删除时使用）；姓名按NFKC规范化（全角和半角统一）、
+     * 去掉空白并转为小写，出生日期只保留数字，年收入与请求体相同保留到小数点后2位
+     * @param request 信用检查请求
+     * @return 键，姓名或出生日期为空时返回null（不缓存）
+     */
+    private static String key(ExternalSystemIntegration.CreditCheckRequest request) {
+        String name = request.getName();
+        String birthDate = request.getBirthDate();
+        if (name == null || birthDate == null) {
+            return null;
+        }
+        String normalizedName = Normalizer.normalize(name, Normalizer.Form.NFKC)
+            .replaceAll("\\s+", "").toLowerCase(Locale.ROOT);
+        String normalizedDate = birthDate.replaceAll("\\D", "");
+        if (normalizedName.isEmpty() || normalizedDate.isEmpty()) {
+            return null;
+        }
+        return request.getCustomerId() + "|" + normalizedName + "|" + normalizedDate + "|"
+            + String.format(Locale.ROOT, "%.2f", request.getAnnualIncome());
+    }
+
+    /**
+     * 查找缓存
+     * 记录访问频率，过期的条目删除
+     * @param key 键
+     * @return 缓存的结果，没有时返回null
+     */
+    private static ExternalSystemIntegration.IntegrationResponse lookup(String key) {
+        synchronized (lock) {
+            sketch.increment(key);
+            Entry entry = window.get(key);
+            Map<String, Entry> region = window;
+            if (entry == null) {
+                entry = main.get(key);
+                region = main;
+            }
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired()) {
+                region.remove(key);
+                return null;
+            }
+            return entry.response;
+        }
+    }
+
+    /**
+     * 保存到缓存
+     * 新条目放入窗口区，窗口区超过上限时最久未使用的条目作为候选进入主区；
+     * 主区已满时候选与主区最久未使用的条目比较访问频率，频率低的一方被淘汰
+     * @param key 键
+     * @param response 信用检查结果
+     */
+    private static void put(String key, ExternalSystemIntegration.IntegrationResponse response) {
+        Entry entry = new Entry(response, System.currentTimeMillis() + ttlMillis);
+        synchronized (lock) {
+            if (main.containsKey(key)) {
+                main.put(key, entry);
+                return;
+            }
+            window.put(key, entry);
+            if (window.size() <= windowCapacity) {
+                return;
+            }
+
+            // 窗口区最久未使用的条目作为候选
+            Iterator<Map.Entry<String, Entry>> windowIterator = window.entrySet().iterator();
+            Map.Entry<String, Entry> candidate = windowIterator.next();
+            windowIterator.remove();
+            if (candidate.getValue().isExpired()) {
+                evictions.increment();
+                return;
+            }
+            if (main.size() < mainCapacity) {
+                main.put(candidate.getKey(), candidate.getValue());
+                return;
+            }
+            if (mainCapacity == 0) {
+                evictions.increment();
+                return;
+            }
+
+            // 与主区最久未使用的条目比较访问频率（已过期的条目总是淘汰）
+            Iterator<Map.Entry<String, Entry>> mainIterator = main.entrySet().iterator();
+            Map.Entry<String, Entry> victim = mainIterator.next();
+            if (victim.getValue().isExpired()
+                    || sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+                mainIterator.remove();
+                main.put(candidate.getKey(), candidate.getValue());
+            }
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class Entry {
+        // 信用检查结果
+        private final ExternalSystemIntegration.IntegrationResponse response;
+        // 过期时间（毫秒）
+        private final long expiresAt;
+
+        private Entry(ExternalSystemIntegration.IntegrationResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+
+        // 是否已过期
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    /**
+     * 访问频率草图
+     * 4行计数最小草图，每个计数器4位（最大15），一个long保存16个计数器。
+     * 记录次数达到最大条目数的10倍时所有计数器减半（调用方持有锁）
+     */
+    private static final class FrequencySketch {
+        // 各行的哈希种子
+        private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+        };
+
+        // 计数器表（每行width个计数器）
+        private final long[][] table;
+        // 每行计数器数的掩码
+        private final int mask;
+        // 减半前的记录次数
+        private final int sampleSize;
+        // 自上次减半以来的记录次数
+        private int additions;
+
+        /**
+         * 构造函数
+         * @param maxSize 缓存的最大条目数
+         */
+        private FrequencySketch(int maxSize) {
+            int width = Integer.highestOneBit(Math.max(16, maxSize - 1) << 1);
+            this.table = new long[SEEDS.length][width / 16];
+            this.mask = width - 1;
+            this.sampleSize = Math.max(10, maxSize * 10);
+        }
+
+        /**
+         * 记录一次访问
+         * @param key 键
+         */
+        private void increment(String key) {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(hash, row);
+                long[] counters = table[row];
+                int shift = (index & 15) << 2;
+                if (((counters[index >>> 4] >>> shift) & 0xFL) < 15) {
+                    counters[index >>> 4] += 1L << shift;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        /**
+         * 估算访问频率
+         * @param key 键
+         * @return 各行计数器的最小值
+         */
+        private int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = index(hash, row);
+                frequency = Math.min(frequency, (int) ((table[row][index >>> 4] >>> ((index & 15) << 2)) & 0xFL));
+            }
+            return frequency;
+        }
+
+        /**
+         * 所有计数器减半
+         */
+        private void reset() {
+            for (long[] counters : table) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] = (counters[i] >>> 1) & 0x7777777777777777L;
+                }
+            }
+            additions /= 2;
+        }
+
+        /**
+         * 计算行内的计数器位置
+         * @param hash 键的哈希值
+         * @param row 行
+         * @return 计数器位置
+         */
+        private int index(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return (int) (h >>> 32) & mask;
+        }
+
+        /**
+         * 打散哈希值
+         * @param hash 哈希值
+         * @return 打散后的哈希值
+         */
+        private static int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x45D9F3B;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
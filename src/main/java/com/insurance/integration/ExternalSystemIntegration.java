@@ -2,17 +2,23 @@ package com.insurance.integration;
 
 import com.insurance.util.LogUtil;
 import javax.servlet.http.HttpServletRequest;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 import java.io.FileInputStream;
 import java.io.IOException;
 
@@ -82,11 +88,13 @@ public class ExternalSystemIntegration {
         
         // 邮件服务系统默认配置
         config.setProperty("email_service.url", "https://api.example-email.com/send");
+        config.setProperty("email_service.bulk_url", "https://api.example-email.com/send/batch");
         config.setProperty("email_service.timeout", "10000");
         config.setProperty("email_service.api_key", "");
         
         // 短信服务系统默认配置
         config.setProperty("sms_service.url", "https://api.example-sms.com/send");
+        config.setProperty("sms_service.bulk_url", "https://api.example-sms.com/send/batch");
         config.setProperty("sms_service.timeout", "10000");
         config.setProperty("sms_service.api_key", "");
         
@@ -100,6 +108,8 @@ public class ExternalSystemIntegration {
     /**
      * 发送HTTP请求
      * 向指定的外部系统发送HTTP请求，并返回响应结果
+     * 使用连接池中的长连接，读取完响应体后连接归还连接池供下次复用
+     * 系统的同时请求数已达上限或熔断器打开时不发送请求，立即返回503响应
      * @param systemType 系统类型枚举值
      * @param method HTTP方法（GET、POST等）
      * @param headers 请求头信息
@@ -108,53 +118,90 @@ public class ExternalSystemIntegration {
      */
     public IntegrationResponse sendHttpRequest(SystemType systemType, String method, 
                                         Map<String, String> headers, String requestBody) {
+        return sendHttpRequest(systemType, getSystemUrl(systemType), false, method, headers, requestBody);
+    }
+    
+    /**
+     * 向指定的URL发送HTTP请求
+     * 单条调用与系统的默认URL共用连接池、隔板和熔断器；
+     * 批量接口只共用连接池，使用单独的熔断器，同时执行数由批量发送调度器的工作线程数限制
+     * @param systemType 系统类型枚举值
+     * @param baseUrl 请求URL
+     * @param bulk 是否为批量接口
+     * @param method HTTP方法（GET、POST等）
+     * @param headers 请求头信息
+     * @param requestBody 请求体内容
+     * @return IntegrationResponse 集成响应对象
+     */
+    private IntegrationResponse sendHttpRequest(SystemType systemType, String baseUrl, boolean bulk, String method, 
+                                                Map<String, String> headers, String requestBody) {
+        // 同时请求数已达上限时不等待外部系统，立即返回繁忙响应
+        if (!bulk && !HttpClientPool.acquireBulkhead(systemType)) {
+            LogUtil.warn("外部系统同时请求数已达上限，请求被拒绝: " + systemType);
+            return new IntegrationResponse(503, null, "外部系统繁忙，请稍后重试: " + systemType);
+        }
+        // 熔断器打开时不发送请求（状态变化由熔断器记录日志）
+        CircuitBreaker breaker = bulk ? CircuitBreaker.ofBulk(systemType) : CircuitBreaker.of(systemType);
+        int permission = breaker.tryAcquirePermission();
+        if (permission < 0) {
+            if (!bulk) {
+                HttpClientPool.releaseBulkhead(systemType);
+            }
+            return new IntegrationResponse(503, null, "外部系统暂停调用，请稍后重试: " + systemType);
+        }
+        
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
-            // 获取系统URL和超时时间
-            String baseUrl = getSystemUrl(systemType);
+            // 获取超时时间
             int timeout = getSystemTimeout(systemType);
             
-            // 创建URL连接
-            URL url = new URL(baseUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            
-            // 设置请求方法和超时时间
-            connection.setRequestMethod(method);
-            connection.setConnectTimeout(timeout);
-            connection.setReadTimeout(timeout);
-            // 设置允许输出（用于发送请求体）
-            connection.setDoOutput(true);
+            // 创建请求，设置连接超时和读取超时
+            RequestBuilder builder = RequestBuilder.create(method)
+                .setUri(baseUrl)
+                .setConfig(HttpClientPool.requestConfig(timeout));
             
             // 设置默认请求头
-            setDefaultHeaders(connection, systemType);
+            setDefaultHeaders(builder, systemType);
             // 设置额外的请求头
             if (headers != null) {
                 for (Map.Entry<String, String> entry : headers.entrySet()) {
-                    connection.setRequestProperty(entry.getKey(), entry.getValue());
+                    builder.setHeader(entry.getKey(), entry.getValue());
                 }
             }
             
-            // 发送请求体
+            // 设置请求体（Content-Type由请求头指定）
             if (requestBody != null && !requestBody.isEmpty()) {
-                try (OutputStream os = connection.getOutputStream()) {
-                    byte[] input = requestBody.getBytes(StandardCharsets.UTF_8);
-                    os.write(input, 0, input.length);
-                }
+                builder.setEntity(new ByteArrayEntity(requestBody.getBytes(StandardCharsets.UTF_8)));
             }
             
-            // 获取响应
-            int responseCode = connection.getResponseCode();
-            String responseBody = readResponse(connection);
-            
-            // 记录API调用日志
-            logApiCall(systemType, method, baseUrl, responseCode);
-            
-            // 返回成功响应
-            return new IntegrationResponse(responseCode, responseBody, null);
+            // 发送请求并读取响应（读取完响应体后连接归还连接池）
+            try (CloseableHttpResponse httpResponse = HttpClientPool.client().execute(builder.build())) {
+                int responseCode = httpResponse.getStatusLine().getStatusCode();
+                HttpEntity entity = httpResponse.getEntity();
+                String responseBody = entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : "";
+                
+                // 记录API调用日志
+                logApiCall(systemType, method, baseUrl, responseCode);
+                
+                // 返回响应（4xx和5xx响应保留状态码和响应体）
+                failed = responseCode >= 500;
+                return new IntegrationResponse(responseCode, responseBody,
+                                               responseCode >= 400 ? "HTTP " + responseCode : null);
+            }
             
         } catch (Exception e) {
             // 记录错误日志并返回错误响应
             LogUtil.error("外部系统请求失败: " + systemType, e);
             return new IntegrationResponse(500, null, e.getMessage());
+        } finally {
+            // 归还名额，记录请求耗时和结果（批次的耗时和结果由批量发送调度器记录）
+            long elapsedNanos = System.nanoTime() - start;
+            breaker.onResult(permission, failed, elapsedNanos);
+            if (!bulk) {
+                HttpClientPool.releaseBulkhead(systemType);
+                HttpClientPool.record(systemType, elapsedNanos, failed);
+            }
         }
     }
     
@@ -172,11 +219,7 @@ public class ExternalSystemIntegration {
             headers.put("Authorization", "Bearer " + getApiKey(SystemType.BANK_TRANSFER));
             
             // 构造请求体
-            String requestBody = String.format(
-                "{\"account_number\":\"%s\",\"bank_code\":\"%s\",\"amount\":%.2f,\"currency\":\"JPY\",\"description\":\"%s\"}",
-                request.getAccountNumber(), request.getBankCode(), 
-                request.getAmount(), request.getDescription()
-            );
+            String requestBody = bankTransferBody(request);
             
             // 发送HTTP请求
             IntegrationResponse response = sendHttpRequest(
@@ -211,12 +254,8 @@ public class ExternalSystemIntegration {
             headers.put("Content-Type", "application/json");
             headers.put("Authorization", "Bearer " + getApiKey(SystemType.EMAIL_SERVICE));
             
-            // 构造请求体，对主题和正文进行JSON转义
-            String requestBody = String.format(
-                "{\"to\":\"%s\",\"subject\":\"%s\",\"body\":\"%s\",\"from\":\"%s\"}",
-                request.getTo(), escapeJson(request.getSubject()), 
-                escapeJson(request.getBody()), request.getFrom()
-            );
+            // 构造请求体
+            String requestBody = emailBody(request);
             
             // 发送HTTP请求
             IntegrationResponse response = sendHttpRequest(
@@ -251,11 +290,8 @@ public class ExternalSystemIntegration {
             headers.put("Content-Type", "application/json");
             headers.put("Authorization", "Bearer " + getApiKey(SystemType.SMS_SERVICE));
             
-            // 构造请求体，对消息内容进行JSON转义
-            String requestBody = String.format(
-                "{\"to\":\"%s\",\"message\":\"%s\",\"sender\":\"%s\"}",
-                request.getTo(), escapeJson(request.getMessage()), request.getSender()
-            );
+            // 构造请求体
+            String requestBody = smsBody(request);
             
             // 发送HTTP请求
             IntegrationResponse response = sendHttpRequest(
@@ -319,11 +355,21 @@ public class ExternalSystemIntegration {
     
     /**
      * 信用检查集成
-     * 向信用检查系统发送信用检查请求
+     * 申请内容（顾客ID、姓名、出生日期和年收入）相同的成功结果在有效期内从缓存返回，
+     * 同时到达的相同检查只向信用检查系统发送一次请求
      * @param request 信用检查请求对象
      * @return IntegrationResponse 集成响应对象
      */
     public IntegrationResponse checkCredit(CreditCheckRequest request) {
+        return CreditCheckCache.get(request, () -> requestCreditCheck(request));
+    }
+    
+    /**
+     * 向信用检查系统发送信用检查请求
+     * @param request 信用检查请求对象
+     * @return IntegrationResponse 集成响应对象
+     */
+    private IntegrationResponse requestCreditCheck(CreditCheckRequest request) {
         try {
             // 设置请求头
             Map<String, String> headers = new HashMap<>();
@@ -398,6 +444,208 @@ public class ExternalSystemIntegration {
         }
     }
     
+    /**
+     * 银行转账集成（异步）
+     * 在银行转账系统的线程池中执行processBankTransfer，不占用调用线程
+     * @param request 银行转账请求对象
+     * @return 集成响应（银行转账系统繁忙时为503响应）
+     */
+    public CompletableFuture<IntegrationResponse> processBankTransferAsync(BankTransferRequest request) {
+        return submitAsync(SystemType.BANK_TRANSFER, () -> processBankTransfer(request));
+    }
+    
+    /**
+     * 邮件服务集成（异步）
+     * 在邮件服务系统的线程池中执行sendEmail，不占用调用线程
+     * @param request 邮件请求对象
+     * @return 集成响应（邮件服务系统繁忙时为503响应）
+     */
+    public CompletableFuture<IntegrationResponse> sendEmailAsync(EmailRequest request) {
+        return submitAsync(SystemType.EMAIL_SERVICE, () -> sendEmail(request));
+    }
+    
+    /**
+     * SMS服务集成（异步）
+     * 在SMS服务系统的线程池中执行sendSms，不占用调用线程
+     * @param request SMS请求对象
+     * @return 集成响应（SMS服务系统繁忙时为503响应）
+     */
+    public CompletableFuture<IntegrationResponse> sendSmsAsync(SmsRequest request) {
+        return submitAsync(SystemType.SMS_SERVICE, () -> sendSms(request));
+    }
+    
+    /**
+     * 支付网关集成（异步）
+     * 在支付网关系统的线程池中执行processPayment，不占用调用线程
+     * @param request 支付请求对象
+     * @return 集成响应（支付网关系统繁忙时为503响应）
+     */
+    public CompletableFuture<IntegrationResponse> processPaymentAsync(PaymentRequest request) {
+        return submitAsync(SystemType.PAYMENT_GATEWAY, () -> processPayment(request));
+    }
+    
+    /**
+     * 信用检查集成（异步）
+     * 在信用检查系统的线程池中执行checkCredit，不占用调用线程（缓存命中时直接返回）
+     * @param request 信用检查请求对象
+     * @return 集成响应（信用检查系统繁忙时为503响应）
+     */
+    public CompletableFuture<IntegrationResponse> checkCreditAsync(CreditCheckRequest request) {
+        IntegrationResponse cached = CreditCheckCache.getIfPresent(request);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return submitAsync(SystemType.CREDIT_CHECK, () -> checkCredit(request));
+    }
+    
+    /**
+     * 文档归档集成（异步）
+     * 在文档归档系统的线程池中执行archiveDocument，不占用调用线程
+     * @param request 文档归档请求对象
+     * @return 集成响应（文档归档系统繁忙时为503响应）
+     */
+    public CompletableFuture<IntegrationResponse> archiveDocumentAsync(DocumentArchiveRequest request) {
+        return submitAsync(SystemType.DOCUMENT_ARCHIVE, () -> archiveDocument(request));
+    }
+    
+    /**
+     * 银行转账集成（经由发件箱）
+     * 在调用方的事务中登记转账请求，提交后由发件箱的分发线程发送（失败时自动重试）
+     * @param conn 数据库连接（与业务数据在同一事务中登记）
+     * @param request 银行转账请求对象
+     * @return 发件箱消息ID
+     * @throws SQLException 登记失败时
+     */
+    public long enqueueBankTransfer(Connection conn, BankTransferRequest request) throws SQLException {
+        return IntegrationOutbox.enqueue(conn, SystemType.BANK_TRANSFER, bankTransferBody(request));
+    }
+    
+    /**
+     * 邮件服务集成（经由发件箱）
+     * 在调用方的事务中登记邮件，提交后由发件箱的分发线程发送（失败时自动重试）
+     * @param conn 数据库连接（与业务数据在同一事务中登记）
+     * @param request 邮件请求对象
+     * @return 发件箱消息ID
+     * @throws SQLException 登记失败时
+     */
+    public long enqueueEmail(Connection conn, EmailRequest request) throws SQLException {
+        return IntegrationOutbox.enqueue(conn, SystemType.EMAIL_SERVICE, emailBody(request));
+    }
+    
+    /**
+     * SMS服务集成（经由发件箱）
+     * 在调用方的事务中登记短信，提交后由发件箱的分发线程发送（失败时自动重试）
+     * @param conn 数据库连接（与业务数据在同一事务中登记）
+     * @param request SMS请求对象
+     * @return 发件箱消息ID
+     * @throws SQLException 登记失败时
+     */
+    public long enqueueSms(Connection conn, SmsRequest request) throws SQLException {
+        return IntegrationOutbox.enqueue(conn, SystemType.SMS_SERVICE, smsBody(request));
+    }
+    
+    /**
+     * 发送已构造的请求体
+     * 发件箱的分发线程使用。同一消息的每次发送使用相同的Idempotency-Key，
+     * 外部系统可据此排除重复请求
+     * @param systemType 系统类型枚举值
+     * @param payload 请求体（JSON）
+     * @param idempotencyKey 幂等键
+     * @return IntegrationResponse 集成响应对象
+     */
+    public IntegrationResponse deliver(SystemType systemType, String payload, String idempotencyKey) {
+        // 设置请求头
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("Authorization", "Bearer " + getApiKey(systemType));
+        headers.put("Idempotency-Key", idempotencyKey);
+        
+        // 发送HTTP请求
+        return sendHttpRequest(systemType, "POST", headers, payload);
+    }
+    
+    /**
+     * 批量发送已构造的消息
+     * 向系统的批量发送接口（<系统>.bulk_url）发送多条消息，批量发送调度器使用
+     * 不占用单条调用的隔板，失败和耗时只计入批量接口的熔断器。
+     * 同一批次的重试使用相同的Idempotency-Key，服务商已受理的批次不会重复发送
+     * @param systemType 系统类型枚举值
+     * @param payload 请求体（包含messages数组的JSON）
+     * @param idempotencyKey 幂等键
+     * @return IntegrationResponse 集成响应对象
+     */
+    public IntegrationResponse deliverBatch(SystemType systemType, String payload, String idempotencyKey) {
+        // 设置请求头
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("Authorization", "Bearer " + getApiKey(systemType));
+        headers.put("Idempotency-Key", idempotencyKey);
+        
+        // 发送HTTP请求
+        String bulkUrl = config.getProperty(systemType.name().toLowerCase() + ".bulk_url", "");
+        return sendHttpRequest(systemType, bulkUrl, true, "POST", headers, payload);
+    }
+    
+    /**
+     * 发送已构造的请求体（异步）
+     * 在系统的线程池中执行deliver
+     * @param systemType 系统类型枚举值
+     * @param payload 请求体（JSON）
+     * @param idempotencyKey 幂等键
+     * @return 集成响应（系统繁忙时为503响应）
+     */
+    public CompletableFuture<IntegrationResponse> deliverAsync(SystemType systemType, String payload,
+                                                               String idempotencyKey) {
+        return submitAsync(systemType, () -> deliver(systemType, payload, idempotencyKey));
+    }
+    
+    /**
+     * 在系统的线程池中异步执行
+     * 线程池的等待队列已满时不排队，立即返回503响应
+     * @param systemType 系统类型枚举值
+     * @param call 外部系统调用
+     * @return 集成响应
+     */
+    private CompletableFuture<IntegrationResponse> submitAsync(SystemType systemType,
+                                                              Supplier<IntegrationResponse> call) {
+        try {
+            return HttpClientPool.supplyAsync(systemType, call);
+        } catch (RejectedExecutionException e) {
+            LogUtil.warn("外部系统繁忙，请求被拒绝: " + systemType);
+            return CompletableFuture.completedFuture(
+                new IntegrationResponse(503, null, "外部系统繁忙，请稍后重试: " + systemType));
+        }
+    }
+    
+    /**
+     * 获取等待响应的时间上限
+     * 等待隔板名额、取得连接、建立连接和读取响应的超时时间之和，异步调用的等待方以此为超时时间
+     * @param systemType 系统类型枚举值
+     * @return 时间上限（毫秒）
+     */
+    public long getResponseTimeoutMillis(SystemType systemType) {
+        return HttpClientPool.getAsyncBulkheadMaxWaitMillis() + HttpClientPool.getConnectionRequestTimeoutMillis()
+            + 2L * getSystemTimeout(systemType);
+    }
+    
+    /**
+     * 获取各系统的熔断器和隔板的状态
+     * 批量接口的熔断器以“系统名_bulk”列出（只有已使用的系统）
+     * @return 系统名（小写） → 熔断器的统计信息和隔板的统计信息
+     */
+    public static Map<String, Map<String, Object>> getCircuitStatistics() {
+        Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+        for (SystemType type : SystemType.values()) {
+            Map<String, Object> stats = CircuitBreaker.of(type).getStatistics();
+            stats.putAll(HttpClientPool.getBulkheadStatistics(type));
+            statistics.put(type.name().toLowerCase(), stats);
+        }
+        for (Map.Entry<SystemType, CircuitBreaker> entry : CircuitBreaker.getBulkBreakers().entrySet()) {
+            statistics.put(entry.getKey().name().toLowerCase() + "_bulk", entry.getValue().getStatistics());
+        }
+        return statistics;
+    }
+    
     /**
      * 系统健康检查
      * 检查指定外部系统的健康状态
@@ -457,42 +705,19 @@ public class ExternalSystemIntegration {
     
     /**
      * 设置默认请求头
-     * 为HTTP连接设置默认的请求头信息
-     * @param connection HttpURLConnection对象
+     * 为HTTP请求设置默认的请求头信息
+     * @param builder 请求构建器
      * @param systemType 系统类型枚举值
      */
-    private void setDefaultHeaders(HttpURLConnection connection, SystemType systemType) {
+    private void setDefaultHeaders(RequestBuilder builder, SystemType systemType) {
         // 设置用户代理
-        connection.setRequestProperty("User-Agent", "InsuranceSystem/1.0");
+        builder.setHeader("User-Agent", "InsuranceSystem/1.0");
         // 设置接受的内容类型
-        connection.setRequestProperty("Accept", "application/json");
+        builder.setHeader("Accept", "application/json");
         // 设置系统类型头
-        connection.setRequestProperty("X-System-Type", systemType.name());
+        builder.setHeader("X-System-Type", systemType.name());
         // 设置请求ID头
-        connection.setRequestProperty("X-Request-ID", java.util.UUID.randomUUID().toString());
-    }
-    
-    /**
-     * 读取响应
-     * 从HTTP连接中读取响应内容
-     * @param connection HttpURLConnection对象
-     * @return String 响应内容
-     * @throws IOException IO异常
-     */
-    private String readResponse(HttpURLConnection connection) throws IOException {
-        // 创建StringBuilder用于存储响应内容
-        StringBuilder response = new StringBuilder();
-        // 使用BufferedReader读取响应流
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            // 逐行读取响应内容
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-        }
-        // 返回响应内容
-        return response.toString();
+        builder.setHeader("X-Request-ID", java.util.UUID.randomUUID().toString());
     }
     
     /**
@@ -510,6 +735,46 @@ public class ExternalSystemIntegration {
                      "ExternalSystemIntegration");
     }
     
+    /**
+     * 构造银行转账的请求体
+     * @param request 银行转账请求对象
+     * @return String 请求体（JSON）
+     */
+    private String bankTransferBody(BankTransferRequest request) {
+        return String.format(
+            "{\"account_number\":\"%s\",\"bank_code\":\"%s\",\"amount\":%.2f,\"currency\":\"JPY\",\"description\":\"%s\"}",
+            request.getAccountNumber(), request.getBankCode(), 
+            request.getAmount(), request.getDescription()
+        );
+    }
+    
+    /**
+     * 构造邮件的请求体
+     * 对主题和正文进行JSON转义
+     * @param request 邮件请求对象
+     * @return String 请求体（JSON）
+     */
+    String emailBody(EmailRequest request) {
+        return String.format(
+            "{\"to\":\"%s\",\"subject\":\"%s\",\"body\":\"%s\",\"from\":\"%s\"}",
+            request.getTo(), escapeJson(request.getSubject()), 
+            escapeJson(request.getBody()), request.getFrom()
+        );
+    }
+    
+    /**
+     * 构造短信的请求体
+     * 对消息内容进行JSON转义
+     * @param request SMS请求对象
+     * @return String 请求体（JSON）
+     */
+    String smsBody(SmsRequest request) {
+        return String.format(
+            "{\"to\":\"%s\",\"message\":\"%s\",\"sender\":\"%s\"}",
+            request.getTo(), escapeJson(request.getMessage()), request.getSender()
+        );
+    }
+    
     /**
      * 转义JSON字符串
      * 对字符串进行JSON转义处理
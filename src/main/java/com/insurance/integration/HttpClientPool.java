@@ -0,0 +1,346 @@
+package com.insurance.integration;
+
+import com.insurance.monitor.LatencyHistogram;
+import com.insurance.monitor.MetricsRegistry;
+import com.insurance.util.LogUtil;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 外部系统HTTP连接池
+ * 所有外部系统共用一个保持长连接的HTTP客户端，连接按主机复用，
+ * 总连接数和每个主机的连接数有上限，取得连接的等待时间也有上限。
+ *
+ * 异步调用按系统类型分别使用有界的线程池执行，一个系统响应缓慢时
+ * 只占用该系统的线程和队列，不影响其他系统，也不占用Servlet线程。
+ * 队列已满时立即拒绝，由调用方返回繁忙响应。
+ * 同步调用和异步调用合计的同时执行数也按系统类型用隔板（信号量）限制，
+ * 一个系统最多占用与其并发数相同的线程。同步调用超过时不等待连接而立即拒绝；
+ * 异步调用已经在队列中排过队，线程池的线程在有限的时间内等待名额，
+ * 同步调用占用名额时不会使已受理的异步调用失败。
+ *
+ * 每个系统的请求耗时、失败数和拒绝数记录到指标注册表。
+ * 配置从类路径上的/config/http-client.properties读取，同名系统属性优先。
+ */
+public final class HttpClientPool {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/http-client.properties";
+
+    // 连接池配置
+    private static final Properties config = new Properties();
+    // 取得连接的等待时间上限（毫秒）
+    private static final int connectionRequestTimeoutMillis;
+
+    // 连接管理器
+    private static final PoolingHttpClientConnectionManager connectionManager;
+    // HTTP客户端（线程安全，所有系统共用）
+    private static final CloseableHttpClient client;
+    // 系统类型 → 异步调用的线程池
+    private static final Map<ExternalSystemIntegration.SystemType, ThreadPoolExecutor> executors =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 请求耗时
+    private static final Map<ExternalSystemIntegration.SystemType, LatencyHistogram> latencies =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 失败数（连接失败、超时和5xx响应）
+    private static final Map<ExternalSystemIntegration.SystemType, MetricsRegistry.Counter> errors =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 同时执行的请求数上限
+    private static final Map<ExternalSystemIntegration.SystemType, Integer> maxConcurrency =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 限制同时执行数的隔板
+    private static final Map<ExternalSystemIntegration.SystemType, Semaphore> bulkheads =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 超过同时执行数而拒绝的请求数
+    private static final Map<ExternalSystemIntegration.SystemType, MetricsRegistry.Counter> bulkheadRejections =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 隔板已满时的等待时间上限（毫秒）
+    private static final long bulkheadMaxWaitMillis;
+    // 异步调用的线程等待隔板名额的时间上限（毫秒）
+    private static final long asyncBulkheadMaxWaitMillis;
+    // 当前线程是否在执行异步调用
+    private static final ThreadLocal<Boolean> asyncCall = new ThreadLocal<>();
+    // 系统类型 → 队列已满而拒绝的异步调用数
+    private static final Map<ExternalSystemIntegration.SystemType, MetricsRegistry.Counter> rejections =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+
+    // 静态代码块，加载配置并创建连接池和线程池
+    static {
+        loadConfig();
+        connectionRequestTimeoutMillis = Integer.parseInt(getConfig("http.client.connectionRequestTimeoutMillis").trim());
+        int maxPerRoute = Integer.parseInt(getConfig("http.client.maxPerRoute").trim());
+        int queueSize = Integer.parseInt(getConfig("http.client.async.queueSize").trim());
+        bulkheadMaxWaitMillis = Long.parseLong(getConfig("http.client.bulkhead.maxWaitMillis").trim());
+        asyncBulkheadMaxWaitMillis = Long.parseLong(getConfig("http.client.async.bulkheadMaxWaitMillis").trim());
+
+        connectionManager = new PoolingHttpClientConnectionManager(
+            Long.parseLong(getConfig("http.client.timeToLiveSeconds").trim()), TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(Integer.parseInt(getConfig("http.client.maxTotal").trim()));
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        // 空闲一段时间的连接在复用前先检查是否已被对方关闭
+        connectionManager.setValidateAfterInactivity(2000);
+        client = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .evictExpiredConnections()
+            .evictIdleConnections(Long.parseLong(getConfig("http.client.idleSeconds").trim()), TimeUnit.SECONDS)
+            .disableAutomaticRetries()
+            .build();
+
+        for (ExternalSystemIntegration.SystemType type : ExternalSystemIntegration.SystemType.values()) {
+            String system = type.name().toLowerCase();
+            int concurrency = Integer.parseInt(
+                System.getProperty("http.client." + system + ".maxConcurrency",
+                                   config.getProperty("http.client." + system + ".maxConcurrency",
+                                                      String.valueOf(maxPerRoute))).trim());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreads("http-" + system));
+            executor.allowCoreThreadTimeOut(true);
+            executors.put(type, executor);
+            Semaphore bulkhead = new Semaphore(concurrency);
+            maxConcurrency.put(type, concurrency);
+            bulkheads.put(type, bulkhead);
+
+            latencies.put(type, MetricsRegistry.histogram("insurance_integration_request_duration_seconds",
+                "External system HTTP request time", "system", system));
+            errors.put(type, MetricsRegistry.counter("insurance_integration_request_errors_total",
+                "External system HTTP requests that failed or returned 5xx", "system", system));
+            rejections.put(type, MetricsRegistry.counter("insurance_integration_rejected_total",
+                "Asynchronous external system calls rejected because the queue was full", "system", system));
+            bulkheadRejections.put(type, MetricsRegistry.counter("insurance_integration_bulkhead_rejected_total",
+                "External system requests rejected because the concurrency limit was reached", "system", system));
+            MetricsRegistry.gauge("insurance_integration_bulkhead_available",
+                "Remaining concurrent request slots for the external system",
+                bulkhead::availablePermits, "system", system);
+            MetricsRegistry.gauge("insurance_integration_in_flight", "Asynchronous external system calls in progress",
+                executor::getActiveCount, "system", system);
+            MetricsRegistry.gauge("insurance_integration_queued", "Asynchronous external system calls waiting",
+                () -> executor.getQueue().size(), "system", system);
+        }
+        MetricsRegistry.gauge("insurance_http_pool_leased", "Leased HTTP connections",
+            () -> connectionManager.getTotalStats().getLeased());
+        MetricsRegistry.gauge("insurance_http_pool_available", "Idle keep-alive HTTP connections",
+            () -> connectionManager.getTotalStats().getAvailable());
+        MetricsRegistry.gauge("insurance_http_pool_pending", "Requests waiting for an HTTP connection",
+            () -> connectionManager.getTotalStats().getPending());
+    }
+
+    private HttpClientPool() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 总连接数上限
+        config.setProperty("http.client.maxTotal", "100");
+        // 每个主机的连接数上限（也是每个系统异步调用的默认并发数）
+        config.setProperty("http.client.maxPerRoute", "20");
+        // 连接池已满时取得连接的等待时间上限（毫秒）
+        config.setProperty("http.client.connectionRequestTimeoutMillis", "2000");
+        // 空闲连接保留的时间（秒）
+        config.setProperty("http.client.idleSeconds", "30");
+        // 连接的最长使用时间（秒），超过后不再复用（应对对方的DNS切换）
+        config.setProperty("http.client.timeToLiveSeconds", "300");
+        // 每个系统异步调用的等待队列长度
+        config.setProperty("http.client.async.queueSize", "200");
+        // 同时执行数已满时的等待时间上限（毫秒），0为不等待
+        config.setProperty("http.client.bulkhead.maxWaitMillis", "0");
+        // 异步调用的线程等待隔板名额的时间上限（毫秒）
+        config.setProperty("http.client.async.bulkheadMaxWaitMillis", "10000");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = HttpClientPool.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load HTTP client config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取HTTP客户端
+     * @return 共用的HTTP客户端
+     */
+    static CloseableHttpClient client() {
+        return client;
+    }
+
+    /**
+     * 创建请求配置
+     * @param timeoutMillis 连接超时和读取超时（毫秒）
+     * @return 请求配置
+     */
+    static RequestConfig requestConfig(int timeoutMillis) {
+        return RequestConfig.custom()
+            .setConnectTimeout(timeoutMillis)
+            .setSocketTimeout(timeoutMillis)
+            .setConnectionRequestTimeout(connectionRequestTimeoutMillis)
+            .build();
+    }
+
+    /**
+     * 获取取得连接的等待时间上限
+     * @return 等待时间（毫秒）
+     */
+    static int getConnectionRequestTimeoutMillis() {
+        return connectionRequestTimeoutMillis;
+    }
+
+    /**
+     * 获取异步调用的线程等待隔板名额的时间上限
+     * @return 等待时间（毫秒）
+     */
+    static long getAsyncBulkheadMaxWaitMillis() {
+        return asyncBulkheadMaxWaitMillis;
+    }
+
+    /**
+     * 在系统的线程池中异步执行
+     * @param type 系统类型
+     * @param task 处理
+     * @param <T> 结果类型
+     * @return 处理结果
+     * @throws RejectedExecutionException 队列已满或已关闭时
+     */
+    static <T> CompletableFuture<T> supplyAsync(ExternalSystemIntegration.SystemType type, Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                asyncCall.set(Boolean.TRUE);
+                try {
+                    return task.get();
+                } finally {
+                    asyncCall.remove();
+                }
+            }, executors.get(type));
+        } catch (RejectedExecutionException e) {
+            rejections.get(type).increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 取得同时执行的名额
+     * 同时执行数已满时最多等待设定的时间（异步调用的线程按异步调用的等待时间），
+     * 取得后必须调用releaseBulkhead归还
+     * @param type 系统类型
+     * @return 取得成功返回true，已满时返回false
+     */
+    static boolean acquireBulkhead(ExternalSystemIntegration.SystemType type) {
+        long maxWaitMillis = asyncCall.get() != null ? asyncBulkheadMaxWaitMillis : bulkheadMaxWaitMillis;
+        boolean acquired;
+        try {
+            acquired = maxWaitMillis > 0
+                ? bulkheads.get(type).tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)
+                : bulkheads.get(type).tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            bulkheadRejections.get(type).increment();
+        }
+        return acquired;
+    }
+
+    /**
+     * 归还同时执行的名额
+     * @param type 系统类型
+     */
+    static void releaseBulkhead(ExternalSystemIntegration.SystemType type) {
+        bulkheads.get(type).release();
+    }
+
+    /**
+     * 获取隔板的统计信息
+     * @param type 系统类型
+     * @return 同时执行数上限、执行中、拒绝数、异步队列中的调用数
+     */
+    static Map<String, Object> getBulkheadStatistics(ExternalSystemIntegration.SystemType type) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int limit = maxConcurrency.get(type);
+        stats.put("maxConcurrent", limit);
+        stats.put("inFlight", limit - bulkheads.get(type).availablePermits());
+        stats.put("bulkheadRejected", bulkheadRejections.get(type).get());
+        stats.put("queued", executors.get(type).getQueue().size());
+        stats.put("asyncRejected", rejections.get(type).get());
+        return stats;
+    }
+
+    /**
+     * 记录一次请求
+     * @param type 系统类型
+     * @param elapsedNanos 请求耗时（纳秒）
+     * @param failed 是否失败
+     */
+    static void record(ExternalSystemIntegration.SystemType type, long elapsedNanos, boolean failed) {
+        latencies.get(type).record(elapsedNanos);
+        if (failed) {
+            errors.get(type).increment();
+        }
+    }
+
+    /**
+     * 关闭线程池和连接池
+     * 等待执行中的异步调用结束（最多等待到超时），然后关闭所有连接
+     */
+    public static void shutdown() {
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor executor : executors.values()) {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            LogUtil.error("HTTPクライアントのクローズに失敗しました", e);
+        }
+    }
+
+    /**
+     * 创建守护线程的线程工厂
+     * @param prefix 线程名前缀
+     * @return 线程工厂
+     */
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,499 @@
+package com.insurance.integration;
+
+import com.insurance.dao.OutboxDAO;
+import com.insurance.model.OutboxMessage;
+import com.insurance.monitor.LatencyHistogram;
+import com.insurance.monitor.MetricsRegistry;
+import com.insurance.util.LogUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 外部系统发件箱
+ * 发送到外部系统的请求在业务事务中登记到integration_outbox，提交后由分发线程发送，
+ * 请求的响应时间不再包含外部系统的响应时间，外部系统故障时请求也不会丢失。
+ *
+ * 分发线程按批取得到期的消息（FOR UPDATE SKIP LOCKED，多台服务器可同时分发），
+ * 交给各系统的异步调用线程池并行发送，发送期间不持有行锁。取得的消息在占用期限内
+ * 不被其他服务器取得，在线程池的队列中等待或发送中时定期延长占用期限，
+ * 只有服务器停止或分发线程无法延长时才会被重新取得。
+ * 发送失败（连接失败、超时、5xx、408、429）时按指数退避重试，
+ * 其他4xx响应或达到最大尝试次数时标记为死信，不再发送。
+ * 每次发送都带相同的Idempotency-Key（消息ID），外部系统可据此排除重复请求。
+ *
+ * 每个系统的发送数、重试数、死信数、从登记到发送的延迟，以及积压件数和最早积压的时间
+ * 记录到指标注册表。配置从类路径上的/config/outbox.properties读取，同名系统属性优先。
+ */
+public final class IntegrationOutbox {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/outbox.properties";
+    // 停止时等待分发线程结束的最长时间（毫秒）
+    private static final long SHUTDOWN_TIMEOUT_MS = 10 * 1000;
+    // 一次删除的已发送消息的最大件数
+    private static final int PURGE_LIMIT = 1000;
+
+    // 发件箱配置
+    private static final Properties config = new Properties();
+    // 分发线程数
+    private static final int dispatcherCount;
+    // 一次取得的最大件数
+    private static final int batchSize;
+    // 没有到期消息时的等待时间（毫秒）
+    private static final long pollIntervalMillis;
+    // 取得的消息的占用期限（毫秒），超过后其他分发线程可重新取得（发送中定期延长）
+    private static final long leaseMillis;
+    // 最大尝试次数
+    private static final int maxAttempts;
+    // 重试间隔的基数（毫秒）
+    private static final long backoffBaseMillis;
+    // 重试间隔的上限（毫秒）
+    private static final long backoffMaxMillis;
+    // 积压统计的刷新间隔（毫秒）
+    private static final long statsIntervalMillis;
+    // 已发送消息的保留时间（毫秒）
+    private static final long retentionMillis;
+
+    // 发件箱数据访问对象
+    private static final OutboxDAO outboxDAO = new OutboxDAO();
+    // 系统类型 → 发送成功数
+    private static final Map<ExternalSystemIntegration.SystemType, MetricsRegistry.Counter> sentCounters =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 安排重试数
+    private static final Map<ExternalSystemIntegration.SystemType, MetricsRegistry.Counter> retryCounters =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 死信数
+    private static final Map<ExternalSystemIntegration.SystemType, MetricsRegistry.Counter> deadCounters =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 系统类型 → 从登记到发送成功的延迟
+    private static final Map<ExternalSystemIntegration.SystemType, LatencyHistogram> lags =
+        new EnumMap<>(ExternalSystemIntegration.SystemType.class);
+    // 最近一次统计的未完成消息（系统类型 → 状态 → {件数, 最早的登记时间}）
+    private static volatile Map<String, Map<String, long[]>> unsent = Collections.emptyMap();
+    // 下次刷新积压统计的时间（毫秒）
+    private static final AtomicLong nextStatsAt = new AtomicLong();
+
+    // 分发线程（start()时创建）
+    private static final List<Thread> dispatchers = new ArrayList<>();
+    // 外部系统集成（start()时创建）
+    private static ExternalSystemIntegration integration;
+    // 运行标志
+    private static volatile boolean running;
+
+    // 静态代码块，加载配置并登记指标
+    static {
+        loadConfig();
+        dispatcherCount = Integer.parseInt(getConfig("outbox.dispatchers").trim());
+        batchSize = Integer.parseInt(getConfig("outbox.batchSize").trim());
+        pollIntervalMillis = Long.parseLong(getConfig("outbox.pollIntervalMillis").trim());
+        leaseMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("outbox.leaseSeconds").trim()));
+        maxAttempts = Integer.parseInt(getConfig("outbox.maxAttempts").trim());
+        backoffBaseMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("outbox.backoff.baseSeconds").trim()));
+        backoffMaxMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("outbox.backoff.maxSeconds").trim()));
+        statsIntervalMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("outbox.statsIntervalSeconds").trim()));
+        retentionMillis = TimeUnit.DAYS.toMillis(Long.parseLong(getConfig("outbox.retentionDays").trim()));
+
+        for (ExternalSystemIntegration.SystemType type : ExternalSystemIntegration.SystemType.values()) {
+            String system = type.name().toLowerCase();
+            sentCounters.put(type, MetricsRegistry.counter("insurance_outbox_sent_total",
+                "Outbox messages delivered to the external system", "system", system));
+            retryCounters.put(type, MetricsRegistry.counter("insurance_outbox_retries_total",
+                "Outbox deliveries that failed and were rescheduled", "system", system));
+            deadCounters.put(type, MetricsRegistry.counter("insurance_outbox_dead_letters_total",
+                "Outbox messages given up on", "system", system));
+            lags.put(type, MetricsRegistry.histogram("insurance_outbox_delivery_lag_seconds",
+                "Time from enqueue to successful delivery", "system", system));
+            MetricsRegistry.gauge("insurance_outbox_backlog", "Outbox messages waiting or being delivered",
+                () -> unsentCount(type.name(), OutboxDAO.PENDING) + unsentCount(type.name(), OutboxDAO.PROCESSING),
+                "system", system);
+            MetricsRegistry.gauge("insurance_outbox_oldest_pending_seconds", "Age of the oldest undelivered outbox message",
+                () -> oldestUnsentAgeSeconds(type.name()), "system", system);
+            MetricsRegistry.gauge("insurance_outbox_dead_letters", "Outbox messages in the dead-letter state",
+                () -> unsentCount(type.name(), OutboxDAO.DEAD), "system", system);
+        }
+    }
+
+    private IntegrationOutbox() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 分发线程数（发送在各系统的异步调用线程池中并行进行）
+        config.setProperty("outbox.dispatchers", "2");
+        // 一次取得的最大件数
+        config.setProperty("outbox.batchSize", "50");
+        // 没有到期消息时的等待时间（毫秒），本服务器登记的消息会立即唤醒分发线程
+        config.setProperty("outbox.pollIntervalMillis", "1000");
+        // 取得的消息的占用期限（秒），发送未完成时每隔三分之一期限延长
+        config.setProperty("outbox.leaseSeconds", "120");
+        // 最大尝试次数，超过后标记为死信
+        config.setProperty("outbox.maxAttempts", "10");
+        // 重试间隔的基数（秒），每次失败后加倍
+        config.setProperty("outbox.backoff.baseSeconds", "5");
+        // 重试间隔的上限（秒）
+        config.setProperty("outbox.backoff.maxSeconds", "3600");
+        // 积压统计的刷新间隔（秒）
+        config.setProperty("outbox.statsIntervalSeconds", "15");
+        // 已发送消息的保留天数
+        config.setProperty("outbox.retentionDays", "7");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = IntegrationOutbox.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load outbox config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 开始分发
+     */
+    public static synchronized void start() {
+        if (running) {
+            return;
+        }
+        try {
+            integration = new ExternalSystemIntegration();
+        } catch (RuntimeException e) {
+            LogUtil.error("外部システムの設定を読み込めないため、アウトボックスの送信を開始できませんでした", e);
+            return;
+        }
+        running = true;
+        for (int i = 1; i <= dispatcherCount; i++) {
+            Thread thread = new Thread(IntegrationOutbox::runDispatcher, "outbox-dispatcher-" + i);
+            thread.setDaemon(true);
+            dispatchers.add(thread);
+            thread.start();
+        }
+        LogUtil.info("アウトボックスの送信を開始しました: スレッド数: " + dispatcherCount + ", バッチサイズ: " + batchSize);
+    }
+
+    /**
+     * 停止分发
+     * 等待分发线程结束；发送中的消息在占用期限过后重新发送
+     */
+    public static synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+        try {
+            for (Thread thread : dispatchers) {
+                LockSupport.unpark(thread);
+                thread.join(Math.max(deadline - System.currentTimeMillis(), 1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dispatchers.clear();
+    }
+
+    /**
+     * 登记消息
+     * 使用调用方的连接，与业务数据在同一事务中登记，事务提交后才会被发送。
+     * 连接为自动提交时立即唤醒分发线程，否则在下次轮询时发送
+     * @param conn 数据库连接
+     * @param systemType 外部系统类型
+     * @param payload 请求体
+     * @return 消息ID
+     * @throws SQLException 登记失败时
+     */
+    public static long enqueue(Connection conn, ExternalSystemIntegration.SystemType systemType, String payload)
+            throws SQLException {
+        long id = outboxDAO.insert(conn, systemType.name(), payload);
+        if (conn.getAutoCommit()) {
+            wakeUp();
+        }
+        return id;
+    }
+
+    /**
+     * 唤醒分发线程
+     * 在提交登记了消息的事务后调用，不必等待下次轮询
+     */
+    public static void wakeUp() {
+        synchronized (IntegrationOutbox.class) {
+            for (Thread thread : dispatchers) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * 获取消息的发送状态
+     * @param id 消息ID
+     * @return 消息（不含请求体），不存在时返回null
+     * @throws SQLException SQL异常
+     */
+    public static OutboxMessage getMessage(long id) throws SQLException {
+        return outboxDAO.findById(id);
+    }
+
+    /**
+     * 获取发件箱统计信息
+     * @return 各系统的积压件数、处理中件数、死信件数和最早积压的时间（最近一次统计时）
+     */
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running);
+        for (ExternalSystemIntegration.SystemType type : ExternalSystemIntegration.SystemType.values()) {
+            Map<String, Object> system = new LinkedHashMap<>();
+            system.put("pending", (long) unsentCount(type.name(), OutboxDAO.PENDING));
+            system.put("processing", (long) unsentCount(type.name(), OutboxDAO.PROCESSING));
+            system.put("dead", (long) unsentCount(type.name(), OutboxDAO.DEAD));
+            system.put("oldestPendingSeconds", oldestUnsentAgeSeconds(type.name()));
+            system.put("sent", sentCounters.get(type).get());
+            system.put("retries", retryCounters.get(type).get());
+            stats.put(type.name(), system);
+        }
+        return stats;
+    }
+
+    /**
+     * 分发线程主循环
+     * 取得到期的消息并发送；没有到期消息时等待轮询间隔或被唤醒
+     */
+    private static void runDispatcher() {
+        while (running) {
+            refreshStatistics();
+            List<OutboxMessage> batch;
+            try {
+                batch = outboxDAO.claim(batchSize, leaseMillis);
+            } catch (SQLException e) {
+                LogUtil.error("アウトボックスのメッセージを取得できませんでした", e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis));
+                continue;
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis));
+                continue;
+            }
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * 发送一批消息
+     * 在各系统的异步调用线程池中并行发送，等待全部完成；
+     * 每隔三分之一占用期限延长未完成的消息的占用期限，避免排队期间被其他服务器重新发送
+     * @param batch 取得的消息
+     */
+    private static void dispatch(List<OutboxMessage> batch) {
+        List<OutboxMessage> sending = new ArrayList<>(batch.size());
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>(batch.size());
+        for (OutboxMessage message : batch) {
+            ExternalSystemIntegration.SystemType type;
+            try {
+                type = ExternalSystemIntegration.SystemType.valueOf(message.getSystemType());
+            } catch (IllegalArgumentException e) {
+                giveUp(message, null, null, "未知の外部システム: " + message.getSystemType());
+                continue;
+            }
+            sending.add(message);
+            deliveries.add(integration.deliverAsync(type, message.getPayload(), "outbox-" + message.getId())
+                .handle((response, error) -> {
+                    complete(message, type, response, error);
+                    return null;
+                }));
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(deliveries.toArray(new CompletableFuture<?>[0]));
+        long renewIntervalMillis = Math.max(leaseMillis / 3, 1);
+        while (true) {
+            try {
+                all.get(renewIntervalMillis, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                renewLeases(sending, deliveries);
+            } catch (ExecutionException e) {
+                LogUtil.error("アウトボックスの送信処理で予期しないエラーが発生しました", e.getCause());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 延长未完成的消息的占用期限
+     * 无法延长时占用期限过后由其他分发线程重新发送
+     * @param sending 发送中的消息
+     * @param deliveries 与sending对应的发送处理
+     */
+    private static void renewLeases(List<OutboxMessage> sending, List<CompletableFuture<Void>> deliveries) {
+        List<OutboxMessage> unfinished = new ArrayList<>();
+        for (int i = 0; i < sending.size(); i++) {
+            if (!deliveries.get(i).isDone()) {
+                unfinished.add(sending.get(i));
+            }
+        }
+        try {
+            outboxDAO.renewLease(unfinished, leaseMillis);
+        } catch (SQLException e) {
+            LogUtil.error("アウトボックスの占有期限を延長できませんでした（期限後に再送されます）: " + unfinished.size() + "件", e);
+        }
+    }
+
+    /**
+     * 记录发送结果
+     * 成功时标记为已发送；可重试的失败时安排重试；其他失败或达到最大尝试次数时标记为死信
+     * @param message 消息
+     * @param type 外部系统类型
+     * @param response 外部系统的响应（异常时为null）
+     * @param error 异常（正常时为null）
+     */
+    private static void complete(OutboxMessage message, ExternalSystemIntegration.SystemType type,
+                                 ExternalSystemIntegration.IntegrationResponse response, Throwable error) {
+        Integer statusCode = response != null ? response.getStatusCode() : null;
+        try {
+            if (response != null && response.isSuccess()) {
+                if (outboxDAO.markSent(message.getId(), message.getAttempts(), response.getStatusCode())) {
+                    sentCounters.get(type).increment();
+                    lags.get(type).record(TimeUnit.MILLISECONDS.toNanos(
+                        Math.max(System.currentTimeMillis() - message.getCreatedAt().getTime(), 0)));
+                }
+                return;
+            }
+
+            String reason = error != null ? String.valueOf(error.getCause() != null ? error.getCause() : error)
+                                          : response.getErrorMessage();
+            boolean retryable = statusCode == null || statusCode >= 500 || statusCode == 408 || statusCode == 429;
+            if (retryable && message.getAttempts() < maxAttempts) {
+                long delayMillis = backoffMillis(message.getAttempts());
+                if (outboxDAO.reschedule(message.getId(), message.getAttempts(), delayMillis, statusCode, reason)) {
+                    retryCounters.get(type).increment();
+                }
+            } else {
+                giveUp(message, type, statusCode, reason);
+            }
+        } catch (SQLException e) {
+            // 结果未能记录的消息在占用期限过后重新发送
+            LogUtil.error("アウトボックスの送信結果を記録できませんでした: id=" + message.getId(), e);
+        }
+    }
+
+    /**
+     * 标记为死信
+     * @param message 消息
+     * @param type 外部系统类型（未知的系统时为null）
+     * @param statusCode 响应状态码（没有响应时为null）
+     * @param reason 原因
+     */
+    private static void giveUp(OutboxMessage message, ExternalSystemIntegration.SystemType type,
+                               Integer statusCode, String reason) {
+        try {
+            if (outboxDAO.markDead(message.getId(), message.getAttempts(), statusCode, reason)) {
+                if (type != null) {
+                    deadCounters.get(type).increment();
+                }
+                LogUtil.warn("アウトボックスのメッセージをデッドレターにしました: id=" + message.getId() +
+                             ", システム: " + message.getSystemType() + ", 試行回数: " + message.getAttempts() +
+                             ", 理由: " + reason);
+            }
+        } catch (SQLException e) {
+            LogUtil.error("アウトボックスの送信結果を記録できませんでした: id=" + message.getId(), e);
+        }
+    }
+
+    /**
+     * 计算重试间隔
+     * 基数按失败次数加倍（不超过上限），在后一半范围内随机取值，避免大量消息同时重试
+     * @param attempts 已尝试次数
+     * @return 重试间隔（毫秒）
+     */
+    static long backoffMillis(int attempts) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 30);
+        long delay = Math.min(backoffBaseMillis << shift, backoffMaxMillis);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * 刷新积压统计
+     * 到达刷新间隔时由一个分发线程执行，同时删除保留期限已过的已发送消息
+     */
+    private static void refreshStatistics() {
+        long now = System.currentTimeMillis();
+        long next = nextStatsAt.get();
+        if (now < next || !nextStatsAt.compareAndSet(next, now + statsIntervalMillis)) {
+            return;
+        }
+        try {
+            unsent = outboxDAO.countUnsent();
+            int purged = outboxDAO.deleteSent(now - retentionMillis, PURGE_LIMIT);
+            if (purged > 0) {
+                LogUtil.info("送信済みのアウトボックスメッセージを削除しました: " + purged + "件");
+            }
+        } catch (SQLException e) {
+            LogUtil.error("アウトボックスの統計を取得できませんでした", e);
+        }
+    }
+
+    /**
+     * 最近一次统计的件数
+     * @param systemType 外部系统类型
+     * @param status 状态
+     * @return 件数
+     */
+    private static double unsentCount(String systemType, String status) {
+        long[] entry = unsentEntry(systemType, status);
+        return entry != null ? entry[0] : 0;
+    }
+
+    /**
+     * 最近一次统计时最早的未发送消息的等待时间
+     * @param systemType 外部系统类型
+     * @return 等待时间（秒），没有未发送消息时为0
+     */
+    private static double oldestUnsentAgeSeconds(String systemType) {
+        long oldest = Long.MAX_VALUE;
+        for (String status : new String[] {OutboxDAO.PENDING, OutboxDAO.PROCESSING}) {
+            long[] entry = unsentEntry(systemType, status);
+            if (entry != null) {
+                oldest = Math.min(oldest, entry[1]);
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(System.currentTimeMillis() - oldest, 0) / 1000.0;
+    }
+
+    /**
+     * 最近一次统计的条目
+     * @param systemType 外部系统类型
+     * @param status 状态
+     * @return {件数, 最早的登记时间}，没有时返回null
+     */
+    private static long[] unsentEntry(String systemType, String status) {
+        Map<String, long[]> byStatus = unsent.get(systemType);
+        return byStatus != null ? byStatus.get(status) : null;
+    }
+}
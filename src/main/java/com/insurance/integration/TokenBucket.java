@@ -0,0 +1,72 @@
+package com.insurance.integration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶
+ * 按固定速率补充令牌，最多积存到容量为止，取得令牌不足时等待补充。
+ * 令牌可以预支（余额为负），后来的调用方等待到预支部分补充完为止，
+ * 因此多个线程同时取得时也按调用顺序排队，整体不超过设定的速率。
+ */
+final class TokenBucket {
+
+    // 每纳秒补充的令牌数
+    private final double tokensPerNano;
+    // 容量（最多积存的令牌数）
+    private final double capacity;
+    // 当前的令牌数（预支时为负数）
+    private double tokens;
+    // 上次补充的时刻（System.nanoTime）
+    private long refilledAt;
+
+    /**
+     * 构造函数
+     * 创建时令牌为满
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param capacity 容量
+     */
+    TokenBucket(double ratePerSecond, double capacity) {
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * 取得令牌
+     * 令牌不足时等待补充（等待期间不持有锁）
+     * @param permits 令牌数
+     * @return 等待的时间（纳秒）
+     * @throws InterruptedException 等待中被中断时
+     */
+    long acquire(int permits) throws InterruptedException {
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    /**
+     * 预约令牌
+     * 先扣除令牌，返回补充到足够数量为止需要等待的时间
+     * @param permits 令牌数
+     * @return 需要等待的时间（纳秒）
+     */
+    private synchronized long reserve(int permits) {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        tokens -= permits;
+        return tokens >= 0 ? 0L : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    /**
+     * 获取当前的令牌数
+     * @return 令牌数（预支时为负数）
+     */
+    synchronized double available() {
+        long now = System.nanoTime();
+        return Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+    }
+}
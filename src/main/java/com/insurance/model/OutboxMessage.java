@@ -0,0 +1,85 @@
+package com.insurance.model;
+
+import java.util.Date;
+
+/**
+ * 发件箱消息模型类
+ * 等待发送到外部系统的一个请求
+ */
+public class OutboxMessage {
+    // 消息ID，主键
+    private long id;
+    // 外部系统类型（SystemType的名称）
+    private String systemType;
+    // 请求体（JSON）
+    private String payload;
+    // 状态（PENDING, PROCESSING, SENT, DEAD）
+    private String status;
+    // 发送尝试次数
+    private int attempts;
+    // 下次发送时间（处理中为占用期限，已发送为发送时间）
+    private Date nextAttemptAt;
+    // 最后一次响应的状态码
+    private Integer lastStatusCode;
+    // 最后一次的错误信息
+    private String lastError;
+    // 登记时间
+    private Date createdAt;
+    // 发送时间
+    private Date sentAt;
+
+    // 构造函数
+    // 无参构造函数
+    public OutboxMessage() {}
+
+    // Getter和Setter方法
+    // 获取消息ID
+    public long getId() { return id; }
+    // 设置消息ID
+    public void setId(long id) { this.id = id; }
+
+    // 获取外部系统类型
+    public String getSystemType() { return systemType; }
+    // 设置外部系统类型
+    public void setSystemType(String systemType) { this.systemType = systemType; }
+
+    // 获取请求体
+    public String getPayload() { return payload; }
+    // 设置请求体
+    public void setPayload(String payload) { this.payload = payload; }
+
+    // 获取状态
+    public String getStatus() { return status; }
+    // 设置状态
+    public void setStatus(String status) { this.status = status; }
+
+    // 获取发送尝试次数
+    public int getAttempts() { return attempts; }
+    // 设置发送尝试次数
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    // 获取下次发送时间
+    public Date getNextAttemptAt() { return nextAttemptAt; }
+    // 设置下次发送时间
+    public void setNextAttemptAt(Date nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    // 获取最后一次响应的状态码
+    public Integer getLastStatusCode() { return lastStatusCode; }
+    // 设置最后一次响应的状态码
+    public void setLastStatusCode(Integer lastStatusCode) { this.lastStatusCode = lastStatusCode; }
+
+    // 获取最后一次的错误信息
+    public String getLastError() { return lastError; }
+    // 设置最后一次的错误信息
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    // 获取登记时间
+    public Date getCreatedAt() { return createdAt; }
+    // 设置登记时间
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+
+    // 获取发送时间
+    public Date getSentAt() { return sentAt; }
+    // 设置发送时间
+    public void setSentAt(Date sentAt) { this.sentAt = sentAt; }
+}
@@ -0,0 +1,441 @@
+package com.insurance.monitor;
+
+import com.insurance.integration.ExternalSystemIntegration;
+import com.insurance.util.DatabaseUtil;
+import com.insurance.util.LogUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 健康检查
+ * 按固定间隔并行执行所有检查（数据库和各外部系统），最新结果缓存在内存中。
+ * 状态页面和监控只读取缓存，不在请求线程中访问数据库或外部系统。
+ *
+ * 每个检查有超时时间，超时视为异常。上一次执行尚未结束的检查跳过本轮，
+ * 响应缓慢的外部系统不会占满检查线程。每个检查保留最近的结果作为历史，
+ * 同时记录到指标注册表（检查耗时的分布和是否正常）供趋势分析。
+ *
+ * 配置从类路径上的/config/health.properties读取，同名系统属性优先。
+ */
+public final class HealthProbes {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/health.properties";
+    // 数据库检查的名称
+    public static final String DATABASE = "database";
+
+    // 健康检查配置
+    private static final Properties config = new Properties();
+    // 检查间隔（秒）
+    private static final long intervalSeconds;
+    // 每个检查的超时时间（毫秒）
+    private static final long timeoutMillis;
+    // 每个检查保留的历史件数
+    private static final int historySize;
+    // 检查线程数
+    private static final int threads;
+
+    // 已登记的检查（按登记顺序）
+    private static final Map<String, Probe> probes = Collections.synchronizedMap(new LinkedHashMap<>());
+    // 定期触发检查的调度器（start()时创建）
+    private static ScheduledExecutorService scheduler;
+    // 执行检查的线程池（start()时创建）
+    private static ExecutorService workers;
+
+    // 静态代码块，加载配置
+    static {
+        loadConfig();
+        intervalSeconds = Long.parseLong(getConfig("health.probe.intervalSeconds").trim());
+        timeoutMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("health.probe.timeoutSeconds").trim()));
+        historySize = Integer.parseInt(getConfig("health.probe.historySize").trim());
+        threads = Integer.parseInt(getConfig("health.probe.threads").trim());
+    }
+
+    private HealthProbes() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 检查间隔（秒）
+        config.setProperty("health.probe.intervalSeconds", "30");
+        // 每个检查的超时时间（秒），超过时视为异常
+        config.setProperty("health.probe.timeoutSeconds", "10");
+        // 每个检查保留的历史件数（默认间隔下约1小时）
+        config.setProperty("health.probe.historySize", "120");
+        // 检查线程数
+        config.setProperty("health.probe.threads", "8");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = HealthProbes.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load health probe config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 开始定期检查
+     * 登记数据库和各外部系统的检查，立即执行第一轮
+     */
+    public static synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        register(DATABASE, HealthProbes::checkDatabase);
+        try {
+            ExternalSystemIntegration integration = new ExternalSystemIntegration();
+            for (ExternalSystemIntegration.SystemType type : ExternalSystemIntegration.SystemType.values()) {
+                register(type.name(), () -> integration.checkSystemHealth(type));
+            }
+        } catch (RuntimeException e) {
+            // 外部系统配置有误时只检查数据库
+            LogUtil.error("外部システムのヘルスチェックを登録できませんでした", e);
+        }
+
+        workers = Executors.newFixedThreadPool(threads, daemonThreads("health-probe"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("health-probe-scheduler"));
+        scheduler.scheduleWithFixedDelay(HealthProbes::runAll, 0, intervalSeconds, TimeUnit.SECONDS);
+        LogUtil.info("ヘルスチェックを開始しました: " + probes.size() + "件, 間隔: " + intervalSeconds + "秒");
+    }
+
+    /**
+     * 停止定期检查
+     */
+    public static synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            workers.shutdownNow();
+            scheduler = null;
+            workers = null;
+        }
+    }
+
+    /**
+     * 登记检查
+     * 同名的检查已存在时替换
+     * @param name 检查名称
+     * @param check 检查处理
+     */
+    public static void register(String name, Check check) {
+        probes.put(name, new Probe(name, check));
+    }
+
+    /**
+     * 立即执行所有检查
+     * 在检查线程中并行执行，不等待结束。上一次执行尚未结束的检查跳过
+     */
+    public static void runAll() {
+        ExecutorService executor = workers;
+        ScheduledExecutorService timer = scheduler;
+        if (executor == null || timer == null) {
+            return;
+        }
+        List<Probe> snapshot;
+        synchronized (probes) {
+            snapshot = new ArrayList<>(probes.values());
+        }
+        try {
+            for (Probe probe : snapshot) {
+                if (probe.running.compareAndSet(false, true)) {
+                    long start = probe.begin();
+                    executor.execute(() -> probe.run(start));
+                    // 超时时先记录为异常，检查本身结束时不再覆盖本轮结果
+                    timer.schedule(() -> probe.timeout(start), timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            // 停止过程中不再执行
+        }
+    }
+
+    /**
+     * 获取最新的检查结果
+     * @param name 检查名称
+     * @return 最新结果，尚未执行或未登记时返回null
+     */
+    public static Result getResult(String name) {
+        Probe probe = probes.get(name);
+        return probe != null ? probe.latest : null;
+    }
+
+    /**
+     * 获取所有检查的最新结果
+     * @return 检查名称到最新结果的映射（按登记顺序，尚未执行的检查为null）
+     */
+    public static Map<String, Result> getResults() {
+        Map<String, Result> results = new LinkedHashMap<>();
+        synchronized (probes) {
+            for (Probe probe : probes.values()) {
+                results.put(probe.name, probe.latest);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 获取检查结果的历史
+     * @param name 检查名称
+     * @return 从旧到新排列的结果（未登记时为空列表）
+     */
+    public static List<Result> getHistory(String name) {
+        Probe probe = probes.get(name);
+        return probe != null ? probe.history() : Collections.emptyList();
+    }
+
+    /**
+     * 数据库检查
+     * @return 执行SELECT 1成功时返回true
+     * @throws Exception 连接或执行失败时
+     */
+    private static boolean checkDatabase() throws Exception {
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1")) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * 创建守护线程的线程工厂
+     * @param prefix 线程名前缀
+     * @return 线程工厂
+     */
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 检查处理
+     */
+    @FunctionalInterface
+    public interface Check {
+        /**
+         * 执行检查
+         * @return 正常时返回true
+         * @throws Exception 检查失败时
+         */
+        boolean run() throws Exception;
+    }
+
+    /**
+     * 检查结果
+     */
+    public static final class Result {
+        // 是否正常
+        private final boolean healthy;
+        // 检查时间（毫秒）
+        private final long checkedAt;
+        // 检查耗时（毫秒）
+        private final double latencyMillis;
+        // 异常时的说明（正常时为null）
+        private final String message;
+        // 连续异常次数
+        private final int consecutiveFailures;
+        // 最后一次正常的时间（毫秒，从未正常时为0）
+        private final long lastHealthyAt;
+
+        private Result(boolean healthy, long checkedAt, double latencyMillis, String message,
+                       int consecutiveFailures, long lastHealthyAt) {
+            this.healthy = healthy;
+            this.checkedAt = checkedAt;
+            this.latencyMillis = latencyMillis;
+            this.message = message;
+            this.consecutiveFailures = consecutiveFailures;
+            this.lastHealthyAt = lastHealthyAt;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public long getCheckedAt() {
+            return checkedAt;
+        }
+
+        public double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public long getLastHealthyAt() {
+            return lastHealthyAt;
+        }
+
+        /**
+         * 转换为映射（JSON响应用）
+         * @return 检查结果的映射
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("healthy", healthy);
+            map.put("checkedAt", checkedAt);
+            map.put("latencyMillis", latencyMillis);
+            map.put("message", message);
+            map.put("consecutiveFailures", consecutiveFailures);
+            map.put("lastHealthyAt", lastHealthyAt);
+            return map;
+        }
+    }
+
+    /**
+     * 已登记的检查
+     */
+    private static final class Probe {
+        // 检查名称
+        private final String name;
+        // 检查处理
+        private final Check check;
+        // 是否正在执行
+        private final AtomicBoolean running = new AtomicBoolean();
+        // 检查耗时的分布
+        private final LatencyHistogram latency;
+        // 历史（环形缓冲）
+        private final Result[] history = new Result[Math.max(historySize, 1)];
+        // 下一个写入位置
+        private int historyNext;
+        // 最新结果
+        private volatile Result latest;
+        // 本轮的开始时间（纳秒）
+        private long roundStart;
+        // 本轮结果是否已记录（超时和实际结果只记录先到的一方）
+        private boolean roundRecorded;
+
+        private Probe(String name, Check check) {
+            this.name = name;
+            this.check = check;
+            this.latency = MetricsRegistry.histogram("insurance_health_probe_duration_seconds",
+                                                     "Health probe latency", "probe", name);
+            MetricsRegistry.gauge("insurance_health_probe_up", "Whether the last health probe succeeded (1) or not (0)",
+                                  () -> latest != null && latest.healthy ? 1 : 0, "probe", name);
+        }
+
+        /**
+         * 开始新的一轮
+         * @return 本轮的开始时间（纳秒）
+         */
+        private synchronized long begin() {
+            roundStart = System.nanoTime();
+            roundRecorded = false;
+            return roundStart;
+        }
+
+        /**
+         * 执行检查并记录结果
+         * @param start 开始时间（纳秒）
+         */
+        private void run(long start) {
+            boolean healthy = false;
+            String message = null;
+            try {
+                healthy = check.run();
+                if (!healthy) {
+                    message = "異常応答";
+                }
+            } catch (Exception e) {
+                message = e.getClass().getSimpleName() + ": " + e.getMessage();
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                latency.record(elapsed);
+                record(start, healthy, elapsed, message != null || healthy ? message : "検査処理エラー");
+                running.set(false);
+            }
+        }
+
+        /**
+         * 超时时记录为异常
+         * @param start 开始时间（纳秒）
+         */
+        private void timeout(long start) {
+            record(start, false, System.nanoTime() - start, "タイムアウト (" + timeoutMillis + "ms)");
+        }
+
+        /**
+         * 记录一次结果（同一轮只记录一次）
+         * @param start 本轮的开始时间（纳秒）
+         * @param healthy 是否正常
+         * @param elapsedNanos 耗时（纳秒）
+         * @param message 异常时的说明
+         */
+        private synchronized void record(long start, boolean healthy, long elapsedNanos, String message) {
+            if (start != roundStart || roundRecorded) {
+                return;
+            }
+            roundRecorded = true;
+            Result previous = latest;
+            long now = System.currentTimeMillis();
+            int failures = healthy ? 0 : (previous != null ? previous.consecutiveFailures : 0) + 1;
+            long lastHealthyAt = healthy ? now : (previous != null ? previous.lastHealthyAt : 0);
+            Result result = new Result(healthy, now, elapsedNanos / 1000000.0, message, failures, lastHealthyAt);
+
+            history[historyNext] = result;
+            historyNext = (historyNext + 1) % history.length;
+            latest = result;
+
+            // 状态变化时记录日志
+            if (previous == null || previous.healthy != healthy) {
+                if (healthy) {
+                    LogUtil.info("ヘルスチェック正常: " + name + " (" + String.format("%.1f", result.latencyMillis) + "ms)");
+                } else {
+                    LogUtil.warn("ヘルスチェック異常: " + name + " - " + message);
+                }
+            }
+        }
+
+        /**
+         * 获取历史
+         * @return 从旧到新排列的结果
+         */
+        private synchronized List<Result> history() {
+            List<Result> results = new ArrayList<>(history.length);
+            for (int i = 0; i < history.length; i++) {
+                Result result = history[(historyNext + i) % history.length];
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+            return results;
+        }
+    }
+}
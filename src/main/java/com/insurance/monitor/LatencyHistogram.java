@@ -0,0 +1,170 @@
+package com.insurance.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图
+ * HDR风格的对数线性分桶：按2的幂分段，每段再等分为16个子桶，相对误差不超过1/16。
+ * 记录时只计算桶下标并做一次原子加，不加锁也不分配对象。
+ * 记录范围为1纳秒到约137秒，超出范围的值计入最后一个桶。
+ */
+public final class LatencyHistogram {
+
+    // 每段子桶数的位数（16个子桶）
+    private static final int SUB_BUCKET_BITS = 4;
+    // 每段的子桶数
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 可记录的最大值的位数（2^37纳秒，约137秒）
+    private static final int MAX_BITS = 37;
+    // 桶数
+    private static final int BUCKET_COUNT = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    // 各桶的记录次数
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    // 记录值的合计（纳秒）
+    private final LongAdder totalNanos = new LongAdder();
+    // 最大记录值（纳秒）
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * 记录一次延迟
+     * @param nanos 延迟（纳秒）
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketIndex(value));
+        totalNanos.add(value);
+        long currentMax;
+        while (value > (currentMax = maxNanos.get())) {
+            if (maxNanos.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 取得当前状态的快照
+     * 快照期间仍可记录，各桶分别读取，所以快照只保证近似一致
+     * @return 快照
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, totalNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * 计算值所属的桶
+     * 小于16的值直接作为下标；其余值按最高位所在段和其后4位确定子桶
+     * @param value 值（纳秒）
+     * @return 桶下标
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * 桶的上限值
+     * @param index 桶下标
+     * @return 落入该桶的最大值（纳秒）
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static final class Snapshot {
+        // 各桶的记录次数
+        private final long[] counts;
+        // 记录次数
+        private final long count;
+        // 记录值的合计（纳秒）
+        private final long totalNanos;
+        // 最大记录值（纳秒）
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * 计算各上限以下的累计记录次数（Prometheus直方图的_bucket用）
+         * 只有桶的上限不超过指定上限的桶计入，跨越上限的桶计入下一个上限（相对误差不超过1/16）
+         * @param upperBoundsNanos 上限（纳秒，升序）
+         * @return 各上限以下的累计记录次数
+         */
+        public long[] getCumulativeCounts(long[] upperBoundsNanos) {
+            long[] cumulative = new long[upperBoundsNanos.length];
+            long seen = 0;
+            int bound = 0;
+            for (int i = 0; i < counts.length && bound < upperBoundsNanos.length; i++) {
+                while (bound < upperBoundsNanos.length && bucketUpperBound(i) > upperBoundsNanos[bound]) {
+                    cumulative[bound++] = seen;
+                }
+                seen += counts[i];
+            }
+            while (bound < upperBoundsNanos.length) {
+                cumulative[bound++] = seen;
+            }
+            return cumulative;
+        }
+
+        /**
+         * 计算分位数
+         * 基于启动以来的全部记录，监控近期的延迟时使用Prometheus直方图的_bucket
+         * @param quantile 分位（0～1，例如0.99）
+         * @return 分位数（纳秒，所在桶的上限，不超过最大记录值）；没有记录时为0
+         */
+        public long getQuantileNanos(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(quantile * count), 1);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.insurance.monitor;
+
+import com.insurance.util.LogUtil;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 指标注册表
+ * 集中管理计数器、仪表和延迟直方图，并以Prometheus文本格式（0.0.4）输出。
+ *
+ * 指标按名称和标签登记一次，调用方保存返回的对象，之后每次记录只操作该对象，
+ * 不查找注册表也不分配对象。延迟直方图输出为Prometheus的histogram（固定上限的_bucket累计次数、
+ * 合计和次数，单位为秒）；计数从启动时累计，近期的分位数由Prometheus按rate()计算
+ * （例如histogram_quantile(0.99, rate(x_bucket[5m]))）。
+ * 为防止标签值无限增长，时间序列总数有上限，超过上限后新的标签组合计入overflow序列。
+ */
+public final class MetricsRegistry {
+
+    // 时间序列数的上限
+    private static final int MAX_SERIES = 2000;
+    // 超过上限时使用的标签
+    private static final String OVERFLOW_LABELS = "overflow=\"true\"";
+    // 直方图的桶上限（秒）
+    private static final double[] BUCKET_SECONDS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+    // 纳秒到秒的换算
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    // 直方图的桶上限（纳秒）
+    private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+    // 直方图的桶上限的标签
+    private static final String[] BUCKET_LABELS = new String[BUCKET_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * NANOS_PER_SECOND);
+            BUCKET_LABELS[i] = "le=\"" + BUCKET_SECONDS[i] + "\"";
+        }
+    }
+
+    // 指标族（按名称排序，输出顺序固定）
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    // 已登记的时间序列数
+    private static final AtomicInteger seriesCount = new AtomicInteger();
+
+    private MetricsRegistry() {}
+
+    /**
+     * 获取计数器（不存在时登记）
+     * @param name 指标名
+     * @param help 说明
+     * @param labels 标签（名称和值交替排列）
+     * @return 计数器
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, Type.COUNTER, labels, Counter::new);
+    }
+
+    /**
+     * 获取延迟直方图（不存在时登记）
+     * @param name 指标名（单位为秒）
+     * @param help 说明
+     * @param labels 标签（名称和值交替排列）
+     * @return 延迟直方图
+     */
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) register(name, help, Type.HISTOGRAM, labels, LatencyHistogram::new);
+    }
+
+    /**
+     * 登记仪表
+     * 输出时调用取值函数，同名同标签的仪表已存在时替换取值函数
+     * @param name 指标名
+     * @param help 说明
+     * @param supplier 取值函数
+     * @param labels 标签（名称和值交替排列）
+     */
+    public static void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        Family family = family(name, help, Type.GAUGE);
+        String labelText = labelText(labels);
+        if (family.series.put(labelText, supplier) == null) {
+            seriesCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 以Prometheus文本格式输出所有指标
+     * @param out 输出目标
+     * @throws IOException 写入失败时
+     */
+    public static void writePrometheus(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        for (Family family : families.values()) {
+            out.write("# HELP " + family.name + " " + escapeHelp(family.help) + "\n");
+            out.write("# TYPE " + family.name + " " + family.type.text + "\n");
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                line.setLength(0);
+                writeSeries(line, family, series.getKey(), series.getValue());
+                out.write(line.toString());
+            }
+        }
+    }
+
+    /**
+     * 输出一个时间序列
+     * @param line 输出缓冲
+     * @param family 指标族
+     * @param labels 标签文本
+     * @param metric 指标对象
+     */
+    private static void writeSeries(StringBuilder line, Family family, String labels, Object metric) {
+        switch (family.type) {
+            case COUNTER:
+                sample(line, family.name, labels, null, ((Counter) metric).get());
+                break;
+            case GAUGE:
+                try {
+                    sample(line, family.name, labels, null, ((DoubleSupplier) metric).getAsDouble());
+                } catch (RuntimeException e) {
+                    // 取值失败的仪表不输出，不影响其他指标
+                    LogUtil.warn("メトリクスの取得に失敗しました: " + family.name + " - " + e.getMessage());
+                }
+                break;
+            default:
+                LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) metric).snapshot();
+                long[] cumulative = snapshot.getCumulativeCounts(BUCKET_NANOS);
+                for (int i = 0; i < cumulative.length; i++) {
+                    sample(line, family.name + "_bucket", labels, BUCKET_LABELS[i], cumulative[i]);
+                }
+                sample(line, family.name + "_bucket", labels, "le=\"+Inf\"", snapshot.getCount());
+                sample(line, family.name + "_sum", labels, null, snapshot.getTotalNanos() / NANOS_PER_SECOND);
+                sample(line, family.name + "_count", labels, null, snapshot.getCount());
+                break;
+        }
+    }
+
+    /**
+     * 输出一个样本行
+     * @param line 输出缓冲
+     * @param name 样本名
+     * @param labels 标签文本
+     * @param extraLabel 追加的标签（没有时为null）
+     * @param value 值
+     */
+    private static void sample(StringBuilder line, String name, String labels, String extraLabel, Object value) {
+        line.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            line.append('{').append(labels);
+            if (extraLabel != null) {
+                line.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            line.append('}');
+        }
+        line.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * 登记指标
+     * @param name 指标名
+     * @param help 说明
+     * @param type 指标类型
+     * @param labels 标签（名称和值交替排列）
+     * @param factory 指标对象的生成函数
+     * @return 指标对象
+     */
+    private static Object register(String name, String help, Type type, String[] labels,
+                                   Supplier<Object> factory) {
+        Family family = family(name, help, type);
+        String labelText = labelText(labels);
+        Object metric = family.series.get(labelText);
+        if (metric != null) {
+            return metric;
+        }
+        if (seriesCount.get() >= MAX_SERIES) {
+            labelText = OVERFLOW_LABELS;
+        }
+        return family.series.computeIfAbsent(labelText, key -> {
+            if (seriesCount.incrementAndGet() == MAX_SERIES) {
+                LogUtil.warn("メトリクスの系列数が上限(" + MAX_SERIES + ")に達しました: " + name);
+            }
+            return factory.get();
+        });
+    }
+
+    /**
+     * 获取指标族（不存在时登记）
+     * @param name 指标名
+     * @param help 说明
+     * @param type 指标类型
+     * @return 指标族
+     */
+    private static Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(key, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type.text);
+        }
+        return family;
+    }
+
+    /**
+     * 生成标签文本
+     * @param labels 标签（名称和值交替排列）
+     * @return 标签文本（例如 endpoint="/api/customers",method="GET"）
+     */
+    private static String labelText(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"");
+            String value = labels[i + 1] != null ? labels[i + 1] : "";
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    text.append('\\').append(c);
+                } else if (c == '\n') {
+                    text.append("\\n");
+                } else {
+                    text.append(c);
+                }
+            }
+            text.append('"');
+        }
+        return text.toString();
+    }
+
+    /**
+     * 转义说明文本
+     * @param help 说明
+     * @return 转义后的说明
+     */
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    /**
+     * 计数器
+     * 使用LongAdder，多线程同时计数时也不竞争同一个变量
+     */
+    public static final class Counter {
+        // 计数
+        private final LongAdder value = new LongAdder();
+
+        /**
+         * 计数加1
+         */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * 计数增加指定值
+         * @param amount 增加值
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * 获取当前计数
+         * @return 计数
+         */
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * 指标类型
+     */
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        // Prometheus中的类型名
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * 指标族（同名指标的所有时间序列）
+     */
+    private static final class Family {
+        // 指标名
+        private final String name;
+        // 说明
+        private final String help;
+        // 指标类型
+        private final Type type;
+        // 标签文本到指标对象的映射
+        private final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        private Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
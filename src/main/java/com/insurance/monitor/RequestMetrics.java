@@ -0,0 +1,130 @@
+package com.insurance.monitor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 请求指标
+ * 按API端点和HTTP方法、按Servlet路径和action参数记录处理时间。
+ *
+ * 直方图对象按标签值缓存在两级ConcurrentHashMap中，记录时只做两次查找和一次直方图记录，
+ * 不拼接字符串也不分配对象。缓存的标签组合数有上限，超过上限的组合直接向注册表登记
+ * （注册表把它们计入overflow序列）。
+ */
+public final class RequestMetrics {
+
+    // 标记请求已被记录的请求属性（避免过滤器重复记录）
+    public static final String RECORDED_ATTRIBUTE = RequestMetrics.class.getName() + ".recorded";
+
+    // API处理时间的指标名
+    private static final String API_DURATION = "insurance_api_request_duration_seconds";
+    // API处理异常的指标名
+    private static final String API_ERRORS = "insurance_api_request_errors_total";
+    // Servlet处理时间的指标名
+    private static final String ACTION_DURATION = "insurance_http_request_duration_seconds";
+    // Servlet处理异常的指标名
+    private static final String ACTION_ERRORS = "insurance_http_request_errors_total";
+    // 缓存的标签组合数上限
+    private static final int MAX_CACHED = 500;
+
+    // API端点 → HTTP方法 → 处理时间
+    private static final Map<String, Map<String, LatencyHistogram>> apiTimers = new ConcurrentHashMap<>();
+    // Servlet路径 → action → 处理时间
+    private static final Map<String, Map<String, LatencyHistogram>> actionTimers = new ConcurrentHashMap<>();
+    // API端点 → 处理异常数
+    private static final Map<String, MetricsRegistry.Counter> apiErrors = new ConcurrentHashMap<>();
+    // Servlet路径 → 处理异常数
+    private static final Map<String, MetricsRegistry.Counter> actionErrors = new ConcurrentHashMap<>();
+
+    private RequestMetrics() {}
+
+    /**
+     * 记录API处理时间
+     * @param endpoint API端点（Servlet路径）
+     * @param method HTTP方法
+     * @param nanos 处理时间（纳秒）
+     */
+    public static void recordApi(String endpoint, String method, long nanos) {
+        timer(apiTimers, API_DURATION, "API request processing time", "endpoint", endpoint, "method", method)
+            .record(nanos);
+    }
+
+    /**
+     * 记录API处理异常
+     * @param endpoint API端点（Servlet路径）
+     */
+    public static void recordApiError(String endpoint) {
+        counter(apiErrors, API_ERRORS, "API requests that ended with an exception", "endpoint", endpoint)
+            .increment();
+    }
+
+    /**
+     * 记录Servlet处理时间
+     * @param path Servlet路径
+     * @param action action参数（没有时为空字符串）
+     * @param nanos 处理时间（纳秒）
+     */
+    public static void recordAction(String path, String action, long nanos) {
+        timer(actionTimers, ACTION_DURATION, "Servlet request processing time", "path", path, "action", action)
+            .record(nanos);
+    }
+
+    /**
+     * 记录Servlet处理异常
+     * @param path Servlet路径
+     */
+    public static void recordActionError(String path) {
+        counter(actionErrors, ACTION_ERRORS, "Servlet requests that ended with an exception", "path", path)
+            .increment();
+    }
+
+    /**
+     * 获取缓存的直方图（不存在时登记）
+     * @param cache 缓存
+     * @param name 指标名
+     * @param help 说明
+     * @param firstLabel 第一标签名
+     * @param first 第一标签值
+     * @param secondLabel 第二标签名
+     * @param second 第二标签值
+     * @return 直方图
+     */
+    private static LatencyHistogram timer(Map<String, Map<String, LatencyHistogram>> cache, String name, String help,
+                                          String firstLabel, String first, String secondLabel, String second) {
+        Map<String, LatencyHistogram> inner = cache.get(first);
+        LatencyHistogram histogram = inner != null ? inner.get(second) : null;
+        if (histogram != null) {
+            return histogram;
+        }
+        histogram = MetricsRegistry.histogram(name, help, firstLabel, first, secondLabel, second);
+        if (cache.size() < MAX_CACHED) {
+            inner = cache.computeIfAbsent(first, key -> new ConcurrentHashMap<>());
+            if (inner.size() < MAX_CACHED) {
+                inner.put(second, histogram);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * 获取缓存的计数器（不存在时登记）
+     * @param cache 缓存
+     * @param name 指标名
+     * @param help 说明
+     * @param label 标签名
+     * @param value 标签值
+     * @return 计数器
+     */
+    private static MetricsRegistry.Counter counter(Map<String, MetricsRegistry.Counter> cache, String name,
+                                                   String help, String label, String value) {
+        MetricsRegistry.Counter counter = cache.get(value);
+        if (counter != null) {
+            return counter;
+        }
+        counter = MetricsRegistry.counter(name, help, label, value);
+        if (cache.size() < MAX_CACHED) {
+            cache.put(value, counter);
+        }
+        return counter;
+    }
+}
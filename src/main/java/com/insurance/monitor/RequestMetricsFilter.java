@@ -0,0 +1,137 @@
+package com.insurance.monitor;
+
+import com.insurance.util.DatabaseUtil;
+import javax.servlet.*;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 请求指标过滤器
+ * 记录每个请求按Servlet路径和action参数的处理时间。
+ * API请求由ApiBaseServlet按端点和HTTP方法记录，这里跳过。
+ * 同时跟踪请求中执行的SQL，请求结束时检测N+1模式（包括API请求，不包括静态资源）。
+ *
+ * action参数在请求处理完成后读取，不影响Servlet设置请求的字符编码。
+ * 标签值限定为已知形式（静态资源按扩展名归类，404统一为unmatched，
+ * action只接受短的英数字），防止任意URL生成新的时间序列。
+ */
+@WebFilter(urlPatterns = {"/*"}, asyncSupported = true)
+public class RequestMetricsFilter implements Filter {
+
+    // action参数的最大长度
+    private static final int MAX_ACTION_LENGTH = 32;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // 不需要初始化
+    }
+
+    /**
+     * 执行过滤逻辑
+     * 计时后执行后续处理，完成后记录处理时间
+     * @param request Servlet请求对象
+     * @param response Servlet响应对象
+     * @param chain 过滤器链
+     * @throws IOException IO异常
+     * @throws ServletException Servlet异常
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        long start = System.nanoTime();
+        boolean trace = !isStaticResource(httpRequest.getServletPath());
+        if (trace) {
+            DatabaseUtil.beginSqlTrace(httpRequest.getMethod() + " " + httpRequest.getServletPath());
+        }
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            String path = pathLabel(httpRequest, (HttpServletResponse) response);
+            String action = actionLabel(httpRequest);
+            if (request.getAttribute(RequestMetrics.RECORDED_ATTRIBUTE) == null) {
+                RequestMetrics.recordAction(path, action, elapsed);
+                if (failed) {
+                    RequestMetrics.recordActionError(path);
+                }
+            }
+            if (trace) {
+                DatabaseUtil.endSqlTrace(action.isEmpty() ? path : path + "?action=" + action);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // 不需要清理
+    }
+
+    /**
+     * 路径标签
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @return Servlet路径；静态资源和视图为扩展名形式，未找到的路径为unmatched
+     */
+    private static String pathLabel(HttpServletRequest request, HttpServletResponse response) {
+        if (response.getStatus() == HttpServletResponse.SC_NOT_FOUND) {
+            return "unmatched";
+        }
+        String path = request.getServletPath();
+        String extension = extension(path);
+        if (extension != null) {
+            return "jsp".equals(extension) || "vm".equals(extension) ? "*." + extension : "static";
+        }
+        return path.isEmpty() ? "/" : path;
+    }
+
+    /**
+     * 是否为静态资源（不访问数据库，不跟踪SQL）
+     * @param path Servlet路径
+     * @return 带有jsp、vm以外的扩展名时返回true
+     */
+    private static boolean isStaticResource(String path) {
+        String extension = extension(path);
+        return extension != null && !"jsp".equals(extension) && !"vm".equals(extension);
+    }
+
+    /**
+     * 路径最后一段的扩展名
+     * @param path Servlet路径
+     * @return 扩展名；没有时为null
+     */
+    private static String extension(String path) {
+        int dot = path.lastIndexOf('.');
+        return dot >= 0 && path.indexOf('/', dot) < 0 ? path.substring(dot + 1) : null;
+    }
+
+    /**
+     * action标签
+     * @param request HTTP请求对象
+     * @return action参数；没有时为空字符串，不是短的英数字时为invalid
+     */
+    private static String actionLabel(HttpServletRequest request) {
+        String action = request.getParameter("action");
+        if (action == null) {
+            return "";
+        }
+        if (action.isEmpty() || action.length() > MAX_ACTION_LENGTH) {
+            return "invalid";
+        }
+        for (int i = 0; i < action.length(); i++) {
+            char c = action.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '-')) {
+                return "invalid";
+            }
+        }
+        return action;
+    }
+}
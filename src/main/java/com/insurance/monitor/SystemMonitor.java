@@ -1,7 +1,14 @@
 package com.insurance.monitor;
 
+import com.insurance.dao.SystemLogWriter;
+import com.insurance.integration.CreditCheckCache;
+import com.insurance.integration.ExternalSystemIntegration;
+import com.insurance.security.LoginThrottle;
 import com.insurance.util.DatabaseUtil;
 import com.insurance.util.LogUtil;
+import com.insurance.util.SqlStatistics;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
@@ -10,9 +17,11 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.Date;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * 系统监控类
@@ -26,6 +35,13 @@ public class SystemMonitor {
     private static final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
     // 操作系统管理Bean，用于获取系统级信息（如CPU负载）
     private static final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    // 上次检查时的登录拒绝数（只在监控线程中访问）
+    private static long lastLoginRejected;
+    
+    // 静态代码块，登记指标
+    static {
+        registerMetrics();
+    }
     
     /**
      * 开始系统监控
@@ -152,21 +168,115 @@ public class SystemMonitor {
     
     /**
      * 监控数据库连接
-     * 通过执行简单查询来检查数据库连接是否正常
+     * 读取健康检查缓存的最新结果，不另外建立连接
      */
     private static void monitorDatabaseConnection() {
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT 1")) {
+        HealthProbes.Result result = HealthProbes.getResult(HealthProbes.DATABASE);
+        if (result == null) {
+            LogUtil.warn("データベース接続: 未確認（ヘルスチェックが実行されていません）");
+        } else if (result.isHealthy()) {
+            LogUtil.info("データベース接続: 正常 (" + String.format("%.1f", result.getLatencyMillis()) + "ms)");
+        } else {
+            LogUtil.warn("データベース接続チェック失敗: " + result.getMessage() + " (連続" +
+                         result.getConsecutiveFailures() + "回)");
+        }
+        
+        monitorConnectionPool();
+        monitorAuditLogWriter();
+        monitorLoginThrottle();
+        monitorCircuitBreakers();
+    }
+    
+    /**
+     * 监控审计日志写入器
+     * 缓冲区使用量超过容量的80%或发生丢弃时发出警告
+     */
+    private static void monitorAuditLogWriter() {
+        Map<String, Object> stats = SystemLogWriter.getStatistics();
+        int depth = (Integer) stats.get("queueDepth");
+        int capacity = (Integer) stats.get("capacity");
+        long dropped = (Long) stats.get("dropped");
+        
+        String summary = "キュー: " + depth + "/" + capacity + ", 書き込み: " + stats.get("written") + "件" +
+                       ", 破棄: " + dropped + "件, 退避: " + stats.get("spilled") + "件" +
+                       ", 平均書き込み時間: " + String.format("%.2f", (Double) stats.get("averageWriteMillis")) + "ms";
+        
+        if (depth * 100L / capacity > 80 || dropped > 0) {
+            LogUtil.warn("監査ログ書き込みが滞っています - " + summary);
+        } else {
+            LogUtil.info("監査ログ書き込み - " + summary);
+        }
+    }
+    
+    /**
+     * 监控登录限流
+     * 记录放行和拒绝的登录尝试数，自上次检查以来有拒绝时发出警告
+     */
+    private static void monitorLoginThrottle() {
+        Map<String, Object> stats = LoginThrottle.getStatistics();
+        long rejected = (Long) stats.get("rejectedByIp") + (Long) stats.get("rejectedByUser");
+        
+        String summary = "許可: " + stats.get("allowed") + "件, IP超過: " + stats.get("rejectedByIp") +
+                       "件, ユーザー超過: " + stats.get("rejectedByUser") + "件";
+        
+        if (rejected > lastLoginRejected) {
+            LogUtil.warn("ログイン試行が制限されています - " + summary);
+        } else {
+            LogUtil.info("ログイン制限 - " + summary);
+        }
+        lastLoginRejected = rejected;
+    }
+    
+    /**
+     * 监控外部系统的熔断器
+     * 熔断器未关闭或有请求因同时请求数上限被拒绝时发出警告
+     */
+    private static void monitorCircuitBreakers() {
+        for (Map.Entry<String, Map<String, Object>> entry : ExternalSystemIntegration.getCircuitStatistics().entrySet()) {
+            Map<String, Object> stats = entry.getValue();
             
-            // 如果查询成功，记录信息日志
-            if (rs.next()) {
-                LogUtil.info("データベース接続: 正常");
+            if (!"CLOSED".equals(stats.get("state"))) {
+                LogUtil.warn("外部システムの呼び出しが遮断されています: " + circuitSummary(entry.getKey(), stats));
+            } else if ((Long) stats.get("bulkheadRejected") > 0) {
+                LogUtil.warn("外部システムの同時実行数が上限に達しています: " + circuitSummary(entry.getKey(), stats));
             }
-            
-        } catch (Exception e) {
-            // 如果出现异常，记录错误日志
-            LogUtil.error("データベース接続チェック失敗: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 熔断器和隔板状态的摘要
+     * @param system 系统名
+     * @param stats 熔断器和隔板的统计信息
+     * @return 摘要字符串
+     */
+    private static String circuitSummary(String system, Map<String, Object> stats) {
+        return system + " - 状態: " + stats.get("state") +
+               ", 失敗率: " + String.format("%.1f", (Double) stats.get("failureRate")) + "%" +
+               ", 低速率: " + String.format("%.1f", (Double) stats.get("slowCallRate")) + "%" +
+               ", 遮断: " + stats.get("notPermitted") + "件" +
+               ", 同時実行: " + stats.get("inFlight") + "/" + stats.get("maxConcurrent") +
+               ", 上限超過: " + stats.get("bulkheadRejected") + "件";
+    }
+    
+    /**
+     * 监控数据库连接池
+     * 记录连接池的活动/空闲连接数和借出耗时，如果活动连接数超过最大值的80%则发出警告
+     */
+    private static void monitorConnectionPool() {
+        Map<String, Object> stats = DatabaseUtil.getPoolStatistics();
+        int active = (Integer) stats.get("active");
+        int maxActive = (Integer) stats.get("maxActive");
+        
+        String summary = "アクティブ: " + active + "/" + maxActive + ", アイドル: " + stats.get("idle") +
+                       ", 平均取得時間: " + String.format("%.2f", (Double) stats.get("averageBorrowMillis")) + "ms" +
+                       ", 最大取得時間: " + String.format("%.2f", (Double) stats.get("maxBorrowMillis")) + "ms" +
+                       ", 取得失敗: " + stats.get("borrowFailures") + "件";
+        
+        // 如果活动连接数超过最大值的80%，记录警告日志
+        if (maxActive > 0 && active * 100 / maxActive > 80) {
+            LogUtil.warn("コネクションプール使用率が高いです - " + summary);
+        } else {
+            LogUtil.info("コネクションプール - " + summary);
         }
     }
     
@@ -298,17 +408,182 @@ public class SystemMonitor {
         // JVM信息
         report.append("JVM情報:\n");
         report.append("  稼働時間: ").append(ManagementFactory.getRuntimeMXBean().getUptime() / 1000 / 60).append("分\n");
-        report.append("  スレッド数: ").append(ManagementFactory.getThreadMXBean().getThreadCount()).append("\n");
+        report.append("  スレッド数: ").append(ManagementFactory.getThreadMXBean().getThreadCount()).append("\n\n");
+        
+        // 连接池信息
+        Map<String, Object> poolStats = DatabaseUtil.getPoolStatistics();
+        report.append("コネクションプール:\n");
+        report.append("  アクティブ接続数: ").append(poolStats.get("active")).append("/")
+              .append(poolStats.get("maxActive")).append("\n");
+        report.append("  アイドル接続数: ").append(poolStats.get("idle")).append(" (最小: ")
+              .append(poolStats.get("minIdle")).append(", 最大: ").append(poolStats.get("maxIdle")).append(")\n");
+        report.append("  取得回数: ").append(poolStats.get("borrowCount")).append(", 取得失敗: ")
+              .append(poolStats.get("borrowFailures")).append("\n");
+        report.append("  平均取得時間: ").append(String.format("%.2f", (Double) poolStats.get("averageBorrowMillis")))
+              .append("ms, 最大取得時間: ").append(String.format("%.2f", (Double) poolStats.get("maxBorrowMillis")))
+              .append("ms\n");
+        report.append("  取得時間分布: ").append(poolStats.get("borrowHistogram")).append("\n\n");
+        
+        // 审计日志写入器信息
+        Map<String, Object> logStats = SystemLogWriter.getStatistics();
+        report.append("監査ログ書き込み:\n");
+        report.append("  キュー: ").append(logStats.get("queueDepth")).append("/").append(logStats.get("capacity"))
+              .append(" (最大: ").append(logStats.get("maxQueueDepth")).append(", ポリシー: ")
+              .append(logStats.get("overflowPolicy")).append(")\n");
+        report.append("  書き込み: ").append(logStats.get("written")).append("件, 破棄: ").append(logStats.get("dropped"))
+              .append("件, 退避: ").append(logStats.get("spilled")).append("件, 失敗バッチ: ")
+              .append(logStats.get("failedBatches")).append("\n");
+        report.append("  平均書き込み時間: ").append(String.format("%.2f", (Double) logStats.get("averageWriteMillis")))
+              .append("ms, 最大書き込み時間: ").append(String.format("%.2f", (Double) logStats.get("maxWriteMillis")))
+              .append("ms\n\n");
+        
+        // 健康检查信息
+        report.append("ヘルスチェック:\n");
+        for (Map.Entry<String, HealthProbes.Result> entry : HealthProbes.getResults().entrySet()) {
+            HealthProbes.Result result = entry.getValue();
+            report.append("  ").append(entry.getKey()).append(": ");
+            if (result == null) {
+                report.append("未確認\n");
+            } else {
+                report.append(result.isHealthy() ? "正常" : "異常 (" + result.getMessage() + ")")
+                      .append(", 応答時間: ").append(String.format("%.1f", result.getLatencyMillis()))
+                      .append("ms, 確認時刻: ").append(new Date(result.getCheckedAt())).append("\n");
+            }
+        }
+        report.append("\n");
+        
+        // 外部系统的熔断器信息
+        report.append("外部システム:\n");
+        for (Map.Entry<String, Map<String, Object>> entry : ExternalSystemIntegration.getCircuitStatistics().entrySet()) {
+            report.append("  ").append(circuitSummary(entry.getKey(), entry.getValue())).append("\n");
+        }
+        Map<String, Object> creditStats = CreditCheckCache.getStatistics();
+        report.append("  与信チェックキャッシュ: ").append(creditStats.get("size")).append("/")
+              .append(creditStats.get("maxSize")).append("件, ヒット: ").append(creditStats.get("hits"))
+              .append(", ミス: ").append(creditStats.get("misses")).append(", 合流: ").append(creditStats.get("coalesced"))
+              .append(", ヒット率: ").append(String.format("%.1f", (Double) creditStats.get("hitRate") * 100)).append("%\n");
+        report.append("\n");
+        
+        // 登录限流信息
+        Map<String, Object> throttleStats = LoginThrottle.getStatistics();
+        report.append("ログイン制限:\n");
+        report.append("  許可: ").append(throttleStats.get("allowed")).append("件, IP超過: ")
+              .append(throttleStats.get("rejectedByIp")).append("件, ユーザー超過: ")
+              .append(throttleStats.get("rejectedByUser")).append("件\n");
         
         return report.toString();
     }
     
+    /**
+     * 获取SQL执行统计报告
+     * 按合计耗时降序列出SQL指纹的执行次数、耗时、行数、错误数和N+1检测数
+     * @param limit 列出的件数
+     * @return SQL执行统计报告字符串
+     */
+    public static String getQueryReport(int limit) {
+        SqlStatistics statistics = DatabaseUtil.getSqlStatistics();
+        if (statistics == null) {
+            return "SQL計測は無効です (db.sql.instrument=false)\n";
+        }
+        Map<String, Object> summary = statistics.getStatistics();
+        StringBuilder report = new StringBuilder();
+        report.append("=== SQL実行統計 (合計時間上位").append(limit).append("件) ===\n");
+        report.append("生成時間: ").append(new Date()).append("\n");
+        report.append("実行数: ").append(summary.get("statements")).append(", スロークエリ: ")
+              .append(summary.get("slowQueries")).append("件 (>=").append(summary.get("slowQueryMillis"))
+              .append("ms), N+1検出リクエスト: ").append(summary.get("repeatedRequests")).append("件 (>=")
+              .append(summary.get("repeatThreshold")).append("回), SQL種類: ")
+              .append(summary.get("fingerprints")).append("\n\n");
+        
+        int rank = 1;
+        for (Map<String, Object> query : statistics.getTopQueries(limit)) {
+            report.append(rank++).append(". ").append(query.get("fingerprint")).append("\n");
+            report.append("   実行: ").append(query.get("executions")).append("回, 合計: ")
+                  .append(String.format("%.1f", (Double) query.get("totalMillis"))).append("ms, 平均: ")
+                  .append(String.format("%.2f", (Double) query.get("averageMillis"))).append("ms, p99: ")
+                  .append(String.format("%.2f", (Double) query.get("p99Millis"))).append("ms, 最大: ")
+                  .append(String.format("%.2f", (Double) query.get("maxMillis"))).append("ms\n");
+            report.append("   行数: ").append(query.get("rows")).append(", エラー: ").append(query.get("errors"))
+                  .append(", N+1検出: ").append(query.get("repeatedRequests")).append("\n");
+        }
+        return report.toString();
+    }
+    
+    /**
+     * 以Prometheus文本格式输出指标
+     * 包含请求处理时间、JVM、连接池、审计日志写入器和登录限流的指标
+     * @param out 输出目标
+     * @throws IOException 写入失败时
+     */
+    public static void writeMetrics(Writer out) throws IOException {
+        MetricsRegistry.writePrometheus(out);
+    }
+    
+    /**
+     * 登记仪表
+     * 取值函数在输出指标时调用，只读取现有的统计信息
+     */
+    private static void registerMetrics() {
+        // JVM
+        MetricsRegistry.gauge("insurance_jvm_heap_used_bytes", "JVM heap memory in use",
+            () -> memoryBean.getHeapMemoryUsage().getUsed());
+        MetricsRegistry.gauge("insurance_jvm_heap_max_bytes", "JVM maximum heap memory",
+            () -> memoryBean.getHeapMemoryUsage().getMax());
+        MetricsRegistry.gauge("insurance_jvm_threads", "JVM live thread count",
+            () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        MetricsRegistry.gauge("insurance_system_load_average", "System load average for the last minute",
+            osBean::getSystemLoadAverage);
+        
+        // 连接池
+        statGauge("insurance_db_pool_active", "Active database connections", DatabaseUtil::getPoolStatistics, "active");
+        statGauge("insurance_db_pool_idle", "Idle database connections", DatabaseUtil::getPoolStatistics, "idle");
+        statGauge("insurance_db_pool_max_active", "Maximum active database connections",
+                  DatabaseUtil::getPoolStatistics, "maxActive");
+        statGauge("insurance_db_pool_borrow_failures", "Failed connection borrows since startup",
+                  DatabaseUtil::getPoolStatistics, "borrowFailures");
+        
+        // SQL执行
+        if (DatabaseUtil.getSqlStatistics() != null) {
+            statGauge("insurance_db_statements", "SQL statements executed since startup",
+                      () -> DatabaseUtil.getSqlStatistics().getStatistics(), "statements");
+            statGauge("insurance_db_slow_queries", "SQL statements slower than the slow query threshold",
+                      () -> DatabaseUtil.getSqlStatistics().getStatistics(), "slowQueries");
+            statGauge("insurance_db_repeated_statement_requests", "Requests that repeated one SQL statement (N+1)",
+                      () -> DatabaseUtil.getSqlStatistics().getStatistics(), "repeatedRequests");
+        }
+        
+        // 审计日志写入器
+        statGauge("insurance_audit_log_queue_depth", "Audit log entries waiting to be written",
+                  SystemLogWriter::getStatistics, "queueDepth");
+        statGauge("insurance_audit_log_dropped", "Audit log entries dropped since startup",
+                  SystemLogWriter::getStatistics, "dropped");
+        
+        // 登录限流
+        statGauge("insurance_login_rejected_by_ip", "Login attempts rejected by the per-IP limit",
+                  LoginThrottle::getStatistics, "rejectedByIp");
+        statGauge("insurance_login_rejected_by_user", "Login attempts rejected by the per-user limit",
+                  LoginThrottle::getStatistics, "rejectedByUser");
+    }
+    
+    /**
+     * 登记读取统计信息项目的仪表
+     * @param name 指标名
+     * @param help 说明
+     * @param statistics 统计信息的取得函数
+     * @param key 统计信息的项目名
+     */
+    private static void statGauge(String name, String help, Supplier<Map<String, Object>> statistics, String key) {
+        MetricsRegistry.gauge(name, help, () -> ((Number) statistics.get().get(key)).doubleValue());
+    }
+    
     /**
      * 手动触发系统检查
      * 手动执行一次基础监控和详细检查
      */
     public static void manualSystemCheck() {
         LogUtil.info("手動システムチェックを開始します");
+        // 健康检查立即执行一轮（结果异步更新缓存）
+        HealthProbes.runAll();
         // 执行基础监控
         monitorSystem();
         // 执行详细检查
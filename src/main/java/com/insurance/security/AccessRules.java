@@ -0,0 +1,286 @@
+package com.insurance.security;
+
+import com.insurance.util.LogUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 访问控制规则
+ * 把路径规则编译为前缀树（Trie），角色权限用位集合表示。
+ * 每次请求只沿请求路径的字符遍历一次前缀树，不分配对象。
+ *
+ * 路径规则：请求路径以某个前缀开头时适用该规则。匹配多个前缀时必须满足全部规则
+ * （例如/contract/review/同时要求/contract/和/contract/review/的角色）。
+ * 超级角色（默认ADMIN）满足所有规则。
+ *
+ * 规则从类路径上的/config/security-rules.properties读取，同名系统属性优先：
+ * security.public=公共路径前缀（逗号分隔）
+ * security.path.路径前缀=允许的角色（逗号分隔）
+ * security.module.模块名=允许的角色（逗号分隔）
+ */
+public final class AccessRules {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/security-rules.properties";
+    // 路径规则配置键前缀
+    private static final String PATH_PREFIX = "security.path.";
+    // 模块规则配置键前缀
+    private static final String MODULE_PREFIX = "security.module.";
+    // 判定结果中表示公共路径的位
+    private static final int PUBLIC_BIT = 1 << 31;
+    // 判定结果中的角色位
+    private static final int ROLE_MASK = ~PUBLIC_BIT;
+    // 可以登记的最大角色数
+    private static final int MAX_ROLES = 31;
+    // 前缀树每个节点的子节点表大小（路径规则只支持ASCII字符）
+    private static final int ASCII = 128;
+
+    // 当前编译好的规则（重新加载时整体替换）
+    private static volatile Compiled rules = compile(loadConfig());
+
+    private AccessRules() {}
+
+    /**
+     * 重新加载规则
+     * 读取配置并重新编译前缀树，完成后原子替换当前规则
+     * @return 路径规则数
+     */
+    public static int reload() {
+        Compiled compiled = compile(loadConfig());
+        rules = compiled;
+        return compiled.pathRuleCount;
+    }
+
+    /**
+     * 判定请求路径
+     * @param uri 请求URI
+     * @param offset 路径在URI中的起始位置（上下文路径的长度）
+     * @return 判定结果（传给isPublic()和isAllowed()）
+     */
+    public static int decide(String uri, int offset) {
+        Node node = rules.root;
+        int decision = ROLE_MASK;
+        for (int i = offset, length = uri.length(); i < length; i++) {
+            char c = uri.charAt(i);
+            if (c >= ASCII || node.children == null || (node = node.children[c]) == null) {
+                break;
+            }
+            if (node.terminal) {
+                decision &= node.allowedRoles | PUBLIC_BIT;
+                if (node.publicPath) {
+                    decision |= PUBLIC_BIT;
+                }
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * 是否为公共路径（不需要认证）
+     * @param decision decide()的判定结果
+     * @return 公共路径时返回true
+     */
+    public static boolean isPublic(int decision) {
+        return (decision & PUBLIC_BIT) != 0;
+    }
+
+    /**
+     * 角色是否可以访问
+     * @param decision decide()的判定结果
+     * @param role 用户角色
+     * @return 可以访问时返回true
+     */
+    public static boolean isAllowed(int decision, String role) {
+        int allowed = decision & ROLE_MASK;
+        // 没有适用的路径规则时任何角色都可以访问
+        return allowed == ROLE_MASK || (rules.roleBit(role) & allowed) != 0;
+    }
+
+    /**
+     * 角色是否可以访问模块
+     * @param role 用户角色
+     * @param module 模块名称
+     * @return 可以访问时返回true
+     */
+    public static boolean hasModuleAccess(String role, String module) {
+        Compiled compiled = rules;
+        Integer allowed = compiled.modules.get(module);
+        int roleBit = compiled.roleBit(role);
+        return (roleBit & compiled.superRoles) != 0 || (allowed != null && (roleBit & allowed) != 0);
+    }
+
+    /**
+     * 加载配置
+     * 先设置默认规则，再用配置文件中的值覆盖
+     * @return 规则配置
+     */
+    private static Properties loadConfig() {
+        Properties config = new Properties();
+        // 满足所有规则的角色
+        config.setProperty("security.superRoles", "ADMIN");
+        // 不需要认证的公共路径
+        config.setProperty("security.public", "/login.jsp,/login,/logout,/css/,/js/,/images/,/favicon.ico");
+        // 需要管理员权限的路径
+        config.setProperty(PATH_PREFIX + "/admin/", "ADMIN");
+        config.setProperty(PATH_PREFIX + "/batch/", "ADMIN");
+        config.setProperty(PATH_PREFIX + "/logs/", "ADMIN");
+        config.setProperty(PATH_PREFIX + "/monitor/", "ADMIN");
+        // 需要销售员权限的路径
+        config.setProperty(PATH_PREFIX + "/customer/", "SALES");
+        config.setProperty(PATH_PREFIX + "/contract/", "SALES");
+        config.setProperty(PATH_PREFIX + "/premium/", "SALES");
+        // 需要审查员权限的路径
+        config.setProperty(PATH_PREFIX + "/contract/review/", "REVIEWER");
+        config.setProperty(PATH_PREFIX + "/claim/", "REVIEWER");
+        // 模块访问权限
+        config.setProperty(MODULE_PREFIX + "CUSTOMER", "SALES");
+        config.setProperty(MODULE_PREFIX + "CONTRACT", "SALES,REVIEWER");
+        config.setProperty(MODULE_PREFIX + "PREMIUM", "SALES");
+        config.setProperty(MODULE_PREFIX + "CLAIM", "REVIEWER");
+        config.setProperty(MODULE_PREFIX + "MYPAGE", "USER");
+
+        // 从类路径读取配置文件（不存在时使用默认规则）
+        try (InputStream in = AccessRules.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load security rules: " + e.getMessage());
+        }
+        // 同名系统属性优先
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("security.")) {
+                config.setProperty(key, System.getProperty(key));
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 编译规则
+     * @param config 规则配置
+     * @return 编译好的规则
+     */
+    private static Compiled compile(Properties config) {
+        Compiled compiled = new Compiled();
+        compiled.superRoles = compiled.roleMask(config.getProperty("security.superRoles", ""));
+
+        for (String prefix : config.getProperty("security.public", "").split(",")) {
+            Node node = compiled.insert(prefix.trim());
+            if (node != null) {
+                node.publicPath = true;
+            }
+        }
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(PATH_PREFIX)) {
+                Node node = compiled.insert(key.substring(PATH_PREFIX.length()));
+                if (node != null) {
+                    // 同一前缀有多条规则时必须全部满足
+                    node.allowedRoles &= compiled.roleMask(config.getProperty(key)) | compiled.superRoles;
+                    compiled.pathRuleCount++;
+                }
+            } else if (key.startsWith(MODULE_PREFIX)) {
+                compiled.modules.put(key.substring(MODULE_PREFIX.length()),
+                                     compiled.roleMask(config.getProperty(key)));
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * 编译好的规则
+     */
+    private static final class Compiled {
+        // 前缀树的根节点
+        private final Node root = new Node();
+        // 角色名到角色位的映射
+        private final Map<String, Integer> roleBits = new HashMap<>();
+        // 模块名到允许角色位集合的映射
+        private final Map<String, Integer> modules = new HashMap<>();
+        // 超级角色的位集合
+        private int superRoles;
+        // 路径规则数
+        private int pathRuleCount;
+
+        /**
+         * 获取角色位
+         * @param role 角色名
+         * @return 角色位（未登记的角色为0）
+         */
+        private int roleBit(String role) {
+            Integer bit = role != null ? roleBits.get(role) : null;
+            return bit != null ? bit : 0;
+        }
+
+        /**
+         * 把逗号分隔的角色名转换为位集合，未登记的角色分配新的位
+         * @param roles 角色名（逗号分隔）
+         * @return 位集合
+         */
+        private int roleMask(String roles) {
+            int mask = 0;
+            for (String role : roles.split(",")) {
+                role = role.trim();
+                if (role.isEmpty()) {
+                    continue;
+                }
+                Integer bit = roleBits.get(role);
+                if (bit == null) {
+                    if (roleBits.size() >= MAX_ROLES) {
+                        LogUtil.warn("ロール数が上限を超えたため無視します: " + role);
+                        continue;
+                    }
+                    bit = 1 << roleBits.size();
+                    roleBits.put(role, bit);
+                }
+                mask |= bit;
+            }
+            return mask;
+        }
+
+        /**
+         * 把路径前缀插入前缀树
+         * @param prefix 路径前缀
+         * @return 前缀的终端节点，前缀为空或含有非ASCII字符时返回null
+         */
+        private Node insert(String prefix) {
+            if (prefix.isEmpty()) {
+                return null;
+            }
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                char c = prefix.charAt(i);
+                if (c >= ASCII) {
+                    LogUtil.warn("ASCII以外の文字を含むパスルールは無視します: " + prefix);
+                    return null;
+                }
+                if (node.children == null) {
+                    node.children = new Node[ASCII];
+                }
+                if (node.children[c] == null) {
+                    node.children[c] = new Node();
+                }
+                node = node.children[c];
+            }
+            node.terminal = true;
+            return node;
+        }
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static final class Node {
+        // 子节点（按字符索引，没有子节点时为null）
+        private Node[] children;
+        // 是否为某条规则前缀的终点
+        private boolean terminal;
+        // 是否为公共路径
+        private boolean publicPath;
+        // 允许的角色位集合
+        private int allowedRoles = ROLE_MASK;
+    }
+}
@@ -0,0 +1,62 @@
+package com.insurance.security;
+
+/**
+ * 认证令牌内容
+ * 由TokenService签发和校验，校验通过的令牌只包含认证和授权所需的最少信息
+ */
+public final class AuthToken {
+
+    // 令牌ID（吊销时使用）
+    private final String tokenId;
+    // 用户ID
+    private final int userId;
+    // 用户名
+    private final String username;
+    // 用户角色
+    private final String role;
+    // 签发时间（毫秒）
+    private final long issuedAt;
+    // 有效期限（毫秒）
+    private final long expiresAt;
+    // 最初登录的时间（毫秒，更新令牌时沿用）
+    private final long loginAt;
+
+    AuthToken(String tokenId, int userId, String username, String role, long issuedAt, long expiresAt,
+              long loginAt) {
+        this.tokenId = tokenId;
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+        this.loginAt = loginAt;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getLoginAt() {
+        return loginAt;
+    }
+}
@@ -3,6 +3,7 @@ package com.insurance.security;
 import com.insurance.model.User;
 import com.insurance.service.UserService;
 import com.insurance.util.LogUtil;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -13,11 +14,24 @@ import java.util.Date;
 /**
  * 认证工具类
  * 处理用户登录、登出、权限验证等安全相关功能
+ *
+ * 登录状态可以保存在会话中，也可以由签名令牌表示（见TokenService，由auth.mode切换）。
+ * 令牌从Authorization: Bearer头或令牌Cookie中读取，两种方式可以并用。
  */
 public class AuthUtil {
     
     // 用户服务实例，用于处理用户相关的业务逻辑
     private static final UserService userService = new UserService();
+    // 请求属性：已认证的用户（同一请求内只解析一次）
+    private static final String USER_ATTRIBUTE = AuthUtil.class.getName() + ".user";
+    // 请求属性：已校验的令牌
+    private static final String TOKEN_ATTRIBUTE = AuthUtil.class.getName() + ".token";
+    // 请求属性：令牌来自Authorization头
+    private static final String BEARER_ATTRIBUTE = AuthUtil.class.getName() + ".bearer";
+    // 请求属性：没有有效令牌（避免重复校验）
+    private static final String NO_TOKEN_ATTRIBUTE = AuthUtil.class.getName() + ".noToken";
+    // Authorization头中令牌的前缀
+    private static final String BEARER_PREFIX = "Bearer ";
     
     /**
      * 密码加密
@@ -55,6 +69,20 @@ public class AuthUtil {
      * @return boolean 登录成功返回true，否则返回false
      */
     public static boolean authenticate(String username, String password, HttpServletRequest request) {
+        return authenticate(username, password, request, null);
+    }
+    
+    /**
+     * 用户登录验证
+     * 验证成功后按认证模式创建会话和/或签发令牌Cookie
+     * @param username 用户名
+     * @param password 密码
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象（为null时不签发令牌）
+     * @return boolean 登录成功返回true，否则返回false
+     */
+    public static boolean authenticate(String username, String password, HttpServletRequest request,
+                                       HttpServletResponse response) {
         try {
             // 根据用户名获取用户信息
             User user = userService.getUserByUsername(username);
@@ -62,11 +90,20 @@ public class AuthUtil {
             if (user != null && user.isActive() && 
                 user.getPassword().equals(encryptPassword(password))) {
                 
-                // 创建会话并存储用户信息
-                HttpSession session = request.getSession(true);
-                session.setAttribute("user", user);
-                session.setAttribute("loginTime", new Date());
-                session.setAttribute("userRole", user.getRole());
+                if (TokenService.isSessionEnabled()) {
+                    // 创建会话并存储用户信息
+                    HttpSession session = request.getSession(true);
+                    session.setAttribute("user", user);
+                    session.setAttribute("loginTime", new Date());
+                    session.setAttribute("userRole", user.getRole());
+                }
+                if (TokenService.isTokenEnabled() && response != null) {
+                    // 签发令牌Cookie
+                    setTokenCookie(request, response,
+                                   TokenService.issue(user.getId(), user.getUsername(), user.getRole()));
+                }
+                // 本次请求的后续处理中视为已登录
+                request.setAttribute(USER_ATTRIBUTE, user);
                 
                 // 记录登录成功日志
                 LogUtil.info("用户登录成功: " + username, 
@@ -95,6 +132,29 @@ public class AuthUtil {
      * @param request HTTP请求对象
      */
     public static void logout(HttpServletRequest request) {
+        logout(request, null);
+    }
+    
+    /**
+     * 用户登出
+     * 吊销请求携带的令牌、删除令牌Cookie并销毁会话
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象（为null时不删除Cookie）
+     */
+    public static void logout(HttpServletRequest request, HttpServletResponse response) {
+        // 吊销令牌（其他节点在下次刷新吊销集合后拒绝该令牌）
+        AuthToken token = getAuthToken(request);
+        if (token != null) {
+            TokenService.revoke(token);
+            LogUtil.info("用户登出（令牌）: " + token.getUsername());
+        }
+        if (response != null && TokenService.isTokenEnabled()) {
+            setTokenCookie(request, response, null);
+        }
+        request.removeAttribute(USER_ATTRIBUTE);
+        request.removeAttribute(TOKEN_ATTRIBUTE);
+        request.setAttribute(NO_TOKEN_ATTRIBUTE, Boolean.TRUE);
+        
         // 获取当前会话（如果不存在则返回null）
         HttpSession session = request.getSession(false);
         if (session != null) {
@@ -118,10 +178,8 @@ public class AuthUtil {
      * @return boolean 已登录返回true，否则返回false
      */
     public static boolean isLoggedIn(HttpServletRequest request) {
-        // 获取当前会话（如果不存在则返回null）
-        HttpSession session = request.getSession(false);
-        // 检查会话是否存在且包含用户信息
-        return session != null && session.getAttribute("user") != null;
+        // 会话中有用户信息，或者携带有效令牌
+        return getCurrentUser(request) != null;
     }
     
     /**
@@ -131,10 +189,156 @@ public class AuthUtil {
      * @return User 当前登录用户对象，未登录则返回null
      */
     public static User getCurrentUser(HttpServletRequest request) {
+        // 同一请求内已解析过时直接返回
+        User user = (User) request.getAttribute(USER_ATTRIBUTE);
+        if (user != null) {
+            return user;
+        }
         // 获取当前会话（如果不存在则返回null）
         HttpSession session = request.getSession(false);
-        // 如果会话存在，返回会话中的用户对象，否则返回null
-        return session != null ? (User) session.getAttribute("user") : null;
+        // 如果会话存在，返回会话中的用户对象
+        if (session != null) {
+            user = (User) session.getAttribute("user");
+        }
+        // 没有会话时根据令牌构建用户（只含ID、用户名和角色，不访问数据库）
+        if (user == null) {
+            AuthToken token = getAuthToken(request);
+            if (token != null) {
+                user = new User();
+                user.setId(token.getUserId());
+                user.setUsername(token.getUsername());
+                user.setRole(token.getRole());
+                user.setActive(true);
+            }
+        }
+        if (user != null) {
+            request.setAttribute(USER_ATTRIBUTE, user);
+        }
+        return user;
+    }
+    
+    /**
+     * 获取请求携带的有效令牌
+     * 依次从Authorization: Bearer头和令牌Cookie读取，结果缓存在请求属性中
+     * @param request HTTP请求对象
+     * @return AuthToken 校验通过的令牌，没有或无效时返回null
+     */
+    public static AuthToken getAuthToken(HttpServletRequest request) {
+        if (!TokenService.isTokenEnabled() || request.getAttribute(NO_TOKEN_ATTRIBUTE) != null) {
+            return null;
+        }
+        AuthToken token = (AuthToken) request.getAttribute(TOKEN_ATTRIBUTE);
+        if (token == null) {
+            token = TokenService.verify(getBearerToken(request));
+            if (token != null) {
+                request.setAttribute(BEARER_ATTRIBUTE, Boolean.TRUE);
+            } else {
+                token = TokenService.verify(getTokenCookie(request));
+            }
+            request.setAttribute(token != null ? TOKEN_ATTRIBUTE : NO_TOKEN_ATTRIBUTE,
+                                 token != null ? token : Boolean.TRUE);
+        }
+        return token;
+    }
+    
+    /**
+     * 是否通过Authorization头携带令牌
+     * 浏览器不会自动发送该头，所以这类请求不需要CSRF检查
+     * @param request HTTP请求对象
+     * @return boolean 通过Authorization头携带有效令牌时返回true
+     */
+    public static boolean isBearerAuthenticated(HttpServletRequest request) {
+        return getAuthToken(request) != null && request.getAttribute(BEARER_ATTRIBUTE) != null;
+    }
+    
+    /**
+     * 更新令牌Cookie
+     * Cookie中的令牌剩余有效时间不足一半时重新签发，并吊销原令牌
+     * （不吊销的话，每次更新前的令牌都在到期前一直有效，登出也无法使其失效）。
+     * 更新前从数据库重新读取用户（每个令牌有效期一半一次），用户已停用或角色已变更时
+     * 吊销令牌并删除Cookie；从登录起超过最长时间后不再更新，到期后需要重新登录
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     */
+    public static void renewToken(HttpServletRequest request, HttpServletResponse response) {
+        AuthToken token = getAuthToken(request);
+        // Authorization头携带的令牌由客户端自行更新
+        if (token == null || request.getAttribute(BEARER_ATTRIBUTE) != null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (token.getExpiresAt() - now < TokenService.getTtlMillis() / 2
+                && now - token.getLoginAt() < TokenService.getMaxSessionMillis()) {
+            User user = userService.getUserById(token.getUserId());
+            if (user == null) {
+                // 无法读取用户时不更新，令牌到期后需要重新登录
+                return;
+            }
+            if (!user.isActive() || !token.getRole().equals(user.getRole())) {
+                LogUtil.warn("ユーザーが無効化またはロール変更されたため、トークンを失効させました: " +
+                             token.getUsername());
+                TokenService.revoke(token);
+                setTokenCookie(request, response, null);
+                return;
+            }
+            String renewed = TokenService.issue(token.getUserId(), token.getUsername(), token.getRole(),
+                                                token.getLoginAt());
+            setTokenCookie(request, response, renewed);
+            // 本次请求之后的处理（CSRF令牌、登出）使用新令牌
+            request.setAttribute(TOKEN_ATTRIBUTE, TokenService.verify(renewed));
+            TokenService.revoke(token);
+        }
+    }
+    
+    /**
+     * 获取Authorization头中的令牌
+     * @param request HTTP请求对象
+     * @return String 令牌，没有时返回null
+     */
+    private static String getBearerToken(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (header != null && header.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            return header.substring(BEARER_PREFIX.length()).trim();
+        }
+        return null;
+    }
+    
+    /**
+     * 获取令牌Cookie的值
+     * @param request HTTP请求对象
+     * @return String 令牌，没有时返回null
+     */
+    private static String getTokenCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (TokenService.getCookieName().equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 设置令牌Cookie
+     * HttpOnly、SameSite=Lax，HTTPS请求时加Secure
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @param token 令牌（为null时删除Cookie）
+     */
+    private static void setTokenCookie(HttpServletRequest request, HttpServletResponse response, String token) {
+        String path = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+        long maxAge = token != null ? TokenService.getTtlMillis() / 1000 : 0;
+        StringBuilder cookie = new StringBuilder(token != null ? token.length() + 96 : 96);
+        cookie.append(TokenService.getCookieName()).append('=').append(token != null ? token : "")
+              .append("; Path=").append(path)
+              .append("; Max-Age=").append(maxAge)
+              .append("; HttpOnly; SameSite=Lax");
+        if (request.isSecure()) {
+            cookie.append("; Secure");
+        }
+        response.addHeader("Set-Cookie", cookie.toString());
     }
     
     /**
@@ -176,26 +380,8 @@ public class AuthUtil {
             return false;
         }
         
-        // 管理员可以访问所有模块
-        if ("ADMIN".equals(user.getRole())) {
-            return true;
-        }
-        
-        // 根据角色和模块权限定义进行检查
-        switch (user.getRole()) {
-            // 销售员可以访问客户、合同和保险模块
-            case "SALES":
-                return "CUSTOMER".equals(module) || "CONTRACT".equals(module) || "PREMIUM".equals(module);
-            // 审查员可以访问合同和理赔模块
-            case "REVIEWER":
-                return "CONTRACT".equals(module) || "CLAIM".equals(module);
-            // 普通用户可以访问个人主页模块
-            case "USER":
-                return "MYPAGE".equals(module);
-            // 其他角色无权限
-            default:
-                return false;
-        }
+        // 根据角色和模块权限定义进行检查（管理员可以访问所有模块）
+        return AccessRules.hasModuleAccess(user.getRole(), module);
     }
     
     /**
@@ -232,19 +418,15 @@ public class AuthUtil {
     public static boolean isSessionTimeout(HttpServletRequest request) {
         // 获取当前会话
         HttpSession session = request.getSession(false);
-        // 如果会话不存在，认为已超时
-        if (session == null) {
-            return true;
-        }
-        
-        // 检查会话超时（30分钟）
         // 获取登录时间
-        Date loginTime = (Date) session.getAttribute("loginTime");
-        // 如果登录时间不存在，认为已超时
+        Date loginTime = session != null ? (Date) session.getAttribute("loginTime") : null;
+        // 如果会话或登录时间不存在，令牌认证的请求由令牌有效期判断，否则认为已超时
         if (loginTime == null) {
-            return true;
+            return getAuthToken(request) == null;
         }
         
+        // 检查会话超时（30分钟）
+        
         // 设置超时时间为30分钟
         long timeout = 30 * 60 * 1000; // 30分钟
         // 检查当前时间与登录时间的差值是否超过超时时间
@@ -0,0 +1,373 @@
+package com.insurance.security;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录限流器
+ * 按IP地址、以及用户名和IP地址的组合分别用令牌桶限制登录尝试次数，在访问数据库之前拒绝超出的尝试。
+ * 用户名的限制按IP地址区分，其他IP地址对同一用户名的大量失败不会使本人无法登录。
+ *
+ * IP地址使用连接的对端地址。X-Forwarded-For只在对端是配置的可信代理
+ * （auth.throttle.trustedProxies）时采用，取其中最后一个不是可信代理的地址；
+ * 客户端自行设置的转发头不能用来绕过IP地址的限制。
+ *
+ * 令牌桶保存在固定大小的AtomicLongArray中，每个槽位把上次补充时间和剩余令牌数打包为一个long，
+ * 用CAS更新，不加锁也不随键的数量增长。每个键映射到两个槽位（不同的散列），
+ * 两个槽位都有令牌时才放行，降低不同键共用槽位造成的误判。
+ * 令牌按经过时间连续补充，所以限制窗口随时间自然衰减。
+ *
+ * 每次尝试先消耗令牌，登录成功后退还，正常登录的用户不会因攻击期间的限流而变慢。
+ * 配置从类路径上的/config/auth.properties读取，同名系统属性优先。
+ */
+public final class LoginThrottle {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/auth.properties";
+
+    // 认证配置
+    private static final Properties config = new Properties();
+    // 是否启用限流
+    private static final boolean enabled;
+    // 按IP地址的令牌桶
+    private static final BucketTable ipBuckets;
+    // 按用户名和IP地址组合的令牌桶
+    private static final BucketTable userBuckets;
+    // 可信代理的地址
+    private static final Set<String> trustedProxies;
+
+    // 放行的尝试数
+    private static final LongAdder allowed = new LongAdder();
+    // 因IP地址超限被拒绝的尝试数
+    private static final LongAdder rejectedByIp = new LongAdder();
+    // 因用户名（同一IP地址）超限被拒绝的尝试数
+    private static final LongAdder rejectedByUser = new LongAdder();
+
+    // 静态代码块，加载配置
+    static {
+        loadConfig();
+        enabled = Boolean.parseBoolean(getConfig("auth.throttle.enabled").trim());
+        int slots = getIntConfig("auth.throttle.slots");
+        ipBuckets = new BucketTable(slots, getIntConfig("auth.throttle.ip.capacity"),
+                                    getIntConfig("auth.throttle.ip.refillSeconds"));
+        userBuckets = new BucketTable(slots, getIntConfig("auth.throttle.user.capacity"),
+                                      getIntConfig("auth.throttle.user.refillSeconds"));
+        trustedProxies = new HashSet<>();
+        for (String proxy : getConfig("auth.throttle.trustedProxies").split(",")) {
+            if (!proxy.trim().isEmpty()) {
+                trustedProxies.add(proxy.trim());
+            }
+        }
+    }
+
+    private LoginThrottle() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 是否启用登录限流
+        config.setProperty("auth.throttle.enabled", "true");
+        // 每个令牌桶表的槽位数（向上取整为2的幂）
+        config.setProperty("auth.throttle.slots", "16384");
+        // 每个IP地址可连续尝试的次数
+        config.setProperty("auth.throttle.ip.capacity", "20");
+        // IP地址每补充一次尝试所需的秒数
+        config.setProperty("auth.throttle.ip.refillSeconds", "6");
+        // 每个IP地址对同一用户名可连续尝试的次数
+        config.setProperty("auth.throttle.user.capacity", "5");
+        // 用户名每补充一次尝试所需的秒数
+        config.setProperty("auth.throttle.user.refillSeconds", "60");
+        // 可信代理的地址（逗号分隔，只有来自这些地址的请求才采用X-Forwarded-For）
+        config.setProperty("auth.throttle.trustedProxies", "");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = LoginThrottle.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load auth config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取整数配置值
+     * @param key 配置键
+     * @return 整数配置值
+     */
+    private static int getIntConfig(String key) {
+        return Integer.parseInt(getConfig(key).trim());
+    }
+
+    /**
+     * 获取限流使用的客户端IP地址
+     * 对端不是可信代理时直接使用对端地址；是可信代理时从X-Forwarded-For的末尾
+     * 向前找第一个不是可信代理的地址（客户端自行添加的地址在前面，不采用）
+     * @param request HTTP请求对象
+     * @return 客户端IP地址
+     */
+    public static String clientAddress(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        if (!trustedProxies.contains(remoteAddr)) {
+            return remoteAddr;
+        }
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if (forwardedFor == null) {
+            return remoteAddr;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !trustedProxies.contains(hop)) {
+                return hop;
+            }
+        }
+        return remoteAddr;
+    }
+
+    /**
+     * 申请一次登录尝试
+     * 在查询用户之前调用。IP地址、用户名和IP地址的组合都有剩余次数时消耗各一次并放行
+     * @param ip 客户端IP地址（clientAddress()的结果）
+     * @param username 用户名
+     * @return 放行时返回true，超限时返回false
+     */
+    public static boolean tryAcquire(String ip, String username) {
+        if (!enabled) {
+            return true;
+        }
+        if (!ipBuckets.tryTake(ip)) {
+            rejectedByIp.increment();
+            return false;
+        }
+        if (!userBuckets.tryTake(userKey(ip, username))) {
+            // 没有放行，退还IP地址的次数
+            ipBuckets.giveBack(ip);
+            rejectedByUser.increment();
+            return false;
+        }
+        allowed.increment();
+        return true;
+    }
+
+    /**
+     * 登录成功
+     * 退还本次尝试消耗的次数
+     * @param ip 客户端IP地址（clientAddress()的结果）
+     * @param username 用户名
+     */
+    public static void onSuccess(String ip, String username) {
+        if (enabled) {
+            ipBuckets.giveBack(ip);
+            userBuckets.giveBack(userKey(ip, username));
+        }
+    }
+
+    /**
+     * 获取限流统计信息
+     * @return 统计信息（放行数、按IP拒绝数、按用户名拒绝数）
+     */
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("allowed", allowed.sum());
+        stats.put("rejectedByIp", rejectedByIp.sum());
+        stats.put("rejectedByUser", rejectedByUser.sum());
+        return stats;
+    }
+
+    /**
+     * 生成用户名令牌桶的键
+     * 数据库按不区分大小写比较用户名，限流也不区分大小写
+     * @param ip 客户端IP地址
+     * @param username 用户名
+     * @return 规范化后的用户名和IP地址
+     */
+    private static String userKey(String ip, String username) {
+        return (username != null ? username.trim().toLowerCase() : "") + '\u0000' + ip;
+    }
+
+    /**
+     * 令牌桶表
+     * 槽位值 = 上次补充时间（毫秒，高40位）<< 24 | 剩余令牌数（千分之一单位，低24位）
+     */
+    private static final class BucketTable {
+        // 令牌数所占的位数
+        private static final int TOKEN_BITS = 24;
+        // 令牌数的掩码
+        private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+        // 一个令牌的单位数
+        private static final long UNIT = 1000;
+        // 时间基准的偏移（首次访问时经过时间足够长，桶为满）
+        private static final long EPOCH_OFFSET_MS = TimeUnit.DAYS.toMillis(1);
+        // 时间基准
+        private static final long START_NANOS = System.nanoTime();
+
+        // 槽位
+        private final AtomicLongArray slots;
+        // 槽位下标掩码
+        private final int mask;
+        // 桶容量（千分之一单位）
+        private final long capacity;
+        // 补充一个令牌所需的毫秒数
+        private final long refillMillis;
+
+        private BucketTable(int slotCount, int capacity, int refillSeconds) {
+            int size = Integer.highestOneBit(Math.max(slotCount - 1, 1)) << 1;
+            this.slots = new AtomicLongArray(size);
+            this.mask = size - 1;
+            this.capacity = Math.min(capacity * UNIT, TOKEN_MASK);
+            this.refillMillis = Math.max(TimeUnit.SECONDS.toMillis(refillSeconds), 1);
+        }
+
+        /**
+         * 取出一个令牌（键对应的两个槽位都有令牌时才取出）
+         * @param key 键
+         * @return 取出成功时返回true
+         */
+        private boolean tryTake(String key) {
+            int hash = key.hashCode();
+            int first = index(hash);
+            int second = index(secondHash(key));
+            if (!take(first)) {
+                return false;
+            }
+            if (first != second && !take(second)) {
+                add(first, UNIT);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 退还一个令牌
+         * @param key 键
+         */
+        private void giveBack(String key) {
+            int first = index(key.hashCode());
+            int second = index(secondHash(key));
+            add(first, UNIT);
+            if (first != second) {
+                add(second, UNIT);
+            }
+        }
+
+        /**
+         * 从槽位取出一个令牌
+         * @param slot 槽位
+         * @return 取出成功时返回true
+         */
+        private boolean take(int slot) {
+            long now = now();
+            while (true) {
+                long state = slots.get(slot);
+                long tokens = refill(state, now);
+                if (tokens < UNIT) {
+                    return false;
+                }
+                if (slots.compareAndSet(slot, state, pack(now, tokens - UNIT))) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 向槽位加入令牌（不超过容量）
+         * @param slot 槽位
+         * @param amount 令牌数（千分之一单位）
+         */
+        private void add(int slot, long amount) {
+            long now = now();
+            while (true) {
+                long state = slots.get(slot);
+                long tokens = Math.min(refill(state, now) + amount, capacity);
+                if (slots.compareAndSet(slot, state, pack(now, tokens))) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 计算补充后的令牌数
+         * @param state 槽位值
+         * @param now 当前时间（毫秒）
+         * @return 令牌数（千分之一单位）
+         */
+        private long refill(long state, long now) {
+            long elapsed = now - (state >>> TOKEN_BITS);
+            long tokens = state & TOKEN_MASK;
+            if (elapsed <= 0) {
+                return tokens;
+            }
+            // 防止长时间未访问时溢出
+            if (elapsed >= refillMillis * (capacity / UNIT + 1)) {
+                return capacity;
+            }
+            return Math.min(tokens + elapsed * UNIT / refillMillis, capacity);
+        }
+
+        /**
+         * 打包槽位值
+         * @param time 时间（毫秒）
+         * @param tokens 令牌数（千分之一单位）
+         * @return 槽位值
+         */
+        private static long pack(long time, long tokens) {
+            return (time << TOKEN_BITS) | tokens;
+        }
+
+        /**
+         * 当前时间
+         * @return 相对于时间基准的毫秒数
+         */
+        private static long now() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - START_NANOS) + EPOCH_OFFSET_MS;
+        }
+
+        /**
+         * 散列值转换为槽位下标
+         * @param hash 散列值
+         * @return 槽位下标
+         */
+        private int index(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            return hash & mask;
+        }
+
+        /**
+         * 第二散列（FNV-1a）
+         * @param key 键
+         * @return 散列值
+         */
+        private static int secondHash(String key) {
+            int hash = 0x811c9dc5;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x01000193;
+            }
+            return hash;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.insurance.security;
 
+import com.insurance.model.User;
 import com.insurance.util.LogUtil;
 import javax.servlet.*;
 import javax.servlet.annotation.WebFilter;
@@ -7,52 +8,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
 
 /**
  * 安全过滤器
  * 处理认证、授权、会话管理等安全相关功能
+ * 路径的公共/角色判定使用AccessRules编译好的前缀树
  */
-@WebFilter(urlPatterns = {"/*"})
+@WebFilter(urlPatterns = {"/*"}, asyncSupported = true)
 public class SecurityFilter implements Filter {
     
-    // 不需要认证的公共路径列表
-    // 这些路径可以被未登录用户访问
-    private static final List<String> PUBLIC_PATHS = Arrays.asList(
-        "/login.jsp",      // 登录页面
-        "/login",          // 登录处理接口
-        "/logout",         // 登出处理接口
-        "/css/",           // CSS样式文件目录
-        "/js/",            // JavaScript文件目录
-        "/images/",        // 图片文件目录
-        "/favicon.ico"     // 网站图标
-    );
-    
-    // 需要管理员权限的路径列表
-    // 只有管理员角色可以访问这些路径
-    private static final List<String> ADMIN_PATHS = Arrays.asList(
-        "/admin/",         // 管理员功能模块
-        "/batch/",         // 批处理功能模块
-        "/logs/",          // 日志查看模块
-        "/monitor/"        // 系统监控模块
-    );
-    
-    // 需要销售员权限的路径列表
-    // 只有销售员角色可以访问这些路径
-    private static final List<String> SALES_PATHS = Arrays.asList(
-        "/customer/",      // 客户管理模块
-        "/contract/",      // 合同管理模块
-        "/premium/"        // 保险费管理模块
-    );
-    
-    // 需要审查员权限的路径列表
-    // 只有审查员角色可以访问这些路径
-    private static final List<String> REVIEWER_PATHS = Arrays.asList(
-        "/contract/review/",  // 合同审查模块
-        "/claim/"             // 理赔处理模块
-    );
-    
     /**
      * 初始化过滤器
      * @param filterConfig 过滤器配置对象
@@ -60,8 +24,10 @@ public class SecurityFilter implements Filter {
      */
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
+        // 编译访问控制规则
+        int ruleCount = AccessRules.reload();
         // 记录安全过滤器初始化完成日志
-        LogUtil.info("安全过滤器初始化完成", "SecurityFilter");
+        LogUtil.info("安全过滤器初始化完成，路径规则数: " + ruleCount, "SecurityFilter");
     }
     
     /**
@@ -81,15 +47,18 @@ public class SecurityFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
         
+        // 获取请求路径
+        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        
         try {
             // 设置安全响应头，增强安全性
             setSecurityHeaders(httpResponse);
             
-            // 获取请求路径
-            String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+            // 按访问控制规则判定请求路径（前缀树遍历，不分配对象）
+            int decision = AccessRules.decide(path, 0);
             
             // 检查是否为公共路径，如果是则直接放行
-            if (isPublicPath(path)) {
+            if (AccessRules.isPublic(decision)) {
                 chain.doFilter(request, response);
                 return;
             }
@@ -113,7 +82,7 @@ public class SecurityFilter implements Filter {
             AuthUtil.updateSessionActivity(httpRequest);
             
             // 检查用户权限，权限不足则返回403错误
-            if (!checkPermission(httpRequest, path)) {
+            if (!checkPermission(httpRequest, decision)) {
                 LogUtil.warn("权限不足: " + path, "SecurityFilter", AuthUtil.getRemoteAddr(httpRequest));
                 httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN, "权限不足");
                 return;
@@ -126,6 +95,10 @@ public class SecurityFilter implements Filter {
                 return;
             }
             
+            // 令牌剩余有效时间不足一半时重新签发
+            // （CSRF检查之后进行：本次提交的CSRF令牌由原令牌派生，页面输出使用新令牌派生的CSRF令牌）
+            AuthUtil.renewToken(httpRequest, httpResponse);
+            
             // 防止会话固定攻击
             preventSessionFixation(httpRequest);
             
@@ -172,78 +145,18 @@ public class SecurityFilter implements Filter {
         response.setHeader("Expires", "0");
     }
     
-    /**
-     * 检查是否为公共路径
-     * 判断请求路径是否为不需要认证的公共路径
-     * @param path 请求路径
-     * @return boolean 是公共路径返回true，否则返回false
-     */
-    private boolean isPublicPath(String path) {
-        // 检查路径是否以公共路径列表中的任意一个开头
-        return PUBLIC_PATHS.stream().anyMatch(path::startsWith);
-    }
-    
     /**
      * 检查权限
-     * 根据请求路径检查用户是否具有相应的访问权限
+     * 根据路径判定结果检查用户角色是否具有相应的访问权限
      * @param request HttpServletRequest对象
-     * @param path 请求路径
+     * @param decision AccessRules.decide()的判定结果
      * @return boolean 具有权限返回true，否则返回false
      */
-    private boolean checkPermission(HttpServletRequest request, String path) {
-        // 管理员权限检查
-        // 如果是管理员路径但用户没有管理员权限，返回false
-        if (isAdminPath(path) && !AuthUtil.hasPermission(request, "ADMIN")) {
-            return false;
-        }
-        
-        // 销售员权限检查
-        // 如果是销售员路径但用户没有销售员权限，返回false
-        if (isSalesPath(path) && !AuthUtil.hasPermission(request, "SALES")) {
-            return false;
-        }
-        
-        // 审查员权限检查
-        // 如果是审查员路径但用户没有审查员权限，返回false
-        if (isReviewerPath(path) && !AuthUtil.hasPermission(request, "REVIEWER")) {
-            return false;
-        }
-        
-        // 所有权限检查通过，返回true
-        return true;
-    }
-    
-    /**
-     * 检查是否为管理员路径
-     * 判断请求路径是否需要管理员权限
-     * @param path 请求路径
-     * @return boolean 是管理员路径返回true，否则返回false
-     */
-    private boolean isAdminPath(String path) {
-        // 检查路径是否以管理员路径列表中的任意一个开头
-        return ADMIN_PATHS.stream().anyMatch(path::startsWith);
-    }
-    
-    /**
-     * 检查是否为销售员路径
-     * 判断请求路径是否需要销售员权限
-     * @param path 请求路径
-     * @return boolean 是销售员路径返回true，否则返回false
-     */
-    private boolean isSalesPath(String path) {
-        // 检查路径是否以销售员路径列表中的任意一个开头
-        return SALES_PATHS.stream().anyMatch(path::startsWith);
-    }
-    
-    /**
-     * 检查是否为审查员路径
-     * 判断请求路径是否需要审查员权限
-     * @param path 请求路径
-     * @return boolean 是审查员路径返回true，否则返回false
-     */
-    private boolean isReviewerPath(String path) {
-        // 检查路径是否以审查员路径列表中的任意一个开头
-        return REVIEWER_PATHS.stream().anyMatch(path::startsWith);
+    private boolean checkPermission(HttpServletRequest request, int decision) {
+        // 获取当前登录用户
+        User user = AuthUtil.getCurrentUser(request);
+        // 检查用户角色是否满足请求路径适用的全部规则
+        return user != null && AccessRules.isAllowed(decision, user.getRole());
     }
     
     /**
@@ -262,8 +175,13 @@ public class SecurityFilter implements Filter {
             return true;
         }
         
-        // 获取会话中的CSRF令牌
-        String sessionToken = (String) request.getSession().getAttribute("csrfToken");
+        // Authorization头携带令牌的请求不会由浏览器自动发送，不需要CSRF检查
+        if (AuthUtil.isBearerAuthenticated(request)) {
+            return true;
+        }
+        
+        // 获取会话中的CSRF令牌（令牌认证且没有会话时使用由令牌派生的CSRF令牌）
+        String sessionToken = getCSRFToken(request);
         // 获取请求参数中的CSRF令牌
         String requestToken = request.getParameter("csrfToken");
         
@@ -315,6 +233,14 @@ public class SecurityFilter implements Filter {
      * @return String CSRF令牌
      */
     public static String getCSRFToken(HttpServletRequest request) {
+        // 令牌认证且没有会话时，返回由令牌派生的CSRF令牌（不创建会话）
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            AuthToken token = AuthUtil.getAuthToken(request);
+            if (token != null) {
+                return TokenService.csrfTokenFor(token);
+            }
+        }
         // 从会话中获取CSRF令牌并返回
         return (String) request.getSession().getAttribute("csrfToken");
     }
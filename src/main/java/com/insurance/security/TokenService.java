@@ -0,0 +1,349 @@
+package com.insurance.security;
+
+import com.insurance.dao.RevokedTokenDAO;
+import com.insurance.util.LogUtil;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 认证令牌服务
+ * 无状态认证模式下签发和校验HMAC-SHA256签名的令牌，校验时不访问数据库和会话，
+ * 所以任何节点都可以处理任何请求，不需要粘性会话。
+ *
+ * 令牌格式：Base64URL(令牌ID:用户ID:角色:签发秒:过期秒:登录秒:用户名) + "." + Base64URL(签名)
+ * 更新令牌时沿用最初的登录时间，有效期不超过登录后auth.token.maxSessionSeconds。
+ * 吊销：登出时令牌ID登记到revoked_tokens表，各节点定期读取到内存中的吊销集合，
+ * 校验时只查内存。吊销记录在令牌过期后删除，所以集合只包含有效期内的少量令牌。
+ *
+ * 配置从类路径上的/config/auth.properties读取，同名系统属性优先。
+ * auth.mode：session（默认，只用会话）/ token（只用令牌）/ both（两者都签发）
+ * token和both模式必须设置所有节点共用的auth.token.secret，未设置时类初始化失败（应用不启动）。
+ */
+public final class TokenService {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/auth.properties";
+    // 签名算法
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    // Base64URL编码器（无填充）
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    // Base64URL解码器
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    // 令牌ID生成用的随机数
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // 认证配置
+    private static final Properties config = new Properties();
+    // 是否签发和接受令牌
+    private static final boolean tokenEnabled;
+    // 是否使用会话
+    private static final boolean sessionEnabled;
+    // 令牌有效时间（毫秒）
+    private static final long ttlMillis;
+    // 从登录起令牌可以更新的最长时间（毫秒）
+    private static final long maxSessionMillis;
+    // 令牌Cookie名
+    private static final String cookieName;
+    // 签名密钥
+    private static final SecretKeySpec signingKey;
+    // 旧签名密钥（密钥轮换期间仍接受旧密钥签名的令牌，未设置时为null）
+    private static final SecretKeySpec previousKey;
+    // 每个线程的签名计算器
+    private static final ThreadLocal<Mac> signingMac;
+    // 每个线程的旧密钥签名计算器
+    private static final ThreadLocal<Mac> previousMac;
+
+    // 吊销集合（令牌ID到有效期限）
+    private static final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    // 吊销记录数据访问对象
+    private static final RevokedTokenDAO revokedTokenDAO = new RevokedTokenDAO();
+    // 吊销集合的定期刷新（令牌模式时）
+    private static final ScheduledExecutorService refresher;
+
+    // 静态代码块，加载配置
+    static {
+        loadConfig();
+        String mode = getConfig("auth.mode").trim().toLowerCase();
+        tokenEnabled = "token".equals(mode) || "both".equals(mode);
+        sessionEnabled = !"token".equals(mode);
+        ttlMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("auth.token.ttlSeconds").trim()));
+        maxSessionMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("auth.token.maxSessionSeconds").trim()));
+        cookieName = getConfig("auth.token.cookieName").trim();
+
+        String secret = getConfig("auth.token.secret");
+        if (secret == null || secret.trim().isEmpty()) {
+            if (tokenEnabled) {
+                // 各节点的随机密钥互不相同，令牌在其他节点全部无效，所以不启动
+                LogUtil.error("auth.token.secretが未設定のため、トークン認証を開始できません", null);
+                throw new IllegalStateException("auth.token.secret must be set when auth.mode is token or both");
+            }
+            // 会话模式不签发令牌，使用随机密钥
+            byte[] random = new byte[32];
+            RANDOM.nextBytes(random);
+            signingKey = new SecretKeySpec(random, MAC_ALGORITHM);
+        } else {
+            signingKey = new SecretKeySpec(secret.trim().getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        }
+        String previous = getConfig("auth.token.previousSecret");
+        previousKey = previous == null || previous.trim().isEmpty()
+            ? null : new SecretKeySpec(previous.trim().getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        signingMac = ThreadLocal.withInitial(() -> newMac(signingKey));
+        previousMac = ThreadLocal.withInitial(() -> previousKey != null ? newMac(previousKey) : null);
+
+        if (tokenEnabled) {
+            long interval = Long.parseLong(getConfig("auth.token.revocationRefreshSeconds").trim());
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "token-revocation-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(TokenService::refreshRevocations, 0, interval, TimeUnit.SECONDS);
+        } else {
+            refresher = null;
+        }
+    }
+
+    private TokenService() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 认证模式（session / token / both）
+        config.setProperty("auth.mode", "session");
+        // 令牌有效时间（秒），与会话超时一致
+        config.setProperty("auth.token.ttlSeconds", "1800");
+        // 从登录起的最长时间（秒），超过后不再更新令牌，需要重新登录
+        config.setProperty("auth.token.maxSessionSeconds", "28800");
+        // 令牌Cookie名
+        config.setProperty("auth.token.cookieName", "AUTH_TOKEN");
+        // 吊销集合的刷新间隔（秒）
+        config.setProperty("auth.token.revocationRefreshSeconds", "30");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = TokenService.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load auth config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 是否签发和接受令牌
+     * @return 令牌模式或两者并用时返回true
+     */
+    public static boolean isTokenEnabled() {
+        return tokenEnabled;
+    }
+
+    /**
+     * 是否使用会话
+     * @return 会话模式或两者并用时返回true
+     */
+    public static boolean isSessionEnabled() {
+        return sessionEnabled;
+    }
+
+    /**
+     * 令牌Cookie名
+     * @return Cookie名
+     */
+    public static String getCookieName() {
+        return cookieName;
+    }
+
+    /**
+     * 令牌有效时间
+     * @return 有效时间（毫秒）
+     */
+    public static long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * 从登录起令牌可以更新的最长时间
+     * @return 最长时间（毫秒）
+     */
+    public static long getMaxSessionMillis() {
+        return maxSessionMillis;
+    }
+
+    /**
+     * 签发令牌（登录时）
+     * @param userId 用户ID
+     * @param username 用户名
+     * @param role 用户角色
+     * @return 已签名的令牌字符串
+     */
+    public static String issue(int userId, String username, String role) {
+        return issue(userId, username, role, System.currentTimeMillis());
+    }
+
+    /**
+     * 签发令牌
+     * 有效期限为签发后ttlMillis，但不超过登录后maxSessionMillis
+     * @param userId 用户ID
+     * @param username 用户名
+     * @param role 用户角色
+     * @param loginAt 登录时间（毫秒，更新令牌时沿用原令牌的值）
+     * @return 已签名的令牌字符串
+     */
+    public static String issue(int userId, String username, String role, long loginAt) {
+        byte[] id = new byte[12];
+        RANDOM.nextBytes(id);
+        long now = System.currentTimeMillis();
+        long expiresAt = Math.min(now + ttlMillis, loginAt + maxSessionMillis);
+        String payload = ENCODER.encodeToString(id) + ':' + userId + ':' + role + ':' +
+                         TimeUnit.MILLISECONDS.toSeconds(now) + ':' +
+                         TimeUnit.MILLISECONDS.toSeconds(expiresAt) + ':' +
+                         TimeUnit.MILLISECONDS.toSeconds(loginAt) + ':' + username;
+        String encodedPayload = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return encodedPayload + '.' + ENCODER.encodeToString(sign(signingMac.get(), encodedPayload));
+    }
+
+    /**
+     * 校验令牌
+     * 只检查签名、有效期和内存中的吊销集合，不访问数据库
+     * @param token 令牌字符串
+     * @return 校验通过的令牌内容，无效时返回null
+     */
+    public static AuthToken verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot != token.lastIndexOf('.')) {
+            return null;
+        }
+        String encodedPayload = token.substring(0, dot);
+        byte[] signature;
+        String payload;
+        try {
+            signature = DECODER.decode(token.substring(dot + 1));
+            payload = new String(DECODER.decode(encodedPayload), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(signature, sign(signingMac.get(), encodedPayload))) {
+            Mac previous = previousMac.get();
+            if (previous == null || !MessageDigest.isEqual(signature, sign(previous, encodedPayload))) {
+                return null;
+            }
+        }
+
+        // 用户名可能含有冒号，所以放在最后
+        String[] fields = payload.split(":", 7);
+        if (fields.length != 7) {
+            return null;
+        }
+        try {
+            long expiresAt = TimeUnit.SECONDS.toMillis(Long.parseLong(fields[4]));
+            if (System.currentTimeMillis() >= expiresAt || revoked.containsKey(fields[0])) {
+                return null;
+            }
+            return new AuthToken(fields[0], Integer.parseInt(fields[1]), fields[6], fields[2],
+                                 TimeUnit.SECONDS.toMillis(Long.parseLong(fields[3])), expiresAt,
+                                 TimeUnit.SECONDS.toMillis(Long.parseLong(fields[5])));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 吊销令牌
+     * 立即加入本节点的吊销集合，并登记到数据库供其他节点读取
+     * @param token 令牌内容
+     */
+    public static void revoke(AuthToken token) {
+        revoked.put(token.getTokenId(), token.getExpiresAt());
+        try {
+            revokedTokenDAO.insert(token.getTokenId(), token.getExpiresAt());
+        } catch (Exception e) {
+            LogUtil.error("トークン失効の登録に失敗しました: " + token.getUsername(), e);
+        }
+    }
+
+    /**
+     * 令牌认证请求用的CSRF令牌
+     * 由令牌ID派生，无需在服务器端保存
+     * @param token 令牌内容
+     * @return CSRF令牌
+     */
+    public static String csrfTokenFor(AuthToken token) {
+        return ENCODER.encodeToString(sign(signingMac.get(), "csrf:" + token.getTokenId()));
+    }
+
+    /**
+     * 停止吊销集合的定期刷新
+     */
+    public static void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * 刷新吊销集合
+     * 读取数据库中的有效吊销记录，删除本节点和数据库中已过期的记录
+     */
+    private static void refreshRevocations() {
+        try {
+            revoked.putAll(revokedTokenDAO.findActive());
+            long now = System.currentTimeMillis();
+            revoked.values().removeIf(expiresAt -> expiresAt <= now);
+            revokedTokenDAO.deleteExpired();
+        } catch (Exception e) {
+            LogUtil.error("トークン失効リストの更新に失敗しました", e);
+        }
+    }
+
+    /**
+     * 计算签名
+     * @param mac 签名计算器
+     * @param data 签名对象
+     * @return 签名
+     */
+    private static byte[] sign(Mac mac, String data) {
+        return mac.doFinal(data.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 创建签名计算器
+     * @param key 密钥
+     * @return 签名计算器
+     */
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,858 @@
+package com.insurance.service;
+
+import com.insurance.dao.CustomerDAO;
+import com.insurance.model.Customer;
+import com.insurance.util.LogUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 顾客搜索索引
+ * 在内存中持有顾客的姓名、姓名（カナ）、顾客编号、邮箱和电话号码的n-gram（1-gram到3-gram）倒排索引，
+ * 搜索时不再对customers表执行前置通配符的LIKE全表扫描。
+ *
+ * 各字段在索引前统一规范化：NFKC（全角英数→半角、半角カナ→全角）、小写化、平假名→片假名、去除空白；
+ * 电话号码只保留数字，因此"090-1234"和"0901234"都能部分匹配。
+ * 搜索时取关键字的n-gram求倒排表交集得到候选，再以子串匹配确认并评分，返回按得分排序的顾客ID。
+ *
+ * 索引在应用启动时构建，通过CustomerService的添加、更新、删除保持最新。
+ * 其他服务器和其他进程的变更由定期的差分更新（按updated_at读取最近更新的顾客）反映；
+ * 更新和删除不从倒排表中移除旧的ID（搜索时按内容确认后排除），
+ * 这样残留的ID超过一定比例时重新构建索引。
+ * 配置从类路径上的/config/customer-search.properties读取，同名系统属性优先。
+ */
+public class CustomerSearchIndex {
+
+    // 字段：顾客编号
+    private static final int FIELD_CODE = 0;
+    // 字段：姓名（姓+名）
+    private static final int FIELD_NAME = 1;
+    // 字段：姓名カナ（姓+名）
+    private static final int FIELD_KANA = 2;
+    // 字段：邮箱
+    private static final int FIELD_EMAIL = 3;
+    // 字段：电话号码（只含数字）
+    private static final int FIELD_PHONE = 4;
+    // 各字段的权重（下标为字段）
+    private static final int[] FIELD_WEIGHTS = {5, 4, 4, 3, 3};
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/customer-search.properties";
+
+    // 索引配置
+    private static final Properties config = new Properties();
+    // 差分更新的间隔（秒）
+    private static final long refreshSeconds;
+    // 差分更新时重复读取的时间（毫秒），应对更新时间早于上次读取但稍后才提交的变更
+    private static final long overlapMillis;
+    // 构建失败后到下次尝试的间隔（毫秒）
+    private static final long retryMillis;
+    // 倒排表中残留的旧ID超过该比例（%）时重新构建
+    private static final int maxStalePercent;
+
+    // 顾客数据访问对象，仅在构建索引和补充更新时使用
+    private static final CustomerDAO customerDAO = new CustomerDAO();
+    // 索引读写锁：搜索取读锁，更新和替换取写锁
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 更新处理和索引替换的互斥锁
+    private static final Object mutationLock = new Object();
+    // 构建和差分更新的互斥锁
+    private static final ReentrantLock buildLock = new ReentrantLock();
+
+    // 当前索引（构建前为null）
+    private static Index current;
+    // 构建期间发生的更新（键：顾客ID，值：顾客，删除时为null）；不在构建中时为null
+    private static Map<Integer, Customer> pendingChanges;
+    // 已反映到索引的最新更新时间（毫秒，数据库的时间）
+    private static long watermark;
+    // 下次可以尝试构建的时刻（毫秒），构建失败后设置
+    private static volatile long retryAt;
+    // 差分更新的调度器（启动前为null）
+    private static ScheduledExecutorService refresher;
+
+    // 静态代码块，加载配置
+    static {
+        loadConfig();
+        refreshSeconds = Long.parseLong(getConfig("customer.search.refreshSeconds").trim());
+        overlapMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("customer.search.overlapSeconds").trim()));
+        retryMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(getConfig("customer.search.retrySeconds").trim()));
+        maxStalePercent = Integer.parseInt(getConfig("customer.search.maxStalePercent").trim());
+    }
+
+    private CustomerSearchIndex() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 差分更新的间隔（秒），0为不更新
+        config.setProperty("customer.search.refreshSeconds", "60");
+        // 差分更新时重复读取的时间（秒）
+        config.setProperty("customer.search.overlapSeconds", "60");
+        // 构建失败后到下次尝试的间隔（秒），期间搜索使用数据库
+        config.setProperty("customer.search.retrySeconds", "60");
+        // 倒排表中残留的旧ID的比例上限（%）
+        config.setProperty("customer.search.maxStalePercent", "25");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = CustomerSearchIndex.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load customer search config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 开始定期的差分更新
+     */
+    public static synchronized void start() {
+        if (refresher != null || refreshSeconds <= 0) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "customer-search-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(CustomerSearchIndex::refresh, refreshSeconds, refreshSeconds,
+                                         TimeUnit.SECONDS);
+    }
+
+    /**
+     * 停止定期的差分更新
+     */
+    public static synchronized void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * 从数据库重新构建索引
+     * 构建期间继续使用旧索引提供搜索；构建期间发生的更新在替换时补充到新索引
+     * @return 索引中的顾客数，构建失败时返回-1
+     */
+    public static int rebuild() {
+        buildLock.lock();
+        try {
+            return doRebuild();
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    /**
+     * 重新构建索引（调用方持有buildLock）
+     * @return 索引中的顾客数，构建失败时返回-1
+     */
+    private static int doRebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (mutationLock) {
+            pendingChanges = new LinkedHashMap<>();
+        }
+
+        Index fresh = new Index();
+        long[] latest = {0L};
+        try {
+            customerDAO.scanSearchableCustomers(customer -> {
+                fresh.put(customer);
+                if (customer.getUpdatedAt() != null) {
+                    latest[0] = Math.max(latest[0], customer.getUpdatedAt().getTime());
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (mutationLock) {
+                pendingChanges = null;
+            }
+            retryAt = System.currentTimeMillis() + retryMillis;
+            LogUtil.error("顧客検索インデックスの構築に失敗しました", e);
+            return -1;
+        }
+
+        int count;
+        synchronized (mutationLock) {
+            // 构建期间的变更以最后一次为准补充到新索引
+            for (Map.Entry<Integer, Customer> change : pendingChanges.entrySet()) {
+                if (change.getValue() != null) {
+                    fresh.put(change.getValue());
+                } else {
+                    fresh.remove(change.getKey());
+                }
+            }
+            pendingChanges = null;
+            lock.writeLock().lock();
+            try {
+                current = fresh;
+                count = fresh.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        // 没有更新时间时以构建开始的时刻为起点
+        watermark = latest[0] > 0 ? latest[0] : start;
+        retryAt = 0;
+
+        LogUtil.info("顧客検索インデックスを構築しました - 顧客数: " + count +
+                     ", 処理時間: " + (System.currentTimeMillis() - start) + "ms");
+        return count;
+    }
+
+    /**
+     * 差分更新
+     * 读取上次反映的更新时间以后更新的顾客并反映到索引（已删除的顾客从索引中移除）；
+     * 索引尚未构建时尝试构建，残留的旧ID过多时重新构建
+     */
+    static void refresh() {
+        if (!isReady()) {
+            rebuildIfMissing();
+            return;
+        }
+        buildLock.lock();
+        try {
+            long since = watermark - overlapMillis;
+            long[] latest = {watermark};
+            int[] changed = {0};
+            customerDAO.scanCustomersUpdatedSince(new Timestamp(since), customer -> {
+                update(customer);
+                changed[0]++;
+                if (customer.getUpdatedAt() != null) {
+                    latest[0] = Math.max(latest[0], customer.getUpdatedAt().getTime());
+                }
+            });
+            watermark = latest[0];
+            if (changed[0] > 0) {
+                LogUtil.debug("顧客検索インデックスを差分更新しました - 件数: " + changed[0]);
+            }
+
+            boolean compact;
+            lock.readLock().lock();
+            try {
+                compact = current.stalePercent() > maxStalePercent;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (compact) {
+                doRebuild();
+            }
+        } catch (RuntimeException e) {
+            LogUtil.error("顧客検索インデックスの差分更新に失敗しました", e);
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    /**
+     * 是否已构建索引
+     * @return 已构建时返回true
+     */
+    public static boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return current != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 添加或更新顾客的索引
+     * 已删除的顾客从索引中移除
+     * @param customer 顾客（数据库中的最新内容）
+     */
+    public static void update(Customer customer) {
+        if (customer == null) {
+            return;
+        }
+        if (customer.isDeletedFlag()) {
+            remove(customer.getId());
+            return;
+        }
+        synchronized (mutationLock) {
+            if (pendingChanges != null) {
+                pendingChanges.put(customer.getId(), customer);
+            }
+            lock.writeLock().lock();
+            try {
+                if (current != null) {
+                    current.put(customer);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 从索引中移除顾客
+     * @param customerId 顾客ID
+     */
+    public static void remove(int customerId) {
+        synchronized (mutationLock) {
+            if (pendingChanges != null) {
+                pendingChanges.put(customerId, null);
+            }
+            lock.writeLock().lock();
+            try {
+                if (current != null) {
+                    current.remove(customerId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 搜索顾客
+     * 按得分降序返回匹配的顾客ID，得分相同时新登记的顾客在前
+     * @param keyword 搜索关键字
+     * @param limit 最大返回件数
+     * @return 顾客ID列表；索引尚未构建且构建失败时返回null
+     */
+    public static List<Integer> search(String keyword, int limit) {
+        if (!isReady() && rebuildIfMissing() < 0) {
+            return null;
+        }
+        Query query = new Query(keyword);
+        if (query.text.isEmpty()) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            return current.search(query, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 索引尚未构建时构建索引
+     * 其他线程构建中或上次失败后未经过重试间隔时不等待，返回-1（调用方使用数据库搜索）
+     * @return 索引中的顾客数，构建失败时返回-1
+     */
+    private static int rebuildIfMissing() {
+        if (System.currentTimeMillis() < retryAt || !buildLock.tryLock()) {
+            return -1;
+        }
+        try {
+            return isReady() ? 0 : doRebuild();
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    /**
+     * 规范化文本：NFKC、小写化、平假名→片假名、去除空白
+     * @param text 文本
+     * @return 规范化后的文本，text为null时返回空字符串
+     */
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder result = new StringBuilder(normalized.length());
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u3000') {
+                continue;
+            }
+            if (c >= '\u3041' && c <= '\u3096') {
+                // 平假名转换为对应的片假名
+                c = (char) (c + 0x60);
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * 提取数字（电话号码用）
+     * @param text 已规范化的文本
+     * @return 只含数字的字符串
+     */
+    static String digitsOf(String text) {
+        StringBuilder digits = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * 取得从指定位置开始的n-gram的键
+     * 不同长度的n-gram使用不同的键空间，字符以16位为单位拼接
+     * @param text 文本
+     * @param start 开始位置
+     * @param length n-gram的长度（1～3）
+     * @return n-gram键
+     */
+    private static long gram(String text, int start, int length) {
+        long key = (long) length << 48;
+        for (int i = 0; i < length; i++) {
+            key |= (long) text.charAt(start + i) << (16 * (length - 1 - i));
+        }
+        return key;
+    }
+
+    /**
+     * 搜索关键字使用的n-gram长度
+     * 3个字符以上的关键字使用3-gram（倒排表较短），更短的关键字使用与其长度相同的n-gram
+     * @param keyword 关键字（1个字符以上）
+     * @return n-gram的长度
+     */
+    private static int gramLength(String keyword) {
+        return Math.min(keyword.length(), 3);
+    }
+
+    /**
+     * 搜索条件
+     * 规范化后的关键字和只含数字的关键字（电话号码用）
+     */
+    private static final class Query {
+        // 规范化后的关键字
+        private final String text;
+        // 关键字中的数字（电话号码字段用，关键字不是电话号码形式时为空）
+        private final String digits;
+
+        private Query(String keyword) {
+            this.text = normalize(keyword);
+            this.digits = isPhoneLike(text) ? digitsOf(text) : "";
+        }
+
+        /**
+         * 是否为电话号码形式（只由数字和"-()+."组成）
+         * @param text 已规范化的关键字
+         * @return 电话号码形式时返回true
+         */
+        private static boolean isPhoneLike(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                if ("0123456789-()+.".indexOf(text.charAt(i)) < 0) {
+                    return false;
+                }
+            }
+            return !text.isEmpty();
+        }
+
+        /**
+         * 获取与指定字段比较时使用的关键字
+         * @param field 字段
+         * @return 关键字，不比较时返回空字符串
+         */
+        private String forField(int field) {
+            return field == FIELD_PHONE ? digits : text;
+        }
+    }
+
+    /**
+     * 索引中的顾客
+     * 保存规范化后的各字段，用于确认候选和评分
+     */
+    private static final class Document {
+        // 顾客ID
+        private final int id;
+        // 创建时间（毫秒），用于同分时的排序
+        private final long createdAt;
+        // 规范化后的字段（下标为字段）
+        private final String[] fields;
+
+        private Document(Customer customer) {
+            this.id = customer.getId();
+            this.createdAt = customer.getCreatedAt() != null ? customer.getCreatedAt().getTime() : 0L;
+            this.fields = new String[FIELD_WEIGHTS.length];
+            fields[FIELD_CODE] = normalize(customer.getCustomerCode());
+            fields[FIELD_NAME] = normalize(nullToEmpty(customer.getLastName()) + nullToEmpty(customer.getFirstName()));
+            fields[FIELD_KANA] = normalize(nullToEmpty(customer.getLastNameKana()) + nullToEmpty(customer.getFirstNameKana()));
+            fields[FIELD_EMAIL] = normalize(customer.getEmail());
+            fields[FIELD_PHONE] = digitsOf(normalize(customer.getPhoneNumber()));
+        }
+
+        /**
+         * 计算与搜索条件的匹配得分
+         * 每个匹配字段按"完全一致3、前方一致2、部分一致1"乘以字段权重后累加
+         * @param query 搜索条件
+         * @return 得分，不匹配时返回0
+         */
+        private int score(Query query) {
+            int score = 0;
+            for (int field = 0; field < fields.length; field++) {
+                String keyword = query.forField(field);
+                String value = fields[field];
+                if (keyword.isEmpty() || value.length() < keyword.length()) {
+                    continue;
+                }
+                int match = value.equals(keyword) ? 3 : value.startsWith(keyword) ? 2 : value.contains(keyword) ? 1 : 0;
+                score += match * FIELD_WEIGHTS[field];
+            }
+            return score;
+        }
+
+        /**
+         * 收集各字段的1-gram、2-gram和3-gram（不跨字段）
+         * @param grams 收集目标
+         */
+        private void collectGrams(Set<Long> grams) {
+            for (String value : fields) {
+                for (int i = 0; i < value.length(); i++) {
+                    for (int length = 1; length <= 3 && i + length <= value.length(); length++) {
+                        grams.add(gram(value, i, length));
+                    }
+                }
+            }
+        }
+
+        private static String nullToEmpty(String text) {
+            return text != null ? text : "";
+        }
+    }
+
+    /**
+     * 倒排表：按顾客ID升序保存的int数组
+     * 新顾客的ID大于已有的ID，直接追加到末尾；比末尾小的ID（更新后新出现的n-gram）
+     * 先放入小的插入区，插入区满时一次合并，避免每次插入移动整个数组。
+     * 不再包含该n-gram的ID不移除（搜索时按内容确认后排除）
+     */
+    private static final class Postings {
+        // 插入区的大小
+        private static final int INSERT_CAPACITY = 64;
+
+        // 顾客ID（前size个有效）
+        private int[] ids = new int[4];
+        // 顾客ID数
+        private int size;
+        // 插入区（升序，前insertSize个有效，需要时创建）
+        private int[] inserted;
+        // 插入区的ID数
+        private int insertSize;
+
+        /**
+         * 添加顾客ID
+         * @param id 顾客ID
+         * @return 添加时返回true，已包含时返回false
+         */
+        private boolean add(int id) {
+            if (size == 0 || ids[size - 1] < id) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = id;
+                return true;
+            }
+            if (Arrays.binarySearch(ids, 0, size, id) >= 0) {
+                return false;
+            }
+            if (inserted == null) {
+                inserted = new int[INSERT_CAPACITY];
+            }
+            int index = Arrays.binarySearch(inserted, 0, insertSize, id);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            System.arraycopy(inserted, index, inserted, index + 1, insertSize - index);
+            inserted[index] = id;
+            if (++insertSize == INSERT_CAPACITY) {
+                ids = toArray();
+                size = ids.length;
+                insertSize = 0;
+            }
+            return true;
+        }
+
+        /**
+         * 顾客ID数（包括插入区）
+         * @return 顾客ID数
+         */
+        private int count() {
+            return size + insertSize;
+        }
+
+        /**
+         * 是否在插入区中
+         * @param id 顾客ID
+         * @return 在插入区中时返回true
+         */
+        private boolean isInserted(int id) {
+            return insertSize > 0 && Arrays.binarySearch(inserted, 0, insertSize, id) >= 0;
+        }
+
+        /**
+         * 合并插入区后的全部顾客ID
+         * @return 按升序排列的顾客ID
+         */
+        private int[] toArray() {
+            if (insertSize == 0) {
+                return Arrays.copyOf(ids, size);
+            }
+            int[] merged = new int[size + insertSize];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < merged.length; k++) {
+                merged[k] = j >= insertSize || (i < size && ids[i] < inserted[j]) ? ids[i++] : inserted[j++];
+            }
+            return merged;
+        }
+
+        /**
+         * 从指定位置开始查找第一个不小于id的位置（指数查找+二分查找，不含插入区）
+         * @param id 顾客ID
+         * @param from 开始位置
+         * @return 位置，所有ID都小于id时返回size
+         */
+        private int seek(int id, int from) {
+            int bound = 1;
+            while (from + bound < size && ids[from + bound] < id) {
+                bound <<= 1;
+            }
+            int index = Arrays.binarySearch(ids, from, Math.min(from + bound + 1, size), id);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    /**
+     * 评分后的候选
+     */
+    private static final class Hit {
+        // 索引中的顾客
+        private final Document document;
+        // 得分
+        private final int score;
+
+        private Hit(Document document, int score) {
+            this.document = document;
+            this.score = score;
+        }
+
+        /**
+         * 排序顺序：得分降序、创建时间降序、ID降序
+         * @param other 比较对象
+         * @return 本对象排在前面时为负数
+         */
+        private int compareRank(Hit other) {
+            int compare = Integer.compare(other.score, score);
+            if (compare == 0) {
+                compare = Long.compare(other.document.createdAt, document.createdAt);
+            }
+            return compare != 0 ? compare : Integer.compare(other.document.id, document.id);
+        }
+    }
+
+    /**
+     * 索引本体（由外部的读写锁保护）
+     */
+    private static final class Index {
+        // 顾客ID→索引中的顾客
+        private final Map<Integer, Document> documents = new HashMap<>();
+        // n-gram→倒排表
+        private final Map<Long, Postings> postings = new HashMap<>();
+        // 倒排表中的ID数（包括残留的旧ID）
+        private long entries;
+        // 倒排表中残留的旧ID数
+        private long staleEntries;
+
+        private int size() {
+            return documents.size();
+        }
+
+        /**
+         * 残留的旧ID的比例
+         * @return 倒排表中残留的旧ID占全部ID的比例（%）
+         */
+        private long stalePercent() {
+            return entries == 0 ? 0 : staleEntries * 100 / entries;
+        }
+
+        /**
+         * 添加或替换顾客
+         * 只向新出现的n-gram的倒排表添加ID，不再包含的n-gram的ID作为旧ID残留
+         * @param customer 顾客
+         */
+        private void put(Customer customer) {
+            Document document = new Document(customer);
+            Document previous = documents.put(document.id, document);
+            Set<Long> grams = new HashSet<>();
+            document.collectGrams(grams);
+            Set<Long> previousGrams = new HashSet<>();
+            if (previous != null) {
+                previous.collectGrams(previousGrams);
+            }
+            for (Long key : grams) {
+                if (previousGrams.contains(key)) {
+                    continue;
+                }
+                if (postings.computeIfAbsent(key, k -> new Postings()).add(document.id)) {
+                    entries++;
+                } else {
+                    // 删除或更新前残留的ID再次有效
+                    staleEntries--;
+                }
+            }
+            for (Long key : previousGrams) {
+                if (!grams.contains(key)) {
+                    staleEntries++;
+                }
+            }
+        }
+
+        /**
+         * 移除顾客
+         * 倒排表中的ID作为旧ID残留
+         * @param id 顾客ID
+         */
+        private void remove(int id) {
+            Document document = documents.remove(id);
+            if (document == null) {
+                return;
+            }
+            Set<Long> grams = new HashSet<>();
+            document.collectGrams(grams);
+            staleEntries += grams.size();
+        }
+
+        /**
+         * 搜索
+         * @param query 搜索条件
+         * @param limit 最大返回件数
+         * @return 按得分排序的顾客ID
+         */
+        private List<Integer> search(Query query, int limit) {
+            // 收集候选：关键字的n-gram交集，电话号码形式的关键字再加上数字部分的n-gram交集
+            int[] candidates = candidates(query.text);
+            if (!query.digits.isEmpty() && !query.digits.equals(query.text)) {
+                candidates = union(candidates, candidates(query.digits));
+            }
+
+            // 确认并评分，只保留得分最高的limit件（堆顶为排名最低的候选）
+            PriorityQueue<Hit> top = new PriorityQueue<>(Math.max(1, limit), (a, b) -> b.compareRank(a));
+            for (int id : candidates) {
+                Document document = documents.get(id);
+                if (document != null) {
+                    offer(top, document, query, limit);
+                }
+            }
+
+            // 按排名顺序取出
+            Hit[] hits = top.toArray(new Hit[0]);
+            Arrays.sort(hits, Hit::compareRank);
+            List<Integer> result = new ArrayList<>(hits.length);
+            for (Hit hit : hits) {
+                result.add(hit.document.id);
+            }
+            return result;
+        }
+
+        /**
+         * 评分并放入前limit件的堆
+         * @param top 堆
+         * @param document 候选
+         * @param query 搜索条件
+         * @param limit 最大件数
+         */
+        private void offer(PriorityQueue<Hit> top, Document document, Query query, int limit) {
+            int score = document.score(query);
+            if (score == 0 || limit <= 0) {
+                return;
+            }
+            Hit hit = new Hit(document, score);
+            if (top.size() < limit) {
+                top.add(hit);
+            } else if (hit.compareRank(top.peek()) < 0) {
+                top.poll();
+                top.add(hit);
+            }
+        }
+
+        /**
+         * 取得包含关键字全部n-gram的顾客ID（从最短的倒排表开始求交集）
+         * @param keyword 关键字（1个字符以上）
+         * @return 按升序排列的顾客ID
+         */
+        private int[] candidates(String keyword) {
+            int length = gramLength(keyword);
+            List<Postings> lists = new ArrayList<>();
+            for (int i = 0; i + length <= keyword.length(); i++) {
+                Postings list = postings.get(gram(keyword, i, length));
+                if (list == null) {
+                    return new int[0];
+                }
+                lists.add(list);
+            }
+            lists.sort((a, b) -> Integer.compare(a.count(), b.count()));
+
+            int[] result = lists.get(0).toArray();
+            int resultSize = result.length;
+            for (int l = 1; l < lists.size() && resultSize > 0; l++) {
+                Postings other = lists.get(l);
+                int kept = 0;
+                int position = 0;
+                for (int i = 0; i < resultSize; i++) {
+                    position = other.seek(result[i], position);
+                    if ((position < other.size && other.ids[position] == result[i]) || other.isInserted(result[i])) {
+                        result[kept++] = result[i];
+                    }
+                }
+                resultSize = kept;
+            }
+            return Arrays.copyOf(result, resultSize);
+        }
+
+        /**
+         * 合并两个升序的ID数组（去重）
+         * @param a ID数组
+         * @param b ID数组
+         * @return 合并后的升序ID数组
+         */
+        private static int[] union(int[] a, int[] b) {
+            int[] merged = new int[a.length + b.length];
+            int i = 0;
+            int j = 0;
+            int size = 0;
+            while (i < a.length || j < b.length) {
+                int next;
+                if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                    next = a[i++];
+                } else if (i >= a.length || b[j] < a[i]) {
+                    next = b[j++];
+                } else {
+                    next = a[i++];
+                    j++;
+                }
+                merged[size++] = next;
+            }
+            return Arrays.copyOf(merged, size);
+        }
+    }
+}
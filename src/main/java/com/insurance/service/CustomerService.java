@@ -1,7 +1,11 @@
 package com.insurance.service;
 
 import com.insurance.dao.CustomerDAO;
+import com.insurance.dao.KeysetPage;
+import com.insurance.dao.PageCursor;
+import com.insurance.integration.CreditCheckCache;
 import com.insurance.model.Customer;
+import com.insurance.util.FragmentCache;
 import java.util.List;
 
 /**
@@ -9,6 +13,11 @@ import java.util.List;
  */
 public class CustomerService {
     
+    // 顾客搜索的最大返回件数
+    public static final int SEARCH_RESULT_LIMIT = 200;
+    // 顾客相关模板片段的缓存标签
+    public static final String CACHE_TAG = "customer";
+    
     // 顾客数据访问对象，用于与数据库交互
     private CustomerDAO customerDAO;
     
@@ -46,6 +55,26 @@ public class CustomerService {
         // 调用DAO层方法获取所有顾客列表
         return customerDAO.getAllCustomers();
     }
+
+    /**
+     * 分页获取顾客列表
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param size 页大小
+     * @return KeysetPage<Customer> 当前页的顾客和下一页的游标
+     */
+    public KeysetPage<Customer> getCustomerPage(PageCursor cursor, int size) {
+        // 调用DAO层方法分页获取顾客列表
+        return customerDAO.getCustomerPage(cursor, size);
+    }
+
+    /**
+     * 获取顾客总数
+     * @return long 顾客总数，查询失败时返回-1
+     */
+    public long countCustomers() {
+        // 调用DAO层方法获取顾客总数（带缓存）
+        return customerDAO.countCustomers();
+    }
     
     /**
      * 添加新顾客
@@ -83,7 +112,14 @@ public class CustomerService {
         }
         
         // 调用DAO层方法添加顾客
-        return customerDAO.addCustomer(customer);
+        boolean success = customerDAO.addCustomer(customer);
+        if (success) {
+            // 以数据库中的内容（含生成的ID）更新搜索索引
+            CustomerSearchIndex.update(customerDAO.getCustomerByCode(customer.getCustomerCode()));
+            // 使顾客相关的模板片段失效
+            FragmentCache.invalidateTag(CACHE_TAG);
+        }
+        return success;
     }
     
     /**
@@ -106,7 +142,16 @@ public class CustomerService {
         }
         
         // 调用DAO层方法更新顾客信息
-        return customerDAO.updateCustomer(customer);
+        boolean success = customerDAO.updateCustomer(customer);
+        if (success) {
+            // 以数据库中的最新内容更新搜索索引
+            CustomerSearchIndex.update(customerDAO.getCustomerById(customer.getId()));
+            // 使顾客相关的模板片段失效
+            FragmentCache.invalidateTag(CACHE_TAG);
+            // 删除变更前的信用检查结果
+            CreditCheckCache.invalidate(customer.getId());
+        }
+        return success;
     }
     
     /**
@@ -129,12 +174,22 @@ public class CustomerService {
         }
         
         // 调用DAO层方法删除顾客
-        return customerDAO.deleteCustomer(id);
+        boolean success = customerDAO.deleteCustomer(id);
+        if (success) {
+            // 从搜索索引中移除
+            CustomerSearchIndex.remove(id);
+            // 使顾客相关的模板片段失效
+            FragmentCache.invalidateTag(CACHE_TAG);
+            // 删除顾客的信用检查结果
+            CreditCheckCache.invalidate(id);
+        }
+        return success;
     }
     
     /**
      * 搜索顾客
-     * 根据关键字搜索顾客信息
+     * 根据关键字搜索顾客信息。通过顾客搜索索引取得按匹配度排序的顾客ID（最多SEARCH_RESULT_LIMIT件），
+     * 再以一次查询取得顾客信息；索引无法构建时使用数据库的模糊搜索
      * @param keyword 搜索关键字
      * @return List<Customer> 符合条件的顾客列表
      */
@@ -144,8 +199,15 @@ public class CustomerService {
             return customerDAO.getAllCustomers();
         }
         
-        // 调用DAO层方法根据关键字搜索顾客
-        return customerDAO.searchCustomers(keyword.trim());
+        // 通过搜索索引取得顾客ID
+        List<Integer> ids = CustomerSearchIndex.search(keyword.trim(), SEARCH_RESULT_LIMIT);
+        if (ids == null) {
+            // 索引不可用时调用DAO层方法根据关键字搜索顾客
+            return customerDAO.searchCustomers(keyword.trim());
+        }
+        
+        // 一次查询取得顾客信息（保持索引的排序）
+        return customerDAO.getCustomersByIds(ids);
     }
     
     /**
@@ -1,7 +1,10 @@
 package com.insurance.service;
 
 import com.insurance.dao.DocumentRequestDAO;
+import com.insurance.dao.KeysetPage;
+import com.insurance.dao.PageCursor;
 import com.insurance.model.DocumentRequest;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 
@@ -47,6 +50,31 @@ public class DocumentRequestService {
         // 调用DAO层方法获取所有资料请求列表
         return documentRequestDAO.getAllDocumentRequests();
     }
+
+    /**
+     * 分页获取资料请求列表
+     * @param status 请求状态过滤条件（为空时不过滤）
+     * @param requestType 请求类型过滤条件（为空时不过滤）
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param size 页大小
+     * @return KeysetPage<DocumentRequest> 当前页的资料请求和下一页的游标
+     */
+    public KeysetPage<DocumentRequest> getDocumentRequestPage(String status, String requestType,
+                                                             PageCursor cursor, int size) {
+        // 调用DAO层方法分页获取资料请求列表
+        return documentRequestDAO.getDocumentRequestPage(status, requestType, cursor, size);
+    }
+
+    /**
+     * 获取符合过滤条件的资料请求总数
+     * @param status 请求状态过滤条件（为空时不过滤）
+     * @param requestType 请求类型过滤条件（为空时不过滤）
+     * @return long 资料请求总数，查询失败时返回-1
+     */
+    public long countDocumentRequests(String status, String requestType) {
+        // 调用DAO层方法获取资料请求总数（带缓存）
+        return documentRequestDAO.countDocumentRequests(status, requestType);
+    }
     
     /**
      * 根据顾客ID获取资料请求
@@ -86,8 +114,12 @@ public class DocumentRequestService {
         // 生成请求编号
         // 如果请求编号为空，自动生成一个新的请求编号
         if (request.getRequestNumber() == null || request.getRequestNumber().isEmpty()) {
-            String requestNumber = documentRequestDAO.generateRequestNumber();
-            request.setRequestNumber(requestNumber);
+            try {
+                request.setRequestNumber(generateRequestNumber());
+            } catch (IllegalStateException e) {
+                // 无法编号时不登记（原因已记录到日志）
+                return false;
+            }
         }
         
         // 设置默认状态
@@ -211,12 +243,25 @@ public class DocumentRequestService {
     
     /**
      * 生成新的请求编号
-     * 生成唯一的资料请求编号
+     * 生成唯一的资料请求编号（从内存中预约的编号块分配，不扫描资料请求表）
      * @return String 新的请求编号
+     * @throws IllegalStateException 无法从数据库预约编号时
      */
     public String generateRequestNumber() {
-        // 调用DAO层方法生成新的请求编号
-        return documentRequestDAO.generateRequestNumber();
+        // 编号序列第一次使用时从已有请求编号的下一个开始
+        return SequenceGenerator.nextNumber(SequenceGenerator.DOCUMENT_REQUEST, this::initialRequestNumber);
+    }
+    
+    /**
+     * 获取请求编号序列的初始值
+     * @return 已有请求编号的最大序号 + 1
+     */
+    private long initialRequestNumber() {
+        try {
+            return documentRequestDAO.getMaxRequestNumber() + 1;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read existing request numbers", e);
+        }
     }
     
     /**
@@ -1,16 +1,28 @@
 package com.insurance.service;
 
+import com.insurance.dao.KeysetPage;
+import com.insurance.dao.PageCursor;
 import com.insurance.dao.PremiumRateDAO;
 import com.insurance.model.PremiumRate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * 保险料计算服务类
  */
 public class PremiumCalculatorService {
     
+    // 批量计算用的Fork/Join线程池，线程数不超过CPU核数，所有实例共享
+    private static final ForkJoinPool QUOTE_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    // 批量计算时每个任务处理的报价数，避免每个报价单独提交任务的开销
+    public static final int QUOTE_CHUNK_SIZE = 256;
+    
     // 保险料率数据访问对象，用于与数据库交互获取料率信息
     private PremiumRateDAO premiumRateDAO;
     
@@ -33,10 +45,12 @@ public class PremiumCalculatorService {
                                                int insurancePeriod, double insuredAmount) {
         // 创建结果映射
         Map<String, Object> result = new HashMap<>();
+        // 获取当前料率表快照（验证和料率查找使用同一快照）
+        PremiumRateTable rateTable = PremiumRateCache.getTable();
         
         // 验证输入参数
         // 验证计算参数是否符合要求
-        String validationError = validateCalculationParameters(productId, gender, entryAge, 
+        String validationError = validateCalculationParameters(rateTable, productId, gender, entryAge, 
                                                              insurancePeriod, insuredAmount);
         if (validationError != null) {
             // 如果验证失败，将错误信息放入结果并返回
@@ -45,8 +59,8 @@ public class PremiumCalculatorService {
         }
         
         // 获取料率
-        // 根据条件从数据库获取对应的料率信息
-        PremiumRate rate = premiumRateDAO.getRateByConditions(productId, gender, entryAge, insurancePeriod);
+        // 根据条件从内存料率表获取对应的料率信息
+        PremiumRate rate = rateTable.getRate(productId, gender, entryAge, insurancePeriod);
         if (rate == null) {
             // 如果未找到对应的料率，将错误信息放入结果并返回
             result.put("error", "指定条件の料率が見つかりません");
@@ -92,8 +106,8 @@ public class PremiumCalculatorService {
         
         // 验证输入参数
         // 验证计算参数是否符合要求
-        String validationError = validateCalculationParameters(productId, gender, entryAge, 
-                                                             insurancePeriod, insuredAmount);
+        String validationError = validateCalculationParameters(PremiumRateCache.getTable(), productId, gender, 
+                                                             entryAge, insurancePeriod, insuredAmount);
         if (validationError != null) {
             // 如果验证失败，将错误信息放入结果并返回
             result.put("error", validationError);
@@ -146,6 +160,7 @@ public class PremiumCalculatorService {
     /**
      * 验证计算参数
      * 验证保险料计算所需的各个参数是否符合要求
+     * @param rateTable 料率表快照，用于检查有效年龄范围和期间范围
      * @param productId 商品ID
      * @param gender 性别
      * @param entryAge 加入年龄
@@ -153,8 +168,8 @@ public class PremiumCalculatorService {
      * @param insuredAmount 保险金额
      * @return String 验证结果，null表示验证通过，其他值表示错误信息
      */
-    private String validateCalculationParameters(int productId, String gender, int entryAge, 
-                                                int insurancePeriod, double insuredAmount) {
+    private String validateCalculationParameters(PremiumRateTable rateTable, int productId, String gender, 
+                                                int entryAge, int insurancePeriod, double insuredAmount) {
         // 验证商品ID是否有效
         if (productId <= 0) {
             return "商品IDが無効です";
@@ -181,16 +196,18 @@ public class PremiumCalculatorService {
         }
         
         // 检查年龄和期间范围
-        // 获取商品的有效年龄范围并验证
-        int[] validAgeRange = premiumRateDAO.getValidAgeRange(productId);
-        if (entryAge < validAgeRange[0] || entryAge > validAgeRange[1]) {
-            return "加入年齢が有効範囲外です (" + validAgeRange[0] + "-" + validAgeRange[1] + "歳)";
+        // 获取商品的有效年龄范围并验证（范围在料率表加载时已预先计算）
+        int minAge = rateTable.getMinAge(productId);
+        int maxAge = rateTable.getMaxAge(productId);
+        if (entryAge < minAge || entryAge > maxAge) {
+            return "加入年齢が有効範囲外です (" + minAge + "-" + maxAge + "歳)";
         }
         
         // 获取商品的有效期间范围并验证
-        int[] validPeriodRange = premiumRateDAO.getValidPeriodRange(productId);
-        if (insurancePeriod < validPeriodRange[0] || insurancePeriod > validPeriodRange[1]) {
-            return "保険期間が有効範囲外です (" + validPeriodRange[0] + "-" + validPeriodRange[1] + "年)";
+        int minPeriod = rateTable.getMinPeriod(productId);
+        int maxPeriod = rateTable.getMaxPeriod(productId);
+        if (insurancePeriod < minPeriod || insurancePeriod > maxPeriod) {
+            return "保険期間が有効範囲外です (" + minPeriod + "-" + maxPeriod + "年)";
         }
         
         // 所有验证通过，返回null
@@ -259,13 +276,76 @@ public class PremiumCalculatorService {
         result.put("rateTable", rateTable);
         result.put("productName", rates.get(0).getProductName());
         result.put("productCode", rates.get(0).getProductCode());
-        result.put("validAgeRange", premiumRateDAO.getValidAgeRange(productId));
-        result.put("validPeriodRange", premiumRateDAO.getValidPeriodRange(productId));
+        PremiumRateTable currentTable = PremiumRateCache.getTable();
+        result.put("validAgeRange", currentTable.getValidAgeRange(productId));
+        result.put("validPeriodRange", currentTable.getValidPeriodRange(productId));
         
         // 返回结果
         return result;
     }
     
+    /**
+     * 分页获取料率列表
+     * @param productId 商品ID过滤条件（0表示不过滤）
+     * @param validOnly 是否只获取当前有效的料率
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param size 页大小
+     * @return KeysetPage<PremiumRate> 当前页的料率和下一页的游标
+     */
+    public KeysetPage<PremiumRate> getPremiumRatePage(int productId, boolean validOnly, PageCursor cursor, int size) {
+        // 调用DAO层方法分页获取料率列表
+        return premiumRateDAO.getPremiumRatePage(productId, validOnly, cursor, size);
+    }
+    
+    /**
+     * 获取符合过滤条件的料率总数
+     * @param productId 商品ID过滤条件（0表示不过滤）
+     * @param validOnly 是否只统计当前有效的料率
+     * @return long 料率总数，查询失败时返回-1
+     */
+    public long countPremiumRates(int productId, boolean validOnly) {
+        // 调用DAO层方法获取料率总数（带缓存）
+        return premiumRateDAO.countPremiumRates(productId, validOnly);
+    }
+    
+    /**
+     * 并行计算多个报价
+     * 将报价按QUOTE_CHUNK_SIZE分块后提交到共享的Fork/Join线程池，
+     * 返回的任务列表与分块顺序一致，调用方按顺序取结果即可保持输入顺序
+     * @param quotes 报价条件列表
+     * @return List<ForkJoinTask<List<Map<String, Object>>>> 各分块的计算任务
+     */
+    public List<ForkJoinTask<List<Map<String, Object>>>> submitQuotes(List<QuoteRequest> quotes) {
+        List<ForkJoinTask<List<Map<String, Object>>>> tasks = new ArrayList<>();
+        for (int from = 0; from < quotes.size(); from += QUOTE_CHUNK_SIZE) {
+            List<QuoteRequest> chunk = quotes.subList(from, Math.min(from + QUOTE_CHUNK_SIZE, quotes.size()));
+            tasks.add(QUOTE_POOL.submit(() -> calculateQuotes(chunk)));
+        }
+        return tasks;
+    }
+    
+    /**
+     * 顺序计算一组报价
+     * 单个报价出现异常时只记录该报价的错误，不影响其他报价
+     * @param quotes 报价条件列表
+     * @return List<Map<String, Object>> 与输入顺序一致的计算结果
+     */
+    private List<Map<String, Object>> calculateQuotes(List<QuoteRequest> quotes) {
+        List<Map<String, Object>> results = new ArrayList<>(quotes.size());
+        for (QuoteRequest quote : quotes) {
+            Map<String, Object> result;
+            try {
+                result = calculatePremium(quote.getProductId(), quote.getGender(), quote.getEntryAge(),
+                                          quote.getInsurancePeriod(), quote.getInsuredAmount());
+            } catch (RuntimeException e) {
+                result = new HashMap<>();
+                result.put("error", "保険料計算中にエラーが発生しました: " + e.getMessage());
+            }
+            results.add(result);
+        }
+        return results;
+    }
+    
     /**
      * 批量计算保费
      * 根据商品ID、性别、多个年龄和期间组合批量计算保费
@@ -283,19 +363,35 @@ public class PremiumCalculatorService {
         // 创建批量计算结果映射，结构为：性别->年龄->期间->计算结果
         Map<String, Map<Integer, Map<Integer, Object>>> calculationResults = new HashMap<>();
         
-        // 遍历年龄和期间的组合，进行批量计算
+        // 展开年龄和期间的组合，并行计算
+        List<QuoteRequest> quotes = new ArrayList<>(ages.length * periods.length);
         for (int age : ages) {
             for (int period : periods) {
-                // 调用单次计算方法计算保费
-                var calculation = calculatePremium(productId, gender, age, period, insuredAmount);
-                
-                // 使用computeIfAbsent方法构建三层嵌套结构存储计算结果
-                calculationResults
-                    .computeIfAbsent(gender, k -> new HashMap<>())
-                    .computeIfAbsent(age, k -> new HashMap<>())
-                    .put(period, calculation);
+                quotes.add(new QuoteRequest(productId, gender, age, period, insuredAmount));
             }
         }
+        List<Map<String, Object>> calculations = new ArrayList<>(quotes.size());
+        try {
+            for (ForkJoinTask<List<Map<String, Object>>> task : submitQuotes(quotes)) {
+                calculations.addAll(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.put("error", "保険料一括計算が中断されました");
+            return result;
+        } catch (ExecutionException e) {
+            result.put("error", "保険料一括計算中にエラーが発生しました: " + e.getCause().getMessage());
+            return result;
+        }
+        
+        // 按输入顺序构建三层嵌套结构存储计算结果
+        for (int i = 0; i < quotes.size(); i++) {
+            QuoteRequest quote = quotes.get(i);
+            calculationResults
+                .computeIfAbsent(gender, k -> new HashMap<>())
+                .computeIfAbsent(quote.getEntryAge(), k -> new HashMap<>())
+                .put(quote.getInsurancePeriod(), calculations.get(i));
+        }
         
         // 构建结果
         result.put("success", true);
@@ -305,4 +401,40 @@ public class PremiumCalculatorService {
         // 返回批量计算结果
         return result;
     }
+    
+    /**
+     * 报价条件
+     * 批量计算时单个报价的输入参数
+     */
+    public static class QuoteRequest {
+        // 商品ID
+        private final int productId;
+        // 性别 (M/F)
+        private final String gender;
+        // 加入年龄
+        private final int entryAge;
+        // 保险期间
+        private final int insurancePeriod;
+        // 保险金额
+        private final double insuredAmount;
+        
+        public QuoteRequest(int productId, String gender, int entryAge, int insurancePeriod, double insuredAmount) {
+            this.productId = productId;
+            this.gender = gender;
+            this.entryAge = entryAge;
+            this.insurancePeriod = insurancePeriod;
+            this.insuredAmount = insuredAmount;
+        }
+        
+        // 获取商品ID
+        public int getProductId() { return productId; }
+        // 获取性别
+        public String getGender() { return gender; }
+        // 获取加入年龄
+        public int getEntryAge() { return entryAge; }
+        // 获取保险期间
+        public int getInsurancePeriod() { return insurancePeriod; }
+        // 获取保险金额
+        public double getInsuredAmount() { return insuredAmount; }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.insurance.service;
+
+import com.insurance.dao.PremiumRateDAO;
+import com.insurance.model.PremiumRate;
+import com.insurance.util.LogUtil;
+import java.sql.SQLException;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 保险料率缓存
+ * 持有当前有效料率的内存快照（PremiumRateTable），保险料计算时不再访问数据库。
+ * 料率变更时（PremiumUpdateBatch执行后、日期变更后）整体重建快照并原子替换，
+ * 读取方只读取volatile引用，不需要加锁。
+ *
+ * 快照过期时只有一个请求线程重建，其他线程继续使用过期的快照，不等待重建。
+ * 加载失败或没有任何有效料率时保留之前的快照，稍后重试（启动后还没有料率时例外，需要等待加载）。
+ */
+public class PremiumRateCache {
+
+    // 加载失败或没有任何有效料率时的重试间隔（毫秒）
+    private static final long EMPTY_RETRY_INTERVAL_MS = 60 * 1000;
+
+    // 料率数据访问对象，仅在重建快照时使用
+    private static final PremiumRateDAO premiumRateDAO = new PremiumRateDAO();
+    // 快照版本号生成器
+    private static final AtomicLong versionSequence = new AtomicLong();
+    // 当前快照
+    private static volatile PremiumRateTable current = PremiumRateTable.EMPTY;
+    // 当前快照的过期时间（毫秒）：料率有效性以日期判断，所以快照在次日0时过期
+    private static volatile long expiresAt = 0;
+    // 是否有请求线程正在重建过期的快照
+    private static final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private PremiumRateCache() {}
+
+    /**
+     * 获取当前料率表快照
+     * 快照过期时（首次访问、日期变更、上次加载失败）重建。
+     * 已有料率时只有一个线程重建，其他线程直接返回过期的快照
+     * @return PremiumRateTable 当前料率表快照
+     */
+    public static PremiumRateTable getTable() {
+        if (System.currentTimeMillis() >= expiresAt) {
+            if (current.getRateCount() == 0) {
+                // 还没有可用的料率：等待加载（多个线程同时到达时只加载一次）
+                reloadIfExpired();
+            } else if (refreshing.compareAndSet(false, true)) {
+                try {
+                    reloadIfExpired();
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 重新加载料率表
+     * 从数据库读取全部有效料率，构建新快照后原子替换当前快照。
+     * 加载失败时不替换当前快照；没有任何有效料率时保留之前的快照
+     * @return PremiumRateTable 新的料率表快照（保留时为当前快照）
+     * @throws SQLException 加载失败时
+     */
+    public static synchronized PremiumRateTable reload() throws SQLException {
+        long start = System.currentTimeMillis();
+        List<PremiumRate> rates;
+        try {
+            rates = premiumRateDAO.getAllValidRates();
+        } catch (SQLException e) {
+            expiresAt = start + EMPTY_RETRY_INTERVAL_MS;
+            throw e;
+        }
+        if (rates.isEmpty() && current.getRateCount() > 0) {
+            expiresAt = start + EMPTY_RETRY_INTERVAL_MS;
+            LogUtil.warn("有効な料率が0件のため、現在の料率テーブルを継続使用します - バージョン: " +
+                         current.getVersion() + ", 料率数: " + current.getRateCount());
+            return current;
+        }
+        PremiumRateTable table = new PremiumRateTable(versionSequence.incrementAndGet(), rates);
+
+        current = table;
+        expiresAt = table.getRateCount() > 0 ? nextMidnight(start) : start + EMPTY_RETRY_INTERVAL_MS;
+
+        LogUtil.info("料率テーブルを再読み込みしました - バージョン: " + table.getVersion() +
+                     ", 料率数: " + table.getRateCount() +
+                     ", 処理時間: " + (System.currentTimeMillis() - start) + "ms");
+        return table;
+    }
+
+    /**
+     * 快照过期时重新加载
+     * 多个线程同时发现过期时只有一个线程执行加载；加载失败时继续使用当前快照
+     */
+    private static synchronized void reloadIfExpired() {
+        if (System.currentTimeMillis() >= expiresAt) {
+            try {
+                reload();
+            } catch (SQLException e) {
+                LogUtil.error("料率テーブルの読み込みに失敗しました。現在の料率テーブルを継続使用します - バージョン: " +
+                              current.getVersion(), e);
+            }
+        }
+    }
+
+    /**
+     * 计算下一个0时的时间
+     * @param now 当前时间（毫秒）
+     * @return 下一个0时的时间（毫秒）
+     */
+    private static long nextMidnight(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+}
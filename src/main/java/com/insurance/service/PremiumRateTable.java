@@ -0,0 +1,267 @@
+package com.insurance.service;
+
+import com.insurance.model.PremiumRate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 保险料率表快照
+ * 将某一时点的全部有效料率按 商品 → 性别 → 加入年龄 → 保险期间 展开为数组，
+ * 查找时只做下标计算，不访问数据库。快照创建后不可变，可被多个线程同时读取。
+ */
+public final class PremiumRateTable {
+
+    // 使用稠密数组按商品ID索引的上限，超过时改用HashMap
+    private static final int MAX_DENSE_PRODUCT_ID = 4096;
+
+    // 空的料率表，用于初次加载前或加载失败时
+    static final PremiumRateTable EMPTY = new PremiumRateTable(0, Collections.<PremiumRate>emptyList());
+
+    // 快照版本号，每次重新加载递增
+    private final long version;
+    // 快照创建时间（毫秒）
+    private final long loadedAt;
+    // 快照中的料率行数
+    private final int rateCount;
+    // 按商品ID索引的料率（稠密数组）
+    private final ProductRates[] denseProducts;
+    // 按商品ID索引的料率（商品ID过大时使用）
+    private final Map<Integer, ProductRates> sparseProducts;
+
+    /**
+     * 构建料率表快照
+     * 同一条件存在多条有效料率时，采用适用开始日最新的一条（与PremiumRateDAO.getRateByConditions一致）
+     * @param version 快照版本号
+     * @param rates 当前有效的料率列表
+     */
+    PremiumRateTable(long version, List<PremiumRate> rates) {
+        this.version = version;
+        this.loadedAt = System.currentTimeMillis();
+
+        // 按商品分组
+        Map<Integer, ProductRates.Builder> builders = new HashMap<>();
+        int maxProductId = 0;
+        for (PremiumRate rate : rates) {
+            if (genderIndex(rate.getGender()) < 0) {
+                continue;
+            }
+            builders.computeIfAbsent(rate.getProductId(), k -> new ProductRates.Builder()).add(rate);
+            maxProductId = Math.max(maxProductId, rate.getProductId());
+        }
+
+        // 展开为数组
+        int count = 0;
+        Map<Integer, ProductRates> products = new HashMap<>();
+        for (Map.Entry<Integer, ProductRates.Builder> entry : builders.entrySet()) {
+            ProductRates productRates = entry.getValue().build();
+            products.put(entry.getKey(), productRates);
+            count += productRates.rateCount;
+        }
+        this.rateCount = count;
+
+        if (maxProductId <= MAX_DENSE_PRODUCT_ID) {
+            this.denseProducts = new ProductRates[maxProductId + 1];
+            for (Map.Entry<Integer, ProductRates> entry : products.entrySet()) {
+                if (entry.getKey() >= 0) {
+                    denseProducts[entry.getKey()] = entry.getValue();
+                }
+            }
+            this.sparseProducts = null;
+        } else {
+            this.denseProducts = null;
+            this.sparseProducts = products;
+        }
+    }
+
+    /**
+     * 获取指定条件的料率
+     * @param productId 商品ID
+     * @param gender 性别 (M/F)
+     * @param entryAge 加入年龄
+     * @param insurancePeriod 保险期间
+     * @return 符合条件的有效料率，如果未找到返回null
+     */
+    public PremiumRate getRate(int productId, String gender, int entryAge, int insurancePeriod) {
+        ProductRates productRates = product(productId);
+        int g = genderIndex(gender);
+        if (productRates == null || g < 0) {
+            return null;
+        }
+        return productRates.get(g, entryAge, insurancePeriod);
+    }
+
+    /**
+     * 获取商品的最小有效加入年龄
+     * @param productId 商品ID
+     * @return 最小年龄，商品无有效料率时返回0
+     */
+    public int getMinAge(int productId) {
+        ProductRates productRates = product(productId);
+        return productRates != null ? productRates.minAge : 0;
+    }
+
+    /**
+     * 获取商品的最大有效加入年龄
+     * @param productId 商品ID
+     * @return 最大年龄，商品无有效料率时返回0
+     */
+    public int getMaxAge(int productId) {
+        ProductRates productRates = product(productId);
+        return productRates != null ? productRates.maxAge : 0;
+    }
+
+    /**
+     * 获取商品的最短有效保险期间
+     * @param productId 商品ID
+     * @return 最短期间，商品无有效料率时返回0
+     */
+    public int getMinPeriod(int productId) {
+        ProductRates productRates = product(productId);
+        return productRates != null ? productRates.minPeriod : 0;
+    }
+
+    /**
+     * 获取商品的最长有效保险期间
+     * @param productId 商品ID
+     * @return 最长期间，商品无有效料率时返回0
+     */
+    public int getMaxPeriod(int productId) {
+        ProductRates productRates = product(productId);
+        return productRates != null ? productRates.maxPeriod : 0;
+    }
+
+    /**
+     * 获取商品的有效年龄范围
+     * @param productId 商品ID
+     * @return 包含最小年龄和最大年龄的数组
+     */
+    public int[] getValidAgeRange(int productId) {
+        return new int[]{getMinAge(productId), getMaxAge(productId)};
+    }
+
+    /**
+     * 获取商品的有效保险期间范围
+     * @param productId 商品ID
+     * @return 包含最短保险期间和最长保险期间的数组
+     */
+    public int[] getValidPeriodRange(int productId) {
+        return new int[]{getMinPeriod(productId), getMaxPeriod(productId)};
+    }
+
+    // 获取快照版本号
+    public long getVersion() { return version; }
+    // 获取快照创建时间（毫秒）
+    public long getLoadedAt() { return loadedAt; }
+    // 获取快照中的料率行数
+    public int getRateCount() { return rateCount; }
+
+    /**
+     * 按商品ID获取料率
+     * @param productId 商品ID
+     * @return 商品料率，不存在时返回null
+     */
+    private ProductRates product(int productId) {
+        if (denseProducts != null) {
+            return productId >= 0 && productId < denseProducts.length ? denseProducts[productId] : null;
+        }
+        return sparseProducts.get(productId);
+    }
+
+    /**
+     * 将性别转换为数组下标
+     * @param gender 性别 (M/F)
+     * @return M=0, F=1, 其他=-1
+     */
+    private static int genderIndex(String gender) {
+        if ("M".equals(gender)) {
+            return 0;
+        }
+        if ("F".equals(gender)) {
+            return 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 单个商品的料率
+     * 料率以 [性别][加入年龄 - 最小年龄][保险期间 - 最短期间] 的顺序存放在一维数组中
+     */
+    private static final class ProductRates {
+        private final int minAge;
+        private final int maxAge;
+        private final int minPeriod;
+        private final int maxPeriod;
+        private final int ageSpan;
+        private final int periodSpan;
+        private final PremiumRate[] cells;
+        private final int rateCount;
+
+        private ProductRates(int minAge, int maxAge, int minPeriod, int maxPeriod, PremiumRate[] cells, int rateCount) {
+            this.minAge = minAge;
+            this.maxAge = maxAge;
+            this.minPeriod = minPeriod;
+            this.maxPeriod = maxPeriod;
+            this.ageSpan = maxAge - minAge + 1;
+            this.periodSpan = maxPeriod - minPeriod + 1;
+            this.cells = cells;
+            this.rateCount = rateCount;
+        }
+
+        private PremiumRate get(int genderIndex, int entryAge, int insurancePeriod) {
+            int a = entryAge - minAge;
+            int p = insurancePeriod - minPeriod;
+            if (a < 0 || a >= ageSpan || p < 0 || p >= periodSpan) {
+                return null;
+            }
+            return cells[(genderIndex * ageSpan + a) * periodSpan + p];
+        }
+
+        /**
+         * 商品料率构建器
+         */
+        private static final class Builder {
+            private final List<PremiumRate> rates = new ArrayList<>();
+            private int minAge = Integer.MAX_VALUE;
+            private int maxAge = Integer.MIN_VALUE;
+            private int minPeriod = Integer.MAX_VALUE;
+            private int maxPeriod = Integer.MIN_VALUE;
+
+            private void add(PremiumRate rate) {
+                rates.add(rate);
+                minAge = Math.min(minAge, rate.getEntryAge());
+                maxAge = Math.max(maxAge, rate.getEntryAge());
+                minPeriod = Math.min(minPeriod, rate.getInsurancePeriod());
+                maxPeriod = Math.max(maxPeriod, rate.getInsurancePeriod());
+            }
+
+            private ProductRates build() {
+                int ageSpan = maxAge - minAge + 1;
+                int periodSpan = maxPeriod - minPeriod + 1;
+                PremiumRate[] cells = new PremiumRate[2 * ageSpan * periodSpan];
+                int count = 0;
+                for (PremiumRate rate : rates) {
+                    int index = (genderIndex(rate.getGender()) * ageSpan + rate.getEntryAge() - minAge) * periodSpan
+                              + rate.getInsurancePeriod() - minPeriod;
+                    PremiumRate existing = cells[index];
+                    if (existing == null) {
+                        count++;
+                        cells[index] = rate;
+                    } else if (isNewer(rate, existing)) {
+                        cells[index] = rate;
+                    }
+                }
+                return new ProductRates(minAge, maxAge, minPeriod, maxPeriod, cells, count);
+            }
+
+            private static boolean isNewer(PremiumRate candidate, PremiumRate existing) {
+                if (candidate.getValidFrom() == null) {
+                    return false;
+                }
+                return existing.getValidFrom() == null || candidate.getValidFrom().after(existing.getValidFrom());
+            }
+        }
+    }
+}
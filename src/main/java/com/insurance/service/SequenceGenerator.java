@@ -0,0 +1,269 @@
+package com.insurance.service;
+
+import com.insurance.dao.SequenceDAO;
+import com.insurance.monitor.MetricsRegistry;
+import com.insurance.util.LogUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 编号生成器
+ * 请求编号、契约编号、顾客编号等业务编号按序列名分别编号。
+ *
+ * 采用hi/lo方式：从number_sequences表一次预约一整块编号（hi），块内的编号在内存中
+ * 用原子计数器分配（lo），块用完时才访问数据库预约下一块。各服务器预约的块互不重叠，
+ * 所以多台服务器同时编号也不会重复；服务器重启时未用完的编号作废，编号会有空缺。
+ *
+ * 编号的格式为：前缀 + 日期部分 + 补零的序号。指定了日期格式的序列按日期部分
+ * 分别计数（每个日期的行单独保存），日期变更后从1重新开始。
+ * 配置从类路径上的/config/sequence.properties读取，同名系统属性优先。
+ */
+public final class SequenceGenerator {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/sequence.properties";
+
+    // 资料请求编号的序列名
+    public static final String DOCUMENT_REQUEST = "document_request";
+    // 契约编号的序列名
+    public static final String CONTRACT = "contract";
+    // 顾客编号的序列名
+    public static final String CUSTOMER = "customer";
+
+    // 编号配置
+    private static final Properties config = new Properties();
+    // 编号序列数据访问对象
+    private static final SequenceDAO sequenceDAO = new SequenceDAO();
+    // 序列名 → 序列
+    private static final Map<String, Sequence> sequences = new ConcurrentHashMap<>();
+
+    static {
+        loadConfig();
+    }
+
+    private SequenceGenerator() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 一次预约的编号数（各序列可用sequence.<序列名>.blockSize单独指定）
+        config.setProperty("sequence.blockSize", "50");
+        // 序号的最小位数（不足时补零）
+        config.setProperty("sequence.digits", "4");
+
+        // 资料请求编号：REQ0001
+        config.setProperty("sequence.document_request.prefix", "REQ");
+        // 契约编号：CONTRACT0001
+        config.setProperty("sequence.contract.prefix", "CONTRACT");
+        // 顾客编号：CUST0001
+        config.setProperty("sequence.customer.prefix", "CUST");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = SequenceGenerator.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load sequence config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * 序列单独的配置（sequence.<序列名>.<项目>）优先于共通的配置（sequence.<项目>）
+     * @param name 序列名
+     * @param item 配置项目
+     * @param defaultValue 都没有配置时的值
+     * @return 配置值
+     */
+    private static String getConfig(String name, String item, String defaultValue) {
+        String common = System.getProperty("sequence." + item, config.getProperty("sequence." + item, defaultValue));
+        String key = "sequence." + name + "." + item;
+        return System.getProperty(key, config.getProperty(key, common)).trim();
+    }
+
+    /**
+     * 获取下一个格式化的编号
+     * @param name 序列名
+     * @return 编号（前缀 + 日期部分 + 补零的序号）
+     * @throws IllegalStateException 无法从数据库预约编号时
+     */
+    public static String nextNumber(String name) {
+        return nextNumber(name, () -> 1L);
+    }
+
+    /**
+     * 获取下一个格式化的编号
+     * 序列第一次使用时以initialValue的值开始（用于从已有编号继续编号）
+     * @param name 序列名
+     * @param initialValue 序列的初始值（只在数据库中还没有该序列时调用）
+     * @return 编号（前缀 + 日期部分 + 补零的序号）
+     * @throws IllegalStateException 无法从数据库预约编号时
+     */
+    public static String nextNumber(String name, LongSupplier initialValue) {
+        Sequence sequence = sequence(name);
+        Allocation allocation = sequence.next(initialValue);
+        String period = allocation.period;
+
+        String digits = Long.toString(allocation.value);
+        StringBuilder number = new StringBuilder(sequence.prefix.length() + period.length() + sequence.digits);
+        number.append(sequence.prefix).append(period);
+        for (int i = digits.length(); i < sequence.digits; i++) {
+            number.append('0');
+        }
+        return number.append(digits).toString();
+    }
+
+    /**
+     * 获取下一个序号
+     * @param name 序列名
+     * @return 序号（不含前缀和日期部分）
+     * @throws IllegalStateException 无法从数据库预约编号时
+     */
+    public static long nextValue(String name) {
+        return sequence(name).next(() -> 1L).value;
+    }
+
+    /**
+     * 获取序列（第一次使用时按配置创建）
+     * @param name 序列名
+     * @return 序列
+     */
+    private static Sequence sequence(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("sequence name must not be empty");
+        }
+        return sequences.computeIfAbsent(name, Sequence::new);
+    }
+
+    /**
+     * 序列
+     * 持有当前使用中的编号块，块内的编号不加锁分配
+     */
+    private static final class Sequence {
+        // 序列名
+        private final String name;
+        // 前缀
+        private final String prefix;
+        // 日期部分的格式（不含日期时为null）
+        private final DateTimeFormatter dateFormat;
+        // 序号的最小位数
+        private final int digits;
+        // 一次预约的编号数
+        private final int blockSize;
+        // 预约的块数
+        private final MetricsRegistry.Counter reservations;
+        // 当前使用中的块（第一次使用前为null）
+        private volatile Block current;
+
+        Sequence(String name) {
+            this.name = name;
+            this.prefix = getConfig(name, "prefix", "");
+            String datePattern = getConfig(name, "datePattern", "");
+            this.dateFormat = datePattern.isEmpty() ? null : DateTimeFormatter.ofPattern(datePattern);
+            this.digits = Integer.parseInt(getConfig(name, "digits", "4"));
+            this.blockSize = Math.max(1, Integer.parseInt(getConfig(name, "blockSize", "50")));
+            this.reservations = MetricsRegistry.counter("insurance_sequence_block_reservations_total",
+                "Number blocks reserved from the database", "sequence", name);
+        }
+
+        /**
+         * 获取当前的日期部分
+         * @return 日期部分（不含日期时为空字符串）
+         */
+        String period() {
+            return dateFormat == null ? "" : LocalDate.now().format(dateFormat);
+        }
+
+        /**
+         * 分配下一个序号
+         * 当前块还有剩余时只递增计数器；块用完或日期部分变更时预约新的块。
+         * 换块时在锁内重新获取日期部分，日期变更前后的线程不会把块来回替换
+         * @param initialValue 序列的初始值
+         * @return 分配结果（日期部分和序号）
+         */
+        Allocation next(LongSupplier initialValue) {
+            while (true) {
+                Block block = current;
+                if (block != null && block.period.equals(period())) {
+                    long value = block.next.getAndIncrement();
+                    if (value < block.end) {
+                        return new Allocation(block.period, value);
+                    }
+                }
+                synchronized (this) {
+                    // 等待期间其他线程已经换了可用的块时直接使用新的块
+                    String period = period();
+                    Block latest = current;
+                    if (latest == null || !latest.period.equals(period) || latest.next.get() >= latest.end) {
+                        current = reserve(period, initialValue);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 从数据库预约新的块
+         * 按日期计数的序列以“序列名_日期部分”的行分别计数，从1开始
+         * @param period 日期部分
+         * @param initialValue 序列的初始值
+         * @return 新的块
+         */
+        private Block reserve(String period, LongSupplier initialValue) {
+            String sequenceName = period.isEmpty() ? name : name + "_" + period;
+            try {
+                long start = sequenceDAO.reserve(sequenceName, blockSize, period.isEmpty() ? initialValue : () -> 1L);
+                reservations.increment();
+                return new Block(period, start, start + blockSize);
+            } catch (SQLException | RuntimeException e) {
+                LogUtil.error("採番ブロックを予約できませんでした: " + sequenceName, e);
+                throw new IllegalStateException("Failed to reserve sequence block: " + sequenceName, e);
+            }
+        }
+    }
+
+    /**
+     * 分配结果
+     * 序号和分配它的块的日期部分
+     */
+    private static final class Allocation {
+        // 日期部分
+        private final String period;
+        // 序号
+        private final long value;
+
+        Allocation(String period, long value) {
+            this.period = period;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 编号块
+     * 从start到end - 1为止的编号
+     */
+    private static final class Block {
+        // 日期部分
+        private final String period;
+        // 下一个分配的编号（超过end时表示已用完）
+        private final AtomicLong next;
+        // 块的结束值（不含）
+        private final long end;
+
+        Block(String period, long start, long end) {
+            this.period = period;
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
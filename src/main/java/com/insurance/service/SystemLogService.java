@@ -1,12 +1,14 @@
 package com.insurance.service;
 
 import com.insurance.dao.SystemLogDAO;
+import com.insurance.dao.SystemLogWriter;
 import com.insurance.model.SystemLog;
 import java.util.Date;
 import java.util.List;
 
 /**
  * 系统日志业务逻辑服务类
+ * 日志记录通过SystemLogWriter异步写入，不在请求线程中访问数据库
  */
 public class SystemLogService {
     
@@ -24,13 +26,13 @@ public class SystemLogService {
      * @param level 日志级别 (INFO, WARN, ERROR等)
      * @param message 日志消息
      * @param module 模块名称
-     * @return boolean 记录成功返回true，否则返回false
+     * @return boolean 日志被接收返回true，缓冲区已满而被丢弃时返回false
      */
     public boolean logSystemEvent(String level, String message, String module) {
         // 创建系统日志对象
         SystemLog log = new SystemLog(level, message, module);
-        // 调用DAO层方法插入日志记录
-        return systemLogDAO.insertLog(log);
+        // 放入异步写入缓冲区
+        return SystemLogWriter.write(log);
     }
     
     /**
@@ -41,7 +43,7 @@ public class SystemLogService {
      * @param details 操作详情
      * @param ipAddress IP地址
      * @param userAgent 用户代理
-     * @return boolean 记录成功返回true，否则返回false
+     * @return boolean 日志被接收返回true，缓冲区已满而被丢弃时返回false
      */
     public boolean logUserAction(String username, String action, String details, 
                                String ipAddress, String userAgent) {
@@ -54,8 +56,8 @@ public class SystemLogService {
         log.setIpAddress(ipAddress);
         // 设置用户代理
         log.setUserAgent(userAgent);
-        // 调用DAO层方法插入日志记录
-        return systemLogDAO.insertLog(log);
+        // 放入异步写入缓冲区
+        return SystemLogWriter.write(log);
     }
     
     /**
@@ -64,15 +66,15 @@ public class SystemLogService {
      * @param message 错误消息
      * @param module 模块名称
      * @param username 用户名
-     * @return boolean 记录成功返回true，否则返回false
+     * @return boolean 日志被接收返回true，缓冲区已满而被丢弃时返回false
      */
     public boolean logError(String message, String module, String username) {
         // 创建错误日志对象，级别为ERROR
         SystemLog log = new SystemLog("ERROR", message, module);
         // 设置用户名
         log.setUsername(username);
-        // 调用DAO层方法插入日志记录
-        return systemLogDAO.insertLog(log);
+        // 放入异步写入缓冲区
+        return SystemLogWriter.write(log);
     }
     
     /**
@@ -0,0 +1,152 @@
+package com.insurance.util;
+
+// 导入Java集合接口，用于批量取出元素
+import java.util.Collection;
+// 导入Java原子长整型类，用于生产位置和消费位置
+import java.util.concurrent.atomic.AtomicLong;
+// 导入Java原子长整型数组类，用于各槽位的序号
+import java.util.concurrent.atomic.AtomicLongArray;
+// 导入Java原子引用数组类，用于保存元素
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形缓冲区
+ * 多个生产者线程和消费者线程通过CAS竞争位置，不使用锁。
+ * 每个槽位有一个序号，用来判断该槽位当前可写入还是可读取（Vyukov有界队列）。
+ * 缓冲区满时offer立即返回false，由调用方决定等待、丢弃还是转存。
+ * @param <E> 元素类型
+ */
+public final class BoundedRingBuffer<E> {
+
+    // 容量减1，用于以位运算计算槽位下标（容量为2的幂）
+    private final int mask;
+    // 元素数组
+    private final AtomicReferenceArray<E> elements;
+    // 各槽位的序号：等于生产位置时可写入，等于生产位置+1时可读取
+    private final AtomicLongArray sequences;
+    // 下一个生产位置
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个消费位置
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * 创建环形缓冲区
+     * @param requestedCapacity 容量，向上取整为2的幂
+     */
+    public BoundedRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2 || requestedCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid ring buffer capacity: " + requestedCapacity);
+        }
+        // 向上取整为2的幂
+        int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.elements = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        // 初始时每个槽位都可以被对应位置的生产者写入
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 放入元素
+     * @param element 元素（不能为null）
+     * @return 放入成功返回true，缓冲区已满返回false
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                // 槽位可写入，竞争该位置
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    // 发布元素：序号变为位置+1后消费者才能读取
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // 槽位上一轮的元素尚未被取出：缓冲区已满
+                return false;
+            } else {
+                // 其他生产者已占用该位置，重新读取生产位置
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 取出元素
+     * @return 取出的元素，缓冲区为空时返回null
+     */
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                // 槽位可读取，竞争该位置
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.set(index, null);
+                    // 释放槽位：序号变为下一轮的生产位置
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                // 槽位尚未发布元素：缓冲区为空
+                return null;
+            } else {
+                // 其他消费者已取出该位置，重新读取消费位置
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * 批量取出元素
+     * @param target 取出的元素追加到的集合
+     * @param maxElements 最多取出的元素数
+     * @return 取出的元素数
+     */
+    public int drainTo(Collection<? super E> target, int maxElements) {
+        int count = 0;
+        E element;
+        while (count < maxElements && (element = poll()) != null) {
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 获取当前元素数（并发修改时为近似值）
+     * @return 元素数
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    /**
+     * 是否为空
+     * @return 为空时返回true
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 获取容量
+     * @return 容量
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
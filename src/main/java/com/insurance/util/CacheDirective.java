@@ -0,0 +1,150 @@
+package com.insurance.util;
+
+// 导入Velocity内部上下文接口
+import org.apache.velocity.context.InternalContextAdapter;
+// 导入Velocity指令基类
+import org.apache.velocity.runtime.directive.Directive;
+// 导入Velocity指令类型常量
+import org.apache.velocity.runtime.directive.DirectiveConstants;
+// 导入Velocity语法树节点接口
+import org.apache.velocity.runtime.parser.node.Node;
+// 导入Java IO异常类
+import java.io.IOException;
+// 导入Java字符串写入器类，用于接收片段的渲染结果
+import java.io.StringWriter;
+// 导入Java字符写入器类
+import java.io.Writer;
+// 导入Java集合类
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 片段缓存指令
+ * 在VelocityUtil.initVelocityEngine中注册为用户指令，把块内的渲染结果保存到FragmentCache。
+ *
+ * 用法：#cache("名称" 生存秒数 "标签1,标签2" $键变量1 $键变量2 ...) ... #end
+ * 名称以外的参数可以省略，生存秒数省略时为300秒。标签也可以是字符串的列表。
+ * 缓存键由名称和键变量的值组成，渲染内容依赖的上下文变量都必须作为键变量传入。
+ */
+public class CacheDirective extends Directive {
+
+    // 生存秒数省略时的默认值
+    private static final long DEFAULT_TTL_SECONDS = 300;
+
+    /**
+     * 指令名称
+     * @return 模板中使用的指令名（#cache）
+     */
+    @Override
+    public String getName() {
+        return "cache";
+    }
+
+    /**
+     * 指令类型
+     * @return 块指令（需要#end）
+     */
+    @Override
+    public int getType() {
+        return DirectiveConstants.BLOCK;
+    }
+
+    /**
+     * 渲染指令
+     * 有有效的缓存片段时直接输出，否则渲染块内容、保存后输出
+     * @param context 内部上下文
+     * @param writer 输出目标
+     * @param node 指令节点（最后一个子节点是块内容）
+     * @return 总是返回true
+     * @throws IOException 写入失败时抛出
+     */
+    @Override
+    public boolean render(InternalContextAdapter context, Writer writer, Node node) throws IOException {
+        int argCount = node.jjtGetNumChildren() - 1;
+        Node block = node.jjtGetChild(argCount);
+        if (argCount < 1 || !FragmentCache.isEnabled()) {
+            // 缺少名称或缓存停用时只渲染块内容
+            return block.render(context, writer);
+        }
+
+        String key = buildKey(context, node, argCount);
+        String cached = FragmentCache.get(key);
+        if (cached != null) {
+            writer.write(cached);
+            return true;
+        }
+
+        long ttlSeconds = argCount >= 2 ? toLong(node.jjtGetChild(1).value(context)) : DEFAULT_TTL_SECONDS;
+        String[] tags = argCount >= 3 ? toTags(node.jjtGetChild(2).value(context)) : null;
+        // 渲染前取得标签版本号，渲染期间发生的失效不会被覆盖
+        long[] versions = tags != null ? FragmentCache.snapshot(tags) : null;
+
+        StringWriter buffer = new StringWriter(1024);
+        block.render(context, buffer);
+        String content = buffer.toString();
+        FragmentCache.put(key, content, ttlSeconds * 1000, tags, versions);
+        writer.write(content);
+        return true;
+    }
+
+    /**
+     * 生成缓存键
+     * 名称和第4个以后的参数值用分隔符连接（与FragmentCache.key()相同）
+     * @param context 内部上下文
+     * @param node 指令节点
+     * @param argCount 参数个数
+     * @return 缓存键
+     */
+    private static String buildKey(InternalContextAdapter context, Node node, int argCount) {
+        StringBuilder key = new StringBuilder(64);
+        key.append(node.jjtGetChild(0).value(context));
+        for (int i = 3; i < argCount; i++) {
+            key.append(FragmentCache.KEY_SEPARATOR).append(node.jjtGetChild(i).value(context));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 把生存秒数参数转换为长整数
+     * @param value 参数值
+     * @return 生存秒数（无法转换时为默认值）
+     */
+    private static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                // 使用默认值
+            }
+        }
+        return DEFAULT_TTL_SECONDS;
+    }
+
+    /**
+     * 把标签参数转换为数组
+     * 接受逗号分隔的字符串或字符串的列表
+     * @param value 参数值
+     * @return 标签数组
+     */
+    private static String[] toTags(Object value) {
+        List<String> tags = new ArrayList<>();
+        if (value instanceof Collection) {
+            for (Object tag : (Collection<?>) value) {
+                if (tag != null) {
+                    tags.add(tag.toString().trim());
+                }
+            }
+        } else if (value != null) {
+            for (String tag : value.toString().split(",")) {
+                if (!tag.trim().isEmpty()) {
+                    tags.add(tag.trim());
+                }
+            }
+        }
+        return tags.toArray(new String[0]);
+    }
+}
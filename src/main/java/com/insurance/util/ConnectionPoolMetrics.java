@@ -0,0 +1,122 @@
+package com.insurance.util;
+
+// 导入Java原子长整型数组类，用于无锁记录直方图各桶的计数
+import java.util.concurrent.atomic.AtomicLongArray;
+// 导入Java原子长整型类，用于记录最大借出耗时
+import java.util.concurrent.atomic.AtomicLong;
+// 导入Java长整型累加器类，用于高并发下的计数累加
+import java.util.concurrent.atomic.LongAdder;
+// 导入Java有序映射类，用于按桶顺序输出直方图
+import java.util.LinkedHashMap;
+// 导入Java映射接口
+import java.util.Map;
+
+/**
+ * 连接池指标类
+ * 记录从连接池借出连接的次数、失败次数和借出耗时分布（直方图）
+ * 由DatabaseUtil在每次借出连接时调用，供SystemMonitor输出
+ */
+public class ConnectionPoolMetrics {
+
+    // 直方图各桶的上限（毫秒），最后一个桶记录超过最大上限的借出
+    private static final long[] BUCKET_UPPER_BOUNDS_MS = {1, 2, 5, 10, 50, 100, 500, 1000};
+
+    // 各桶的借出次数（桶数 = 上限数 + 1）
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MS.length + 1);
+    // 成功借出次数
+    private final LongAdder borrowCount = new LongAdder();
+    // 借出失败次数（超时、数据库不可用等）
+    private final LongAdder borrowFailures = new LongAdder();
+    // 借出总耗时（纳秒）
+    private final LongAdder totalBorrowNanos = new LongAdder();
+    // 最大借出耗时（纳秒）
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+
+    /**
+     * 记录一次成功借出
+     * @param elapsedNanos 借出耗时（纳秒），包含在连接池中等待空闲连接的时间
+     */
+    public void recordBorrow(long elapsedNanos) {
+        // 累加成功次数和总耗时
+        borrowCount.increment();
+        totalBorrowNanos.add(elapsedNanos);
+        // 更新最大耗时
+        long currentMax;
+        while (elapsedNanos > (currentMax = maxBorrowNanos.get())) {
+            if (maxBorrowNanos.compareAndSet(currentMax, elapsedNanos)) {
+                break;
+            }
+        }
+        // 在对应的直方图桶中计数（毫秒向上取整，避免1.5ms落入"<=1ms"桶）
+        buckets.incrementAndGet(bucketIndex((elapsedNanos + 999999L) / 1000000L));
+    }
+
+    /**
+     * 记录一次借出失败
+     */
+    public void recordFailure() {
+        borrowFailures.increment();
+    }
+
+    /**
+     * 获取成功借出次数
+     * @return 成功借出次数
+     */
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    /**
+     * 获取借出失败次数
+     * @return 借出失败次数
+     */
+    public long getBorrowFailures() {
+        return borrowFailures.sum();
+    }
+
+    /**
+     * 获取平均借出耗时
+     * @return 平均借出耗时（毫秒）
+     */
+    public double getAverageBorrowMillis() {
+        long count = borrowCount.sum();
+        return count == 0 ? 0.0 : totalBorrowNanos.sum() / (double) count / 1000000.0;
+    }
+
+    /**
+     * 获取最大借出耗时
+     * @return 最大借出耗时（毫秒）
+     */
+    public double getMaxBorrowMillis() {
+        return maxBorrowNanos.get() / 1000000.0;
+    }
+
+    /**
+     * 获取借出耗时直方图
+     * 键为桶的标签（如"<=5ms"、">1000ms"），值为落入该桶的借出次数
+     * @return 借出耗时直方图
+     */
+    public Map<String, Long> getBorrowHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+            histogram.put("<=" + BUCKET_UPPER_BOUNDS_MS[i] + "ms", buckets.get(i));
+        }
+        histogram.put(">" + BUCKET_UPPER_BOUNDS_MS[BUCKET_UPPER_BOUNDS_MS.length - 1] + "ms",
+            buckets.get(BUCKET_UPPER_BOUNDS_MS.length));
+        return histogram;
+    }
+
+    /**
+     * 计算耗时所属的直方图桶
+     * @param elapsedMillis 耗时（毫秒）
+     * @return 桶索引
+     */
+    private static int bucketIndex(long elapsedMillis) {
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+            if (elapsedMillis <= BUCKET_UPPER_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_MS.length;
+    }
+}
@@ -1,64 +1,219 @@
 package com.insurance.util;
 
+// 导入DBCP基础数据源类，用于提供带连接池的数据源
+import org.apache.commons.dbcp.BasicDataSource;
+// 导入Java IO异常类，用于处理配置文件读取异常
+import java.io.IOException;
+// 导入Java输入流类，用于读取配置文件
+import java.io.InputStream;
 // 导入Java SQL连接接口，用于数据库连接操作
 import java.sql.Connection;
-// 导入Java SQL驱动管理器，用于获取数据库连接
-import java.sql.DriverManager;
 // 导入Java SQL异常类，用于处理数据库相关异常
 import java.sql.SQLException;
-// 导入Java属性类，用于设置数据库连接属性
+// 导入Java有序映射类，用于按顺序输出连接池统计信息
+import java.util.LinkedHashMap;
+// 导入Java映射接口
+import java.util.Map;
+// 导入Java属性类，用于保存连接池配置
 import java.util.Properties;
+// 导入数据源接口
+import javax.sql.DataSource;
 
 /**
  * 数据库连接工具类
  * 提供数据库连接的获取和关闭功能
+ * 连接由DBCP连接池管理，调用方关闭连接时连接会归还到连接池而不是真正断开
+ * 连接池配置从类路径上的/config/database.properties读取，同名系统属性优先
  */
 public class DatabaseUtil {
-    
-    // 数据库连接URL，指定连接到insurance_system数据库
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/insurance_system";
-    // 数据库用户名
-    private static final String DB_USER = "root";
-    // 数据库密码
-    private static final String DB_PASSWORD = "password";
-    
+
+    // 数据库配置文件路径
+    private static final String CONFIG_FILE = "/config/database.properties";
+    // MySQL JDBC驱动程序类名
+    private static final String DRIVER_CLASS = "com.mysql.jdbc.Driver";
+
+    // 连接池配置属性
+    private static final Properties config = new Properties();
+    // 连接池数据源
+    private static final BasicDataSource dataSource;
+    // 连接池指标，记录借出次数和借出耗时
+    private static final ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+    // SQL执行统计，记录每种SQL的执行耗时、行数和N+1模式（不计测时为null）
+    private static final SqlStatistics sqlStatistics;
+    // 计测时是否统计查询的行数
+    private static final boolean countRows;
+
     // 静态代码块，在类加载时执行一次
     static {
         try {
             // 加载MySQL JDBC驱动程序
-            Class.forName("com.mysql.jdbc.Driver");
+            Class.forName(DRIVER_CLASS);
         } catch (ClassNotFoundException e) {
             // 如果找不到驱动程序，抛出运行时异常
             throw new RuntimeException("MySQL JDBC Driver not found", e);
         }
+        // 加载连接池配置
+        loadConfig();
+        // 创建连接池数据源
+        dataSource = createDataSource();
+        // 创建SQL执行统计
+        sqlStatistics = getBooleanConfig("db.sql.instrument")
+            ? new SqlStatistics(getIntConfig("db.sql.slowQueryMillis"), getIntConfig("db.sql.repeatThreshold"),
+                                getIntConfig("db.sql.maxFingerprints"))
+            : null;
+        countRows = getBooleanConfig("db.sql.countRows");
     }
-    
+
     /**
-     * 获取数据库连接
-     * 建立并返回一个新的数据库连接
-     * @return Connection 数据库连接对象
-     * @throws SQLException 数据库访问错误时抛出
+     * 加载连接池配置
+     * 先设置默认配置，再用配置文件中的值覆盖
      */
-    public static Connection getConnection() throws SQLException {
-        // 创建属性对象，用于设置连接参数
-        Properties props = new Properties();
-        // 设置数据库用户名
-        props.setProperty("user", DB_USER);
-        // 设置数据库密码
-        props.setProperty("password", DB_PASSWORD);
+    private static void loadConfig() {
+        // 设置默认配置
+        setDefaultConfig();
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = DatabaseUtil.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            // 配置文件读取失败时输出错误信息，继续使用默认配置
+            System.err.println("Failed to load database config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 设置默认配置
+     * 当配置文件不存在时使用的数据库连接和连接池配置
+     */
+    private static void setDefaultConfig() {
+        // 数据库连接URL，指定连接到insurance_system数据库
+        config.setProperty("db.url", "jdbc:mysql://localhost:3306/insurance_system");
+        // 数据库用户名
+        config.setProperty("db.user", "root");
+        // 数据库密码
+        config.setProperty("db.password", "password");
+
+        // 启动时创建的连接数
+        config.setProperty("db.pool.initialSize", "5");
+        // 最大活动连接数
+        config.setProperty("db.pool.maxActive", "50");
+        // 最大空闲连接数
+        config.setProperty("db.pool.maxIdle", "20");
+        // 最小空闲连接数
+        config.setProperty("db.pool.minIdle", "5");
+        // 连接池耗尽时的最大等待时间（毫秒）
+        config.setProperty("db.pool.maxWait", "5000");
+
+        // 借出时验证连接是否可用
+        config.setProperty("db.pool.testOnBorrow", "true");
+        // 验证连接使用的SQL
+        config.setProperty("db.pool.validationQuery", "SELECT 1");
+        // 验证SQL的超时时间（秒）
+        config.setProperty("db.pool.validationQueryTimeout", "2");
+        // 空闲连接检查间隔（毫秒）
+        config.setProperty("db.pool.timeBetweenEvictionRunsMillis", "60000");
+        // 空闲连接被回收前的最短空闲时间（毫秒）
+        config.setProperty("db.pool.minEvictableIdleTimeMillis", "300000");
+
+        // 缓存预编译语句
+        config.setProperty("db.pool.poolPreparedStatements", "true");
+        // 每个连接最多缓存的预编译语句数
+        config.setProperty("db.pool.maxOpenPreparedStatements", "100");
+
+        // 泄漏检测：回收长时间未归还的连接
+        config.setProperty("db.pool.removeAbandoned", "true");
+        // 连接被视为泄漏的时间（秒）
+        config.setProperty("db.pool.removeAbandonedTimeout", "300");
+        // 记录泄漏连接的借出位置堆栈
+        config.setProperty("db.pool.logAbandoned", "true");
+
+        // 计测SQL执行（耗时、慢查询日志、N+1检测），每次执行都经过代理，默认关闭
+        config.setProperty("db.sql.instrument", "false");
+        // 计测时统计查询的行数（结果集的每次调用都经过代理，开销较大）
+        config.setProperty("db.sql.countRows", "false");
+        // 慢查询阈值（毫秒）
+        config.setProperty("db.sql.slowQueryMillis", "500");
+        // 一个请求中同一SQL执行多少次视为N+1
+        config.setProperty("db.sql.repeatThreshold", "10");
+        // 统计的SQL指纹数上限
+        config.setProperty("db.sql.maxFingerprints", "500");
+    }
+
+    /**
+     * 创建连接池数据源
+     * 根据配置创建并设置DBCP数据源
+     * @return BasicDataSource 连接池数据源
+     */
+    private static BasicDataSource createDataSource() {
+        BasicDataSource ds = new BasicDataSource();
+
+        // 设置连接信息
+        ds.setDriverClassName(DRIVER_CLASS);
+        ds.setUrl(getConfig("db.url"));
+        ds.setUsername(getConfig("db.user"));
+        ds.setPassword(getConfig("db.password"));
         // 设置不使用SSL连接
-        props.setProperty("useSSL", "false");
+        ds.addConnectionProperty("useSSL", "false");
         // 设置字符编码为UTF-8
-        props.setProperty("characterEncoding", "UTF-8");
+        ds.addConnectionProperty("characterEncoding", "UTF-8");
         // 设置使用Unicode编码
-        props.setProperty("useUnicode", "true");
+        ds.addConnectionProperty("useUnicode", "true");
         // 设置服务器时区为东京时区
-        props.setProperty("serverTimezone", "Asia/Tokyo");
-        
-        // 通过驱动管理器获取数据库连接并返回
-        return DriverManager.getConnection(DB_URL, props);
+        ds.addConnectionProperty("serverTimezone", "Asia/Tokyo");
+        // 将JDBC批量更新改写为多值语句，减少批处理的往返次数
+        ds.addConnectionProperty("rewriteBatchedStatements", "true");
+
+        // 设置连接池大小
+        ds.setInitialSize(getIntConfig("db.pool.initialSize"));
+        ds.setMaxActive(getIntConfig("db.pool.maxActive"));
+        ds.setMaxIdle(getIntConfig("db.pool.maxIdle"));
+        ds.setMinIdle(getIntConfig("db.pool.minIdle"));
+        ds.setMaxWait(getIntConfig("db.pool.maxWait"));
+
+        // 设置连接验证
+        ds.setTestOnBorrow(getBooleanConfig("db.pool.testOnBorrow"));
+        ds.setValidationQuery(getConfig("db.pool.validationQuery"));
+        ds.setValidationQueryTimeout(getIntConfig("db.pool.validationQueryTimeout"));
+        ds.setTestWhileIdle(true);
+        ds.setTimeBetweenEvictionRunsMillis(getIntConfig("db.pool.timeBetweenEvictionRunsMillis"));
+        ds.setMinEvictableIdleTimeMillis(getIntConfig("db.pool.minEvictableIdleTimeMillis"));
+
+        // 设置预编译语句缓存
+        ds.setPoolPreparedStatements(getBooleanConfig("db.pool.poolPreparedStatements"));
+        ds.setMaxOpenPreparedStatements(getIntConfig("db.pool.maxOpenPreparedStatements"));
+
+        // 设置泄漏检测
+        ds.setRemoveAbandoned(getBooleanConfig("db.pool.removeAbandoned"));
+        ds.setRemoveAbandonedTimeout(getIntConfig("db.pool.removeAbandonedTimeout"));
+        ds.setLogAbandoned(getBooleanConfig("db.pool.logAbandoned"));
+
+        return ds;
+    }
+
+    /**
+     * 获取数据库连接
+     * 从连接池借出一个连接，调用方关闭连接时连接归还到连接池
+     * @return Connection 数据库连接对象
+     * @throws SQLException 数据库访问错误或等待超时时抛出
+     */
+    public static Connection getConnection() throws SQLException {
+        // 记录借出开始时间
+        long start = System.nanoTime();
+        try {
+            // 从连接池借出连接
+            Connection conn = dataSource.getConnection();
+            // 记录借出耗时（包含等待空闲连接的时间）
+            metrics.recordBorrow(System.nanoTime() - start);
+            // 计测时返回包装后的连接，关闭时同样归还到连接池
+            return sqlStatistics != null ? JdbcProxies.wrap(conn, sqlStatistics, countRows) : conn;
+        } catch (SQLException e) {
+            // 记录借出失败
+            metrics.recordFailure();
+            throw e;
+        }
     }
-    
+
     /**
      * 关闭数据库连接
      * 安全地关闭数据库连接，避免资源泄露
@@ -68,7 +223,7 @@ public class DatabaseUtil {
         // 检查连接对象是否为null
         if (conn != null) {
             try {
-                // 尝试关闭数据库连接
+                // 尝试关闭数据库连接（归还到连接池）
                 conn.close();
             } catch (SQLException e) {
                 // 如果关闭连接时发生异常，输出错误信息到标准错误流
@@ -76,4 +231,110 @@ public class DatabaseUtil {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取连接池数据源
+     * @return DataSource 连接池数据源
+     */
+    public static DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * 获取连接池指标
+     * @return ConnectionPoolMetrics 连接池指标
+     */
+    public static ConnectionPoolMetrics getPoolMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 获取SQL执行统计
+     * @return SqlStatistics SQL执行统计（不计测时为null）
+     */
+    public static SqlStatistics getSqlStatistics() {
+        return sqlStatistics;
+    }
+
+    /**
+     * 开始跟踪当前线程处理的请求中执行的SQL（用于N+1检测）
+     * @param label 请求的标识（HTTP方法和路径），用于慢查询日志
+     */
+    public static void beginSqlTrace(String label) {
+        if (sqlStatistics != null) {
+            sqlStatistics.beginRequest(label);
+        }
+    }
+
+    /**
+     * 结束跟踪当前线程处理的请求中执行的SQL
+     * 同一SQL执行次数达到阈值时记录N+1警告
+     * @param label 请求的标识（路径和action），用于N+1警告
+     */
+    public static void endSqlTrace(String label) {
+        if (sqlStatistics != null) {
+            sqlStatistics.endRequest(label);
+        }
+    }
+
+    /**
+     * 获取连接池统计信息
+     * 包含活动连接数、空闲连接数、借出次数、借出耗时和借出耗时直方图
+     * @return Map<String, Object> 连接池统计信息
+     */
+    public static Map<String, Object> getPoolStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        // 连接池状态
+        stats.put("active", dataSource.getNumActive());
+        stats.put("idle", dataSource.getNumIdle());
+        stats.put("maxActive", dataSource.getMaxActive());
+        stats.put("minIdle", dataSource.getMinIdle());
+        stats.put("maxIdle", dataSource.getMaxIdle());
+        // 借出统计
+        stats.put("borrowCount", metrics.getBorrowCount());
+        stats.put("borrowFailures", metrics.getBorrowFailures());
+        stats.put("averageBorrowMillis", metrics.getAverageBorrowMillis());
+        stats.put("maxBorrowMillis", metrics.getMaxBorrowMillis());
+        stats.put("borrowHistogram", metrics.getBorrowHistogram());
+        return stats;
+    }
+
+    /**
+     * 关闭连接池
+     * 应用停止时调用，关闭所有空闲连接并拒绝新的借出
+     */
+    public static void shutdown() {
+        try {
+            dataSource.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to close connection pool: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取整数配置值
+     * @param key 配置键
+     * @return 整数配置值
+     */
+    private static int getIntConfig(String key) {
+        return Integer.parseInt(getConfig(key).trim());
+    }
+
+    /**
+     * 获取布尔配置值
+     * @param key 配置键
+     * @return 布尔配置值
+     */
+    private static boolean getBooleanConfig(String key) {
+        return Boolean.parseBoolean(getConfig(key).trim());
+    }
+}
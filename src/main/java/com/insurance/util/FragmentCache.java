@@ -0,0 +1,223 @@
+package com.insurance.util;
+
+// 导入Java集合类
+import java.util.LinkedHashMap;
+import java.util.Map;
+// 导入Java并发哈希表类，用于保存标签版本号
+import java.util.concurrent.ConcurrentHashMap;
+// 导入Java原子长整型类，用于标签版本号
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模板片段缓存
+ * 保存#cache指令渲染的HTML片段，按名称和指定的上下文变量区分。
+ * 每个片段有生存时间（TTL），条目数超过上限时淘汰最久未使用的片段。
+ *
+ * 标签失效：片段保存时记录所属标签的版本号，invalidateTag()只把标签版本号加一，
+ * 读取时版本号不一致的片段视为已失效。渲染开始前取得版本号，
+ * 所以渲染期间发生的失效不会被渲染结果覆盖。
+ *
+ * 缓存和标签版本号都在各JVM内，invalidateTag()只使本服务器的片段失效，
+ * 其他服务器上的片段到生存时间为止仍显示变更前的内容。
+ * 片段依赖的数据需要查询数据库时，控制器先用key()和get()确认片段是否已缓存，
+ * 已缓存时不查询（只在模板中跳过渲染的话，查询仍然每次执行）。
+ */
+public final class FragmentCache {
+
+    // 缓存键中各部分的分隔符
+    static final char KEY_SEPARATOR = '\u001f';
+    // 没有标签时使用的空数组
+    private static final String[] NO_TAGS = new String[0];
+
+    // 片段表（访问顺序，超过上限时淘汰最久未使用的片段）
+    private static final LinkedHashMap<String, CachedFragment> entries = new LinkedHashMap<String, CachedFragment>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedFragment> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    // 标签版本号
+    private static final ConcurrentHashMap<String, AtomicLong> tagVersions = new ConcurrentHashMap<>();
+
+    // 是否启用缓存
+    private static volatile boolean enabled = true;
+    // 最大条目数
+    private static volatile int maxEntries = 1000;
+    // 可缓存的片段最大字符数（超过时只渲染不缓存）
+    private static volatile int maxFragmentChars = 64 * 1024;
+
+    private FragmentCache() {}
+
+    /**
+     * 设置缓存参数
+     * 由VelocityUtil在初始化引擎时根据渲染配置调用
+     * @param cacheEnabled 是否启用缓存
+     * @param cacheMaxEntries 最大条目数
+     * @param cacheMaxFragmentChars 可缓存的片段最大字符数
+     */
+    public static void configure(boolean cacheEnabled, int cacheMaxEntries, int cacheMaxFragmentChars) {
+        enabled = cacheEnabled;
+        maxEntries = Math.max(cacheMaxEntries, 1);
+        maxFragmentChars = cacheMaxFragmentChars;
+        if (!cacheEnabled) {
+            clear();
+        }
+    }
+
+    /**
+     * 是否启用缓存
+     * @return 启用时返回true
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 生成缓存键
+     * 与#cache("名称" 生存秒数 "标签" 键1 键2 ...)生成的键相同，
+     * 控制器可以在查询数据之前确认片段是否已缓存
+     * @param name 片段名称
+     * @param keyParts 键变量的值（按模板中的顺序）
+     * @return 缓存键
+     */
+    public static String key(String name, Object... keyParts) {
+        StringBuilder key = new StringBuilder(64);
+        key.append(name);
+        for (Object part : keyParts) {
+            key.append(KEY_SEPARATOR).append(part);
+        }
+        return key.toString();
+    }
+
+    /**
+     * 获取片段
+     * @param key 缓存键
+     * @return 有效的片段，不存在、已过期或标签已失效时返回null
+     */
+    public static String get(String key) {
+        CachedFragment entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAt || !entry.isCurrent()) {
+            synchronized (entries) {
+                // 只删除同一个条目（可能已被其他线程替换）
+                entries.remove(key, entry);
+            }
+            return null;
+        }
+        return entry.content;
+    }
+
+    /**
+     * 取得标签的当前版本号
+     * 在渲染片段之前调用，结果传给put()
+     * @param tags 标签
+     * @return 各标签的版本号
+     */
+    public static long[] snapshot(String[] tags) {
+        long[] versions = new long[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            versions[i] = versionOf(tags[i]).get();
+        }
+        return versions;
+    }
+
+    /**
+     * 保存片段
+     * @param key 缓存键
+     * @param content 片段内容
+     * @param ttlMillis 生存时间（毫秒）
+     * @param tags 标签（没有标签时可以为null）
+     * @param versions 渲染前用snapshot()取得的标签版本号
+     */
+    public static void put(String key, String content, long ttlMillis, String[] tags, long[] versions) {
+        if (!enabled || ttlMillis <= 0 || content.length() > maxFragmentChars) {
+            return;
+        }
+        String[] entryTags = tags != null ? tags : NO_TAGS;
+        CachedFragment entry = new CachedFragment(content, System.currentTimeMillis() + ttlMillis,
+                                                    entryTags, versions != null ? versions : snapshot(entryTags));
+        // 渲染期间标签已失效时不保存
+        if (!entry.isCurrent()) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * 使标签下的全部片段失效
+     * 服务层在数据变更后调用
+     * @param tag 标签
+     */
+    public static void invalidateTag(String tag) {
+        versionOf(tag).incrementAndGet();
+    }
+
+    /**
+     * 删除全部片段
+     */
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * 当前条目数
+     * @return 条目数
+     */
+    public static int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 获取标签的版本号计数器
+     * @param tag 标签
+     * @return 版本号计数器
+     */
+    private static AtomicLong versionOf(String tag) {
+        return tagVersions.computeIfAbsent(tag, t -> new AtomicLong());
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class CachedFragment {
+        // 片段内容
+        private final String content;
+        // 过期时间（毫秒）
+        private final long expiresAt;
+        // 所属标签
+        private final String[] tags;
+        // 保存时的标签版本号
+        private final long[] versions;
+
+        private CachedFragment(String content, long expiresAt, String[] tags, long[] versions) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+            this.tags = tags;
+            this.versions = versions;
+        }
+
+        /**
+         * 所属标签是否都未失效
+         * @return 未失效时返回true
+         */
+        private boolean isCurrent() {
+            for (int i = 0; i < tags.length; i++) {
+                if (versionOf(tags[i]).get() != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.insurance.util;
+
+// 导入Java反射类，用于生成JDBC接口的动态代理
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+// 导入Java SQL接口
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * JDBC计测代理
+ * 用动态代理包装连接、语句和结果集，把每次语句执行的耗时、行数和错误记录到SqlStatistics。
+ * DAO代码不需要修改：DatabaseUtil.getConnection()返回包装后的连接，
+ * 从它创建的语句和结果集也都是包装后的对象。
+ *
+ * 预编译语句在准备时确定SQL指纹，执行时只计时和累加计数。
+ * 查询的行数在结果集的next()读取到行时累加；结果集的每次调用都经过反射，
+ * 所以只在指定了统计行数时包装结果集。
+ */
+final class JdbcProxies {
+
+    private JdbcProxies() {}
+
+    /**
+     * 包装连接
+     * @param connection 连接池借出的连接
+     * @param statistics SQL执行统计
+     * @param countRows 是否包装结果集统计查询的行数
+     * @return 包装后的连接
+     */
+    static Connection wrap(Connection connection, SqlStatistics statistics, boolean countRows) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, new ConnectionHandler(connection, statistics, countRows));
+    }
+
+    /**
+     * 调用被包装对象的方法
+     * 反射调用时抛出的异常还原为原来的异常
+     * @param target 被包装对象
+     * @param method 方法
+     * @param args 参数
+     * @return 返回值
+     * @throws Throwable 被包装对象抛出的异常
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 连接的代理处理
+     * 创建语句的方法返回包装后的语句
+     */
+    private static final class ConnectionHandler implements InvocationHandler {
+        // 被包装的连接
+        private final Connection connection;
+        // SQL执行统计
+        private final SqlStatistics statistics;
+        // 是否统计查询的行数
+        private final boolean countRows;
+
+        private ConnectionHandler(Connection connection, SqlStatistics statistics, boolean countRows) {
+            this.connection = connection;
+            this.statistics = statistics;
+            this.countRows = countRows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = JdbcProxies.invoke(connection, method, args);
+            String name = method.getName();
+            if ("prepareStatement".equals(name) || "prepareCall".equals(name)) {
+                // 预编译语句：准备时确定SQL指纹
+                Class<?> type = "prepareCall".equals(name) ? CallableStatement.class : PreparedStatement.class;
+                return wrapStatement(result, type, proxy, statistics.statsFor((String) args[0]));
+            }
+            if ("createStatement".equals(name)) {
+                // 普通语句：执行时按SQL确定指纹
+                return wrapStatement(result, Statement.class, proxy, null);
+            }
+            return result;
+        }
+
+        /**
+         * 包装语句
+         * @param statement 语句
+         * @param type 语句接口
+         * @param connectionProxy 包装后的连接
+         * @param stats 预编译语句的执行统计（普通语句为null）
+         * @return 包装后的语句
+         */
+        private Object wrapStatement(Object statement, Class<?> type, Object connectionProxy,
+                                     SqlStatistics.QueryStats stats) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                new StatementHandler((Statement) statement, statistics, connectionProxy, stats, countRows));
+        }
+    }
+
+    /**
+     * 语句的代理处理
+     * execute系列方法计时并记录，统计行数时返回的结果集包装后计数行数
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        // 被包装的语句
+        private final Statement statement;
+        // SQL执行统计
+        private final SqlStatistics statistics;
+        // 包装后的连接（getConnection()返回）
+        private final Object connectionProxy;
+        // 预编译语句的执行统计（普通语句为null）
+        private final SqlStatistics.QueryStats preparedStats;
+        // 是否统计查询的行数
+        private final boolean countRows;
+        // 普通语句批处理的执行统计（addBatch(String)时确定）
+        private SqlStatistics.QueryStats batchStats;
+        // 最近一次执行的执行统计（getResultSet()时使用）
+        private SqlStatistics.QueryStats lastStats;
+
+        private StatementHandler(Statement statement, SqlStatistics statistics, Object connectionProxy,
+                                 SqlStatistics.QueryStats preparedStats, boolean countRows) {
+            this.statement = statement;
+            this.statistics = statistics;
+            this.connectionProxy = connectionProxy;
+            this.preparedStats = preparedStats;
+            this.countRows = countRows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                if ("getConnection".equals(name)) {
+                    return connectionProxy;
+                }
+                if ("addBatch".equals(name) && args != null && batchStats == null) {
+                    batchStats = statistics.statsFor((String) args[0]);
+                }
+                Object result = JdbcProxies.invoke(statement, method, args);
+                if (countRows && "getResultSet".equals(name) && result != null && lastStats != null) {
+                    return wrapResultSet((ResultSet) result, proxy, lastStats);
+                }
+                return result;
+            }
+
+            SqlStatistics.QueryStats stats = statsFor(name, args);
+            lastStats = stats;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = JdbcProxies.invoke(statement, method, args);
+            } catch (Throwable e) {
+                statistics.recordExecution(stats, System.nanoTime() - start, 0, true);
+                throw e;
+            }
+            statistics.recordExecution(stats, System.nanoTime() - start, rowCount(result), false);
+            if (countRows && result instanceof ResultSet) {
+                return wrapResultSet((ResultSet) result, proxy, stats);
+            }
+            return result;
+        }
+
+        /**
+         * 确定本次执行的执行统计
+         * @param name 方法名
+         * @param args 参数
+         * @return 执行统计
+         */
+        private SqlStatistics.QueryStats statsFor(String name, Object[] args) {
+            if (args != null && args.length > 0 && args[0] instanceof String) {
+                // 普通语句的execute(sql)，或预编译语句上直接传SQL的调用
+                return statistics.statsFor((String) args[0]);
+            }
+            if (preparedStats != null) {
+                return preparedStats;
+            }
+            if (batchStats != null && name.endsWith("Batch")) {
+                SqlStatistics.QueryStats stats = batchStats;
+                batchStats = null;
+                return stats;
+            }
+            return statistics.statsFor(name);
+        }
+
+        /**
+         * 更新行数
+         * @param result execute系列方法的返回值
+         * @return 更新行数（不是更新时为0）
+         */
+        private static long rowCount(Object result) {
+            if (result instanceof Integer || result instanceof Long) {
+                return Math.max(((Number) result).longValue(), 0);
+            }
+            long rows = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    rows += Math.max(count, 0);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    rows += Math.max(count, 0);
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * 包装结果集
+         * @param resultSet 结果集
+         * @param statementProxy 包装后的语句
+         * @param stats 执行统计
+         * @return 包装后的结果集
+         */
+        private static ResultSet wrapResultSet(ResultSet resultSet, Object statementProxy,
+                                               SqlStatistics.QueryStats stats) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, new ResultSetHandler(resultSet, statementProxy, stats));
+        }
+    }
+
+    /**
+     * 结果集的代理处理
+     * next()读取到行时累加到执行统计（只读取第一行就关闭的结果集也能计数）
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+        // 被包装的结果集
+        private final ResultSet resultSet;
+        // 包装后的语句（getStatement()返回）
+        private final Object statementProxy;
+        // 执行统计
+        private final SqlStatistics.QueryStats stats;
+
+        private ResultSetHandler(ResultSet resultSet, Object statementProxy, SqlStatistics.QueryStats stats) {
+            this.resultSet = resultSet;
+            this.statementProxy = statementProxy;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getStatement".equals(method.getName())) {
+                return statementProxy;
+            }
+            Object result = JdbcProxies.invoke(resultSet, method, args);
+            if (Boolean.TRUE.equals(result) && "next".equals(method.getName())) {
+                stats.rows.increment();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package com.insurance.util;
+
+// 导入Java Bean内省相关类，用于查找模型类的getter方法
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+// 导入Java IO相关类
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+// 导入Java方法句柄类，getter解析一次后以方法句柄调用
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+// 导入Java字符集类
+import java.nio.charset.StandardCharsets;
+// 导入Java时间类，用于日期的ISO-8601格式化
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+// 导入Java集合类
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流式JSON输出类
+ * 将字符串、数值、Map、集合、数组和模型对象直接以UTF-8写入输出流，不在内存中拼接完整的JSON字符串。
+ * 输出先写入每个线程复用的字节缓冲区，缓冲区满时写入下层输出流（Servlet响应不设置Content-Length，
+ * 由容器以分块传输发送）。
+ * 模型对象按getter方法输出，每个类的getter只在首次使用时解析一次。
+ * 非线程安全，一个实例只能由一个线程使用。
+ */
+public final class JsonStreamWriter implements Closeable, Flushable {
+
+    // 输出缓冲区大小（字节）
+    private static final int BUFFER_SIZE = 8192;
+    // 最大嵌套深度（防止对象循环引用导致栈溢出）
+    private static final int MAX_DEPTH = 64;
+    // 十六进制字符，用于\\uXXXX转义
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    // 日期时间格式（ISO-8601，带时区偏移）
+    private static final DateTimeFormatter DATE_TIME_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneId.systemDefault());
+
+    // 每个线程复用的输出缓冲区（使用中的缓冲区从这里取出，关闭时放回）
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    // 各类的getter列表（每个类只解析一次）
+    private static final ClassValue<Accessor[]> ACCESSORS = new ClassValue<Accessor[]>() {
+        @Override
+        protected Accessor[] computeValue(Class<?> type) {
+            return resolveAccessors(type);
+        }
+    };
+
+    // 下层输出流
+    private final OutputStream out;
+    // 输出缓冲区
+    private byte[] buffer;
+    // 缓冲区中已写入的字节数
+    private int position;
+    // 各嵌套层是否已经写入过元素（用于决定是否输出逗号）
+    private boolean[] hasElements = new boolean[16];
+    // 当前嵌套深度
+    private int depth;
+    // 是否刚写完属性名（下一个值前不输出逗号）
+    private boolean afterName;
+
+    /**
+     * 创建流式JSON输出
+     * @param out 下层输出流（关闭本对象时只刷新，不关闭下层输出流）
+     */
+    public JsonStreamWriter(OutputStream out) {
+        this.out = out;
+        byte[] pooled = BUFFERS.get();
+        if (pooled != null) {
+            // 借用本线程的缓冲区，使用期间同一线程的其他实例会新建缓冲区
+            BUFFERS.set(null);
+            this.buffer = pooled;
+        } else {
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * 将对象转换为JSON字符串
+     * 用于日志等需要完整字符串的场合，响应输出请直接使用流式写入
+     * @param value 对象
+     * @return JSON字符串
+     */
+    public static String toJsonString(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonStreamWriter writer = new JsonStreamWriter(bytes)) {
+            writer.value(value);
+        } catch (IOException e) {
+            // ByteArrayOutputStream不会抛出IO异常
+            throw new UncheckedIOException(e);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 转义JSON字符串内容（不含两侧引号）
+     * @param text 原始字符串
+     * @return 转义后的字符串，text为null时返回空字符串
+     */
+    public static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        String quoted = toJsonString(text);
+        return quoted.substring(1, quoted.length() - 1);
+    }
+
+    /**
+     * 开始JSON对象
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter beginObject() throws IOException {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    /**
+     * 结束JSON对象
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter endObject() throws IOException {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    /**
+     * 开始JSON数组
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter beginArray() throws IOException {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    /**
+     * 结束JSON数组
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter endArray() throws IOException {
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    /**
+     * 写入属性名（之后必须写入一个值）
+     * @param name 属性名
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter name(String name) throws IOException {
+        beforeValue();
+        writeQuoted(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * 写入字符串值
+     * @param value 字符串（为null时写入null）
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeQuoted(value);
+        }
+        return this;
+    }
+
+    /**
+     * 写入整数值
+     * @param value 整数
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * 写入布尔值
+     * @param value 布尔值
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * 写入任意值
+     * 支持null、字符串、数值、布尔、字符、日期（java.sql.Date为yyyy-MM-dd，其他为ISO-8601）、枚举、Map、Iterable、数组和带getter的模型对象
+     * @param value 值
+     * @return 本对象
+     * @throws IOException 写入失败时抛出
+     */
+    public JsonStreamWriter value(Object value) throws IOException {
+        if (value == null) {
+            beforeValue();
+            writeAscii("null");
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            value(value.toString());
+        } else if (value instanceof Number) {
+            writeNumber((Number) value);
+        } else if (value instanceof Boolean) {
+            value(((Boolean) value).booleanValue());
+        } else if (value instanceof java.sql.Date) {
+            value(((java.sql.Date) value).toLocalDate().toString());
+        } else if (value instanceof Date) {
+            value(DATE_TIME_FORMAT.format(Instant.ofEpochMilli(((Date) value).getTime())));
+        } else if (value instanceof TemporalAccessor || value instanceof Enum) {
+            value(value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof Iterable) {
+            writeIterable((Iterable<?>) value);
+        } else if (value.getClass().isArray()) {
+            writeArray(value);
+        } else {
+            writeBean(value);
+        }
+        return this;
+    }
+
+    /**
+     * 将缓冲区的内容写入下层输出流并刷新
+     * @throws IOException 写入失败时抛出
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * 刷新输出并归还缓冲区（不关闭下层输出流）
+     * @throws IOException 写入失败时抛出
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            // 归还缓冲区供本线程下次使用
+            BUFFERS.set(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * 写入数值（NaN和无穷大在JSON中无法表示，写入null）
+     * @param number 数值
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeNumber(Number number) throws IOException {
+        beforeValue();
+        if (number instanceof Double || number instanceof Float) {
+            double d = number.doubleValue();
+            writeAscii(Double.isNaN(d) || Double.isInfinite(d) ? "null" : number.toString());
+        } else {
+            writeAscii(number.toString());
+        }
+    }
+
+    /**
+     * 写入Map（键转换为字符串）
+     * @param map Map对象
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeMap(Map<?, ?> map) throws IOException {
+        beginObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            name(String.valueOf(entry.getKey()));
+            value(entry.getValue());
+        }
+        endObject();
+    }
+
+    /**
+     * 写入集合
+     * @param items 集合
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeIterable(Iterable<?> items) throws IOException {
+        beginArray();
+        for (Object item : items) {
+            value(item);
+        }
+        endArray();
+    }
+
+    /**
+     * 写入数组（包括基本类型数组）
+     * @param array 数组
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeArray(Object array) throws IOException {
+        beginArray();
+        int length = Array.getLength(array);
+        for (int i = 0; i < length; i++) {
+            value(Array.get(array, i));
+        }
+        endArray();
+    }
+
+    /**
+     * 按getter写入模型对象（非公开类写入toString()的结果）
+     * @param bean 模型对象
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeBean(Object bean) throws IOException {
+        Accessor[] accessors = ACCESSORS.get(bean.getClass());
+        if (accessors == null) {
+            value(bean.toString());
+            return;
+        }
+        beginObject();
+        for (Accessor accessor : accessors) {
+            Object property;
+            try {
+                property = (Object) accessor.getter.invokeExact(bean);
+            } catch (Error | RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to read property " + accessor.name
+                                                + " of " + bean.getClass().getName(), e);
+            }
+            name(accessor.name);
+            value(property);
+        }
+        endObject();
+    }
+
+    /**
+     * 写入值之前的处理：数组和对象中的第二个及以后的元素前输出逗号
+     * @throws IOException 写入失败时抛出
+     */
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasElements[depth - 1]) {
+                writeByte(',');
+            }
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    /**
+     * 进入新的嵌套层
+     */
+    private void push() {
+        if (depth >= MAX_DEPTH) {
+            throw new IllegalStateException("JSON nesting too deep (circular reference?)");
+        }
+        if (depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+        }
+        hasElements[depth++] = false;
+    }
+
+    /**
+     * 写入带引号的JSON字符串
+     * 转义引号、反斜杠、控制字符、U+2028/U+2029和不成对的代理字符，其余字符以UTF-8编码
+     * @param text 字符串
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeQuoted(String text) throws IOException {
+        writeByte('"');
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeByte('\\');
+                    writeByte(c);
+                } else if (c >= 0x20) {
+                    writeByte(c);
+                } else if (c == '\n') {
+                    writeAscii("\\n");
+                } else if (c == '\r') {
+                    writeAscii("\\r");
+                } else if (c == '\t') {
+                    writeAscii("\\t");
+                } else if (c == '\b') {
+                    writeAscii("\\b");
+                } else if (c == '\f') {
+                    writeAscii("\\f");
+                } else {
+                    writeUnicodeEscape(c);
+                }
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // 代理对编码为4字节UTF-8
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c) || c == '\u2028' || c == '\u2029') {
+                // 不成对的代理字符无法编码为UTF-8；行分隔符在JavaScript字符串中不合法
+                writeUnicodeEscape(c);
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    /**
+     * 写入\\uXXXX形式的转义
+     * @param c 字符
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeUnicodeEscape(char c) throws IOException {
+        writeByte('\\');
+        writeByte('u');
+        writeByte(HEX[(c >> 12) & 0xF]);
+        writeByte(HEX[(c >> 8) & 0xF]);
+        writeByte(HEX[(c >> 4) & 0xF]);
+        writeByte(HEX[c & 0xF]);
+    }
+
+    /**
+     * 写入ASCII字符串（不转义）
+     * @param text ASCII字符串
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    /**
+     * 写入一个字节，缓冲区满时先写入下层输出流
+     * @param b 字节
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    /**
+     * 将缓冲区的内容写入下层输出流
+     * @throws IOException 写入失败时抛出
+     */
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * 解析类的getter方法
+     * 只使用公开类的公开无参getter（不包括getClass），按属性名排序后转换为方法句柄
+     * @param type 类
+     * @return getter列表，非公开类返回null
+     */
+    private static Accessor[] resolveAccessors(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) {
+            // 非公开类无法通过getter读取，以toString()输出
+            return null;
+        }
+        try {
+            BeanInfo info = Introspector.getBeanInfo(type, Object.class);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            List<Accessor> accessors = new ArrayList<>();
+            for (PropertyDescriptor descriptor : info.getPropertyDescriptors()) {
+                Method getter = descriptor.getReadMethod();
+                if (getter == null || !Modifier.isPublic(getter.getModifiers())) {
+                    continue;
+                }
+                accessors.add(new Accessor(descriptor.getName(), lookup.unreflect(getter)));
+            }
+            return accessors.toArray(new Accessor[0]);
+        } catch (IntrospectionException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot serialize class: " + type.getName(), e);
+        }
+    }
+
+    /**
+     * 属性的getter
+     */
+    private static final class Accessor {
+        // 属性名
+        private final String name;
+        // getter方法句柄（类型为(Object)Object）
+        private final MethodHandle getter;
+
+        private Accessor(String name, MethodHandle getter) {
+            this.name = name;
+            this.getter = getter.asType(getter.type().changeParameterType(0, Object.class)
+                                                     .changeReturnType(Object.class));
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.insurance.util;
+
+// 导入Java IO异常类，用于处理文件写入异常
+import java.io.IOException;
+// 导入Java输入流类，用于读取配置文件
+import java.io.InputStream;
+// 导入Java字节缓冲区类，用于批量写入文件通道
+import java.nio.ByteBuffer;
+// 导入Java文件通道类，每天的日志文件保持一个打开的通道
+import java.nio.channels.FileChannel;
+// 导入Java字符集类，日志文件使用UTF-8编码
+import java.nio.charset.StandardCharsets;
+// 导入Java文件工具类，用于创建日志目录
+import java.nio.file.Files;
+// 导入Java路径接口
+import java.nio.file.Path;
+// 导入Java路径工具类
+import java.nio.file.Paths;
+// 导入Java文件打开选项
+import java.nio.file.StandardOpenOption;
+// 导入Java日期类，用于按日期切换日志文件
+import java.time.LocalDate;
+// 导入Java日期格式化类（线程安全）
+import java.time.format.DateTimeFormatter;
+// 导入Java列表类
+import java.util.ArrayList;
+import java.util.List;
+// 导入Java属性类，用于保存日志配置
+import java.util.Properties;
+// 导入Java时间单位枚举
+import java.util.concurrent.TimeUnit;
+// 导入Java线程阻塞工具类，用于唤醒和等待写入线程
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 日志文件输出类
+ * LogUtil的输出后端，每天的日志文件只打开一个FileChannel，日期变更时切换到新文件。
+ *
+ * 异步模式（默认）：调用线程只把已格式化的日志放入有界缓冲区，由专用写入线程批量写入文件并输出到控制台，
+ * 按fsyncIntervalMs间隔执行fsync。缓冲区满时调用线程直接同步写入，日志不会丢失。
+ * 同步模式：调用线程在锁内直接写入。
+ * 配置从类路径上的/config/logging.properties读取，同名系统属性优先。
+ */
+final class LogFileAppender {
+
+    // 配置文件路径
+    private static final String CONFIG_FILE = "/config/logging.properties";
+    // 日志文件名日期格式（年-月-日）
+    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    // 停止时等待写入线程写完剩余日志的最长时间（毫秒）
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    // 日志配置
+    private static final Properties config = new Properties();
+    // 文件写入锁（写入线程和同步写入共用）
+    private static final Object writeLock = new Object();
+
+    // 日志文件存储目录
+    private static final Path logDir;
+    // 是否异步写入
+    private static final boolean asyncMode;
+    // 是否同时输出到控制台
+    private static final boolean consoleEnabled;
+    // 每次写入的最大日志数
+    private static final int batchSize;
+    // 缓冲区为空时写入线程的等待间隔（毫秒）
+    private static final long flushIntervalMs;
+    // fsync间隔（毫秒）
+    private static final long fsyncIntervalMs;
+    // 日志缓冲区（异步模式）
+    private static final BoundedRingBuffer<Entry> buffer;
+    // 写入线程（异步模式）
+    private static final Thread writerThread;
+
+    // 是否在运行中
+    private static volatile boolean running = true;
+    // 当前打开的日志文件通道
+    private static FileChannel channel;
+    // 当前日志文件的日期
+    private static LocalDate channelDate;
+    // 上次fsync之后是否有写入
+    private static boolean dirty;
+    // 上次fsync的时间（毫秒）
+    private static long lastSyncAt = System.currentTimeMillis();
+
+    // 静态代码块，加载配置并启动写入线程
+    static {
+        loadConfig();
+        logDir = Paths.get(getConfig("log.dir"));
+        asyncMode = "async".equalsIgnoreCase(getConfig("log.mode").trim());
+        consoleEnabled = Boolean.parseBoolean(getConfig("log.console").trim());
+        batchSize = getIntConfig("log.batchSize");
+        flushIntervalMs = getIntConfig("log.flushIntervalMs");
+        fsyncIntervalMs = getIntConfig("log.fsyncIntervalMs");
+
+        if (asyncMode) {
+            buffer = new BoundedRingBuffer<>(getIntConfig("log.queueCapacity"));
+            writerThread = new Thread(LogFileAppender::runWriter, "log-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        } else {
+            buffer = null;
+            writerThread = null;
+        }
+    }
+
+    private LogFileAppender() {}
+
+    /**
+     * 加载配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadConfig() {
+        // 日志文件存储目录
+        config.setProperty("log.dir", "logs");
+        // 写入模式（async / sync）
+        config.setProperty("log.mode", "async");
+        // 是否同时输出到控制台
+        config.setProperty("log.console", "true");
+        // 缓冲区容量（向上取整为2的幂）
+        config.setProperty("log.queueCapacity", "8192");
+        // 每次写入的最大日志数
+        config.setProperty("log.batchSize", "256");
+        // 缓冲区为空时的等待间隔（毫秒）
+        config.setProperty("log.flushIntervalMs", "100");
+        // fsync间隔（毫秒）
+        config.setProperty("log.fsyncIntervalMs", "1000");
+
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = LogFileAppender.class.getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load logging config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 追加日志
+     * 异步模式下放入缓冲区后立即返回；缓冲区已满或已停止时在调用线程中同步写入
+     * @param date 日志日期（决定写入哪一天的文件）
+     * @param text 已格式化的日志（含换行）
+     */
+    static void append(LocalDate date, String text) {
+        Entry entry = new Entry(date, text);
+        if (asyncMode && running) {
+            if (buffer.offer(entry)) {
+                // 积压达到一个批次时唤醒写入线程
+                if (buffer.size() >= batchSize) {
+                    LockSupport.unpark(writerThread);
+                }
+                return;
+            }
+        }
+        // 同步写入
+        List<Entry> entries = new ArrayList<>(1);
+        entries.add(entry);
+        synchronized (writeLock) {
+            writeEntries(entries);
+            syncIfDue(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 写出所有日志并fsync
+     * 异步模式下等待写入线程写完当前缓冲区
+     */
+    static void flush() {
+        if (asyncMode) {
+            while (running && !buffer.isEmpty()) {
+                LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        synchronized (writeLock) {
+            sync();
+        }
+    }
+
+    /**
+     * 停止日志输出
+     * 写完缓冲区中的日志，fsync后关闭文件通道。之后的日志在调用线程中同步写入
+     */
+    static void shutdown() {
+        if (asyncMode) {
+            running = false;
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(SHUTDOWN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (writeLock) {
+            // 写入线程未能写完的日志
+            if (asyncMode) {
+                List<Entry> remaining = new ArrayList<>();
+                buffer.drainTo(remaining, Integer.MAX_VALUE);
+                writeEntries(remaining);
+            }
+            closeChannel();
+        }
+    }
+
+    /**
+     * 写入线程主循环
+     * 从缓冲区批量取出日志写入文件，空闲时按间隔执行fsync
+     */
+    private static void runWriter() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            buffer.drainTo(batch, batchSize);
+            synchronized (writeLock) {
+                if (!batch.isEmpty()) {
+                    writeEntries(batch);
+                }
+                syncIfDue(System.currentTimeMillis());
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+            }
+            batch.clear();
+        }
+        synchronized (writeLock) {
+            sync();
+        }
+    }
+
+    /**
+     * 写入日志（需持有writeLock）
+     * 同一天的日志合并为一次写入，日期变化时切换文件
+     * @param entries 日志列表
+     */
+    private static void writeEntries(List<Entry> entries) {
+        StringBuilder chunk = new StringBuilder(entries.size() * 128);
+        LocalDate chunkDate = null;
+        for (Entry entry : entries) {
+            if (chunkDate != null && !chunkDate.equals(entry.date)) {
+                writeChunk(chunkDate, chunk);
+                chunk.setLength(0);
+            }
+            chunkDate = entry.date;
+            chunk.append(entry.text);
+        }
+        if (chunkDate != null) {
+            writeChunk(chunkDate, chunk);
+        }
+    }
+
+    /**
+     * 写入同一天的日志块（需持有writeLock）
+     * @param date 日志日期
+     * @param chunk 日志内容
+     */
+    private static void writeChunk(LocalDate date, CharSequence chunk) {
+        String text = chunk.toString();
+        // 控制台输出（只由持锁线程输出，不会与其他线程的输出交错）
+        if (consoleEnabled) {
+            System.out.print(text);
+        }
+        try {
+            FileChannel target = channelFor(date);
+            ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                target.write(bytes);
+            }
+            dirty = true;
+        } catch (IOException e) {
+            System.err.println("日志文件写入失败: " + e.getMessage());
+            closeChannel();
+        }
+    }
+
+    /**
+     * 获取指定日期的日志文件通道（需持有writeLock）
+     * 日期变更时fsync并关闭前一天的文件，打开新文件
+     * @param date 日志日期
+     * @return 文件通道
+     * @throws IOException 打开文件失败时抛出
+     */
+    private static FileChannel channelFor(LocalDate date) throws IOException {
+        if (channel != null && date.equals(channelDate)) {
+            return channel;
+        }
+        closeChannel();
+        Files.createDirectories(logDir);
+        Path file = logDir.resolve("insurance_system_" + FILE_DATE_FORMAT.format(date) + ".log");
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.APPEND);
+        channelDate = date;
+        return channel;
+    }
+
+    /**
+     * 到达fsync间隔时执行fsync（需持有writeLock）
+     * @param now 当前时间（毫秒）
+     */
+    private static void syncIfDue(long now) {
+        if (dirty && now - lastSyncAt >= fsyncIntervalMs) {
+            sync();
+        }
+    }
+
+    /**
+     * 将已写入的日志刷到磁盘（需持有writeLock）
+     */
+    private static void sync() {
+        if (channel != null && dirty) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                System.err.println("日志文件同步失败: " + e.getMessage());
+            }
+        }
+        dirty = false;
+        lastSyncAt = System.currentTimeMillis();
+    }
+
+    /**
+     * fsync后关闭当前文件通道（需持有writeLock）
+     */
+    private static void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("日志文件关闭失败: " + e.getMessage());
+        }
+        channel = null;
+        channelDate = null;
+    }
+
+    /**
+     * 获取配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getConfig(String key) {
+        return System.getProperty(key, config.getProperty(key));
+    }
+
+    /**
+     * 获取整数配置值
+     * @param key 配置键
+     * @return 整数配置值
+     */
+    private static int getIntConfig(String key) {
+        return Integer.parseInt(getConfig(key).trim());
+    }
+
+    /**
+     * 日志条目
+     * 已格式化的日志和它所属的日期
+     */
+    private static final class Entry {
+        private final LocalDate date;
+        private final String text;
+
+        private Entry(LocalDate date, String text) {
+            this.date = date;
+            this.text = text;
+        }
+    }
+}
@@ -1,28 +1,19 @@
 package com.insurance.util;
 
-// 导入Java文件操作类，用于创建和操作日志文件
-import java.io.File;
-// 导入Java文件写入器类，用于将日志写入文件
-import java.io.FileWriter;
-// 导入Java IO异常类，用于处理文件操作异常
-import java.io.IOException;
-// 导入Java日期格式化类，用于格式化日志时间戳
-import java.text.SimpleDateFormat;
-// 导入Java日期类，用于获取当前时间
-import java.util.Date;
+// 导入Java日期时间类，用于获取当前时间
+import java.time.LocalDateTime;
+// 导入Java日期时间格式化类（线程安全）
+import java.time.format.DateTimeFormatter;
 
 /**
  * 日志工具类
  * 提供统一的日志记录功能
+ * 日志在调用线程中格式化后交给LogFileAppender，文件写入和控制台输出由后台写入线程完成
  */
 public class LogUtil {
     
-    // 定义日志文件存储目录
-    private static final String LOG_DIR = "logs";
-    // 定义日志时间戳格式（年-月-日 时:分:秒）
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-    // 定义日志文件名日期格式（年-月-日）
-    private static final SimpleDateFormat FILE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    // 定义日志时间戳格式（年-月-日 时:分:秒），DateTimeFormatter可被多个线程共享
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
     /**
      * 记录信息日志
@@ -67,78 +58,52 @@ public class LogUtil {
     
     /**
      * 核心日志记录方法
-     * 实现日志记录的核心逻辑，包括控制台输出和文件写入
+     * 格式化日志消息（含异常堆栈），交给LogFileAppender写入文件和控制台
      * @param level 日志级别（INFO、WARN、ERROR、DEBUG）
      * @param message 日志消息内容
      * @param throwable 异常对象（可为null）
      */
     private static void log(String level, String message, Throwable throwable) {
-        // 获取当前时间并格式化为指定格式
-        String timestamp = DATE_FORMAT.format(new Date());
-        // 构造完整的日志消息格式：[时间戳] [级别] 消息内容
-        String logMessage = String.format("[%s] [%s] %s", timestamp, level, message);
+        // 获取当前时间
+        LocalDateTime now = LocalDateTime.now();
         
-        // 控制台输出
-        // 将日志消息输出到控制台
-        System.out.println(logMessage);
+        // 构造完整的日志消息格式：[时间戳] [级别] 消息内容
+        StringBuilder logMessage = new StringBuilder(64 + (message != null ? message.length() : 4));
+        logMessage.append('[');
+        DATE_FORMAT.formatTo(now, logMessage);
+        logMessage.append("] [").append(level).append("] ").append(message).append('\n');
         
-        // 如果有异常对象，则打印异常堆栈信息
+        // 如果有异常对象，则追加异常信息和堆栈
         if (throwable != null) {
-            throwable.printStackTrace();
+            // 追加异常消息
+            logMessage.append("Exception: ").append(throwable.getMessage()).append('\n');
+            // 遍历异常堆栈元素并追加
+            for (StackTraceElement element : throwable.getStackTrace()) {
+                logMessage.append("\tat ").append(element).append('\n');
+            }
         }
         
-        // 文件日志记录
-        // 调用文件写入方法将日志保存到文件
-        writeToFile(logMessage, throwable);
+        // 空行分隔不同的日志记录
+        logMessage.append('\n');
+        
+        // 写入当天的日志文件（异步模式下由后台线程写入）
+        LogFileAppender.append(now.toLocalDate(), logMessage.toString());
     }
     
     /**
-     * 写入日志文件
-     * 将日志消息写入到文件中
-     * @param message 日志消息内容
-     * @param throwable 异常对象（可为null）
+     * 写出缓冲中的日志
+     * 等待后台线程写完已记录的日志并同步到磁盘
      */
-    private static void writeToFile(String message, Throwable throwable) {
-        try {
-            // 创建日志目录
-            // 创建File对象表示日志目录
-            File logDir = new File(LOG_DIR);
-            // 检查日志目录是否存在，如果不存在则创建
-            if (!logDir.exists()) {
-                // 创建日志目录（包括必要的父目录）
-                logDir.mkdirs();
-            }
-            
-            // 每日日志文件
-            // 根据当前日期生成日志文件名
-            String fileName = "insurance_system_" + FILE_DATE_FORMAT.format(new Date()) + ".log";
-            // 创建File对象表示日志文件
-            File logFile = new File(logDir, fileName);
-            
-            // 使用try-with-resources语句自动关闭文件写入器
-            try (FileWriter writer = new FileWriter(logFile, true)) {
-                // 将日志消息写入文件，并添加换行符
-                writer.write(message + "\n");
-                
-                // 如果有异常对象，则将异常信息写入文件
-                if (throwable != null) {
-                    // 写入异常消息
-                    writer.write("Exception: " + throwable.getMessage() + "\n");
-                    // 遍历异常堆栈元素并写入文件
-                    for (StackTraceElement element : throwable.getStackTrace()) {
-                        // 写入每个堆栈元素信息
-                        writer.write("\tat " + element.toString() + "\n");
-                    }
-                }
-                
-                // 写入空行分隔不同的日志记录
-                writer.write("\n");
-            }
-            
-        } catch (IOException e) {
-            // 如果文件写入过程中发生IO异常，则输出错误信息到标准错误流
-            System.err.println("日志文件写入失败: " + e.getMessage());
-        }
+    public static void flush() {
+        LogFileAppender.flush();
+    }
+    
+    /**
+     * 停止日志输出
+     * 应用停止时调用，写完剩余日志后关闭日志文件
+     */
+    public static void shutdown() {
+        LogFileAppender.shutdown();
     }
     
     /**
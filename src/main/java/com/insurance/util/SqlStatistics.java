@@ -0,0 +1,328 @@
+package com.insurance.util;
+
+// 导入延迟直方图类，用于记录每种SQL的执行耗时分布
+import com.insurance.monitor.LatencyHistogram;
+// 导入Java集合类
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+// 导入Java并发哈希表类，用于保存SQL指纹和统计
+import java.util.concurrent.ConcurrentHashMap;
+// 导入Java长整型累加器类，用于高并发下的计数累加
+import java.util.concurrent.atomic.LongAdder;
+// 导入Java正则表达式类，用于合并IN列表
+import java.util.regex.Pattern;
+
+/**
+ * SQL执行统计类
+ * 按SQL指纹（字面量替换为?、空白合并后的SQL）记录执行次数、耗时分布、行数和错误数。
+ * 超过阈值的执行记录到慢查询日志。
+ *
+ * N+1检测：请求处理期间记录每种SQL的执行次数（只在处理请求的线程中访问，不加锁），
+ * 请求结束时同一SQL执行次数达到阈值的视为N+1模式并记录警告。
+ * 由DatabaseUtil创建，JdbcProxies在每次执行语句时调用，供SystemMonitor输出。
+ */
+public class SqlStatistics {
+
+    // 指纹数超过上限时使用的指纹
+    private static final String OVERFLOW_FINGERPRINT = "(その他)";
+    // 连续的占位符列表（IN (?, ?, ?)等），合并为一个，使参数个数不同的SQL得到同一指纹
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+    // 纳秒到毫秒的换算
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    // 慢查询阈值（纳秒）
+    private final long slowQueryNanos;
+    // 一个请求中同一SQL执行多少次视为N+1
+    private final int repeatThreshold;
+    // 统计的指纹数上限
+    private final int maxFingerprints;
+
+    // SQL到指纹的缓存（SQL通常是常量字符串，同一SQL只规范化一次）
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+    // 指纹到执行统计的映射
+    private final Map<String, QueryStats> queries = new ConcurrentHashMap<>();
+    // 执行的语句数
+    private final LongAdder statementCount = new LongAdder();
+    // 慢查询数
+    private final LongAdder slowQueryCount = new LongAdder();
+    // 检测到N+1模式的请求数
+    private final LongAdder repeatedRequestCount = new LongAdder();
+    // 当前线程正在处理的请求的跟踪信息
+    private final ThreadLocal<RequestTrace> traces = new ThreadLocal<>();
+
+    /**
+     * 创建SQL执行统计
+     * @param slowQueryMillis 慢查询阈值（毫秒）
+     * @param repeatThreshold 一个请求中同一SQL执行多少次视为N+1
+     * @param maxFingerprints 统计的指纹数上限
+     */
+    public SqlStatistics(long slowQueryMillis, int repeatThreshold, int maxFingerprints) {
+        this.slowQueryNanos = slowQueryMillis * 1000000L;
+        this.repeatThreshold = repeatThreshold;
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    /**
+     * 取得SQL的执行统计
+     * 在准备语句时调用一次，执行时直接使用返回的对象
+     * @param sql SQL语句
+     * @return 执行统计
+     */
+    QueryStats statsFor(String sql) {
+        String fingerprint = fingerprints.get(sql);
+        if (fingerprint == null) {
+            fingerprint = fingerprint(sql);
+            // 动态拼接的SQL可能无限多，缓存数有上限
+            if (fingerprints.size() < maxFingerprints * 4) {
+                fingerprints.put(sql, fingerprint);
+            }
+        }
+        QueryStats stats = queries.get(fingerprint);
+        if (stats == null) {
+            if (queries.size() >= maxFingerprints) {
+                fingerprint = OVERFLOW_FINGERPRINT;
+            }
+            stats = queries.computeIfAbsent(fingerprint, QueryStats::new);
+        }
+        return stats;
+    }
+
+    /**
+     * 记录一次语句执行
+     * @param stats 执行统计
+     * @param elapsedNanos 执行耗时（纳秒）
+     * @param rows 更新行数（查询时为0，行数在读取结果集后另行累加）
+     * @param failed 是否执行失败
+     */
+    void recordExecution(QueryStats stats, long elapsedNanos, long rows, boolean failed) {
+        statementCount.increment();
+        stats.histogram.record(elapsedNanos);
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+        if (failed) {
+            stats.errors.increment();
+        }
+
+        RequestTrace trace = traces.get();
+        if (trace != null) {
+            trace.record(stats);
+        }
+        if (elapsedNanos >= slowQueryNanos) {
+            slowQueryCount.increment();
+            LogUtil.warn("スロークエリ (" + String.format("%.1f", elapsedNanos / NANOS_PER_MILLI) + "ms" +
+                         (trace != null ? ", " + trace.label : "") + "): " + stats.fingerprint);
+        }
+    }
+
+    /**
+     * 开始跟踪当前线程的请求
+     * @param label 请求的标识（HTTP方法和路径），用于慢查询日志
+     */
+    public void beginRequest(String label) {
+        RequestTrace trace = traces.get();
+        if (trace == null) {
+            traces.set(new RequestTrace(label));
+        } else {
+            // 同一线程内嵌套的请求（forward等）合并到外层
+            trace.depth++;
+        }
+    }
+
+    /**
+     * 结束跟踪当前线程的请求
+     * 同一SQL执行次数达到阈值时记录N+1警告
+     * @param label 请求的标识（路径和action），用于N+1警告
+     */
+    public void endRequest(String label) {
+        RequestTrace trace = traces.get();
+        if (trace == null) {
+            return;
+        }
+        if (trace.depth > 0) {
+            trace.depth--;
+            return;
+        }
+        traces.remove();
+
+        boolean repeated = false;
+        for (Map.Entry<QueryStats, int[]> entry : trace.counts.entrySet()) {
+            int count = entry.getValue()[0];
+            if (count >= repeatThreshold) {
+                repeated = true;
+                entry.getKey().repeatedRequests.increment();
+                LogUtil.warn("N+1クエリの疑い: " + label + " で同じSQLが" + count + "回実行されました（全" +
+                             trace.statements + "件）: " + entry.getKey().fingerprint);
+            }
+        }
+        if (repeated) {
+            repeatedRequestCount.increment();
+        }
+    }
+
+    /**
+     * 获取汇总统计信息
+     * @return 统计信息（语句数、慢查询数、N+1请求数、指纹数）
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("statements", statementCount.sum());
+        stats.put("slowQueries", slowQueryCount.sum());
+        stats.put("repeatedRequests", repeatedRequestCount.sum());
+        stats.put("fingerprints", queries.size());
+        stats.put("slowQueryMillis", slowQueryNanos / 1000000L);
+        stats.put("repeatThreshold", repeatThreshold);
+        return stats;
+    }
+
+    /**
+     * 获取合计耗时最长的SQL
+     * @param limit 件数
+     * @return 按合计耗时降序排列的SQL统计（指纹、执行次数、合计/平均/p99/最大耗时、行数、错误数、N+1检测数）
+     */
+    public List<Map<String, Object>> getTopQueries(int limit) {
+        List<Object[]> snapshots = new ArrayList<>();
+        for (QueryStats stats : queries.values()) {
+            snapshots.add(new Object[] {stats, stats.histogram.snapshot()});
+        }
+        snapshots.sort((a, b) -> Long.compare(((LatencyHistogram.Snapshot) b[1]).getTotalNanos(),
+                                              ((LatencyHistogram.Snapshot) a[1]).getTotalNanos()));
+
+        List<Map<String, Object>> top = new ArrayList<>();
+        for (Object[] entry : snapshots.subList(0, Math.min(limit, snapshots.size()))) {
+            QueryStats stats = (QueryStats) entry[0];
+            LatencyHistogram.Snapshot snapshot = (LatencyHistogram.Snapshot) entry[1];
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("fingerprint", stats.fingerprint);
+            row.put("executions", snapshot.getCount());
+            row.put("totalMillis", snapshot.getTotalNanos() / NANOS_PER_MILLI);
+            row.put("averageMillis", snapshot.getCount() == 0 ? 0.0
+                    : snapshot.getTotalNanos() / (double) snapshot.getCount() / NANOS_PER_MILLI);
+            row.put("p99Millis", snapshot.getQuantileNanos(0.99) / NANOS_PER_MILLI);
+            row.put("maxMillis", snapshot.getMaxNanos() / NANOS_PER_MILLI);
+            row.put("rows", stats.rows.sum());
+            row.put("errors", stats.errors.sum());
+            row.put("repeatedRequests", stats.repeatedRequests.sum());
+            top.add(row);
+        }
+        return top;
+    }
+
+    /**
+     * 生成SQL指纹
+     * 字符串和数值字面量替换为?，连续空白合并为一个空格，占位符列表合并为(?+)
+     * @param sql SQL语句
+     * @return SQL指纹
+     */
+    static String fingerprint(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        boolean pendingSpace = false;
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '\'' || c == '"') {
+                // 跳过字符串字面量（支持反斜杠转义和连续两个引号）
+                int j = i + 1;
+                while (j < length) {
+                    char d = sql.charAt(j);
+                    if (d == '\\') {
+                        j += 2;
+                    } else if (d == c) {
+                        if (j + 1 < length && sql.charAt(j + 1) == c) {
+                            j += 2;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        j++;
+                    }
+                }
+                out.append('?');
+                i = j;
+            } else if (Character.isDigit(c) && (out.length() == 0 || !isIdentifierChar(out.charAt(out.length() - 1)))) {
+                // 跳过数值字面量（标识符中的数字保留）
+                int j = i + 1;
+                while (j < length && (Character.isDigit(sql.charAt(j)) || sql.charAt(j) == '.')) {
+                    j++;
+                }
+                out.append('?');
+                i = j - 1;
+            } else {
+                out.append(c);
+            }
+        }
+        return PLACEHOLDER_LIST.matcher(out).replaceAll("(?+)");
+    }
+
+    /**
+     * 是否为标识符中的字符
+     * @param c 字符
+     * @return 英数字、下划线或反引号时返回true
+     */
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '`';
+    }
+
+    /**
+     * 一种SQL（同一指纹）的执行统计
+     */
+    static final class QueryStats {
+        // SQL指纹
+        final String fingerprint;
+        // 执行耗时分布（含执行次数）
+        final LatencyHistogram histogram = new LatencyHistogram();
+        // 读取或更新的行数
+        final LongAdder rows = new LongAdder();
+        // 执行失败次数
+        final LongAdder errors = new LongAdder();
+        // 检测到N+1模式的请求数
+        final LongAdder repeatedRequests = new LongAdder();
+
+        private QueryStats(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * 一个请求的跟踪信息（只在处理请求的线程中访问）
+     */
+    private static final class RequestTrace {
+        // 请求的标识
+        private final String label;
+        // 每种SQL的执行次数
+        private final Map<QueryStats, int[]> counts = new HashMap<>();
+        // 执行的语句数
+        private int statements;
+        // 嵌套深度
+        private int depth;
+
+        private RequestTrace(String label) {
+            this.label = label;
+        }
+
+        /**
+         * 记录一次执行
+         * @param stats 执行统计
+         */
+        private void record(QueryStats stats) {
+            statements++;
+            int[] count = counts.get(stats);
+            if (count == null) {
+                counts.put(stats, new int[] {1});
+            } else {
+                count[0]++;
+            }
+        }
+    }
+}
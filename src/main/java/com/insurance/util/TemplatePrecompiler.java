@@ -0,0 +1,129 @@
+package com.insurance.util;
+
+// 导入Velocity运行时实例类，用于解析模板
+import org.apache.velocity.runtime.RuntimeInstance;
+// 导入Velocity模板解析异常类
+import org.apache.velocity.runtime.parser.ParseException;
+// 导入Java IO类
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+// 导入Java字符集类，模板文件使用UTF-8编码
+import java.nio.charset.StandardCharsets;
+// 导入Java文件工具类
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+// 导入Java集合类
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+// 导入Java流类，用于遍历模板目录
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 模板预编译工具
+ * 构建时（Maven的prepare-package阶段）执行，解析模板目录下的全部.vm文件。
+ * 有语法错误时使构建失败，全部通过时生成模板清单（template-manifest.properties）放入WAR。
+ * 运行时VelocityUtil根据清单在启动时预先加载全部模板，首次请求不再需要解析。
+ *
+ * 用法：TemplatePrecompiler 模板目录 清单输出路径
+ */
+public final class TemplatePrecompiler {
+
+    // 清单中模板列表的键
+    static final String MANIFEST_TEMPLATES = "templates";
+    // WAR中清单文件的路径
+    static final String MANIFEST_PATH = "/WEB-INF/template-manifest.properties";
+
+    private TemplatePrecompiler() {}
+
+    /**
+     * 构建时入口
+     * @param args 模板目录、清单输出路径
+     * @throws Exception 参数错误、模板有语法错误或写入失败时抛出
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: TemplatePrecompiler <templateDir> <manifestFile>");
+        }
+        Path templateDir = Paths.get(args[0]);
+        Path manifestFile = Paths.get(args[1]);
+
+        List<String> templates = listTemplates(templateDir);
+        List<String> errors = parseAll(templateDir, templates);
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println(error);
+            }
+            throw new IllegalStateException("Template parse failed: " + errors.size() + " error(s)");
+        }
+
+        writeManifest(manifestFile, templates);
+        System.out.println("Precompiled " + templates.size() + " templates -> " + manifestFile);
+    }
+
+    /**
+     * 列出模板目录下的全部模板
+     * @param templateDir 模板目录
+     * @return 相对于模板目录的模板名（分隔符为/，按名称排序）
+     * @throws IOException 读取目录失败时抛出
+     */
+    private static List<String> listTemplates(Path templateDir) throws IOException {
+        try (Stream<Path> paths = Files.walk(templateDir)) {
+            return paths
+                .filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".vm"))
+                .map(path -> templateDir.relativize(path).toString().replace('\\', '/'))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 解析全部模板
+     * 使用与运行时相同的用户指令，只检查语法，不渲染
+     * @param templateDir 模板目录
+     * @param templates 模板名
+     * @return 错误信息（没有错误时为空）
+     * @throws IOException 读取模板失败时抛出
+     */
+    private static List<String> parseAll(Path templateDir, List<String> templates) throws IOException {
+        RuntimeInstance runtime = new RuntimeInstance();
+        runtime.setProperty("userdirective", CacheDirective.class.getName());
+        runtime.setProperty("velocimacro.permissions.allow.inline", "true");
+        runtime.setProperty("runtime.log.logsystem.class", "org.apache.velocity.runtime.log.NullLogChute");
+        try {
+            runtime.init();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to initialize Velocity runtime", e);
+        }
+
+        List<String> errors = new ArrayList<>();
+        for (String name : templates) {
+            try (Reader reader = Files.newBufferedReader(templateDir.resolve(name), StandardCharsets.UTF_8)) {
+                runtime.parse(reader, name);
+            } catch (ParseException e) {
+                errors.add(name + ": " + e.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * 写出模板清单
+     * @param manifestFile 清单输出路径
+     * @param templates 模板名
+     * @throws IOException 写入失败时抛出
+     */
+    private static void writeManifest(Path manifestFile, List<String> templates) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty(MANIFEST_TEMPLATES, String.join(",", templates));
+        if (manifestFile.getParent() != null) {
+            Files.createDirectories(manifestFile.getParent());
+        }
+        try (OutputStream out = Files.newOutputStream(manifestFile)) {
+            manifest.store(out, "Generated by TemplatePrecompiler");
+        }
+    }
+}
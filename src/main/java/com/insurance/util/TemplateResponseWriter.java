@@ -0,0 +1,183 @@
+package com.insurance.util;
+
+// 导入Java IO异常类，用于处理写入异常
+import java.io.IOException;
+// 导入Java字符写入器类，作为响应写入器的基类
+import java.io.Writer;
+
+/**
+ * 模板流式输出写入器
+ * VelocityUtil流式渲染时使用，模板合并结果先写入字符缓冲区，缓冲区满时写到下层响应写入器。
+ * 输出字符数首次达到earlyFlushChars时刷新整个响应，让浏览器尽早收到页面头部。
+ * 在任何内容写到下层之前，可以丢弃缓冲区改为输出错误片段。
+ */
+final class TemplateResponseWriter extends Writer {
+
+    // 缓冲区大小的下限（字符数）
+    private static final int MIN_BUFFER_SIZE = 512;
+    // 本线程可复用的字符缓冲区
+    private static final ThreadLocal<char[]> BUFFERS = new ThreadLocal<>();
+
+    // 下层响应写入器
+    private final Writer target;
+    // 首次刷新响应的字符数（0为不提前刷新）
+    private final int earlyFlushChars;
+
+    // 字符缓冲区（关闭后为null）
+    private char[] buffer;
+    // 缓冲区中已写入的字符数
+    private int count;
+    // 已写入的总字符数
+    private long written;
+    // 是否已有内容写到下层写入器
+    private boolean committed;
+    // 是否已执行过提前刷新
+    private boolean earlyFlushed;
+
+    /**
+     * 创建模板输出写入器
+     * @param target 下层响应写入器（关闭本对象时只刷新，不关闭下层写入器）
+     * @param bufferSize 缓冲区大小（字符数）
+     * @param earlyFlushChars 首次刷新响应的字符数（0为不提前刷新）
+     */
+    TemplateResponseWriter(Writer target, int bufferSize, int earlyFlushChars) {
+        this.target = target;
+        this.earlyFlushChars = earlyFlushChars;
+        int size = Math.max(bufferSize, MIN_BUFFER_SIZE);
+        char[] pooled = BUFFERS.get();
+        if (pooled != null && pooled.length == size) {
+            // 借用本线程的缓冲区，使用期间同一线程的其他实例会新建缓冲区
+            BUFFERS.set(null);
+            this.buffer = pooled;
+        } else {
+            this.buffer = new char[size];
+        }
+    }
+
+    /**
+     * 是否已有内容写到下层写入器
+     * 未写出时可以调用discard()丢弃已渲染内容
+     * @return 已写出时返回true
+     */
+    boolean isCommitted() {
+        return committed;
+    }
+
+    /**
+     * 丢弃缓冲区中尚未写出的内容
+     */
+    void discard() {
+        count = 0;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            drain();
+        }
+        buffer[count++] = (char) c;
+        afterWrite(1);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        ensureOpen();
+        if (length >= buffer.length) {
+            // 超过缓冲区大小的内容直接写到下层
+            drain();
+            target.write(chars, offset, length);
+            committed = true;
+        } else {
+            if (length > buffer.length - count) {
+                drain();
+            }
+            System.arraycopy(chars, offset, buffer, count, length);
+            count += length;
+        }
+        afterWrite(length);
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        ensureOpen();
+        int position = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            if (count == buffer.length) {
+                drain();
+            }
+            int chunk = Math.min(remaining, buffer.length - count);
+            text.getChars(position, position + chunk, buffer, count);
+            count += chunk;
+            position += chunk;
+            remaining -= chunk;
+        }
+        afterWrite(length);
+    }
+
+    /**
+     * 写出缓冲区并刷新下层写入器
+     * @throws IOException 写入失败时抛出
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+        target.flush();
+    }
+
+    /**
+     * 写出缓冲区并归还缓冲区（不关闭下层写入器）
+     * @throws IOException 写入失败时抛出
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            // 归还缓冲区供本线程下次使用
+            BUFFERS.set(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * 写入后的处理
+     * 总字符数首次达到earlyFlushChars时刷新整个响应
+     * @param length 本次写入的字符数
+     * @throws IOException 写入失败时抛出
+     */
+    private void afterWrite(int length) throws IOException {
+        written += length;
+        if (!earlyFlushed && earlyFlushChars > 0 && written >= earlyFlushChars) {
+            earlyFlushed = true;
+            flush();
+        }
+    }
+
+    /**
+     * 把缓冲区内容写到下层写入器
+     * @throws IOException 写入失败时抛出
+     */
+    private void drain() throws IOException {
+        if (count > 0) {
+            target.write(buffer, 0, count);
+            count = 0;
+            committed = true;
+        }
+    }
+
+    /**
+     * 检查写入器是否已关闭
+     * @throws IOException 已关闭时抛出
+     */
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Writer closed");
+        }
+    }
+}
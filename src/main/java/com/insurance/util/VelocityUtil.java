@@ -16,30 +16,103 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 // 导入Java IO异常类，用于处理IO操作异常
 import java.io.IOException;
+// 导入Java输入流类，用于读取渲染配置文件
+import java.io.InputStream;
 // 导入Java字符串写入器类，用于将模板渲染结果写入字符串
 import java.io.StringWriter;
+// 导入Java字符写入器类，用于流式渲染
+import java.io.Writer;
 // 导入Java属性类，用于设置Velocity引擎配置
 import java.util.Properties;
 
 /**
  * Velocity模板工具类
  * 提供Velocity模板引擎的初始化和模板渲染功能
+ *
+ * 页面输出默认使用流式渲染：模板直接合并到带缓冲的响应写入器，不在堆上生成整页字符串。
+ * 模板中可以用#cache指令缓存变化较少的片段（见CacheDirective、FragmentCache）。
+ * 构建时生成了模板清单（见TemplatePrecompiler）时，启动时预先解析全部模板。
+ * 渲染配置从类路径上的/config/velocity-render.properties读取，同名系统属性优先。
  */
 public class VelocityUtil {
     
-    // Velocity引擎实例，用于处理模板渲染
-    private static VelocityEngine velocityEngine;
+    // 渲染配置文件路径
+    private static final String RENDER_CONFIG_FILE = "/config/velocity-render.properties";
+    // 渲染失败时输出的错误片段
+    private static final String ERROR_FRAGMENT =
+        "<div class=\"alert alert-error\">画面の表示中にエラーが発生しました。</div>";
+    
+    // 渲染配置
+    private static final Properties renderConfig = new Properties();
+    // 是否使用流式渲染（false时与以前一样先渲染为字符串再输出）
+    private static final boolean streamingEnabled;
+    // 流式渲染的缓冲区大小（字符数）
+    private static final int bufferSize;
+    // 首次刷新响应的字符数（0为不提前刷新）
+    private static final int earlyFlushChars;
+    
+    // Velocity引擎实例，用于处理模板渲染（初始化完成后才赋值，渲染线程不加锁读取）
+    private static volatile VelocityEngine velocityEngine;
+    
+    // 静态代码块，加载渲染配置
+    static {
+        loadRenderConfig();
+        streamingEnabled = "stream".equalsIgnoreCase(getRenderConfig("velocity.render.mode").trim());
+        bufferSize = Integer.parseInt(getRenderConfig("velocity.render.bufferSize").trim());
+        earlyFlushChars = Integer.parseInt(getRenderConfig("velocity.render.earlyFlushChars").trim());
+    }
+    
+    /**
+     * 加载渲染配置
+     * 先设置默认配置，再用配置文件中的值覆盖
+     */
+    private static void loadRenderConfig() {
+        // 渲染模式（stream / buffer）
+        renderConfig.setProperty("velocity.render.mode", "stream");
+        // 缓冲区大小（字符数）
+        renderConfig.setProperty("velocity.render.bufferSize", "8192");
+        // 首次刷新响应的字符数（0为不提前刷新）
+        renderConfig.setProperty("velocity.render.earlyFlushChars", "4096");
+        // 是否启用#cache片段缓存
+        renderConfig.setProperty("velocity.cache.enabled", "true");
+        // 片段缓存的最大条目数
+        renderConfig.setProperty("velocity.cache.maxEntries", "1000");
+        // 可缓存的片段最大字符数
+        renderConfig.setProperty("velocity.cache.maxFragmentChars", "65536");
+        // 模板修改检查间隔（秒，0为不检查；auto时有模板清单则不检查，否则为2秒）
+        renderConfig.setProperty("velocity.template.checkInterval", "auto");
+        
+        // 从类路径读取配置文件（不存在时使用默认配置）
+        try (InputStream in = VelocityUtil.class.getResourceAsStream(RENDER_CONFIG_FILE)) {
+            if (in != null) {
+                renderConfig.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load velocity render config: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取渲染配置值（系统属性优先）
+     * @param key 配置键
+     * @return 配置值
+     */
+    private static String getRenderConfig(String key) {
+        return System.getProperty(key, renderConfig.getProperty(key));
+    }
     
     /**
      * 初始化Velocity引擎
      * 根据Servlet上下文配置并初始化Velocity引擎
      * @param servletContext Servlet上下文对象
      */
-    public static void initVelocityEngine(ServletContext servletContext) {
+    public static synchronized void initVelocityEngine(ServletContext servletContext) {
         // 检查Velocity引擎是否已初始化，避免重复初始化
         if (velocityEngine == null) {
-            // 创建新的Velocity引擎实例
-            velocityEngine = new VelocityEngine();
+            // 创建新的Velocity引擎实例（初始化和预加载完成后才公开）
+            VelocityEngine engine = new VelocityEngine();
+            // 读取构建时生成的模板清单（开发环境中不存在）
+            Properties manifest = loadTemplateManifest(servletContext);
             
             // 创建属性对象，用于设置Velocity引擎配置
             Properties props = new Properties();
@@ -59,8 +132,9 @@ public class VelocityUtil {
                 servletContext.getRealPath("/WEB-INF/templates"));
             // 启用模板缓存，提高性能
             props.setProperty("file.resource.loader.cache", "true");
-            // 设置模板文件修改检查间隔为2秒
-            props.setProperty("file.resource.loader.modificationCheckInterval", "2");
+            // 设置模板文件修改检查间隔（打包后的WAR默认不检查，渲染时不再访问文件系统）
+            props.setProperty("file.resource.loader.modificationCheckInterval", 
+                getModificationCheckInterval(manifest));
             
             // 宏配置
             // 设置宏库文件路径
@@ -72,6 +146,15 @@ public class VelocityUtil {
             // 设置宏的局部作用域
             props.setProperty("velocimacro.context.localscope", "true");
             
+            // 片段缓存配置
+            // 注册#cache指令
+            props.setProperty("userdirective", CacheDirective.class.getName());
+            // 设置片段缓存参数
+            FragmentCache.configure(
+                Boolean.parseBoolean(getRenderConfig("velocity.cache.enabled").trim()),
+                Integer.parseInt(getRenderConfig("velocity.cache.maxEntries").trim()),
+                Integer.parseInt(getRenderConfig("velocity.cache.maxFragmentChars").trim()));
+            
             // 日志配置
             // 设置Velocity运行日志文件路径
             props.setProperty("runtime.log", servletContext.getRealPath("/WEB-INF/logs/velocity.log"));
@@ -81,14 +164,78 @@ public class VelocityUtil {
             
             try {
                 // 使用配置属性初始化Velocity引擎
-                velocityEngine.init(props);
+                engine.init(props);
             } catch (Exception e) {
                 // 如果初始化失败，抛出运行时异常
                 throw new RuntimeException("Failed to initialize Velocity engine", e);
             }
+            
+            // 有模板清单时预先解析全部模板，首次请求不再需要解析
+            if (manifest != null) {
+                preloadTemplates(engine, manifest);
+            }
+            velocityEngine = engine;
+        }
+    }
+    
+    /**
+     * 读取模板清单
+     * 清单由TemplatePrecompiler在构建时生成
+     * @param servletContext Servlet上下文对象
+     * @return 模板清单，不存在时返回null
+     */
+    private static Properties loadTemplateManifest(ServletContext servletContext) {
+        try (InputStream in = servletContext.getResourceAsStream(TemplatePrecompiler.MANIFEST_PATH)) {
+            if (in == null) {
+                return null;
+            }
+            Properties manifest = new Properties();
+            manifest.load(in);
+            return manifest;
+        } catch (IOException e) {
+            LogUtil.warn("テンプレート一覧の読み込みに失敗しました: " + e.getMessage());
+            return null;
         }
     }
     
+    /**
+     * 获取模板修改检查间隔
+     * @param manifest 模板清单（不存在时为null）
+     * @return 检查间隔（秒）
+     */
+    private static String getModificationCheckInterval(Properties manifest) {
+        String interval = getRenderConfig("velocity.template.checkInterval").trim();
+        if ("auto".equalsIgnoreCase(interval)) {
+            return manifest != null ? "0" : "2";
+        }
+        return interval;
+    }
+    
+    /**
+     * 预加载模板
+     * 解析清单中的全部模板并放入引擎的模板缓存。个别模板加载失败时只记录日志，
+     * 该模板在首次请求时照常解析
+     * @param engine 已初始化的Velocity引擎
+     * @param manifest 模板清单
+     */
+    private static void preloadTemplates(VelocityEngine engine, Properties manifest) {
+        long start = System.currentTimeMillis();
+        int loaded = 0;
+        for (String name : manifest.getProperty(TemplatePrecompiler.MANIFEST_TEMPLATES, "").split(",")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            try {
+                engine.getTemplate(name);
+                loaded++;
+            } catch (RuntimeException e) {
+                LogUtil.warn("テンプレートの事前読み込みに失敗しました: " + name + " - " + e.getMessage());
+            }
+        }
+        LogUtil.info("テンプレートを事前読み込みしました: " + loaded + "件, 処理時間: " +
+                     (System.currentTimeMillis() - start) + "ms");
+    }
+    
     /**
      * 渲染模板
      * 根据模板名称和上下文渲染模板内容
@@ -112,6 +259,22 @@ public class VelocityUtil {
         }
     }
     
+    /**
+     * 渲染模板到写入器
+     * 模板合并结果直接写入指定的写入器，不生成中间字符串
+     * @param templateName 模板文件名
+     * @param context Velocity上下文对象
+     * @param writer 输出目标
+     * @throws IOException 写入失败时抛出
+     */
+    public static void mergeTemplate(String templateName, VelocityContext context, Writer writer)
+            throws IOException {
+        // 从Velocity引擎获取指定名称的模板
+        Template template = velocityEngine.getTemplate(templateName);
+        // 将上下文数据合并到模板中，并将结果写入写入器
+        template.merge(context, writer);
+    }
+    
     /**
      * 创建Velocity上下文并设置常用变量
      * 创建Velocity上下文对象并设置Web应用中常用的变量
@@ -147,7 +310,9 @@ public class VelocityUtil {
     
     /**
      * 渲染模板并输出到响应
-     * 渲染指定模板并将结果写入HTTP响应
+     * 流式模式下模板直接合并到带缓冲的响应写入器，输出达到一定字符数时提前刷新响应。
+     * 渲染失败时输出错误片段：尚未写出任何内容时丢弃已渲染部分并返回500，
+     * 已写出时在页面末尾追加错误片段
      * @param templateName 模板文件名
      * @param context Velocity上下文对象
      * @param response HTTP响应对象
@@ -160,10 +325,37 @@ public class VelocityUtil {
         // 设置响应字符编码为UTF-8
         response.setCharacterEncoding("UTF-8");
         
-        // 渲染模板获取内容
-        String content = renderTemplate(templateName, context);
-        // 将渲染后的内容写入响应输出流
-        response.getWriter().write(content);
+        if (!streamingEnabled) {
+            // 渲染模板获取内容
+            String content = renderTemplate(templateName, context);
+            // 将渲染后的内容写入响应输出流
+            response.getWriter().write(content);
+            return;
+        }
+        
+        // 容器的缓冲区与本写入器的缓冲区大小一致，避免二次缓冲
+        if (!response.isCommitted()) {
+            response.setBufferSize(bufferSize);
+        }
+        TemplateResponseWriter writer =
+            new TemplateResponseWriter(response.getWriter(), bufferSize, earlyFlushChars);
+        try {
+            mergeTemplate(templateName, context, writer);
+        } catch (IOException e) {
+            // 客户端断开等写入失败无法再输出错误片段
+            throw e;
+        } catch (RuntimeException e) {
+            LogUtil.error("テンプレートの描画に失敗しました: " + templateName, e);
+            if (!writer.isCommitted() && !response.isCommitted()) {
+                // 尚未写出任何内容，丢弃已渲染部分
+                writer.discard();
+                response.resetBuffer();
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            writer.write(ERROR_FRAGMENT);
+        } finally {
+            writer.close();
+        }
     }
     
     /**
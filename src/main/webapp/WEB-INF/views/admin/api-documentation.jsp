@@ -93,35 +93,31 @@
                                             <th>説明</th>
                                         </tr>
                                         <tr>
-                                            <td>page</td>
-                                            <td>int</td>
+                                            <td>cursor</td>
+                                            <td>string</td>
                                             <td>いいえ</td>
-                                            <td>ページ番号 (デフォルト: 1)</td>
+                                            <td>前ページのレスポンスの meta.next をそのまま指定 (省略時: 先頭ページ)</td>
                                         </tr>
                                         <tr>
                                             <td>size</td>
                                             <td>int</td>
                                             <td>いいえ</td>
-                                            <td>ページサイズ (デフォルト: 20)</td>
-                                        </tr>
-                                        <tr>
-                                            <td>sortBy</td>
-                                            <td>string</td>
-                                            <td>いいえ</td>
-                                            <td>ソート項目 (デフォルト: id)</td>
+                                            <td>ページサイズ (デフォルト: 20、最大: 100)</td>
                                         </tr>
                                         <tr>
-                                            <td>sortOrder</td>
-                                            <td>string</td>
+                                            <td>includeTotal</td>
+                                            <td>boolean</td>
                                             <td>いいえ</td>
-                                            <td>ソート順 (デフォルト: asc)</td>
+                                            <td>true の場合 meta.total に総件数を返す (最大1分前の値、デフォルト: false)</td>
                                         </tr>
                                     </table>
+                                    <p>並び順は登録日時の新しい順で固定です。次のページは meta.next を cursor に指定して取得します。</p>
                                 </div>
                                 
                                 <div class="example">
                                     <h5>リクエスト例</h5>
-                                    <pre><code class="language-bash">GET /api/customers?page=1&size=10&sortBy=name&sortOrder=asc</code></pre>
+                                    <pre><code class="language-bash">GET /api/customers?size=10&includeTotal=true
+GET /api/customers?size=10&cursor=MTcwNDEwMzIwMDAwMDox</code></pre>
                                     
                                     <h5>レスポンス例</h5>
                                     <pre><code class="language-json">{
@@ -139,20 +135,21 @@
     }
   ],
   "meta": {
-    "page": 1,
     "size": 10,
-    "total": 100,
-    "pages": 10
+    "count": 10,
+    "hasMore": true,
+    "next": "MTcwNDEwMzIwMDAwMDox",
+    "total": 100
   }
 }</code></pre>
                                 </div>
                                 
                                 <div class="test-section">
                                     <h5>テスト</h5>
-                                    <button class="btn btn-sm btn-primary" onclick="testApi('GET', '/api/customers', null)">
+                                    <button class="btn btn-sm btn-primary" onclick="testApi('GET', '/api/customers?size=10', null)">
                                         <i class="fas fa-play"></i> テスト実行
                                     </button>
-                                    <div class="test-result" id="test-GET-api-customers"></div>
+                                    <div class="test-result" id="test-GET-api-customers?size=10"></div>
                                 </div>
                             </div>
                         </div>
@@ -412,6 +409,71 @@
                     </div>
                     
                     <div class="endpoint-content" id="document-api-content">
+                        <div class="endpoint-item">
+                            <div class="endpoint-info">
+                                <div class="endpoint-method method-get">GET</div>
+                                <div class="endpoint-url">/api/document-requests</div>
+                                <div class="endpoint-description">資料請求リストを取得</div>
+                            </div>
+                            <div class="endpoint-details">
+                                <div class="parameters">
+                                    <h5>クエリパラメータ</h5>
+                                    <table class="parameter-table">
+                                        <tr>
+                                            <th>パラメータ</th>
+                                            <th>型</th>
+                                            <th>必須</th>
+                                            <th>説明</th>
+                                        </tr>
+                                        <tr>
+                                            <td>cursor</td>
+                                            <td>string</td>
+                                            <td>いいえ</td>
+                                            <td>前ページのレスポンスの meta.next をそのまま指定 (省略時: 先頭ページ)</td>
+                                        </tr>
+                                        <tr>
+                                            <td>size</td>
+                                            <td>int</td>
+                                            <td>いいえ</td>
+                                            <td>ページサイズ (デフォルト: 20、最大: 100)</td>
+                                        </tr>
+                                        <tr>
+                                            <td>status</td>
+                                            <td>string</td>
+                                            <td>いいえ</td>
+                                            <td>ステータスでフィルタ (受付 / 処理中 / 完了 / 取消)</td>
+                                        </tr>
+                                        <tr>
+                                            <td>requestType</td>
+                                            <td>string</td>
+                                            <td>いいえ</td>
+                                            <td>請求タイプでフィルタ (資料請求 / 仮申込 / 本申込 / 変更申請)</td>
+                                        </tr>
+                                        <tr>
+                                            <td>includeTotal</td>
+                                            <td>boolean</td>
+                                            <td>いいえ</td>
+                                            <td>true の場合 meta.total に総件数を返す (最大1分前の値、デフォルト: false)</td>
+                                        </tr>
+                                    </table>
+                                    <p>並び順は登録日時の新しい順で固定です。レスポンスの meta は顧客リストと同じ形式 (size, count, hasMore, next, total) です。</p>
+                                </div>
+                                
+                                <div class="example">
+                                    <h5>リクエスト例</h5>
+                                    <pre><code class="language-bash">GET /api/document-requests?status=受付&size=20</code></pre>
+                                </div>
+                                
+                                <div class="test-section">
+                                    <h5>テスト</h5>
+                                    <button class="btn btn-sm btn-primary" onclick="testApi('GET', '/api/document-requests?size=10', null)">
+                                        <i class="fas fa-play"></i> テスト実行
+                                    </button>
+                                    <div class="test-result" id="test-GET-api-document-requests?size=10"></div>
+                                </div>
+                            </div>
+                        </div>
+                        
                         <div class="endpoint-item">
                             <div class="endpoint-info">
                                 <div class="endpoint-method method-post">POST</div>